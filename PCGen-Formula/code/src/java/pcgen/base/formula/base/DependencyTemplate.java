@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A DependencyTemplate is the scope-independent result of a dependency analysis: the
+ * names of the variables upon which a formula depends, and the dynamic dependencies of
+ * that formula.
+ *
+ * A dependency analysis (with DependencyVisitor) walks the entire tree of a formula and
+ * resolves each variable name in a specific ScopeInstance. Since the ScopeInstance is
+ * only relevant to the resolution of the names, a DependencyTemplate can be captured
+ * once for a formula and then bound to any ScopeInstance, which avoids walking the tree
+ * again.
+ */
+public final class DependencyTemplate
+{
+
+	/**
+	 * The format asserted when the dependencies in this DependencyTemplate were captured.
+	 */
+	private final Class<?> assertedFormat;
+
+	/**
+	 * The (unique) names of the variables upon which the formula depends, in the order
+	 * they were encountered.
+	 */
+	private final List<String> varNames;
+
+	/**
+	 * The DynamicDependency objects of the formula, as captured.
+	 */
+	private final List<DynamicDependency> dynamic;
+
+	/**
+	 * Constructs a new DependencyTemplate from the dependencies loaded into the given
+	 * DependencyManager.
+	 *
+	 * @param fdm
+	 *            The DependencyManager into which the dependencies of a formula have
+	 *            been loaded
+	 */
+	public DependencyTemplate(DependencyManager fdm)
+	{
+		assertedFormat = fdm.get(DependencyManager.ASSERTED);
+		Set<String> names = new LinkedHashSet<>();
+		for (VariableID<?> varID : fdm.getVariables())
+		{
+			names.add(varID.getName());
+		}
+		varNames = new ArrayList<>(names);
+		DynamicManager dm = fdm.get(DependencyManager.DYNAMIC);
+		dynamic = (dm == null) ? Collections.emptyList()
+			: new ArrayList<>(dm.getDependencies());
+	}
+
+	/**
+	 * Returns the format asserted when the dependencies in this DependencyTemplate were
+	 * captured.
+	 *
+	 * @return The format asserted when the dependencies in this DependencyTemplate were
+	 *         captured
+	 */
+	public Class<?> getAssertedFormat()
+	{
+		return assertedFormat;
+	}
+
+	/**
+	 * Returns the VariableIDs upon which the formula depends when it is evaluated in the
+	 * given ScopeInstance.
+	 *
+	 * Ownership of the returned Set is transferred to the calling object, and no
+	 * reference to it is maintained by DependencyTemplate.
+	 *
+	 * @param varLibrary
+	 *            The VariableLibrary used to resolve the variable names
+	 * @param scopeInst
+	 *            The ScopeInstance in which the variable names are resolved
+	 * @return The VariableIDs upon which the formula depends in the given ScopeInstance
+	 */
+	public Set<VariableID<?>> getVariables(VariableLibrary varLibrary,
+		ScopeInstance scopeInst)
+	{
+		Set<VariableID<?>> vars = new LinkedHashSet<>(varNames.size());
+		for (String varName : varNames)
+		{
+			vars.add(varLibrary.getVariableID(scopeInst, varName));
+		}
+		return vars;
+	}
+
+	/**
+	 * Returns the DynamicDependency objects of the formula when it is evaluated in the
+	 * given ScopeInstance.
+	 *
+	 * Ownership of the returned List is transferred to the calling object, and no
+	 * reference to it is maintained by DependencyTemplate.
+	 *
+	 * @param varLibrary
+	 *            The VariableLibrary used to resolve the control variables
+	 * @param scopeInst
+	 *            The ScopeInstance in which the control variables are resolved
+	 * @return The DynamicDependency objects of the formula in the given ScopeInstance
+	 */
+	public List<DynamicDependency> getDynamicDependencies(VariableLibrary varLibrary,
+		ScopeInstance scopeInst)
+	{
+		List<DynamicDependency> list = new ArrayList<>(dynamic.size());
+		for (DynamicDependency dep : dynamic)
+		{
+			String controlName = dep.getControlVar().getName();
+			list.add(dep.bindTo(varLibrary.getVariableID(scopeInst, controlName)));
+		}
+		return list;
+	}
+}
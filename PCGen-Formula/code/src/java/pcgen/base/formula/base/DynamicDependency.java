@@ -143,4 +143,28 @@ public class DynamicDependency implements VariableStrategy
 	{
 		return controlVar;
 	}
+
+	/**
+	 * Returns a DynamicDependency with the same source scope and source variable names as
+	 * this DynamicDependency, controlled by the given VariableID. This allows the
+	 * DynamicDependency to be rebound to the control variable as it exists in a different
+	 * ScopeInstance.
+	 * 
+	 * @param newControlVar
+	 *            The VariableID that controls which local variable scope is used to
+	 *            resolve the source variable names of the returned DynamicDependency
+	 * @return A DynamicDependency with the same source variable names as this
+	 *         DynamicDependency, controlled by the given VariableID
+	 */
+	public DynamicDependency bindTo(VariableID<?> newControlVar)
+	{
+		if (controlVar.equals(newControlVar))
+		{
+			return this;
+		}
+		DynamicDependency dep =
+				new DynamicDependency(newControlVar, sourceScopeName);
+		dep.sourceVarNames.addAll(sourceVarNames);
+		return dep;
+	}
 }
@@ -15,8 +15,6 @@
  */
 package pcgen.base.formula.base;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 import pcgen.base.util.TypedKey;
@@ -28,14 +26,71 @@ import pcgen.base.util.TypedKey;
  * For this to be viable with a formula of any complexity, it must have a FormulaManager
  * and ScopeInstance loaded. Certain situations may also require knowing the input value,
  * asserted format or other characteristics that can be added to the EvaluationManager.
+ * 
+ * Since a new EvaluationManager is produced for each modification (see getWith), the
+ * well-known TypedKeys defined in this class are stored in fields, so that getWith only
+ * copies those fields. Any other TypedKey is stored in an Overlay, a linked list that
+ * is shared with (and never modified after construction of) the EvaluationManager from
+ * which it was produced.
  */
 public final class EvaluationManager
 {
 
 	/**
-	 * The underlying map for this EvaluationManager that contains the target objects.
+	 * The FormulaManager (FMANAGER) of this EvaluationManager.
+	 */
+	private FormulaManager formulaManager;
+
+	/**
+	 * The ScopeInstance (INSTANCE) of this EvaluationManager.
+	 */
+	private ScopeInstance instance;
+
+	/**
+	 * The asserted format (ASSERTED) of this EvaluationManager.
+	 */
+	private Class<?> asserted;
+
+	/**
+	 * The input (INPUT) of this EvaluationManager.
+	 */
+	private Object input;
+
+	/**
+	 * The VariableBinding (BINDING) of this EvaluationManager.
+	 */
+	private VariableBinding binding;
+
+	/**
+	 * The values for any other TypedKey, most recently set first. Null if no other
+	 * TypedKey has been set.
 	 */
-	private final Map<TypedKey<?>, Object> map = new HashMap<TypedKey<?>, Object>();
+	private Overlay overlay;
+
+	/**
+	 * Constructs a new (empty) EvaluationManager.
+	 */
+	public EvaluationManager()
+	{
+		//Empty
+	}
+
+	/**
+	 * Constructs a new EvaluationManager with the same contents as the given
+	 * EvaluationManager.
+	 * 
+	 * @param original
+	 *            The EvaluationManager to be copied
+	 */
+	private EvaluationManager(EvaluationManager original)
+	{
+		formulaManager = original.formulaManager;
+		instance = original.instance;
+		asserted = original.asserted;
+		input = original.input;
+		binding = original.binding;
+		overlay = original.overlay;
+	}
 
 	/**
 	 * Returns a new EvaluationManager that has all the characteristics of this
@@ -49,9 +104,32 @@ public final class EvaluationManager
 	 */
 	public <T> EvaluationManager getWith(TypedKey<T> key, T value)
 	{
-		EvaluationManager replacement = new EvaluationManager();
-		replacement.map.putAll(map);
-		replacement.map.put(Objects.requireNonNull(key), value);
+		Objects.requireNonNull(key);
+		EvaluationManager replacement = new EvaluationManager(this);
+		if (key == FMANAGER)
+		{
+			replacement.formulaManager = (FormulaManager) value;
+		}
+		else if (key == INSTANCE)
+		{
+			replacement.instance = (ScopeInstance) value;
+		}
+		else if (key == ASSERTED)
+		{
+			replacement.asserted = (Class<?>) value;
+		}
+		else if (key == INPUT)
+		{
+			replacement.input = value;
+		}
+		else if (key == BINDING)
+		{
+			replacement.binding = (VariableBinding) value;
+		}
+		else
+		{
+			replacement.overlay = new Overlay(key, value, overlay);
+		}
 		return replacement;
 	}
 
@@ -68,10 +146,50 @@ public final class EvaluationManager
 	 */
 	public <T> T get(TypedKey<T> key)
 	{
-		Object value = map.get(Objects.requireNonNull(key));
+		Object value = getValue(Objects.requireNonNull(key));
 		return (value == null) ? key.getDefaultValue() : key.cast(value);
 	}
 
+	/**
+	 * Returns the value stored in this EvaluationManager for the given TypedKey, or null
+	 * if no value is stored.
+	 * 
+	 * @param key
+	 *            The TypeKey for which the value should be returned
+	 * @return The value stored in this EvaluationManager for the given TypedKey
+	 */
+	private Object getValue(TypedKey<?> key)
+	{
+		if (key == FMANAGER)
+		{
+			return formulaManager;
+		}
+		else if (key == INSTANCE)
+		{
+			return instance;
+		}
+		else if (key == ASSERTED)
+		{
+			return asserted;
+		}
+		else if (key == INPUT)
+		{
+			return input;
+		}
+		else if (key == BINDING)
+		{
+			return binding;
+		}
+		for (Overlay o = overlay; o != null; o = o.next)
+		{
+			if (o.key.equals(key))
+			{
+				return o.value;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * A TypedKey used for storing the FormulaManager contained in this EvaluationManager.
 	 */
@@ -94,4 +212,28 @@ public final class EvaluationManager
 	 */
 	public static final TypedKey<Object> INPUT = new TypedKey<Object>();
 
+	/**
+	 * A TypedKey used for storing the VariableBinding (if any) for the formula being
+	 * evaluated in the ScopeInstance contained in this EvaluationManager.
+	 */
+	public static final TypedKey<VariableBinding> BINDING =
+			new TypedKey<VariableBinding>();
+
+	/**
+	 * An Overlay is an (immutable) entry in the linked list of values for TypedKeys other
+	 * than the well-known TypedKeys of EvaluationManager.
+	 */
+	private static final class Overlay
+	{
+		private final TypedKey<?> key;
+		private final Object value;
+		private final Overlay next;
+
+		private Overlay(TypedKey<?> key, Object value, Overlay next)
+		{
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+	}
 }
@@ -88,6 +88,19 @@ public interface FormulaManager
 	 */
 	public <T> FormulaManager getWith(TypedKey<T> key, T value);
 
+	/**
+	 * Returns a new FormulaManager that has all the characteristics of this
+	 * FormulaManager, except that variable values are resolved from the given
+	 * VariableStore.
+	 * 
+	 * @param resolver
+	 *            The VariableStore used to hold variables values for items
+	 *            processed through the returned FormulaManager
+	 * @return A new FormulaManager that resolves variable values from the given
+	 *         VariableStore
+	 */
+	public FormulaManager getWithResolver(VariableStore resolver);
+
 	/**
 	 * Gets the value in the FormulaManager for the given TypedKey.
 	 * 
@@ -100,6 +100,25 @@ public class FormulaSemantics
 		return (value == null) ? key.getDefaultValue() : key.cast(value);
 	}
 
+	/**
+	 * Returns the inputs to this FormulaSemantics: the values stored in this
+	 * FormulaSemantics other than the report of whether the Formula is valid.
+	 * 
+	 * If the inputs of two FormulaSemantics objects are equal, then a Formula
+	 * processed with either FormulaSemantics will be reported identically (as long as
+	 * the contents of the libraries in the FormulaManager do not change). The returned
+	 * object is therefore suitable to be used as a key when caching the results of
+	 * processing a Formula.
+	 * 
+	 * @return The inputs to this FormulaSemantics
+	 */
+	public Object getInputs()
+	{
+		Map<TypedKey<?>, Object> inputs = new HashMap<TypedKey<?>, Object>(map);
+		inputs.remove(REPORT);
+		return inputs;
+	}
+
 	/**
 	 * A TypedKey used for storing the FormulaManager contained in this FormulaSemantics.
 	 */
@@ -35,10 +35,21 @@ package pcgen.base.formula.base;
  * 
  * Apologies to those outside the USA since the name of () and [] varies by
  * region.
+ * 
+ * A FunctionLibrary may track a revision (see getRevision()) so that results
+ * depending on its functions can be cached. A FunctionLibrary that does not
+ * track a revision returns UNTRACKED_REVISION, and such results are then never
+ * cached.
  */
 public interface FunctionLibrary
 {
 
+	/**
+	 * The revision returned by a FunctionLibrary that does not track changes to
+	 * its functions.
+	 */
+	public static final int UNTRACKED_REVISION = -1;
+
 	/**
 	 * Adds a function to the FunctionLibrary. This is used for functions that
 	 * are followed by parenthesis ()
@@ -69,4 +80,24 @@ public interface FunctionLibrary
 	 */
 	public Function getFunction(String functionName);
 
+	/**
+	 * Returns the revision of this FunctionLibrary. The revision must change
+	 * each time the Function returned by getFunction changes for any function
+	 * name (e.g. when a Function is added), so it can be used to identify
+	 * results that depend on the functions in this FunctionLibrary (such as
+	 * the validity of a formula) and that may need to be recalculated.
+	 * 
+	 * A tracked revision must never be UNTRACKED_REVISION. By default, a
+	 * FunctionLibrary does not track its revision and returns
+	 * UNTRACKED_REVISION, which prevents any result depending on this
+	 * FunctionLibrary from being cached.
+	 * 
+	 * @return The revision of this FunctionLibrary; UNTRACKED_REVISION if this
+	 *         FunctionLibrary does not track its revision
+	 */
+	public default int getRevision()
+	{
+		return UNTRACKED_REVISION;
+	}
+
 }
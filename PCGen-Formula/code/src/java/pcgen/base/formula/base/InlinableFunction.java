@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import pcgen.base.formula.parse.Node;
+
+/**
+ * An InlinableFunction is a Function whose behavior can be expressed as a tree
+ * of nodes built from the nodes of the arguments to the function.
+ * 
+ * This allows a call to the InlinableFunction to be replaced by that tree when
+ * a formula is prepared for evaluation (see InliningVisitor), avoiding the
+ * overhead of calling the InlinableFunction each time the formula is
+ * evaluated.
+ */
+public interface InlinableFunction extends Function
+{
+
+	/**
+	 * Returns a tree of nodes which, when evaluated, produces the same result as
+	 * calling this InlinableFunction with the given arguments.
+	 * 
+	 * The returned tree may contain the given argument nodes (and nodes shared
+	 * with the definition of this InlinableFunction), so neither the returned
+	 * tree nor the given argument nodes may be modified.
+	 * 
+	 * This method assumes the arguments have been validated by allowArgs.
+	 * 
+	 * @param args
+	 *            The arguments to this InlinableFunction
+	 * @return A tree of nodes equivalent to calling this InlinableFunction with
+	 *         the given arguments; null if this InlinableFunction cannot be
+	 *         inlined with the given arguments
+	 */
+	public Node getInlineExpansion(Node[] args);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+/**
+ * A NumericOperatorAction is an OperatorAction on Number values that can also
+ * be performed on primitive values, placing the result in a NumericValue.
+ * This allows formulas to be evaluated without creating a new (boxed) object
+ * for each intermediate result.
+ * 
+ * The result placed in the NumericValue must be identical (in both value and
+ * class) to the result of evaluate(Object, Object). The int method is used
+ * when both arguments are Integer objects; the double method is used when
+ * either argument is not an Integer (and is thus expected to be equivalent to
+ * the result of evaluate when using the doubleValue of each argument).
+ */
+public interface NumericOperatorAction extends OperatorAction
+{
+
+	/**
+	 * Performs the operation on two Integer values, placing the result in the
+	 * given NumericValue.
+	 * 
+	 * @param left
+	 *            The value of the first argument to the operation
+	 * @param right
+	 *            The value of the second argument to the operation
+	 * @param result
+	 *            The NumericValue in which the result of the operation is
+	 *            placed
+	 */
+	public void evaluate(int left, int right, NumericValue result);
+
+	/**
+	 * Performs the operation on two Number values (at least one of which is
+	 * not an Integer), placing the result in the given NumericValue.
+	 * 
+	 * @param left
+	 *            The value of the first argument to the operation
+	 * @param right
+	 *            The value of the second argument to the operation
+	 * @param result
+	 *            The NumericValue in which the result of the operation is
+	 *            placed
+	 */
+	public void evaluate(double left, double right, NumericValue result);
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+/**
+ * A NumericValue is a mutable holder for the intermediate result of evaluating
+ * a portion of a formula. It allows Integer and Double values to be passed
+ * between operators as primitive values, so that arithmetic does not require a
+ * new (boxed) object for each intermediate result.
+ * 
+ * A NumericValue contains either an int (representing an Integer), a double
+ * (representing a Double) or an object of any other class. Setting a
+ * NumericValue with an Integer or Double object stores the primitive value, so
+ * whether the NumericValue represents an Integer or a Double is always
+ * preserved.
+ * 
+ * A NumericValue is not thread safe, and is expected to be used by a single
+ * evaluation of a formula.
+ */
+public final class NumericValue
+{
+
+	private static final int INTEGER = 0;
+	private static final int DOUBLE = 1;
+	private static final int OBJECT = 2;
+
+	/**
+	 * Indicates which of the values below is held by this NumericValue.
+	 */
+	private int kind = OBJECT;
+
+	/**
+	 * The value of this NumericValue if it represents an Integer.
+	 */
+	private int intValue;
+
+	/**
+	 * The value of this NumericValue if it represents a Double.
+	 */
+	private double doubleValue;
+
+	/**
+	 * The value of this NumericValue if it represents neither an Integer nor a
+	 * Double.
+	 */
+	private Object objectValue;
+
+	/**
+	 * Sets this NumericValue to represent the Integer with the given value.
+	 * 
+	 * @param value
+	 *            The value of the Integer
+	 */
+	public void setInteger(int value)
+	{
+		kind = INTEGER;
+		intValue = value;
+		objectValue = null;
+	}
+
+	/**
+	 * Sets this NumericValue to represent the Double with the given value.
+	 * 
+	 * @param value
+	 *            The value of the Double
+	 */
+	public void setDouble(double value)
+	{
+		kind = DOUBLE;
+		doubleValue = value;
+		objectValue = null;
+	}
+
+	/**
+	 * Sets this NumericValue to represent the given object. If the object is
+	 * an Integer or a Double, the primitive value is stored.
+	 * 
+	 * @param value
+	 *            The object to be represented by this NumericValue
+	 */
+	public void set(Object value)
+	{
+		if (value instanceof Integer)
+		{
+			setInteger(((Integer) value).intValue());
+		}
+		else if (value instanceof Double)
+		{
+			setDouble(((Double) value).doubleValue());
+		}
+		else
+		{
+			kind = OBJECT;
+			objectValue = value;
+		}
+	}
+
+	/**
+	 * Returns true if this NumericValue represents an Integer.
+	 * 
+	 * @return true if this NumericValue represents an Integer; false otherwise
+	 */
+	public boolean isInteger()
+	{
+		return kind == INTEGER;
+	}
+
+	/**
+	 * Returns true if this NumericValue represents an Integer or a Double.
+	 * 
+	 * @return true if this NumericValue represents an Integer or a Double;
+	 *         false otherwise
+	 */
+	public boolean isNumber()
+	{
+		return kind != OBJECT;
+	}
+
+	/**
+	 * Returns the value of the Integer represented by this NumericValue. The
+	 * result is not defined if this NumericValue does not represent an
+	 * Integer.
+	 * 
+	 * @return The value of the Integer represented by this NumericValue
+	 */
+	public int getInteger()
+	{
+		return intValue;
+	}
+
+	/**
+	 * Returns the value of the Integer or Double represented by this
+	 * NumericValue, as a double. The result is not defined if this
+	 * NumericValue does not represent an Integer or a Double.
+	 * 
+	 * @return The value of the Integer or Double represented by this
+	 *         NumericValue
+	 */
+	public double getDouble()
+	{
+		return (kind == INTEGER) ? intValue : doubleValue;
+	}
+
+	/**
+	 * Returns the object represented by this NumericValue. If this
+	 * NumericValue represents an Integer or a Double, the primitive value is
+	 * boxed.
+	 * 
+	 * @return The object represented by this NumericValue
+	 */
+	public Object getObject()
+	{
+		if (kind == INTEGER)
+		{
+			return Integer.valueOf(intValue);
+		}
+		if (kind == DOUBLE)
+		{
+			return Double.valueOf(doubleValue);
+		}
+		return objectValue;
+	}
+}
@@ -23,10 +23,21 @@ import pcgen.base.util.FormatManager;
 /**
  * A OperatorLibrary is a container for OperatorAction objects. These define the
  * actual behavior of an operator like + or - in a formula.
+ * 
+ * An OperatorLibrary may track a revision (see getRevision()) so that results
+ * depending on its actions can be cached. An OperatorLibrary that does not
+ * track a revision returns UNTRACKED_REVISION, and such results are then never
+ * cached.
  */
 public interface OperatorLibrary
 {
 
+	/**
+	 * The revision returned by an OperatorLibrary that does not track changes
+	 * to its actions.
+	 */
+	public static final int UNTRACKED_REVISION = -1;
+
 	/**
 	 * Adds an OperatorAction to the FunctionLibrary.
 	 * 
@@ -91,6 +102,60 @@ public interface OperatorLibrary
 	public FormatManager<?> processAbstract(Operator operator, Class<?> format1,
 		Class<?> format2);
 
+	/**
+	 * Returns the OperatorAction that would be used to evaluate the given
+	 * Operator on arguments of the two given classes.
+	 * 
+	 * The OperatorAction returned is the first OperatorAction added to the
+	 * OperatorLibrary which can operate on the two given classes (as
+	 * determined by the processAbstract method of the OperatorAction). This
+	 * allows the OperatorAction to be bound once and used for subsequent
+	 * evaluations on arguments of the same classes.
+	 * 
+	 * @param operator
+	 *            The Operator to be evaluated
+	 * @param format1
+	 *            The class of the first argument to the operation
+	 * @param format2
+	 *            The class of the second argument to the operation
+	 * @return The OperatorAction that would be used to evaluate the given
+	 *         Operator on arguments of the given classes; null if this
+	 *         OperatorLibrary has no such OperatorAction
+	 */
+	public OperatorAction getOperatorAction(Operator operator,
+		Class<?> format1, Class<?> format2);
+
+	/**
+	 * Returns the ShortCircuitAction that would be used to evaluate the given
+	 * Operator on a first argument of the given class, whatever the class of
+	 * the second argument.
+	 * 
+	 * This allows the second argument to be left unevaluated if the
+	 * ShortCircuitAction determines the result from the first argument. A
+	 * ShortCircuitAction must therefore only be returned if it would be the
+	 * OperatorAction used for every class of second argument that this
+	 * OperatorLibrary can process with the given first argument. If that
+	 * cannot be determined, null must be returned, and both arguments are
+	 * evaluated.
+	 * 
+	 * By default, an OperatorLibrary returns null, so both arguments are
+	 * always evaluated.
+	 * 
+	 * @param operator
+	 *            The Operator to be evaluated
+	 * @param format1
+	 *            The class of the first argument to the operation
+	 * @return The ShortCircuitAction that would be used to evaluate the given
+	 *         Operator on a first argument of the given class; null if there
+	 *         is no such ShortCircuitAction (or the OperatorAction used depends
+	 *         on the class of the second argument)
+	 */
+	public default ShortCircuitAction getShortCircuitAction(Operator operator,
+		Class<?> format1)
+	{
+		return null;
+	}
+
 	/**
 	 * Adds a UnaryAction to the FunctionLibrary.
 	 * 
@@ -148,4 +213,44 @@ public interface OperatorLibrary
 	 *         given Operator arguments; null otherwise
 	 */
 	public FormatManager<?> processAbstract(Operator operator, Class<?> format);
+
+	/**
+	 * Returns the UnaryAction that would be used to evaluate the given Operator
+	 * on an argument of the given class.
+	 * 
+	 * The UnaryAction returned is the first UnaryAction added to the
+	 * OperatorLibrary which can operate on the given class (as determined by
+	 * the processAbstract method of the UnaryAction). This allows the
+	 * UnaryAction to be bound once and used for subsequent evaluations on
+	 * arguments of the same class.
+	 * 
+	 * @param operator
+	 *            The Operator to be evaluated
+	 * @param format
+	 *            The class of the argument to the operation
+	 * @return The UnaryAction that would be used to evaluate the given Operator
+	 *         on an argument of the given class; null if this OperatorLibrary
+	 *         has no such UnaryAction
+	 */
+	public UnaryAction getUnaryAction(Operator operator, Class<?> format);
+
+	/**
+	 * Returns the revision of this OperatorLibrary. The revision must change
+	 * each time an OperatorAction or UnaryAction is added to this
+	 * OperatorLibrary, so it can be used to identify results that depend on
+	 * the actions in this OperatorLibrary (such as the validity of a formula)
+	 * and that may need to be recalculated.
+	 * 
+	 * A tracked revision must never be UNTRACKED_REVISION. By default, an
+	 * OperatorLibrary does not track its revision and returns
+	 * UNTRACKED_REVISION, which prevents any result depending on this
+	 * OperatorLibrary from being cached.
+	 * 
+	 * @return The revision of this OperatorLibrary; UNTRACKED_REVISION if this
+	 *         OperatorLibrary does not track its revision
+	 */
+	public default int getRevision()
+	{
+		return UNTRACKED_REVISION;
+	}
 }
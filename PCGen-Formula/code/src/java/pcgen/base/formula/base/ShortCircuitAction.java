@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+/**
+ * A ShortCircuitAction is an OperatorAction where the first argument may be
+ * sufficient to determine the result of the operation (e.g. false for a logical
+ * AND). This allows the second argument to be left unevaluated.
+ * 
+ * A ShortCircuitAction is located in an OperatorLibrary using only the class of
+ * the first argument (see OperatorLibrary.getShortCircuitAction), since the
+ * second argument has not been evaluated when the ShortCircuitAction is used.
+ */
+public interface ShortCircuitAction extends OperatorAction
+{
+
+	/**
+	 * Returns the result of the operation if it is determined by the given
+	 * first argument alone. If this method returns a non-null value, that value
+	 * must be the result of evaluate for the given first argument and any
+	 * second argument.
+	 * 
+	 * @param left
+	 *            The first argument to the operation
+	 * @return The result of the operation if it is determined by the given
+	 *         first argument; null if the second argument is required
+	 */
+	public Object shortCircuit(Object left);
+
+	/**
+	 * Returns true if this ShortCircuitAction can process a first argument of
+	 * the given class. This allows an OperatorLibrary to determine whether
+	 * this ShortCircuitAction may be used for the given first argument without
+	 * knowing the class of the second argument.
+	 * 
+	 * @param format1
+	 *            The class of the first argument to the operation
+	 * @return true if this ShortCircuitAction can process a first argument of
+	 *         the given class; false otherwise
+	 */
+	public boolean canShortCircuit(Class<?> format1);
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A VariableBinding is the set of variables referenced by a formula, resolved
+ * once (when the formula is bound to a ScopeInstance) into the VariableSlot
+ * holding the value of each variable.
+ * 
+ * During evaluation, a variable name can then be resolved by reading the
+ * VariableSlot, rather than walking the LegalScope hierarchy in the
+ * VariableLibrary, building a VariableID and looking up the value in the
+ * VariableStore.
+ * 
+ * A VariableBinding is only applicable when evaluation takes place in the
+ * ScopeInstance for which it was built and against the VariableStore which the
+ * VariableSlot objects mirror. For any other ScopeInstance, VariableStore or
+ * unbound variable name, the VariableBinding returns null and the variable must
+ * be resolved normally.
+ * 
+ * A VariableBinding is immutable.
+ */
+public final class VariableBinding
+{
+
+	/**
+	 * The ScopeInstance in which the variables of this VariableBinding were
+	 * resolved.
+	 */
+	private final ScopeInstance scopeInst;
+
+	/**
+	 * The VariableStore which the VariableSlot objects of this VariableBinding
+	 * mirror.
+	 */
+	private final VariableStore store;
+
+	/**
+	 * The VariableSlot objects of this VariableBinding, indexed by the variable
+	 * name.
+	 */
+	private final Map<String, VariableSlot<?>> slots =
+			new HashMap<String, VariableSlot<?>>();
+
+	/**
+	 * Constructs a new VariableBinding for the given ScopeInstance.
+	 * 
+	 * Each of the given VariableSlot objects is only bound (by name) if the
+	 * VariableLibrary would resolve that name in the given ScopeInstance to
+	 * the VariableID of the VariableSlot. Other VariableSlot objects (e.g.
+	 * those for variables resolved in a different ScopeInstance by a function)
+	 * are ignored.
+	 * 
+	 * @param varLibrary
+	 *            The VariableLibrary used to resolve variable names
+	 * @param scopeInst
+	 *            The ScopeInstance in which variable names are resolved
+	 * @param store
+	 *            The VariableStore which the given VariableSlot objects mirror
+	 * @param slotList
+	 *            The VariableSlot objects to be bound
+	 */
+	public VariableBinding(VariableLibrary varLibrary, ScopeInstance scopeInst,
+		VariableStore store, Iterable<VariableSlot<?>> slotList)
+	{
+		this.scopeInst = Objects.requireNonNull(scopeInst);
+		this.store = Objects.requireNonNull(store);
+		LegalScope legalScope = scopeInst.getLegalScope();
+		for (VariableSlot<?> slot : slotList)
+		{
+			VariableID<?> varID = slot.getVariableID();
+			String varName = varID.getName();
+			if (varLibrary.isLegalVariableID(legalScope, varName)
+				&& varID.equals(varLibrary.getVariableID(scopeInst, varName)))
+			{
+				slots.put(varName, slot);
+			}
+		}
+	}
+
+	/**
+	 * Constructs a new VariableBinding which binds the same variable names in
+	 * the same ScopeInstance as the given VariableBinding, to the VariableSlot
+	 * objects returned by the given Function.
+	 * 
+	 * @param original
+	 *            The VariableBinding to be rebound
+	 * @param store
+	 *            The VariableStore which the returned VariableSlot objects
+	 *            mirror
+	 * @param slotSource
+	 *            The Function returning the VariableSlot for a VariableID
+	 */
+	private VariableBinding(VariableBinding original, VariableStore store,
+		Function<VariableID<?>, VariableSlot<?>> slotSource)
+	{
+		this.scopeInst = original.scopeInst;
+		this.store = Objects.requireNonNull(store);
+		for (Map.Entry<String, VariableSlot<?>> entry : original.slots.entrySet())
+		{
+			slots.put(entry.getKey(),
+				slotSource.apply(entry.getValue().getVariableID()));
+		}
+	}
+
+	/**
+	 * Returns a VariableBinding which binds the same variable names in the
+	 * same ScopeInstance as this VariableBinding, to the VariableSlot objects
+	 * (mirroring the given VariableStore) returned by the given Function. This
+	 * allows a VariableBinding to be used against a different VariableStore
+	 * without resolving the variable names again.
+	 * 
+	 * @param newStore
+	 *            The VariableStore which the returned VariableSlot objects
+	 *            mirror
+	 * @param slotSource
+	 *            The Function returning the VariableSlot for a VariableID
+	 * @return A VariableBinding of the same variable names to the VariableSlot
+	 *         objects returned by the given Function
+	 */
+	public VariableBinding rebind(VariableStore newStore,
+		Function<VariableID<?>, VariableSlot<?>> slotSource)
+	{
+		return new VariableBinding(this, newStore, slotSource);
+	}
+
+	/**
+	 * Returns the value of the variable with the given name, if it is bound
+	 * by this VariableBinding.
+	 * 
+	 * @param inst
+	 *            The ScopeInstance in which the variable is being evaluated
+	 * @param resolver
+	 *            The VariableStore from which the variable is being evaluated
+	 * @param varName
+	 *            The name of the variable
+	 * @return The value of the variable with the given name; null if this
+	 *         VariableBinding is not applicable to the given ScopeInstance and
+	 *         VariableStore, the variable is not bound or the variable has no
+	 *         value
+	 */
+	public Object getValue(ScopeInstance inst, VariableStore resolver,
+		String varName)
+	{
+		if ((inst != scopeInst) || (resolver != store))
+		{
+			return null;
+		}
+		VariableSlot<?> slot = slots.get(varName);
+		return (slot == null) ? null : slot.getValue();
+	}
+
+	/**
+	 * Returns the number of variables bound by this VariableBinding.
+	 * 
+	 * @return The number of variables bound by this VariableBinding
+	 */
+	public int size()
+	{
+		return slots.size();
+	}
+}
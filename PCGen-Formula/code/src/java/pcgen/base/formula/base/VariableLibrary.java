@@ -62,6 +62,12 @@ public class VariableLibrary
 	private DoubleKeyMap<String, LegalScope, FormatManager<?>> variableDefs =
 			new DoubleKeyMap<>(CaseInsensitiveMap.class, HashMap.class);
 
+	/**
+	 * The revision of this VariableLibrary, incremented each time a variable is
+	 * added.
+	 */
+	private volatile int revision;
+
 	/**
 	 * Asserts the given variable name is valid within the given LegalScope. It
 	 * will be managed by the given FormatManager.
@@ -132,6 +138,20 @@ public class VariableLibrary
 	{
 		library.registerScope(legalScope);
 		variableDefs.put(varName, legalScope, formatManager);
+		revision++;
+	}
+
+	/**
+	 * Returns the revision of this VariableLibrary. The revision changes each
+	 * time a variable is added to this VariableLibrary, so it can be used to
+	 * identify results that depend on the variables in this VariableLibrary
+	 * (such as the validity of a formula) and that may need to be recalculated.
+	 * 
+	 * @return The revision of this VariableLibrary
+	 */
+	public int getRevision()
+	{
+		return revision;
 	}
 
 	/**
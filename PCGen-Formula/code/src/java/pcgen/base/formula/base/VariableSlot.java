@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import java.util.Objects;
+
+/**
+ * A VariableSlot holds the current value of a specific VariableID.
+ * 
+ * A VariableSlot is maintained by the owner of a WriteableVariableStore (such
+ * as a SolverManager) alongside the value written into that
+ * WriteableVariableStore. This allows the value of the VariableID to be read
+ * directly from the VariableSlot (see VariableBinding), without resolving the
+ * VariableID or looking up the value in the VariableStore.
+ * 
+ * @param <T>
+ *            The format (class) of object contained by the VariableID of this
+ *            VariableSlot
+ */
+public final class VariableSlot<T>
+{
+
+	/**
+	 * The VariableID for which this VariableSlot holds the value.
+	 */
+	private final VariableID<T> varID;
+
+	/**
+	 * The current value of the VariableID. Null if no value has been set.
+	 */
+	private volatile T value;
+
+	/**
+	 * Constructs a new (empty) VariableSlot for the given VariableID.
+	 * 
+	 * @param varID
+	 *            The VariableID for which this VariableSlot holds the value
+	 */
+	public VariableSlot(VariableID<T> varID)
+	{
+		this.varID = Objects.requireNonNull(varID);
+	}
+
+	/**
+	 * Returns the VariableID for which this VariableSlot holds the value.
+	 * 
+	 * @return The VariableID for which this VariableSlot holds the value
+	 */
+	public VariableID<T> getVariableID()
+	{
+		return varID;
+	}
+
+	/**
+	 * Returns the current value of the VariableID. Null may be returned if no
+	 * value has been set.
+	 * 
+	 * @return The current value of the VariableID
+	 */
+	public T getValue()
+	{
+		return value;
+	}
+
+	/**
+	 * Sets the current value of the VariableID. This should only be called by
+	 * the owner of the WriteableVariableStore, when the value of the
+	 * VariableID is written to that WriteableVariableStore.
+	 * 
+	 * @param value
+	 *            The current value of the VariableID
+	 */
+	public void setValue(T value)
+	{
+		this.value = value;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Slot for " + varID + ": " + value;
+	}
+}
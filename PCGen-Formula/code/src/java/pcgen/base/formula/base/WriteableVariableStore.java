@@ -50,4 +50,31 @@ public interface WriteableVariableStore extends VariableStore
 	 */
 	public <T> T put(VariableID<T> varID, T value);
 
+	/**
+	 * Removes the value stored in this WriteableVariableStore for the given
+	 * (non-null) VariableID. Returns the value that was stored in this
+	 * WriteableVariableStore for the given VariableID.
+	 * 
+	 * The returned value may be null if the VariableID was not stored in this
+	 * WriteableVariableStore. By default, a WriteableVariableStore does not
+	 * support removing values.
+	 * 
+	 * @param <T>
+	 *            The format of variable stored within this
+	 *            WriteableVariableStore
+	 * @param varID
+	 *            The VariableID for which the value should be removed from this
+	 *            WriteableVariableStore
+	 * @return The value that was stored in this WriteableVariableStore for the
+	 *         given VariableID
+	 * @throws UnsupportedOperationException
+	 *             if this WriteableVariableStore does not support removing
+	 *             values
+	 */
+	public default <T> T remove(VariableID<T> varID)
+	{
+		throw new UnsupportedOperationException(
+			getClass().getSimpleName() + " does not support removing values");
+	}
+
 }
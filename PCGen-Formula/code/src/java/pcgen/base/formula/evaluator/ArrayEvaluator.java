@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.lang.reflect.Array;
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.visitor.EvaluateVisitor;
+
+/**
+ * An ArrayEvaluator is an Evaluator for access to a component of an array
+ * variable in a formula (such as "var[2]").
+ */
+public class ArrayEvaluator implements Evaluator
+{
+
+	/**
+	 * The EvaluateVisitor used to resolve the value of the variable.
+	 */
+	private static final EvaluateVisitor EVALUATE_VISITOR =
+			new EvaluateVisitor();
+
+	/**
+	 * The name of the (array) variable.
+	 */
+	private final String varName;
+
+	/**
+	 * The Evaluator for the index into the array.
+	 */
+	private final Evaluator index;
+
+	/**
+	 * Constructs a new ArrayEvaluator for the array variable with the given
+	 * name and the given Evaluator for the index into the array.
+	 * 
+	 * @param varName
+	 *            The name of the (array) variable
+	 * @param index
+	 *            The Evaluator for the index into the array
+	 */
+	public ArrayEvaluator(String varName, Evaluator index)
+	{
+		this.varName = Objects.requireNonNull(varName);
+		this.index = Objects.requireNonNull(index);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		int location = (Integer) index.evaluate(manager);
+		return Array.get(EVALUATE_VISITOR.visitVariable(varName, manager),
+			location);
+	}
+}
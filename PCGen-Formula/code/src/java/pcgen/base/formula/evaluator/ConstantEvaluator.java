@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.NumericValue;
+
+/**
+ * A ConstantEvaluator is an Evaluator for a literal value (such as a number or
+ * quoted String) in a formula.
+ */
+public class ConstantEvaluator implements NumericEvaluator
+{
+
+	/**
+	 * The value returned by this ConstantEvaluator.
+	 */
+	private final Object value;
+
+	/**
+	 * Constructs a new ConstantEvaluator for the given value.
+	 * 
+	 * @param value
+	 *            The value to be returned by this ConstantEvaluator
+	 */
+	public ConstantEvaluator(Object value)
+	{
+		this.value = Objects.requireNonNull(value);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		return value;
+	}
+
+	@Override
+	public void evaluate(EvaluationManager manager, NumericValue result)
+	{
+		result.set(value);
+	}
+
+	/**
+	 * Returns the value of this ConstantEvaluator.
+	 * 
+	 * @return The value of this ConstantEvaluator
+	 */
+	public Object getValue()
+	{
+		return value;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import pcgen.base.formula.base.EvaluationManager;
+
+/**
+ * An Evaluator is a pre-bound ("compiled") portion of a formula that can be
+ * evaluated to produce a value.
+ * 
+ * An Evaluator is expected to produce a result identical to the result produced
+ * by visiting the original portion of the formula with EvaluateVisitor, given
+ * the same EvaluationManager.
+ */
+public interface Evaluator
+{
+	/**
+	 * Evaluates this Evaluator in the context of the given EvaluationManager.
+	 * 
+	 * @param manager
+	 *            The EvaluationManager for the context of the evaluation
+	 * @return The result of evaluating this Evaluator
+	 */
+	public Object evaluate(EvaluationManager manager);
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.parse.FormulaParserVisitor;
+import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.parse.Operator;
+import pcgen.base.formula.parse.SimpleNode;
+import pcgen.base.formula.visitor.EvaluateVisitor;
+
+/**
+ * An EvaluatorNode is a node that stands in for an original node of a formula
+ * when that node is provided as an argument to a Function.
+ * 
+ * When visited by an EvaluateVisitor, the EvaluatorNode evaluates the Evaluator
+ * compiled from the original node. Any other visitor is passed to the original
+ * node. The structure (children, Operator and text) of the EvaluatorNode is the
+ * structure of the original node.
+ */
+public class EvaluatorNode extends SimpleNode
+{
+
+	/**
+	 * The original node represented by this EvaluatorNode.
+	 */
+	private final SimpleNode node;
+
+	/**
+	 * The Evaluator compiled from the original node.
+	 */
+	private final Evaluator evaluator;
+
+	/**
+	 * Constructs a new EvaluatorNode for the given original node and the
+	 * Evaluator compiled from that node.
+	 * 
+	 * @param node
+	 *            The original node represented by this EvaluatorNode
+	 * @param evaluator
+	 *            The Evaluator compiled from the original node
+	 */
+	public EvaluatorNode(SimpleNode node, Evaluator evaluator)
+	{
+		super(node.getId());
+		this.node = node;
+		this.evaluator = Objects.requireNonNull(evaluator);
+	}
+
+	@Override
+	public Object jjtAccept(FormulaParserVisitor visitor, Object data)
+	{
+		/*
+		 * Exact class only, since a subclass of EvaluateVisitor may not evaluate
+		 * the node in the same way as the Evaluator
+		 */
+		if (visitor.getClass() == EvaluateVisitor.class)
+		{
+			return evaluator.evaluate((EvaluationManager) data);
+		}
+		return node.jjtAccept(visitor, data);
+	}
+
+	@Override
+	public Object childrenAccept(FormulaParserVisitor visitor, Object data)
+	{
+		return node.childrenAccept(visitor, data);
+	}
+
+	@Override
+	public Node jjtGetParent()
+	{
+		return node.jjtGetParent();
+	}
+
+	@Override
+	public Node jjtGetChild(int i)
+	{
+		return node.jjtGetChild(i);
+	}
+
+	@Override
+	public int jjtGetNumChildren()
+	{
+		return node.jjtGetNumChildren();
+	}
+
+	@Override
+	public Operator getOperator()
+	{
+		return node.getOperator();
+	}
+
+	@Override
+	public String getText()
+	{
+		return node.getText();
+	}
+
+	/**
+	 * Returns the Evaluator compiled from the original node.
+	 * 
+	 * @return The Evaluator compiled from the original node
+	 */
+	public Evaluator getEvaluator()
+	{
+		return evaluator;
+	}
+}
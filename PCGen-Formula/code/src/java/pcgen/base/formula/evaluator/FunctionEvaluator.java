@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.Function;
+import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.visitor.EvaluateVisitor;
+
+/**
+ * A FunctionEvaluator is an Evaluator for a Function in a formula.
+ * 
+ * The Function is bound when the FunctionEvaluator is constructed. Since the
+ * Function interface evaluates the arguments to the Function through an
+ * EvaluateVisitor, the arguments remain nodes; however, arguments that are not
+ * simple values are provided to the Function as an EvaluatorNode, so they are
+ * also evaluated in their compiled form.
+ */
+public class FunctionEvaluator implements Evaluator
+{
+
+	/**
+	 * The EvaluateVisitor provided to the Function.
+	 */
+	private static final EvaluateVisitor EVALUATE_VISITOR =
+			new EvaluateVisitor();
+
+	/**
+	 * The Function being evaluated.
+	 */
+	private final Function function;
+
+	/**
+	 * The arguments to the Function.
+	 */
+	private final Node[] args;
+
+	/**
+	 * Constructs a new FunctionEvaluator for the given Function and arguments.
+	 * 
+	 * @param function
+	 *            The Function being evaluated
+	 * @param args
+	 *            The arguments to the Function
+	 */
+	public FunctionEvaluator(Function function, Node[] args)
+	{
+		this.function = Objects.requireNonNull(function);
+		this.args = args.clone();
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		//Ownership of the args array is transferred to the Function
+		return function.evaluate(EVALUATE_VISITOR, args.clone(), manager);
+	}
+}
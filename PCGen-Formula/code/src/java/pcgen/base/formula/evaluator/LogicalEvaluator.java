@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.base.ShortCircuitAction;
+import pcgen.base.formula.parse.Operator;
+
+/**
+ * A LogicalEvaluator is an Evaluator for a logical Operator (such as "&amp;&amp;"
+ * or "||") in a formula.
+ * 
+ * The second argument is only evaluated if the result of the Operator is not
+ * determined by the first argument. The first argument determines the result
+ * if the OperatorLibrary provides a ShortCircuitAction for the Operator and
+ * the class of the first argument (see OperatorLibrary.getShortCircuitAction)
+ * that returns a result for the first argument.
+ */
+public class LogicalEvaluator implements Evaluator
+{
+
+	/**
+	 * The OperatorLibrary used to locate the ShortCircuitAction.
+	 */
+	private final OperatorLibrary library;
+
+	/**
+	 * The Operator being evaluated.
+	 */
+	private final Operator operator;
+
+	/**
+	 * The Evaluator for the first argument of the Operator.
+	 */
+	private final Evaluator left;
+
+	/**
+	 * The Evaluator for the second argument of the Operator.
+	 */
+	private final Evaluator right;
+
+	/**
+	 * The OperatorEvaluator used when the second argument is required.
+	 */
+	private final OperatorEvaluator operation;
+
+	/**
+	 * The ShortCircuitAction most recently bound by this LogicalEvaluator. This
+	 * is replaced (never modified) and only holds final fields, so it is safely
+	 * shared across threads without synchronization.
+	 */
+	private Binding binding;
+
+	/**
+	 * Constructs a new LogicalEvaluator for the given Operator and arguments.
+	 * 
+	 * @param library
+	 *            The OperatorLibrary used to locate the OperatorAction
+	 * @param operator
+	 *            The Operator being evaluated
+	 * @param left
+	 *            The Evaluator for the first argument of the Operator
+	 * @param right
+	 *            The Evaluator for the second argument of the Operator
+	 */
+	public LogicalEvaluator(OperatorLibrary library, Operator operator,
+		Evaluator left, Evaluator right)
+	{
+		this.library = Objects.requireNonNull(library);
+		this.operator = Objects.requireNonNull(operator);
+		this.left = Objects.requireNonNull(left);
+		this.right = Objects.requireNonNull(right);
+		operation = new OperatorEvaluator(library, operator, left, right);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		Object o1 = left.evaluate(manager);
+		Class<?> format1 = o1.getClass();
+		Binding current = binding;
+		if ((current == null) || (current.format1 != format1))
+		{
+			current = new Binding(format1,
+				library.getShortCircuitAction(operator, format1));
+			binding = current;
+		}
+		if (current.action != null)
+		{
+			Object result = current.action.shortCircuit(o1);
+			if (result != null)
+			{
+				return result;
+			}
+		}
+		return operation.evaluate(o1, right.evaluate(manager));
+	}
+
+	/**
+	 * A Binding is the ShortCircuitAction (if any) to be used for a first
+	 * argument of a specific class.
+	 */
+	private static final class Binding
+	{
+		private final Class<?> format1;
+		private final ShortCircuitAction action;
+
+		private Binding(Class<?> format1, ShortCircuitAction action)
+		{
+			this.format1 = format1;
+			this.action = action;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.NumericValue;
+
+/**
+ * A NumericAdapter allows any Evaluator to be used as a NumericEvaluator.
+ */
+public class NumericAdapter implements NumericEvaluator
+{
+
+	/**
+	 * The underlying Evaluator.
+	 */
+	private final Evaluator evaluator;
+
+	/**
+	 * Constructs a new NumericAdapter for the given Evaluator.
+	 * 
+	 * @param evaluator
+	 *            The underlying Evaluator
+	 */
+	public NumericAdapter(Evaluator evaluator)
+	{
+		this.evaluator = Objects.requireNonNull(evaluator);
+	}
+
+	/**
+	 * Returns a NumericEvaluator for the given Evaluator. This is the given
+	 * Evaluator if it is already a NumericEvaluator, otherwise a
+	 * NumericAdapter.
+	 * 
+	 * @param evaluator
+	 *            The Evaluator for which a NumericEvaluator should be returned
+	 * @return A NumericEvaluator for the given Evaluator
+	 */
+	public static NumericEvaluator getNumeric(Evaluator evaluator)
+	{
+		if (evaluator instanceof NumericEvaluator)
+		{
+			return (NumericEvaluator) evaluator;
+		}
+		return new NumericAdapter(evaluator);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		return evaluator.evaluate(manager);
+	}
+
+	@Override
+	public void evaluate(EvaluationManager manager, NumericValue result)
+	{
+		result.set(evaluator.evaluate(manager));
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.NumericValue;
+
+/**
+ * A NumericEvaluator is an Evaluator that can also place its result into a
+ * NumericValue. This allows Integer and Double values to be passed between
+ * NumericEvaluator objects as primitive values, without creating a new (boxed)
+ * object for each intermediate result.
+ * 
+ * The result placed into the NumericValue must be identical to the result
+ * returned by evaluate(EvaluationManager).
+ */
+public interface NumericEvaluator extends Evaluator
+{
+	/**
+	 * Evaluates this NumericEvaluator in the context of the given
+	 * EvaluationManager, placing the result in the given NumericValue.
+	 * 
+	 * @param manager
+	 *            The EvaluationManager for the context of the evaluation
+	 * @param result
+	 *            The NumericValue in which the result of the evaluation is
+	 *            placed
+	 */
+	public void evaluate(EvaluationManager manager, NumericValue result);
+}
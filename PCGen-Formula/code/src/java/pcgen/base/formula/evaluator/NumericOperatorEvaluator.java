@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
+import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.parse.Operator;
+
+/**
+ * A NumericOperatorEvaluator is a NumericEvaluator for an Operator with two
+ * arguments (such as "+" or "&lt;") in a formula.
+ * 
+ * The OperatorAction for each combination of Integer and Double arguments is
+ * bound when the NumericOperatorEvaluator is constructed. If the bound
+ * OperatorAction is a NumericOperatorAction, Integer and Double arguments are
+ * processed as primitive values, so no intermediate objects are created. All
+ * other arguments are processed by the OperatorLibrary.
+ */
+public class NumericOperatorEvaluator implements NumericEvaluator
+{
+
+	/**
+	 * The OperatorLibrary used to process arguments that are not Integer or
+	 * Double values.
+	 */
+	private final OperatorLibrary library;
+
+	/**
+	 * The Operator being evaluated.
+	 */
+	private final Operator operator;
+
+	/**
+	 * The NumericEvaluator for the first argument of the Operator.
+	 */
+	private final NumericEvaluator left;
+
+	/**
+	 * The NumericEvaluator for the second argument of the Operator.
+	 */
+	private final NumericEvaluator right;
+
+	/**
+	 * The OperatorAction for each combination of Integer and Double arguments
+	 * (see getIndex). An entry is null if the OperatorLibrary has no
+	 * OperatorAction for that combination.
+	 */
+	private final OperatorAction[] actions = new OperatorAction[4];
+
+	/**
+	 * The NumericOperatorAction for each combination of Integer and Double
+	 * arguments (see getIndex). An entry is null if the OperatorAction for
+	 * that combination is not a NumericOperatorAction.
+	 */
+	private final NumericOperatorAction[] numericActions =
+			new NumericOperatorAction[4];
+
+	/**
+	 * Constructs a new NumericOperatorEvaluator for the given Operator and
+	 * arguments.
+	 * 
+	 * @param library
+	 *            The OperatorLibrary used to locate the OperatorAction
+	 * @param operator
+	 *            The Operator being evaluated
+	 * @param left
+	 *            The NumericEvaluator for the first argument of the Operator
+	 * @param right
+	 *            The NumericEvaluator for the second argument of the Operator
+	 */
+	public NumericOperatorEvaluator(OperatorLibrary library, Operator operator,
+		NumericEvaluator left, NumericEvaluator right)
+	{
+		this.library = Objects.requireNonNull(library);
+		this.operator = Objects.requireNonNull(operator);
+		this.left = Objects.requireNonNull(left);
+		this.right = Objects.requireNonNull(right);
+		bind(Integer.class, Integer.class, true, true);
+		bind(Integer.class, Double.class, true, false);
+		bind(Double.class, Integer.class, false, true);
+		bind(Double.class, Double.class, false, false);
+	}
+
+	private void bind(Class<?> format1, Class<?> format2, boolean int1,
+		boolean int2)
+	{
+		int index = getIndex(int1, int2);
+		OperatorAction action =
+				library.getOperatorAction(operator, format1, format2);
+		actions[index] = action;
+		if (action instanceof NumericOperatorAction)
+		{
+			numericActions[index] = (NumericOperatorAction) action;
+		}
+	}
+
+	/**
+	 * Returns the index into the arrays of bound actions for the given
+	 * combination of Integer and Double arguments.
+	 * 
+	 * @param int1
+	 *            true if the first argument is an Integer; false if it is a
+	 *            Double
+	 * @param int2
+	 *            true if the second argument is an Integer; false if it is a
+	 *            Double
+	 * @return The index into the arrays of bound actions
+	 */
+	private static int getIndex(boolean int1, boolean int2)
+	{
+		return (int1 ? 0 : 2) + (int2 ? 0 : 1);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		NumericValue result = new NumericValue();
+		evaluate(manager, result);
+		return result.getObject();
+	}
+
+	@Override
+	public void evaluate(EvaluationManager manager, NumericValue result)
+	{
+		left.evaluate(manager, result);
+		if (!result.isNumber())
+		{
+			Object o1 = result.getObject();
+			right.evaluate(manager, result);
+			result.set(library.evaluate(operator, o1, result.getObject()));
+			return;
+		}
+		boolean int1 = result.isInteger();
+		int intValue = result.getInteger();
+		double doubleValue = result.getDouble();
+		right.evaluate(manager, result);
+		if (result.isNumber())
+		{
+			boolean int2 = result.isInteger();
+			int index = getIndex(int1, int2);
+			NumericOperatorAction numeric = numericActions[index];
+			if (numeric != null)
+			{
+				if (int1 && int2)
+				{
+					numeric.evaluate(intValue, result.getInteger(), result);
+				}
+				else
+				{
+					numeric.evaluate(doubleValue, result.getDouble(), result);
+				}
+				return;
+			}
+			OperatorAction action = actions[index];
+			if (action != null)
+			{
+				Object o1 = box(int1, intValue, doubleValue);
+				result.set(action.evaluate(o1, result.getObject()));
+				return;
+			}
+		}
+		Object o1 = box(int1, intValue, doubleValue);
+		//Let the library process (or report the problem)
+		result.set(library.evaluate(operator, o1, result.getObject()));
+	}
+
+	/**
+	 * Returns the Integer or Double object for a value held in primitive form.
+	 * 
+	 * Note this is intentionally not a conditional expression, which would
+	 * unbox both alternatives and always produce a Double.
+	 */
+	private static Object box(boolean isInteger, int intValue,
+		double doubleValue)
+	{
+		if (isInteger)
+		{
+			return Integer.valueOf(intValue);
+		}
+		return Double.valueOf(doubleValue);
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.NumericUnaryAction;
+import pcgen.base.formula.base.NumericValue;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.base.UnaryAction;
+import pcgen.base.formula.parse.Operator;
+
+/**
+ * A NumericUnaryEvaluator is a NumericEvaluator for a unary Operator (such as
+ * "-") in a formula.
+ * 
+ * The UnaryAction for Integer and Double arguments is bound when the
+ * NumericUnaryEvaluator is constructed. If the bound UnaryAction is a
+ * NumericUnaryAction, an Integer or Double argument is processed as a
+ * primitive value, so no intermediate object is created. All other arguments
+ * are processed by the OperatorLibrary.
+ */
+public class NumericUnaryEvaluator implements NumericEvaluator
+{
+
+	/**
+	 * The OperatorLibrary used to process arguments that are not Integer or
+	 * Double values.
+	 */
+	private final OperatorLibrary library;
+
+	/**
+	 * The Operator being evaluated.
+	 */
+	private final Operator operator;
+
+	/**
+	 * The NumericEvaluator for the argument of the Operator.
+	 */
+	private final NumericEvaluator argument;
+
+	/**
+	 * The NumericUnaryAction for an Integer argument; null if the UnaryAction
+	 * for an Integer argument is not a NumericUnaryAction.
+	 */
+	private final NumericUnaryAction integerAction;
+
+	/**
+	 * The NumericUnaryAction for a Double argument; null if the UnaryAction
+	 * for a Double argument is not a NumericUnaryAction.
+	 */
+	private final NumericUnaryAction doubleAction;
+
+	/**
+	 * Constructs a new NumericUnaryEvaluator for the given Operator and
+	 * argument.
+	 * 
+	 * @param library
+	 *            The OperatorLibrary used to locate the UnaryAction
+	 * @param operator
+	 *            The Operator being evaluated
+	 * @param argument
+	 *            The NumericEvaluator for the argument of the Operator
+	 */
+	public NumericUnaryEvaluator(OperatorLibrary library, Operator operator,
+		NumericEvaluator argument)
+	{
+		this.library = Objects.requireNonNull(library);
+		this.operator = Objects.requireNonNull(operator);
+		this.argument = Objects.requireNonNull(argument);
+		integerAction = getNumeric(Integer.class);
+		doubleAction = getNumeric(Double.class);
+	}
+
+	private NumericUnaryAction getNumeric(Class<?> format)
+	{
+		UnaryAction action = library.getUnaryAction(operator, format);
+		return (action instanceof NumericUnaryAction)
+			? (NumericUnaryAction) action : null;
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		NumericValue result = new NumericValue();
+		evaluate(manager, result);
+		return result.getObject();
+	}
+
+	@Override
+	public void evaluate(EvaluationManager manager, NumericValue result)
+	{
+		argument.evaluate(manager, result);
+		if (result.isInteger())
+		{
+			if (integerAction != null)
+			{
+				integerAction.evaluate(result.getInteger(), result);
+				return;
+			}
+		}
+		else if (result.isNumber() && (doubleAction != null))
+		{
+			doubleAction.evaluate(result.getDouble(), result);
+			return;
+		}
+		result.set(library.evaluate(operator, result.getObject()));
+	}
+}
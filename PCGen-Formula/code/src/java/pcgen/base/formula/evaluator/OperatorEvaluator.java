@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.parse.Operator;
+
+/**
+ * An OperatorEvaluator is an Evaluator for an Operator with two arguments (such
+ * as "+" or "&lt;") in a formula.
+ * 
+ * The OperatorAction for the Operator is bound based on the classes of the
+ * values produced by the two arguments. The OperatorAction is retained so that
+ * subsequent evaluations producing values of the same classes do not need to
+ * locate the OperatorAction in the OperatorLibrary again.
+ */
+public class OperatorEvaluator implements Evaluator
+{
+
+	/**
+	 * The OperatorLibrary used to locate the OperatorAction.
+	 */
+	private final OperatorLibrary library;
+
+	/**
+	 * The Operator being evaluated.
+	 */
+	private final Operator operator;
+
+	/**
+	 * The Evaluator for the first argument of the Operator.
+	 */
+	private final Evaluator left;
+
+	/**
+	 * The Evaluator for the second argument of the Operator.
+	 */
+	private final Evaluator right;
+
+	/**
+	 * The OperatorAction most recently bound by this OperatorEvaluator. This is
+	 * replaced (never modified) and only holds final fields, so it is safely
+	 * shared across threads without synchronization.
+	 */
+	private Binding binding;
+
+	/**
+	 * Constructs a new OperatorEvaluator for the given Operator and arguments.
+	 * 
+	 * @param library
+	 *            The OperatorLibrary used to locate the OperatorAction
+	 * @param operator
+	 *            The Operator being evaluated
+	 * @param left
+	 *            The Evaluator for the first argument of the Operator
+	 * @param right
+	 *            The Evaluator for the second argument of the Operator
+	 */
+	public OperatorEvaluator(OperatorLibrary library, Operator operator,
+		Evaluator left, Evaluator right)
+	{
+		this.library = Objects.requireNonNull(library);
+		this.operator = Objects.requireNonNull(operator);
+		this.left = Objects.requireNonNull(left);
+		this.right = Objects.requireNonNull(right);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		return evaluate(left.evaluate(manager), right.evaluate(manager));
+	}
+
+	/**
+	 * Evaluates the Operator on the given (already evaluated) arguments.
+	 * 
+	 * @param o1
+	 *            The first argument of the Operator
+	 * @param o2
+	 *            The second argument of the Operator
+	 * @return The result of the Operator acting on the given arguments
+	 */
+	Object evaluate(Object o1, Object o2)
+	{
+		Class<?> format1 = o1.getClass();
+		Class<?> format2 = o2.getClass();
+		Binding current = binding;
+		if ((current == null) || (current.format1 != format1)
+			|| (current.format2 != format2))
+		{
+			OperatorAction action =
+					library.getOperatorAction(operator, format1, format2);
+			if (action == null)
+			{
+				//Let the library report the problem
+				return library.evaluate(operator, o1, o2);
+			}
+			current = new Binding(format1, format2, action);
+			binding = current;
+		}
+		return current.action.evaluate(o1, o2);
+	}
+
+	/**
+	 * A Binding is the OperatorAction to be used for arguments of two specific
+	 * classes.
+	 */
+	private static final class Binding
+	{
+		private final Class<?> format1;
+		private final Class<?> format2;
+		private final OperatorAction action;
+
+		private Binding(Class<?> format1, Class<?> format2,
+			OperatorAction action)
+		{
+			this.format1 = format1;
+			this.format2 = format2;
+			this.action = action;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.base.UnaryAction;
+import pcgen.base.formula.parse.Operator;
+
+/**
+ * A UnaryEvaluator is an Evaluator for a unary Operator (such as "-" or "!") in
+ * a formula.
+ * 
+ * The UnaryAction for the Operator is bound based on the class of the value
+ * produced by the argument. The UnaryAction is retained so that subsequent
+ * evaluations producing a value of the same class do not need to locate the
+ * UnaryAction in the OperatorLibrary again.
+ */
+public class UnaryEvaluator implements Evaluator
+{
+
+	/**
+	 * The OperatorLibrary used to locate the UnaryAction.
+	 */
+	private final OperatorLibrary library;
+
+	/**
+	 * The Operator being evaluated.
+	 */
+	private final Operator operator;
+
+	/**
+	 * The Evaluator for the argument of the Operator.
+	 */
+	private final Evaluator argument;
+
+	/**
+	 * The UnaryAction most recently bound by this UnaryEvaluator. This is
+	 * replaced (never modified) and only holds final fields, so it is safely
+	 * shared across threads without synchronization.
+	 */
+	private Binding binding;
+
+	/**
+	 * Constructs a new UnaryEvaluator for the given Operator and argument.
+	 * 
+	 * @param library
+	 *            The OperatorLibrary used to locate the UnaryAction
+	 * @param operator
+	 *            The Operator being evaluated
+	 * @param argument
+	 *            The Evaluator for the argument of the Operator
+	 */
+	public UnaryEvaluator(OperatorLibrary library, Operator operator,
+		Evaluator argument)
+	{
+		this.library = Objects.requireNonNull(library);
+		this.operator = Objects.requireNonNull(operator);
+		this.argument = Objects.requireNonNull(argument);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		Object o = argument.evaluate(manager);
+		Class<?> format = o.getClass();
+		Binding current = binding;
+		if ((current == null) || (current.format != format))
+		{
+			UnaryAction action = library.getUnaryAction(operator, format);
+			if (action == null)
+			{
+				//Let the library report the problem
+				return library.evaluate(operator, o);
+			}
+			current = new Binding(format, action);
+			binding = current;
+		}
+		return current.action.evaluate(o);
+	}
+
+	/**
+	 * A Binding is the UnaryAction to be used for an argument of a specific
+	 * class.
+	 */
+	private static final class Binding
+	{
+		private final Class<?> format;
+		private final UnaryAction action;
+
+		private Binding(Class<?> format, UnaryAction action)
+		{
+			this.format = format;
+			this.action = action;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+
+/**
+ * An UnassertedEvaluator is an Evaluator that evaluates an underlying Evaluator
+ * without an asserted format. This is used for relational and logical
+ * operations, where the format of each side of the expression cannot be
+ * asserted.
+ */
+public class UnassertedEvaluator implements Evaluator
+{
+
+	/**
+	 * The underlying Evaluator.
+	 */
+	private final Evaluator evaluator;
+
+	/**
+	 * Constructs a new UnassertedEvaluator for the given underlying Evaluator.
+	 * 
+	 * @param evaluator
+	 *            The underlying Evaluator
+	 */
+	public UnassertedEvaluator(Evaluator evaluator)
+	{
+		this.evaluator = Objects.requireNonNull(evaluator);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		return evaluator
+			.evaluate(manager.getWith(EvaluationManager.ASSERTED, null));
+	}
+}
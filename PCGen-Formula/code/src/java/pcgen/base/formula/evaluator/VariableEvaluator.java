@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.evaluator;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.NumericValue;
+import pcgen.base.formula.visitor.EvaluateVisitor;
+
+/**
+ * A VariableEvaluator is an Evaluator for a variable in a formula.
+ */
+public class VariableEvaluator implements NumericEvaluator
+{
+
+	/**
+	 * The EvaluateVisitor used to resolve the value of the variable.
+	 */
+	private static final EvaluateVisitor EVALUATE_VISITOR =
+			new EvaluateVisitor();
+
+	/**
+	 * The name of the variable.
+	 */
+	private final String varName;
+
+	/**
+	 * Constructs a new VariableEvaluator for the variable with the given name.
+	 * 
+	 * @param varName
+	 *            The name of the variable
+	 */
+	public VariableEvaluator(String varName)
+	{
+		this.varName = Objects.requireNonNull(varName);
+	}
+
+	@Override
+	public Object evaluate(EvaluationManager manager)
+	{
+		return EVALUATE_VISITOR.visitVariable(varName, manager);
+	}
+
+	@Override
+	public void evaluate(EvaluationManager manager, NumericValue result)
+	{
+		result.set(EVALUATE_VISITOR.visitVariable(varName, manager));
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+/**
+ * pcgen.base.formula.evaluator is a package of Evaluator objects. An Evaluator
+ * is a "compiled" form of a portion of a formula, in which the operators,
+ * functions and literal values of the formula have been bound in advance (by
+ * pcgen.base.formula.visitor.CompilingVisitor).
+ * 
+ * A tree of Evaluator objects produces the same results as visiting the tree of
+ * nodes of the formula with pcgen.base.formula.visitor.EvaluateVisitor, without
+ * needing to locate the operators or functions again on each evaluation.
+ */
+package pcgen.base.formula.evaluator;
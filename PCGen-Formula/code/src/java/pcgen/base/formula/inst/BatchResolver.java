@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.evaluator.Evaluator;
+
+/**
+ * BatchResolver resolves a formula (that has already been prepared for
+ * evaluation as an Evaluator) for each of a Collection of ScopeInstance
+ * objects. Only the ScopeInstance differs between the evaluations.
+ */
+final class BatchResolver
+{
+
+	/**
+	 * Private Constructor for Utility Class.
+	 */
+	private BatchResolver()
+	{
+	}
+
+	/**
+	 * Evaluates the given Evaluator once for each of the given ScopeInstance
+	 * objects.
+	 * 
+	 * @param evaluator
+	 *            The Evaluator to be evaluated
+	 * @param manager
+	 *            The EvaluationManager for the context of the formula
+	 * @param instances
+	 *            The ScopeInstance objects for which the Evaluator should be
+	 *            evaluated
+	 * @param parallel
+	 *            true if the ScopeInstance objects may be evaluated in
+	 *            parallel; false otherwise
+	 * @return A List of the results, in the order of the given ScopeInstance
+	 *         objects
+	 */
+	static <T> List<T> resolveAll(final Evaluator evaluator,
+		final EvaluationManager manager,
+		Collection<? extends ScopeInstance> instances, boolean parallel)
+	{
+		Objects.requireNonNull(evaluator);
+		Objects.requireNonNull(manager);
+		final ScopeInstance[] scopes =
+				instances.toArray(new ScopeInstance[instances.size()]);
+		final Object[] results = new Object[scopes.length];
+		if (parallel)
+		{
+			IntStream.range(0, scopes.length).parallel()
+				.forEach(new IntConsumer()
+				{
+					@Override
+					public void accept(int i)
+					{
+						results[i] = evaluator.evaluate(manager
+							.getWith(EvaluationManager.INSTANCE, scopes[i]));
+					}
+				});
+		}
+		else
+		{
+			for (int i = 0; i < scopes.length; i++)
+			{
+				results[i] = evaluator.evaluate(
+					manager.getWith(EvaluationManager.INSTANCE, scopes[i]));
+			}
+		}
+		@SuppressWarnings("unchecked")
+		List<T> list = (List<T>) Arrays.asList(results);
+		return list;
+	}
+
+	/**
+	 * A FormulaEvaluator is an Evaluator that resolves a NEPFormula.
+	 */
+	static final class FormulaEvaluator implements Evaluator
+	{
+		private final NEPFormula<?> formula;
+
+		FormulaEvaluator(NEPFormula<?> formula)
+		{
+			this.formula = Objects.requireNonNull(formula);
+		}
+
+		@Override
+		public Object evaluate(EvaluationManager manager)
+		{
+			return formula.resolve(manager);
+		}
+	}
+}
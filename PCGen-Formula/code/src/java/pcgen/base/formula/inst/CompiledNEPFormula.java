@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.FormulaSemantics;
+import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.evaluator.Evaluator;
+import pcgen.base.formula.visitor.CompilingVisitor;
+import pcgen.base.util.FormatManager;
+
+/**
+ * A CompiledNEPFormula is a NEPFormula that resolves a ComplexNEPFormula using
+ * a tree of Evaluator objects (produced by CompilingVisitor) rather than by
+ * visiting the tree of nodes of the ComplexNEPFormula with EvaluateVisitor.
+ * 
+ * The Evaluator objects are bound to the FunctionLibrary and OperatorLibrary of
+ * the FormulaManager provided when the CompiledNEPFormula is constructed. If
+ * the CompiledNEPFormula is resolved with a FormulaManager that has a different
+ * FunctionLibrary or OperatorLibrary, the CompiledNEPFormula falls back to
+ * resolving the underlying ComplexNEPFormula, so the result is always identical
+ * to the result of the ComplexNEPFormula.
+ * 
+ * Validation, dependencies and the String representation of a
+ * CompiledNEPFormula are those of the underlying ComplexNEPFormula.
+ * 
+ * @param <T>
+ *            The Format (Class) of object returned by this CompiledNEPFormula
+ */
+public class CompiledNEPFormula<T> implements NEPFormula<T>
+{
+
+	private static final CompilingVisitor COMPILING_VISITOR =
+			new CompilingVisitor();
+
+	/**
+	 * The underlying ComplexNEPFormula.
+	 */
+	private final ComplexNEPFormula<T> formula;
+
+	/**
+	 * The FunctionLibrary to which the Evaluator is bound.
+	 */
+	private final FunctionLibrary functionLibrary;
+
+	/**
+	 * The OperatorLibrary to which the Evaluator is bound.
+	 */
+	private final OperatorLibrary operatorLibrary;
+
+	/**
+	 * The Evaluator compiled from the underlying ComplexNEPFormula.
+	 */
+	private final Evaluator evaluator;
+
+	/**
+	 * Constructs a new CompiledNEPFormula by compiling the given
+	 * ComplexNEPFormula, bound to the FunctionLibrary and OperatorLibrary of
+	 * the given FormulaManager.
+	 * 
+	 * The given ComplexNEPFormula should have been validated (see
+	 * NEPFormula.isValid) prior to constructing a CompiledNEPFormula. If it has
+	 * been validated with the given FormulaManager, the static portions of the
+	 * ComplexNEPFormula are compiled as constants.
+	 * 
+	 * @param formula
+	 *            The ComplexNEPFormula to be compiled
+	 * @param formulaManager
+	 *            The FormulaManager containing the FunctionLibrary and
+	 *            OperatorLibrary to which the CompiledNEPFormula is bound
+	 */
+	public CompiledNEPFormula(ComplexNEPFormula<T> formula,
+		FormulaManager formulaManager)
+	{
+		this.formula = Objects.requireNonNull(formula);
+		functionLibrary = formulaManager.get(FormulaManager.FUNCTION);
+		operatorLibrary = formulaManager.getOperatorLibrary();
+		evaluator = (Evaluator) COMPILING_VISITOR
+			.visit(formula.getEvaluationRoot(formulaManager), formulaManager);
+	}
+
+	/**
+	 * Resolves the CompiledNEPFormula in the context of the given
+	 * EvaluationManager. The result is identical to the result of the
+	 * underlying ComplexNEPFormula.
+	 * 
+	 * @param manager
+	 *            The EvaluationManager for the context of the formula
+	 * @return The value calculated for the CompiledNEPFormula.
+	 */
+	@Override
+	public T resolve(EvaluationManager manager)
+	{
+		if (!isBoundTo(manager.get(EvaluationManager.FMANAGER)))
+		{
+			return formula.resolve(manager);
+		}
+		@SuppressWarnings("unchecked")
+		T result = (T) evaluator.evaluate(manager);
+		return result;
+	}
+
+	/**
+	 * Resolves the CompiledNEPFormula once for each of the given ScopeInstance
+	 * objects. The results are identical to the results of the underlying
+	 * ComplexNEPFormula.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<T> resolveAll(EvaluationManager manager,
+		Collection<? extends ScopeInstance> instances, boolean parallel)
+	{
+		if (!isBoundTo(manager.get(EvaluationManager.FMANAGER)))
+		{
+			return formula.resolveAll(manager, instances, parallel);
+		}
+		return BatchResolver.resolveAll(evaluator, manager, instances,
+			parallel);
+	}
+
+	/**
+	 * Returns true if the given FormulaManager contains the FunctionLibrary and
+	 * OperatorLibrary to which this CompiledNEPFormula is bound.
+	 * 
+	 * @param formulaManager
+	 *            The FormulaManager to be checked
+	 * @return true if the given FormulaManager contains the FunctionLibrary and
+	 *         OperatorLibrary to which this CompiledNEPFormula is bound; false
+	 *         otherwise
+	 */
+	private boolean isBoundTo(FormulaManager formulaManager)
+	{
+		return (formulaManager != null)
+			&& (formulaManager.getOperatorLibrary() == operatorLibrary)
+			&& (formulaManager.get(FormulaManager.FUNCTION) == functionLibrary);
+	}
+
+	@Override
+	public void getDependencies(DependencyManager depManager)
+	{
+		formula.getDependencies(depManager);
+	}
+
+	@Override
+	public void isValid(FormatManager<T> formatManager,
+		FormulaSemantics semantics)
+	{
+		formula.isValid(formatManager, semantics);
+	}
+
+	@Override
+	public String toString()
+	{
+		return formula.toString();
+	}
+}
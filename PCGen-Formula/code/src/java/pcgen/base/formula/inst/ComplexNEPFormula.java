@@ -18,16 +18,28 @@
 package pcgen.base.formula.inst;
 
 import java.io.StringReader;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.FormulaSemantics;
+import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.evaluator.Evaluator;
 import pcgen.base.formula.parse.FormulaParser;
 import pcgen.base.formula.parse.ParseException;
 import pcgen.base.formula.parse.SimpleNode;
+import pcgen.base.formula.visitor.ConstantFoldingVisitor;
 import pcgen.base.formula.visitor.DependencyVisitor;
 import pcgen.base.formula.visitor.EvaluateVisitor;
+import pcgen.base.formula.visitor.InliningVisitor;
 import pcgen.base.formula.visitor.ReconstructionVisitor;
 import pcgen.base.formula.visitor.SemanticsVisitor;
 import pcgen.base.util.FormatManager;
@@ -41,6 +53,17 @@ import pcgen.base.util.FormatManager;
  * The tree within a ComplexNEPFormula is designed to visited in order to
  * evaluate or otherwise process a ComplexNEPFormula.
  * 
+ * Once a ComplexNEPFormula has been successfully validated, static portions of
+ * the formula (such as "3*4" in "(3*4)+T") are calculated once and used in
+ * place of the original portion of the tree when the ComplexNEPFormula is
+ * resolved. Before that is done, calls to user-defined functions (see
+ * InlinableFunction) are replaced by the body of the function, so that static
+ * portions of those functions can also be calculated once.
+ * 
+ * The outcome of validation, the folded tree and the DependencyTemplate objects
+ * retained by a ComplexNEPFormula are safe to use from multiple threads, so a
+ * ComplexNEPFormula may be shared (see NEPFormulaFactory).
+ * 
  * @param <T>
  *            The Format (Class) of object returned by this ComplexNEPFormula
  */
@@ -73,6 +96,34 @@ public class ComplexNEPFormula<T> implements NEPFormula<T>
 	 */
 	private final SimpleNode root;
 
+	/**
+	 * The tree used to resolve this ComplexNEPFormula, with calls to any
+	 * InlinableFunction inlined and static portions of the tree replaced by
+	 * their value. This is established when the ComplexNEPFormula is
+	 * successfully validated, and is only used when the ComplexNEPFormula is
+	 * resolved with the same FunctionLibrary and OperatorLibrary as were used
+	 * to fold the tree.
+	 * 
+	 * Null if the ComplexNEPFormula has not been validated.
+	 */
+	private volatile FoldedTree folded;
+
+	/**
+	 * The outcome of validating this ComplexNEPFormula, for each combination
+	 * of FormulaSemantics inputs and FormatManager with which it has been
+	 * validated.
+	 */
+	private final Map<ValidationKey, Validation> validations =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * The DependencyTemplate of this ComplexNEPFormula, for each combination of
+	 * FunctionLibrary, asserted format and presence of a DynamicManager with
+	 * which the dependencies have been captured.
+	 */
+	private final Map<TemplateKey, CapturedTemplate> templates =
+			new ConcurrentHashMap<>();
+
 	/**
 	 * Construct a new ComplexNEPFormula from the given String. This calculates
 	 * the tree of objects representing the calculation to be performed by the
@@ -126,10 +177,65 @@ public class ComplexNEPFormula<T> implements NEPFormula<T>
 	public T resolve(EvaluationManager manager)
 	{
 		@SuppressWarnings("unchecked")
-		T result = (T) EVALUATE_VISITOR.visit(root, manager);
+		T result =
+				(T) EVALUATE_VISITOR.visit(getEvaluationRoot(manager), manager);
 		return result;
 	}
 
+	/**
+	 * Resolves the ComplexNEPFormula once for each of the given ScopeInstance
+	 * objects. The tree used to resolve the ComplexNEPFormula is selected once
+	 * for all of the ScopeInstance objects.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<T> resolveAll(EvaluationManager manager,
+		Collection<? extends ScopeInstance> instances, boolean parallel)
+	{
+		return BatchResolver.resolveAll(
+			new TreeEvaluator(getEvaluationRoot(manager)), manager, instances,
+			parallel);
+	}
+
+	/**
+	 * Returns the root of the tree to be used to resolve this
+	 * ComplexNEPFormula in the context of the given EvaluationManager.
+	 * 
+	 * @param manager
+	 *            The EvaluationManager for the context of the formula
+	 * @return The root of the tree to be used to resolve this
+	 *         ComplexNEPFormula
+	 */
+	private SimpleNode getEvaluationRoot(EvaluationManager manager)
+	{
+		return (folded == null) ? root
+			: getEvaluationRoot(manager.get(EvaluationManager.FMANAGER));
+	}
+
+	/**
+	 * Returns the root of the tree to be used to resolve this
+	 * ComplexNEPFormula with the FunctionLibrary and OperatorLibrary of the
+	 * given FormulaManager. This is the folded tree if this ComplexNEPFormula
+	 * has been validated with the same libraries, otherwise the original tree.
+	 * 
+	 * @param formulaManager
+	 *            The FormulaManager containing the FunctionLibrary and
+	 *            OperatorLibrary to be used to resolve this ComplexNEPFormula
+	 * @return The root of the tree to be used to resolve this
+	 *         ComplexNEPFormula
+	 */
+	SimpleNode getEvaluationRoot(FormulaManager formulaManager)
+	{
+		FoldedTree foldedTree = folded;
+		if ((foldedTree != null) && (formulaManager != null)
+			&& foldedTree.isUsableWith(formulaManager))
+		{
+			return foldedTree.root;
+		}
+		return root;
+	}
+
 	/**
 	 * Determines the dependencies for this formula, including the VariableID
 	 * objects representing the variables within the ComplexNEPFormula.
@@ -151,9 +257,101 @@ public class ComplexNEPFormula<T> implements NEPFormula<T>
 		DEPENDENCY_VISITOR.visit(root, Objects.requireNonNull(depManager));
 	}
 
+	/**
+	 * Returns the DependencyTemplate for this ComplexNEPFormula.
+	 * 
+	 * The template is retained for the FunctionLibrary of the given
+	 * DependencyManager, the asserted format and whether a DynamicManager is
+	 * present, so subsequent calls with equal inputs do not walk the tree
+	 * again (and do not load the given DependencyManager). The retained
+	 * template is discarded if the FunctionLibrary has changed.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DependencyTemplate getDependencyTemplate(DependencyManager depManager)
+	{
+		FormulaManager formulaManager =
+				depManager.get(DependencyManager.FMANAGER);
+		FunctionLibrary library = (formulaManager == null) ? null
+			: formulaManager.get(FormulaManager.FUNCTION);
+		if ((library == null)
+			|| (library.getRevision() == FunctionLibrary.UNTRACKED_REVISION))
+		{
+			return NEPFormula.super.getDependencyTemplate(depManager);
+		}
+		TemplateKey key = new TemplateKey(library,
+			depManager.get(DependencyManager.ASSERTED),
+			depManager.get(DependencyManager.DYNAMIC) != null);
+		CapturedTemplate captured = templates.get(key);
+		if ((captured == null)
+			|| (captured.functionRevision != library.getRevision()))
+		{
+			captured = new CapturedTemplate(
+				NEPFormula.super.getDependencyTemplate(depManager),
+				library.getRevision());
+			templates.put(key, captured);
+		}
+		return captured.template;
+	}
+
+	/**
+	 * Processes the FormulaSemantics for the ComplexNEPFormula.
+	 * 
+	 * The outcome is retained for the inputs of the given FormulaSemantics
+	 * (see FormulaSemantics.getInputs()) and the given FormatManager, so
+	 * subsequent validation with equal inputs does not process the tree
+	 * again. The retained outcome is discarded if the VariableLibrary,
+	 * FunctionLibrary or OperatorLibrary of the FormulaManager has changed.
+	 * 
+	 * {@inheritDoc}
+	 */
 	@Override
 	public void isValid(FormatManager<T> formatManager,
 		FormulaSemantics semantics)
+	{
+		FormulaManager formulaManager =
+				semantics.get(FormulaSemantics.FMANAGER);
+		if ((formulaManager == null) || !semantics.isValid())
+		{
+			validate(formatManager, semantics);
+			return;
+		}
+		ValidationKey key =
+				new ValidationKey(semantics.getInputs(), formatManager);
+		Validation validation = validations.get(key);
+		if ((validation == null) || !validation.isCurrent(formulaManager))
+		{
+			//Capture the revisions before validating, in case of a change
+			validation = new Validation(formulaManager);
+			validate(formatManager, semantics);
+			validation.report =
+					semantics.isValid() ? null : semantics.getReport();
+			validations.put(key, validation);
+		}
+		else if (validation.report != null)
+		{
+			semantics.setInvalid(validation.report);
+		}
+		else
+		{
+			fold(formulaManager);
+		}
+	}
+
+	/**
+	 * Processes the FormulaSemantics for the ComplexNEPFormula by visiting the
+	 * tree with SemanticsVisitor.
+	 * 
+	 * @param formatManager
+	 *            The FormatManager in which the ComplexNEPFormula should be
+	 *            checked to ensure it is valid
+	 * @param semantics
+	 *            The FormulaSemantics object used to contain and store
+	 *            semantic information about the ComplexNEPFormula
+	 */
+	private void validate(FormatManager<T> formatManager,
+		FormulaSemantics semantics)
 	{
 		//semantics.set(FormulaSemantics.BASE_FORMAT, expectedFormat);
 		@SuppressWarnings("PMD.PrematureDeclaration")
@@ -170,7 +368,38 @@ public class ComplexNEPFormula<T> implements NEPFormula<T>
 				+ " found in location requiring a "
 				+ formatManager.getManagedClass()
 				+ " (class cannot be evaluated)");
+			return;
+		}
+		fold(semantics.get(FormulaSemantics.FMANAGER));
+	}
+
+	/**
+	 * Inlines calls to any InlinableFunction and then replaces static portions
+	 * of this ComplexNEPFormula with their value, for use when this
+	 * ComplexNEPFormula is resolved with the FunctionLibrary and
+	 * OperatorLibrary of the given FormulaManager.
+	 * 
+	 * @param formulaManager
+	 *            The FormulaManager used to evaluate the static portions of this
+	 *            ComplexNEPFormula
+	 */
+	private void fold(FormulaManager formulaManager)
+	{
+		FoldedTree foldedTree = folded;
+		if ((foldedTree != null) && foldedTree.isUsableWith(formulaManager))
+		{
+			return;
 		}
+		FunctionLibrary functionLibrary =
+				formulaManager.get(FormulaManager.FUNCTION);
+		EvaluationManager manager = new EvaluationManager()
+			.getWith(EvaluationManager.FMANAGER, formulaManager);
+		SimpleNode inlinedRoot = (SimpleNode) new InliningVisitor(
+			functionLibrary).visit(root, null);
+		SimpleNode foldedRoot = (SimpleNode) new ConstantFoldingVisitor(
+			functionLibrary).visit(inlinedRoot, manager);
+		folded = new FoldedTree(foldedRoot, functionLibrary,
+			formulaManager.getOperatorLibrary());
 	}
 
 	@Override
@@ -180,4 +409,232 @@ public class ComplexNEPFormula<T> implements NEPFormula<T>
 		RECONSTRUCTION_VISITOR.visit(root, sb);
 		return sb.toString();
 	}
+
+	/**
+	 * A FoldedTree is the root of a tree on which constant folding has been
+	 * performed, along with the libraries used to perform the folding.
+	 */
+	private static final class FoldedTree
+	{
+		/**
+		 * The root of the folded tree.
+		 */
+		private final SimpleNode root;
+
+		/**
+		 * The FunctionLibrary used to fold the tree.
+		 */
+		private final FunctionLibrary functionLibrary;
+
+		/**
+		 * The OperatorLibrary used to fold the tree.
+		 */
+		private final OperatorLibrary operatorLibrary;
+
+		private FoldedTree(SimpleNode root, FunctionLibrary functionLibrary,
+			OperatorLibrary operatorLibrary)
+		{
+			this.root = root;
+			this.functionLibrary = functionLibrary;
+			this.operatorLibrary = operatorLibrary;
+		}
+
+		/**
+		 * Returns true if this FoldedTree is usable with the given
+		 * FormulaManager (meaning the FormulaManager has the same libraries as
+		 * were used to fold the tree).
+		 * 
+		 * @param formulaManager
+		 *            The FormulaManager to be checked
+		 * @return true if this FoldedTree is usable with the given
+		 *         FormulaManager; false otherwise
+		 */
+		private boolean isUsableWith(FormulaManager formulaManager)
+		{
+			return (formulaManager.getOperatorLibrary() == operatorLibrary)
+				&& (formulaManager.get(FormulaManager.FUNCTION) == functionLibrary);
+		}
+	}
+
+	/**
+	 * A TreeEvaluator is an Evaluator that visits a specific tree with
+	 * EvaluateVisitor.
+	 */
+	private static final class TreeEvaluator implements Evaluator
+	{
+		/**
+		 * The root of the tree to be evaluated.
+		 */
+		private final SimpleNode root;
+
+		private TreeEvaluator(SimpleNode root)
+		{
+			this.root = root;
+		}
+
+		@Override
+		public Object evaluate(EvaluationManager manager)
+		{
+			return EVALUATE_VISITOR.visit(root, manager);
+		}
+	}
+
+	/**
+	 * A TemplateKey identifies the inputs to the dependency analysis of a
+	 * ComplexNEPFormula.
+	 */
+	private static final class TemplateKey
+	{
+		/**
+		 * The FunctionLibrary used to walk the tree.
+		 */
+		private final FunctionLibrary functionLibrary;
+
+		/**
+		 * The format asserted for the ComplexNEPFormula; may be null.
+		 */
+		private final Class<?> assertedFormat;
+
+		/**
+		 * true if dynamic dependencies were captured; false otherwise.
+		 */
+		private final boolean dynamic;
+
+		private TemplateKey(FunctionLibrary functionLibrary,
+			Class<?> assertedFormat, boolean dynamic)
+		{
+			this.functionLibrary = functionLibrary;
+			this.assertedFormat = assertedFormat;
+			this.dynamic = dynamic;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(functionLibrary)
+				^ Objects.hashCode(assertedFormat) ^ (dynamic ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o instanceof TemplateKey)
+			{
+				TemplateKey other = (TemplateKey) o;
+				return (functionLibrary == other.functionLibrary)
+					&& (assertedFormat == other.assertedFormat)
+					&& (dynamic == other.dynamic);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A CapturedTemplate is a DependencyTemplate of a ComplexNEPFormula, along
+	 * with the revision of the FunctionLibrary used to capture it.
+	 */
+	private static final class CapturedTemplate
+	{
+		private final DependencyTemplate template;
+		private final int functionRevision;
+
+		private CapturedTemplate(DependencyTemplate template,
+			int functionRevision)
+		{
+			this.template = template;
+			this.functionRevision = functionRevision;
+		}
+	}
+
+	/**
+	 * A ValidationKey identifies the inputs to the validation of a
+	 * ComplexNEPFormula.
+	 */
+	private static final class ValidationKey
+	{
+		/**
+		 * The inputs of the FormulaSemantics used for validation.
+		 */
+		private final Object inputs;
+
+		/**
+		 * The FormatManager in which the ComplexNEPFormula was validated.
+		 */
+		private final FormatManager<?> formatManager;
+
+		private ValidationKey(Object inputs, FormatManager<?> formatManager)
+		{
+			this.inputs = inputs;
+			this.formatManager = formatManager;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return inputs.hashCode() ^ formatManager.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o instanceof ValidationKey)
+			{
+				ValidationKey other = (ValidationKey) o;
+				return inputs.equals(other.inputs)
+					&& formatManager.equals(other.formatManager);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A Validation is the outcome of validating a ComplexNEPFormula, along with
+	 * the revisions of the libraries used to validate the ComplexNEPFormula.
+	 */
+	private static final class Validation
+	{
+		private final int variableRevision;
+		private final int functionRevision;
+		private final int operatorRevision;
+
+		/**
+		 * The report indicating why the ComplexNEPFormula is invalid; null if
+		 * the ComplexNEPFormula is valid.
+		 */
+		private String report;
+
+		private Validation(FormulaManager formulaManager)
+		{
+			variableRevision = formulaManager.getFactory().getRevision();
+			functionRevision =
+					formulaManager.get(FormulaManager.FUNCTION).getRevision();
+			operatorRevision =
+					formulaManager.getOperatorLibrary().getRevision();
+		}
+
+		/**
+		 * Returns true if this Validation is current for the libraries of the
+		 * given FormulaManager (meaning none of the libraries have changed
+		 * since this Validation was created). A Validation is never current if
+		 * a library does not track its revision.
+		 * 
+		 * @param formulaManager
+		 *            The FormulaManager to be checked
+		 * @return true if this Validation is current for the libraries of the
+		 *         given FormulaManager; false otherwise
+		 */
+		private boolean isCurrent(FormulaManager formulaManager)
+		{
+			if ((functionRevision == FunctionLibrary.UNTRACKED_REVISION)
+				|| (operatorRevision == OperatorLibrary.UNTRACKED_REVISION))
+			{
+				return false;
+			}
+			return (formulaManager.getFactory().getRevision() == variableRevision)
+				&& (formulaManager.get(FormulaManager.FUNCTION)
+					.getRevision() == functionRevision)
+				&& (formulaManager.getOperatorLibrary()
+					.getRevision() == operatorRevision);
+		}
+	}
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.WriteableVariableStore;
+
+/**
+ * ConcurrentVariableStore is a thread-safe implementation of the VariableStore
+ * interface.
+ * 
+ * This behaves identically to SimpleVariableStore, but may be read and written
+ * by multiple threads at once. This is required by a SolverManager that solves
+ * independent variables in parallel.
+ */
+public class ConcurrentVariableStore implements WriteableVariableStore
+{
+
+	/**
+	 * The underlying map serving as the storage for this ConcurrentVariableStore.
+	 */
+	private final Map<VariableID<?>, Object> resultsMap =
+			new ConcurrentHashMap<VariableID<?>, Object>();
+
+	/**
+	 * Returns the value in this ConcurrentVariableStore for the given VariableID.
+	 * 
+	 * It is not necessary to check containsKey or for put to have been called
+	 * for the given VariableID. Will return null if there is no value stored
+	 * for the given VariableID.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(VariableID<T> varID)
+	{
+		return (T) resultsMap.get(varID);
+	}
+
+	/**
+	 * Returns true if this ConcurrentVariableStore contains a value for the given
+	 * VariableID.
+	 * 
+	 * If this method returns true, then it is guaranteed that the get method
+	 * will not return null.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(VariableID<?> varID)
+	{
+		return resultsMap.containsKey(varID);
+	}
+
+	/**
+	 * Adds the given non-null value to this ConcurrentVariableStore for the given
+	 * (non-null) VariableID.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> T put(VariableID<T> varID, T value)
+	{
+		Class<T> varFormat = varID.getVariableFormat();
+		if (!varFormat.isAssignableFrom(value.getClass()))
+		{
+			throw new IllegalArgumentException(
+				"VariableID format misassignment.  Expected: "
+					+ varFormat.getSimpleName() + " but got "
+					+ value.getClass().getSimpleName());
+		}
+		@SuppressWarnings("unchecked")
+		T obj = (T) resultsMap.put(varID, value);
+		return obj;
+	}
+
+	/**
+	 * Removes the value in this ConcurrentVariableStore for the given VariableID.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> T remove(VariableID<T> varID)
+	{
+		@SuppressWarnings("unchecked")
+		T obj = (T) resultsMap.remove(varID);
+		return obj;
+	}
+
+}
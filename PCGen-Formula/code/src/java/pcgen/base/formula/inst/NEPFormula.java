@@ -17,9 +17,14 @@
  */
 package pcgen.base.formula.inst;
 
+import java.util.Collection;
+import java.util.List;
+
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaSemantics;
+import pcgen.base.formula.base.ScopeInstance;
 import pcgen.base.util.FormatManager;
 
 /**
@@ -57,6 +62,39 @@ public interface NEPFormula<T>
 	 */
 	public T resolve(EvaluationManager manager);
 
+	/**
+	 * Resolves the NEPFormula once for each of the given ScopeInstance objects.
+	 * Each result is identical to the result of resolve when called with the
+	 * given EvaluationManager with its ScopeInstance replaced by the
+	 * corresponding ScopeInstance.
+	 * 
+	 * Any preparation of the NEPFormula for evaluation in the context of the
+	 * given EvaluationManager is performed once for all of the ScopeInstance
+	 * objects, so this is preferred to calling resolve for each ScopeInstance.
+	 * 
+	 * If parallel is true, the ScopeInstance objects may be resolved
+	 * concurrently. This requires that the contents of the given
+	 * EvaluationManager (in particular the VariableStore) are not modified
+	 * until this method returns.
+	 * 
+	 * @param manager
+	 *            The EvaluationManager for the context of the formula
+	 * @param instances
+	 *            The ScopeInstance objects for which the NEPFormula should be
+	 *            resolved
+	 * @param parallel
+	 *            true if the ScopeInstance objects may be resolved in parallel;
+	 *            false otherwise
+	 * @return A List of the values calculated for the NEPFormula, in the order
+	 *         of the given ScopeInstance objects
+	 */
+	public default List<T> resolveAll(EvaluationManager manager,
+		Collection<? extends ScopeInstance> instances, boolean parallel)
+	{
+		return BatchResolver.resolveAll(new BatchResolver.FormulaEvaluator(this),
+			manager, instances, parallel);
+	}
+
 	/**
 	 * Processes the FormulaSemantics for the NEPFormula.
 	 * 
@@ -92,4 +130,24 @@ public interface NEPFormula<T>
 	 *            The DependencyManager to be used to capture the dependencies
 	 */
 	public void getDependencies(DependencyManager depManager);
+
+	/**
+	 * Returns the DependencyTemplate for this NEPFormula, as captured with the
+	 * given DependencyManager.
+	 * 
+	 * An implementation may return a template captured by an earlier call with
+	 * an equivalent DependencyManager, in which case the given
+	 * DependencyManager is not loaded. The returned DependencyTemplate may thus
+	 * be shared, and must not be modified.
+	 * 
+	 * @param depManager
+	 *            The DependencyManager to be used to capture the dependencies
+	 * @return The DependencyTemplate for this NEPFormula
+	 */
+	public default DependencyTemplate getDependencyTemplate(
+		DependencyManager depManager)
+	{
+		getDependencies(depManager);
+		return new DependencyTemplate(depManager);
+	}
 }
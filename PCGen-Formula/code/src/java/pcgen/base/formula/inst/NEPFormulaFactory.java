@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A NEPFormulaFactory produces ComplexNEPFormula objects from the String
+ * representation of a formula.
+ *
+ * Since large data sets tend to contain many copies of the same formula (e.g.
+ * "STR/2"), NEPFormulaFactory caches the ComplexNEPFormula produced for each
+ * distinct String. Subsequent requests for an identical String return the
+ * shared ComplexNEPFormula rather than parsing the String again. This avoids
+ * both the parse and retaining a duplicate tree of nodes for each copy of the
+ * formula.
+ *
+ * The cache is bounded: once the number of distinct formulas exceeds the
+ * capacity of the NEPFormulaFactory, the least recently used formula is evicted
+ * (and will be parsed again if requested again).
+ *
+ * A ComplexNEPFormula returned by getFormula is therefore shared by every
+ * caller (and every FormulaManager) which requested an identical String, and
+ * callers must not rely on its identity, or hold state of their own on it. The
+ * ComplexNEPFormula is not immutable: it retains the outcome of validation, the
+ * folded tree and its dependency templates. Each of these is retained for (or
+ * checked against) the inputs and libraries with which it was produced, so
+ * sharing does not change the result of any method of the ComplexNEPFormula.
+ * Sharing a ComplexNEPFormula between FormulaManagers with different libraries
+ * may however cost performance, since only the libraries of the most recent
+ * successful validation have a folded tree.
+ *
+ * A NEPFormulaFactory is thread safe, and so is the retained state of a
+ * ComplexNEPFormula, so a shared ComplexNEPFormula may be validated, analyzed
+ * and resolved from multiple threads.
+ */
+public class NEPFormulaFactory
+{
+
+	/**
+	 * The default number of distinct formulas held by a NEPFormulaFactory.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * The cache of ComplexNEPFormula objects, indexed by the String from which
+	 * they were parsed. Access to this map must be synchronized on the map.
+	 */
+	private final BoundedCache cache;
+
+	/**
+	 * The number of requests to getFormula that were served from the cache.
+	 * Guarded by the cache.
+	 */
+	private long hitCount = 0L;
+
+	/**
+	 * The number of requests to getFormula that required the formula to be
+	 * parsed. Guarded by the cache.
+	 */
+	private long missCount = 0L;
+
+	/**
+	 * Constructs a new NEPFormulaFactory with the default capacity.
+	 */
+	public NEPFormulaFactory()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new NEPFormulaFactory which will cache up to the given
+	 * number of distinct formulas.
+	 *
+	 * @param capacity
+	 *            The maximum number of formulas to be held by the cache of this
+	 *            NEPFormulaFactory
+	 * @throws IllegalArgumentException
+	 *             if the given capacity is less than one
+	 */
+	public NEPFormulaFactory(int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException(
+				"Capacity must be positive, was: " + capacity);
+		}
+		cache = new BoundedCache(capacity);
+	}
+
+	/**
+	 * Returns a ComplexNEPFormula for the given String. If a ComplexNEPFormula
+	 * for an identical String is present in the cache of this
+	 * NEPFormulaFactory, that (shared) ComplexNEPFormula is returned (see the
+	 * class documentation for the contract of a shared ComplexNEPFormula).
+	 *
+	 * Note that the format of a ComplexNEPFormula is not established until it
+	 * is validated (see NEPFormula.isValid), so the same ComplexNEPFormula may
+	 * safely be returned to callers expecting different formats.
+	 *
+	 * @param expression
+	 *            The String representation of the formula to be returned
+	 * @return A ComplexNEPFormula for the given String
+	 * @throws IllegalArgumentException
+	 *             if the given String does not represent a well-structured
+	 *             Formula
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ComplexNEPFormula<T> getFormula(String expression)
+	{
+		Objects.requireNonNull(expression);
+		synchronized (cache)
+		{
+			ComplexNEPFormula<?> formula = cache.get(expression);
+			if (formula != null)
+			{
+				hitCount++;
+				return (ComplexNEPFormula<T>) formula;
+			}
+			missCount++;
+		}
+		//Parse outside of the lock so that threads don't serialize on parsing
+		ComplexNEPFormula<?> parsed = new ComplexNEPFormula<>(expression);
+		synchronized (cache)
+		{
+			ComplexNEPFormula<?> existing = cache.get(expression);
+			if (existing != null)
+			{
+				//Another thread beat us to it, share that one
+				return (ComplexNEPFormula<T>) existing;
+			}
+			cache.put(expression, parsed);
+		}
+		return (ComplexNEPFormula<T>) parsed;
+	}
+
+	/**
+	 * Returns the number of requests to this NEPFormulaFactory that were served
+	 * from the cache.
+	 *
+	 * @return The number of cache hits for this NEPFormulaFactory
+	 */
+	public long getHitCount()
+	{
+		synchronized (cache)
+		{
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Returns the number of requests to this NEPFormulaFactory that were not
+	 * present in the cache (and thus required the formula to be parsed).
+	 *
+	 * @return The number of cache misses for this NEPFormulaFactory
+	 */
+	public long getMissCount()
+	{
+		synchronized (cache)
+		{
+			return missCount;
+		}
+	}
+
+	/**
+	 * Returns the number of formulas currently held in the cache of this
+	 * NEPFormulaFactory.
+	 *
+	 * @return The number of formulas currently held in the cache
+	 */
+	public int size()
+	{
+		synchronized (cache)
+		{
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Evicts all formulas from the cache of this NEPFormulaFactory. The hit and
+	 * miss counts are not reset.
+	 */
+	public void clear()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
+	}
+
+	/**
+	 * A BoundedCache is a LinkedHashMap in access order that evicts the least
+	 * recently used entry once a given capacity is exceeded.
+	 */
+	private static final class BoundedCache
+			extends LinkedHashMap<String, ComplexNEPFormula<?>>
+	{
+		/**
+		 * The serialization version of BoundedCache.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The maximum number of entries held by this BoundedCache.
+		 */
+		private final int capacity;
+
+		private BoundedCache(int capacity)
+		{
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+			Map.Entry<String, ComplexNEPFormula<?>> eldest)
+		{
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.VariableStore;
+import pcgen.base.formula.base.WriteableVariableStore;
+
+/**
+ * OverlayVariableStore is a copy-on-write implementation of the VariableStore interface,
+ * layered over a parent VariableStore.
+ * 
+ * Any value not written to the OverlayVariableStore is read from the parent
+ * VariableStore. Values written to the OverlayVariableStore are held only by the
+ * OverlayVariableStore, so the parent VariableStore is never changed. Constructing an
+ * OverlayVariableStore therefore does not copy the parent VariableStore, and the
+ * OverlayVariableStore holds only the values that have been written to it. It can be
+ * discarded at any time.
+ * 
+ * The parent VariableStore should not be changed while the OverlayVariableStore is in
+ * use, since any value that has not been written to the OverlayVariableStore would then
+ * reflect the change.
+ */
+public class OverlayVariableStore implements WriteableVariableStore
+{
+
+	/**
+	 * The VariableStore from which any value not written to this OverlayVariableStore
+	 * is read.
+	 */
+	private final VariableStore parent;
+
+	/**
+	 * The values written to this OverlayVariableStore.
+	 */
+	private final Map<VariableID<?>, Object> resultsMap =
+			new HashMap<VariableID<?>, Object>();
+
+	/**
+	 * Constructs a new OverlayVariableStore layered over the given VariableStore.
+	 * 
+	 * @param parent
+	 *            The VariableStore from which any value not written to this
+	 *            OverlayVariableStore is read
+	 */
+	public OverlayVariableStore(VariableStore parent)
+	{
+		this.parent = Objects.requireNonNull(parent);
+	}
+
+	/**
+	 * Returns the VariableStore from which any value not written to this
+	 * OverlayVariableStore is read.
+	 * 
+	 * @return The VariableStore over which this OverlayVariableStore is layered
+	 */
+	public VariableStore getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * Returns the value in this OverlayVariableStore for the given VariableID, which is
+	 * the value in the parent VariableStore if no value has been written to this
+	 * OverlayVariableStore for the given VariableID.
+	 * 
+	 * It is not necessary to check containsKey or for put to have been called
+	 * for the given VariableID. Will return null if there is no value stored
+	 * for the given VariableID.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(VariableID<T> varID)
+	{
+		T value = (T) resultsMap.get(varID);
+		return (value == null) ? parent.get(varID) : value;
+	}
+
+	/**
+	 * Returns true if this OverlayVariableStore (or the parent VariableStore) contains
+	 * a value for the given VariableID.
+	 * 
+	 * If this method returns true, then it is guaranteed that the get method
+	 * will not return null.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(VariableID<?> varID)
+	{
+		return resultsMap.containsKey(varID) || parent.containsKey(varID);
+	}
+
+	/**
+	 * Adds the given non-null value to this OverlayVariableStore for the given
+	 * (non-null) VariableID. The parent VariableStore is not changed.
+	 * 
+	 * The value returned is the previous value visible in this OverlayVariableStore,
+	 * which may be the value in the parent VariableStore.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> T put(VariableID<T> varID, T value)
+	{
+		Class<T> varFormat = varID.getVariableFormat();
+		if (!varFormat.isAssignableFrom(value.getClass()))
+		{
+			throw new IllegalArgumentException(
+				"VariableID format misassignment.  Expected: "
+					+ varFormat.getSimpleName() + " but got "
+					+ value.getClass().getSimpleName());
+		}
+		@SuppressWarnings("unchecked")
+		T obj = (T) resultsMap.put(varID, value);
+		return (obj == null) ? parent.get(varID) : obj;
+	}
+
+	/**
+	 * Removes the value written to this OverlayVariableStore for the given VariableID.
+	 * The parent VariableStore is not changed, so any value in the parent VariableStore
+	 * for the given VariableID is visible again.
+	 * 
+	 * The value returned is the value that was written to this OverlayVariableStore.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> T remove(VariableID<T> varID)
+	{
+		@SuppressWarnings("unchecked")
+		T obj = (T) resultsMap.remove(varID);
+		return obj;
+	}
+
+}
@@ -94,11 +94,17 @@ public class SimpleFormulaManager implements FormulaManager
 	}
 	
 	private SimpleFormulaManager(SimpleFormulaManager original, Map<TypedKey<?>, Object> map)
+	{
+		this(original, map, original.resultStore);
+	}
+
+	private SimpleFormulaManager(SimpleFormulaManager original,
+		Map<TypedKey<?>, Object> map, VariableStore resultStore)
 	{
 		this.opLibrary = original.opLibrary;
 		this.varLibrary = original.varLibrary;
 		this.siFactory = original.siFactory;
-		this.resultStore = original.resultStore;
+		this.resultStore = Objects.requireNonNull(resultStore);
 		this.defaultStore = original.defaultStore;
 		this.map.putAll(map);
 	}
@@ -162,6 +168,12 @@ public class SimpleFormulaManager implements FormulaManager
 		return replacement;
 	}
 
+	@Override
+	public FormulaManager getWithResolver(VariableStore resolver)
+	{
+		return new SimpleFormulaManager(this, map, resolver);
+	}
+
 	@Override
 	public <T> T get(TypedKey<T> key)
 	{
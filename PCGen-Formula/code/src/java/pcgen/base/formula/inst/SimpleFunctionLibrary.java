@@ -42,6 +42,12 @@ public class SimpleFunctionLibrary implements FunctionLibrary
 	private final CaseInsensitiveMap<Function> parenMap =
 			new CaseInsensitiveMap<Function>();
 
+	/**
+	 * The revision of this SimpleFunctionLibrary, incremented each time a
+	 * Function is added.
+	 */
+	private volatile int revision;
+
 	/**
 	 * Adds a "paren" function to the SimpleFunctionLibrary.
 	 * 
@@ -68,6 +74,7 @@ public class SimpleFunctionLibrary implements FunctionLibrary
 				"Cannot load two functions of name: " + functionName);
 		}
 		parenMap.put(functionName, function);
+		revision++;
 	}
 
 	/**
@@ -85,4 +92,10 @@ public class SimpleFunctionLibrary implements FunctionLibrary
 	{
 		return parenMap.get(functionName);
 	}
+
+	@Override
+	public int getRevision()
+	{
+		return revision;
+	}
 }
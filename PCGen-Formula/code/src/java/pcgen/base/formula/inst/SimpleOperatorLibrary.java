@@ -17,10 +17,14 @@
  */
 package pcgen.base.formula.inst;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import pcgen.base.formula.base.OperatorAction;
 import pcgen.base.formula.base.OperatorLibrary;
+import pcgen.base.formula.base.ShortCircuitAction;
 import pcgen.base.formula.base.UnaryAction;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
@@ -29,62 +33,187 @@ import pcgen.base.util.HashMapToList;
 /**
  * SimpleOperatorLibrary is a simple implementation of the OperatorLibrary
  * interface.
+ * 
+ * The OperatorAction (or UnaryAction) selected for a given Operator and
+ * argument classes is retained in a dispatch table, so that the available
+ * actions only need to be searched the first time a combination of classes is
+ * encountered. Both evaluation and abstract evaluation (processAbstract) are
+ * served from the same table. The entries for an Operator are discarded when
+ * an action for that Operator is added.
+ * 
+ * An entry found in a dispatch table is used without locking. An action is
+ * added, and a missing entry is searched and stored, while holding the lock on
+ * the HashMapToList of the available actions, so an entry is never computed
+ * from a list of actions that has since changed.
  */
 public class SimpleOperatorLibrary implements OperatorLibrary
 {
 
 	/**
 	 * HashMapToList from the Operators to the available OperatorActions for the
-	 * Operator.
+	 * Operator. Access to this HashMapToList, and modification of
+	 * operatorTable and shortCircuitTable, must be synchronized on this
+	 * HashMapToList.
 	 */
 	private final HashMapToList<Operator, OperatorAction> operatorMTL =
 			new HashMapToList<Operator, OperatorAction>();
 
 	/**
 	 * HashMapToList from the Operators to the available UnaryActions for the
-	 * Operator.
+	 * Operator. Access to this HashMapToList, and modification of unaryTable,
+	 * must be synchronized on this HashMapToList.
 	 */
 	private final HashMapToList<Operator, UnaryAction> unaryMTL =
 			new HashMapToList<Operator, UnaryAction>();
 
+	/**
+	 * The dispatch table for Operators with two arguments, indexed by the
+	 * Operator, then the class of the first argument, then the class of the
+	 * second argument. Contains an entry for every Operator, so the EnumMap
+	 * itself is never modified after construction.
+	 */
+	private final Map<Operator,
+		Map<Class<?>, Map<Class<?>, Dispatch<OperatorAction>>>> operatorTable =
+			new EnumMap<>(Operator.class);
+
+	/**
+	 * The ShortCircuitAction (if any) for Operators with two arguments, indexed
+	 * by the Operator, then the class of the first argument. Contains an entry
+	 * for every Operator, so the EnumMap itself is never modified after
+	 * construction.
+	 */
+	private final Map<Operator, Map<Class<?>, Dispatch<ShortCircuitAction>>>
+		shortCircuitTable = new EnumMap<>(Operator.class);
+
+	/**
+	 * The dispatch table for unary Operators, indexed by the Operator, then the
+	 * class of the argument. Contains an entry for every Operator, so the
+	 * EnumMap itself is never modified after construction.
+	 */
+	private final Map<Operator, Map<Class<?>, Dispatch<UnaryAction>>>
+		unaryTable = new EnumMap<>(Operator.class);
+
+	/**
+	 * The revision of this SimpleOperatorLibrary, incremented each time an
+	 * action is added.
+	 */
+	private volatile int revision;
+
+	/**
+	 * Constructs a new (empty) SimpleOperatorLibrary.
+	 */
+	public SimpleOperatorLibrary()
+	{
+		for (Operator operator : Operator.values())
+		{
+			operatorTable.put(operator, new ConcurrentHashMap<>());
+			shortCircuitTable.put(operator, new ConcurrentHashMap<>());
+			unaryTable.put(operator, new ConcurrentHashMap<>());
+		}
+	}
+
 	@Override
 	public void addAction(OperatorAction action)
 	{
-		operatorMTL.addToListFor(action.getOperator(), action);
+		Operator operator = action.getOperator();
+		synchronized (operatorMTL)
+		{
+			operatorMTL.addToListFor(operator, action);
+			operatorTable.get(operator).clear();
+			shortCircuitTable.get(operator).clear();
+			revision++;
+		}
 	}
 
 	@Override
 	public void addAction(UnaryAction action)
 	{
-		unaryMTL.addToListFor(action.getOperator(), action);
+		Operator operator = action.getOperator();
+		synchronized (unaryMTL)
+		{
+			unaryMTL.addToListFor(operator, action);
+			unaryTable.get(operator).clear();
+			revision++;
+		}
+	}
+
+	@Override
+	public int getRevision()
+	{
+		return revision;
 	}
 
 	@Override
 	public Object evaluate(Operator operator, Object o)
 	{
-		List<UnaryAction> actionList = unaryMTL.getListFor(operator);
-		if (actionList != null)
+		UnaryAction action = getUnaryAction(operator, o.getClass());
+		if (action == null)
 		{
-			for (UnaryAction action : actionList)
-			{
-				/*
-				 * null indicates the UnaryAction can't evaluate these, but we
-				 * should try another in list (don't unconditionally fail
-				 * because another UnaryAction might work)
-				 */
-				if (action.abstractEvaluate(o.getClass()) != null)
-				{
-					return action.evaluate(o);
-				}
-			}
+			throw new IllegalStateException(
+				"Evaluate called on invalid Unary Operator: "
+					+ operator.getSymbol() + " cannot process "
+					+ o.getClass().getSimpleName());
 		}
-		throw new IllegalStateException(
-			"Evaluate called on invalid Unary Operator: " + operator.getSymbol()
-				+ " cannot process " + o.getClass().getSimpleName());
+		return action.evaluate(o);
+	}
+
+	@Override
+	public UnaryAction getUnaryAction(Operator operator, Class<?> format)
+	{
+		return getUnaryDispatch(operator, format).action;
 	}
 
 	@Override
 	public FormatManager<?> processAbstract(Operator operator, Class<?> format)
+	{
+		return getUnaryDispatch(operator, format).format;
+	}
+
+	/**
+	 * Returns the Dispatch for the given unary Operator and argument class,
+	 * searching the available UnaryActions if the Dispatch is not already
+	 * present in the dispatch table.
+	 * 
+	 * @param operator
+	 *            The Operator to be processed
+	 * @param format
+	 *            The class of the argument to the Operator
+	 * @return The Dispatch for the given Operator and argument class
+	 */
+	private Dispatch<UnaryAction> getUnaryDispatch(Operator operator,
+		Class<?> format)
+	{
+		Map<Class<?>, Dispatch<UnaryAction>> table = unaryTable.get(operator);
+		Dispatch<UnaryAction> dispatch =
+				(format == null) ? null : table.get(format);
+		if (dispatch != null)
+		{
+			return dispatch;
+		}
+		synchronized (unaryMTL)
+		{
+			dispatch = findUnaryDispatch(operator, format);
+			if (format != null)
+			{
+				table.put(format, dispatch);
+			}
+			return dispatch;
+		}
+	}
+
+	/**
+	 * Searches the available UnaryActions for the first that can process the
+	 * given Operator and argument class. The caller must hold the lock on
+	 * unaryMTL.
+	 * 
+	 * @param operator
+	 *            The Operator to be processed
+	 * @param format
+	 *            The class of the argument to the Operator
+	 * @return The Dispatch for the given Operator and argument class
+	 */
+	private Dispatch<UnaryAction> findUnaryDispatch(Operator operator,
+		Class<?> format)
 	{
 		List<UnaryAction> actionList = unaryMTL.getListFor(operator);
 		if (actionList != null)
@@ -99,42 +228,104 @@ public class SimpleOperatorLibrary implements OperatorLibrary
 				 */
 				if (result != null)
 				{
-					return result;
+					return new Dispatch<>(action, result);
 				}
 			}
 		}
-		return null;
+		return Dispatch.none();
 	}
 
 	@Override
 	public Object evaluate(Operator operator, Object o1, Object o2)
 	{
-		List<OperatorAction> actionList = operatorMTL.getListFor(operator);
-		if (actionList != null)
+		OperatorAction action =
+				getOperatorAction(operator, o1.getClass(), o2.getClass());
+		if (action == null)
 		{
-			for (OperatorAction action : actionList)
+			throw new IllegalStateException(
+				"Evaluate called on invalid Operator: " + operator.getSymbol()
+					+ " cannot process " + o1.getClass().getSimpleName()
+					+ " and " + o2.getClass().getSimpleName());
+		}
+		return action.evaluate(o1, o2);
+	}
+
+	@Override
+	public OperatorAction getOperatorAction(Operator operator,
+		Class<?> format1, Class<?> format2)
+	{
+		return getOperatorDispatch(operator, format1, format2).action;
+	}
+
+	@Override
+	public FormatManager<?> processAbstract(Operator operator, Class<?> format1,
+		Class<?> format2)
+	{
+		return getOperatorDispatch(operator, format1, format2).format;
+	}
+
+	/**
+	 * Returns the Dispatch for the given Operator and argument classes,
+	 * searching the available OperatorActions if the Dispatch is not already
+	 * present in the dispatch table.
+	 * 
+	 * @param operator
+	 *            The Operator to be processed
+	 * @param format1
+	 *            The class of the first argument to the Operator
+	 * @param format2
+	 *            The class of the second argument to the Operator
+	 * @return The Dispatch for the given Operator and argument classes
+	 */
+	private Dispatch<OperatorAction> getOperatorDispatch(Operator operator,
+		Class<?> format1, Class<?> format2)
+	{
+		boolean retained = (format1 != null) && (format2 != null);
+		Map<Class<?>, Map<Class<?>, Dispatch<OperatorAction>>> rows =
+				operatorTable.get(operator);
+		if (retained)
+		{
+			Map<Class<?>, Dispatch<OperatorAction>> row = rows.get(format1);
+			Dispatch<OperatorAction> dispatch =
+					(row == null) ? null : row.get(format2);
+			if (dispatch != null)
 			{
-				/*
-				 * null indicates the OperatorAction can't evaluate these, but
-				 * we should try another in list (don't unconditionally fail
-				 * because another OperatorAction might work)
-				 */
-				if (action.abstractEvaluate(o1.getClass(),
-					o2.getClass()) != null)
+				return dispatch;
+			}
+		}
+		synchronized (operatorMTL)
+		{
+			Dispatch<OperatorAction> dispatch =
+					findOperatorDispatch(operator, format1, format2);
+			if (retained)
+			{
+				Map<Class<?>, Dispatch<OperatorAction>> row = rows.get(format1);
+				if (row == null)
 				{
-					return action.evaluate(o1, o2);
+					row = new ConcurrentHashMap<>();
+					rows.put(format1, row);
 				}
+				row.put(format2, dispatch);
 			}
+			return dispatch;
 		}
-		throw new IllegalStateException(
-			"Evaluate called on invalid Operator: " + operator.getSymbol()
-				+ " cannot process " + o1.getClass().getSimpleName() + " and "
-				+ o2.getClass().getSimpleName());
 	}
 
-	@Override
-	public FormatManager<?> processAbstract(Operator operator, Class<?> format1,
-		Class<?> format2)
+	/**
+	 * Searches the available OperatorActions for the first that can process
+	 * the given Operator and argument classes. The caller must hold the lock
+	 * on operatorMTL.
+	 * 
+	 * @param operator
+	 *            The Operator to be processed
+	 * @param format1
+	 *            The class of the first argument to the Operator
+	 * @param format2
+	 *            The class of the second argument to the Operator
+	 * @return The Dispatch for the given Operator and argument classes
+	 */
+	private Dispatch<OperatorAction> findOperatorDispatch(Operator operator,
+		Class<?> format1, Class<?> format2)
 	{
 		List<OperatorAction> actionList = operatorMTL.getListFor(operator);
 		if (actionList != null)
@@ -150,11 +341,114 @@ public class SimpleOperatorLibrary implements OperatorLibrary
 				 */
 				if (result != null)
 				{
-					return result;
+					return new Dispatch<>(action, result);
 				}
 			}
 		}
-		return null;
+		return Dispatch.none();
 	}
 
+	@Override
+	public ShortCircuitAction getShortCircuitAction(Operator operator,
+		Class<?> format1)
+	{
+		Map<Class<?>, Dispatch<ShortCircuitAction>> table =
+				shortCircuitTable.get(operator);
+		Dispatch<ShortCircuitAction> dispatch =
+				(format1 == null) ? null : table.get(format1);
+		if (dispatch != null)
+		{
+			return dispatch.action;
+		}
+		synchronized (operatorMTL)
+		{
+			dispatch = findShortCircuitDispatch(operator, format1);
+			if (format1 != null)
+			{
+				table.put(format1, dispatch);
+			}
+			return dispatch.action;
+		}
+	}
+
+	/**
+	 * Searches the available OperatorActions for a ShortCircuitAction that
+	 * would be used for the given Operator and class of the first argument,
+	 * whatever the class of the second argument.
+	 * 
+	 * This is only the case if the ShortCircuitAction is the only
+	 * OperatorAction for the Operator that can process the first argument.
+	 * Since an OperatorAction that is not a ShortCircuitAction can only
+	 * report the classes it processes as a pair, any such OperatorAction for
+	 * the Operator prevents a ShortCircuitAction from being used.
+	 * 
+	 * The caller must hold the lock on operatorMTL.
+	 * 
+	 * @param operator
+	 *            The Operator to be processed
+	 * @param format1
+	 *            The class of the first argument to the Operator
+	 * @return The Dispatch for the given Operator and class of the first
+	 *         argument
+	 */
+	private Dispatch<ShortCircuitAction> findShortCircuitDispatch(
+		Operator operator, Class<?> format1)
+	{
+		ShortCircuitAction found = null;
+		List<OperatorAction> actionList = operatorMTL.getListFor(operator);
+		if (actionList != null)
+		{
+			for (OperatorAction action : actionList)
+			{
+				if (!(action instanceof ShortCircuitAction))
+				{
+					return Dispatch.none();
+				}
+				ShortCircuitAction shortCircuit = (ShortCircuitAction) action;
+				if (shortCircuit.canShortCircuit(format1))
+				{
+					if (found != null)
+					{
+						//The class of the second argument selects the action
+						return Dispatch.none();
+					}
+					found = shortCircuit;
+				}
+			}
+		}
+		return (found == null) ? Dispatch.<ShortCircuitAction>none()
+			: new Dispatch<>(found, null);
+	}
+
+	/**
+	 * A Dispatch is an entry in the dispatch table: the action selected for a
+	 * specific combination of Operator and argument classes, along with the
+	 * FormatManager returned by the abstract evaluation of that action.
+	 * 
+	 * @param <T>
+	 *            The type of action (OperatorAction or UnaryAction)
+	 */
+	private static final class Dispatch<T>
+	{
+		/**
+		 * The Dispatch used when no action can process the argument classes.
+		 */
+		@SuppressWarnings("rawtypes")
+		private static final Dispatch NONE = new Dispatch<>(null, null);
+
+		private final T action;
+		private final FormatManager<?> format;
+
+		private Dispatch(T action, FormatManager<?> format)
+		{
+			this.action = action;
+			this.format = format;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T> Dispatch<T> none()
+		{
+			return NONE;
+		}
+	}
 }
@@ -97,4 +97,17 @@ public class SimpleVariableStore implements WriteableVariableStore
 		return obj;
 	}
 
+	/**
+	 * Removes the value in this SimpleVariableStore for the given VariableID.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> T remove(VariableID<T> varID)
+	{
+		@SuppressWarnings("unchecked")
+		T obj = (T) resultsMap.remove(varID);
+		return obj;
+	}
+
 }
@@ -147,7 +147,7 @@ public class ArgFunction implements Function
 		EvaluationManager manager)
 	{
 		ASTNum node = (ASTNum) args[0];
-		int argNum = Integer.parseInt(node.getText());
+		int argNum = node.getValue().intValue();
 		return visitor.visit((SimpleNode) masterArgs[argNum], manager);
 	}
 
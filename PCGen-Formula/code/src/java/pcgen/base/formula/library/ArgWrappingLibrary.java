@@ -74,4 +74,14 @@ public class ArgWrappingLibrary implements FunctionLibrary
 		}
 		return functionLibrary.getFunction(functionName);
 	}
+
+	/**
+	 * Returns the revision of the underlying FunctionLibrary, since the
+	 * arguments available to the arg(n) function do not change.
+	 */
+	@Override
+	public int getRevision()
+	{
+		return functionLibrary.getRevision();
+	}
 }
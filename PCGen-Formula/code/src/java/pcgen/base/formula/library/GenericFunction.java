@@ -25,14 +25,22 @@ import pcgen.base.formula.base.DependencyManager;
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.FormulaSemantics;
-import pcgen.base.formula.base.Function;
 import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.base.InlinableFunction;
+import pcgen.base.formula.parse.ASTFParen;
+import pcgen.base.formula.parse.ASTNum;
+import pcgen.base.formula.parse.ASTPCGenLookup;
+import pcgen.base.formula.parse.ASTPCGenSingleWord;
+import pcgen.base.formula.parse.ASTParen;
+import pcgen.base.formula.parse.ASTRoot;
+import pcgen.base.formula.parse.FormulaParserTreeConstants;
 import pcgen.base.formula.parse.Node;
 import pcgen.base.formula.parse.SimpleNode;
 import pcgen.base.formula.visitor.DependencyVisitor;
 import pcgen.base.formula.visitor.EvaluateVisitor;
 import pcgen.base.formula.visitor.SemanticsVisitor;
 import pcgen.base.formula.visitor.StaticVisitor;
+import pcgen.base.formula.visitor.TreeRewritingVisitor;
 import pcgen.base.util.FormatManager;
 
 /**
@@ -45,10 +53,20 @@ import pcgen.base.util.FormatManager;
  * first argument to the d20Mod function when it is actually called in data. So
  * it would be called as something like "d20Mod(14)". The resulting effect is a
  * calculation of "floor((14-10)/2)"
+ * 
+ * A GenericFunction is an InlinableFunction: its expansion is the pre-defined
+ * Formula with each arg(n) replaced by the n-th argument.
  */
-public class GenericFunction implements Function
+public class GenericFunction implements InlinableFunction
 {
 
+	/**
+	 * The TreeRewritingVisitor used to replace arg(n) with the arguments to
+	 * this GenericFunction.
+	 */
+	private static final ArgSubstitutingVisitor ARG_SUBSTITUTION =
+			new ArgSubstitutingVisitor();
+
 	/**
 	 * The name for this function (how the user refers to this function).
 	 */
@@ -203,4 +221,65 @@ public class GenericFunction implements Function
 		FormulaManager subFtn = formulaManager.getWith(FormulaManager.FUNCTION, withArgs);
 		visitor.visit(root, manager.getWith(DependencyManager.FMANAGER, subFtn));
 	}
+
+	@Override
+	public Node getInlineExpansion(Node[] args)
+	{
+		Node expansion;
+		try
+		{
+			expansion = (Node) ARG_SUBSTITUTION.visit(root, args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			//An invalid arg(n), so leave it to be reported when evaluated
+			return null;
+		}
+		return (expansion instanceof ASTRoot) ? expansion.jjtGetChild(0)
+			: expansion;
+	}
+
+	/**
+	 * An ArgSubstitutingVisitor replaces each arg(n) in a tree with the n-th
+	 * argument (provided as the data parameter, as an array of Node).
+	 */
+	private static final class ArgSubstitutingVisitor
+			extends TreeRewritingVisitor
+	{
+		@Override
+		protected Node rewrite(SimpleNode node, Object data)
+		{
+			if (!(node instanceof ASTPCGenLookup))
+			{
+				return null;
+			}
+			String name = ((ASTPCGenSingleWord) node.jjtGetChild(0)).getText();
+			Node argNode = node.jjtGetChild(1);
+			if (!"arg".equalsIgnoreCase(name)
+				|| !(argNode instanceof ASTFParen))
+			{
+				return null;
+			}
+			Node[] args = (Node[]) data;
+			Node indexNode = (argNode.jjtGetNumChildren() == 1)
+				? argNode.jjtGetChild(0) : null;
+			Number index = (indexNode instanceof ASTNum)
+				? ((ASTNum) indexNode).getValue() : null;
+			if (!(index instanceof Integer) || (index.intValue() < 0)
+				|| (index.intValue() >= args.length))
+			{
+				throw new IllegalArgumentException(
+					"Invalid argument reference in " + node);
+			}
+			Node arg = args[index.intValue()];
+			if ((arg.jjtGetNumChildren() == 0) || (arg instanceof ASTParen))
+			{
+				return arg;
+			}
+			//Retain the grouping of the argument (e.g. if it is reconstructed)
+			ASTParen paren = new ASTParen(FormulaParserTreeConstants.JJTPAREN);
+			paren.jjtAddChild(arg, 0);
+			return paren;
+		}
+	}
 }
@@ -18,14 +18,14 @@
 package pcgen.base.formula.operator.bool;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.ShortCircuitAction;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * BooleanAnd performs the AND operation on two Boolean values.
  */
-public class BooleanAnd implements OperatorAction
+public class BooleanAnd implements ShortCircuitAction
 {
 
 	/**
@@ -73,4 +73,28 @@ public class BooleanAnd implements OperatorAction
 		return Boolean.valueOf(leftBoolean && rightBoolean);
 	}
 
+	/**
+	 * Returns false if the given argument is false, since the result of a
+	 * logical AND is then known without the second argument.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object shortCircuit(Object left)
+	{
+		return ((Boolean) left).booleanValue() ? null : Boolean.FALSE;
+	}
+
+	/**
+	 * Returns true if the given class is Boolean, since BooleanAnd only processes
+	 * Boolean arguments.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canShortCircuit(Class<?> format1)
+	{
+		return FormatUtilities.BOOLEAN_CLASS.isAssignableFrom(format1);
+	}
+
 }
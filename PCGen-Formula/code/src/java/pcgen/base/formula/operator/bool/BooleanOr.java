@@ -18,14 +18,14 @@
 package pcgen.base.formula.operator.bool;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.ShortCircuitAction;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * BooleanOr performs the OR operation on two Boolean values.
  */
-public class BooleanOr implements OperatorAction
+public class BooleanOr implements ShortCircuitAction
 {
 
 	/**
@@ -73,4 +73,28 @@ public class BooleanOr implements OperatorAction
 		return Boolean.valueOf(leftBoolean || rightBoolean);
 	}
 
+	/**
+	 * Returns true if the given argument is true, since the result of a
+	 * logical OR is then known without the second argument.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object shortCircuit(Object left)
+	{
+		return ((Boolean) left).booleanValue() ? Boolean.TRUE : null;
+	}
+
+	/**
+	 * Returns true if the given class is Boolean, since BooleanOr only processes
+	 * Boolean arguments.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canShortCircuit(Class<?> format1)
+	{
+		return FormatUtilities.BOOLEAN_CLASS.isAssignableFrom(format1);
+	}
+
 }
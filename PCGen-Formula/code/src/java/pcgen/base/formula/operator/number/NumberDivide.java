@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberDivide performs division on two Number values.
  */
-public class NumberDivide implements OperatorAction
+public class NumberDivide implements NumericOperatorAction
 {
 
 	/**
@@ -76,4 +77,33 @@ public class NumberDivide implements OperatorAction
 		return ((Number) left).doubleValue() / ((Number) right).doubleValue();
 	}
 
+	/**
+	 * Performs division on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		if ((right != 0) && (left % right) == 0)
+		{
+			result.setInteger(left / right);
+		}
+		else
+		{
+			result.setDouble((double) left / right);
+		}
+	}
+
+	/**
+	 * Performs division on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.setDouble(left / right);
+	}
+
 }
@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberExp performs an exponent operation on two Number values.
  */
-public class NumberExp implements OperatorAction
+public class NumberExp implements NumericOperatorAction
 {
 
 	/**
@@ -68,4 +69,26 @@ public class NumberExp implements OperatorAction
 			((Number) right).doubleValue());
 	}
 
+	/**
+	 * Performs an exponential calculation on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.setDouble(Math.pow(left, right));
+	}
+
+	/**
+	 * Performs an exponential calculation on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.setDouble(Math.pow(left, right));
+	}
+
 }
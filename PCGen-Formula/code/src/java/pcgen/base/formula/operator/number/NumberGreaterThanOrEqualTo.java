@@ -18,7 +18,8 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
@@ -26,7 +27,7 @@ import pcgen.base.util.FormatManager;
  * NumberGreaterThanOrEqualTo performs the greater than or equal to comparison
  * on two Number values.
  */
-public class NumberGreaterThanOrEqualTo implements OperatorAction
+public class NumberGreaterThanOrEqualTo implements NumericOperatorAction
 {
 
 	/**
@@ -69,4 +70,28 @@ public class NumberGreaterThanOrEqualTo implements OperatorAction
 		return ((Number) left).doubleValue() >= ((Number) right).doubleValue();
 	}
 
+	/**
+	 * Performs a greater than or equal to comparison on the given Integer
+	 * values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left >= right));
+	}
+
+	/**
+	 * Performs a greater than or equal to comparison on the given Number
+	 * values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left >= right));
+	}
+
 }
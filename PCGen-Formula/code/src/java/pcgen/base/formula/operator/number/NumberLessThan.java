@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberLessThan performs the less than comparison on two Number values.
  */
-public class NumberLessThan implements OperatorAction
+public class NumberLessThan implements NumericOperatorAction
 {
 
 	/**
@@ -67,4 +68,26 @@ public class NumberLessThan implements OperatorAction
 		return ((Number) left).doubleValue() < ((Number) right).doubleValue();
 	}
 
+	/**
+	 * Performs a less than comparison on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left < right));
+	}
+
+	/**
+	 * Performs a less than comparison on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left < right));
+	}
+
 }
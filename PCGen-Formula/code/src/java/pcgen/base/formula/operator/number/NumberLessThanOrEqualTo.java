@@ -18,7 +18,8 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
@@ -26,7 +27,7 @@ import pcgen.base.util.FormatManager;
  * NumberLessThanOrEqualTo performs the less than or equal to comparison on two
  * Number values.
  */
-public class NumberLessThanOrEqualTo implements OperatorAction
+public class NumberLessThanOrEqualTo implements NumericOperatorAction
 {
 
 	/**
@@ -69,4 +70,26 @@ public class NumberLessThanOrEqualTo implements OperatorAction
 		return ((Number) left).doubleValue() <= ((Number) right).doubleValue();
 	}
 
+	/**
+	 * Performs a less than or equal to comparison on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left <= right));
+	}
+
+	/**
+	 * Performs a less than or equal to comparison on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left <= right));
+	}
+
 }
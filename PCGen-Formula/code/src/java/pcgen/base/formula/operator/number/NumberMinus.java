@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.UnaryAction;
+import pcgen.base.formula.base.NumericUnaryAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberAdd performs negation of a Number value.
  */
-public class NumberMinus implements UnaryAction
+public class NumberMinus implements NumericUnaryAction
 {
 
 	/**
@@ -65,4 +66,26 @@ public class NumberMinus implements UnaryAction
 		return -((Number) object).doubleValue();
 	}
 
+	/**
+	 * Performs negation on the given Integer value.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int value, NumericValue result)
+	{
+		result.setInteger(-value);
+	}
+
+	/**
+	 * Performs negation on the given Number value.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double value, NumericValue result)
+	{
+		result.setDouble(-value);
+	}
+
 }
@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberMultiply performs multiplication on two Number values.
  */
-public class NumberMultiply implements OperatorAction
+public class NumberMultiply implements NumericOperatorAction
 {
 
 	/**
@@ -79,4 +80,34 @@ public class NumberMultiply implements OperatorAction
 		return lDbl * rDbl;
 	}
 
+	/**
+	 * Performs multiplication on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.setInteger(left * right);
+	}
+
+	/**
+	 * Performs multiplication on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		//Special case, as in evaluate(Object, Object)
+		if ((left == 0.0d) || (right == 0.0d))
+		{
+			result.setInteger(0);
+		}
+		else
+		{
+			result.setDouble(left * right);
+		}
+	}
+
 }
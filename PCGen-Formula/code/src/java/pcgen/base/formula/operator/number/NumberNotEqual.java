@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberNotEqual performs the inequality comparison on two Number values.
  */
-public class NumberNotEqual implements OperatorAction
+public class NumberNotEqual implements NumericOperatorAction
 {
 
 	/**
@@ -68,4 +69,26 @@ public class NumberNotEqual implements OperatorAction
 		return ((Number) left).doubleValue() != ((Number) right).doubleValue();
 	}
 
+	/**
+	 * Performs an inequality comparison on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left != right));
+	}
+
+	/**
+	 * Performs an inequality comparison on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.set(Boolean.valueOf(left != right));
+	}
+
 }
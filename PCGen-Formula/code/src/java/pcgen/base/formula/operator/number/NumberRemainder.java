@@ -18,14 +18,15 @@
 package pcgen.base.formula.operator.number;
 
 import pcgen.base.formatmanager.FormatUtilities;
-import pcgen.base.formula.base.OperatorAction;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.Operator;
 import pcgen.base.util.FormatManager;
 
 /**
  * NumberRemainder performs the remainder operation on two Number values.
  */
-public class NumberRemainder implements OperatorAction
+public class NumberRemainder implements NumericOperatorAction
 {
 
 	/**
@@ -71,4 +72,26 @@ public class NumberRemainder implements OperatorAction
 		return ((Number) left).doubleValue() % ((Number) right).doubleValue();
 	}
 
+	/**
+	 * Performs a remainder calculation on the given Integer values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(int left, int right, NumericValue result)
+	{
+		result.setInteger(left % right);
+	}
+
+	/**
+	 * Performs a remainder calculation on the given Number values.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void evaluate(double left, double right, NumericValue result)
+	{
+		result.setDouble(left % right);
+	}
+
 }
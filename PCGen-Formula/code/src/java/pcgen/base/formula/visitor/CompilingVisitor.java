@@ -0,0 +1,404 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.visitor;
+
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.Function;
+import pcgen.base.formula.evaluator.ArrayEvaluator;
+import pcgen.base.formula.evaluator.ConstantEvaluator;
+import pcgen.base.formula.evaluator.Evaluator;
+import pcgen.base.formula.evaluator.EvaluatorNode;
+import pcgen.base.formula.evaluator.FunctionEvaluator;
+import pcgen.base.formula.evaluator.LogicalEvaluator;
+import pcgen.base.formula.evaluator.NumericAdapter;
+import pcgen.base.formula.evaluator.NumericOperatorEvaluator;
+import pcgen.base.formula.evaluator.NumericUnaryEvaluator;
+import pcgen.base.formula.evaluator.UnaryEvaluator;
+import pcgen.base.formula.evaluator.UnassertedEvaluator;
+import pcgen.base.formula.evaluator.VariableEvaluator;
+import pcgen.base.formula.parse.ASTArithmetic;
+import pcgen.base.formula.parse.ASTEquality;
+import pcgen.base.formula.parse.ASTExpon;
+import pcgen.base.formula.parse.ASTFParen;
+import pcgen.base.formula.parse.ASTGeometric;
+import pcgen.base.formula.parse.ASTLogical;
+import pcgen.base.formula.parse.ASTNum;
+import pcgen.base.formula.parse.ASTPCGenBracket;
+import pcgen.base.formula.parse.ASTPCGenLookup;
+import pcgen.base.formula.parse.ASTPCGenSingleWord;
+import pcgen.base.formula.parse.ASTParen;
+import pcgen.base.formula.parse.ASTQuotString;
+import pcgen.base.formula.parse.ASTRelational;
+import pcgen.base.formula.parse.ASTRoot;
+import pcgen.base.formula.parse.ASTUnaryMinus;
+import pcgen.base.formula.parse.ASTUnaryNot;
+import pcgen.base.formula.parse.FormulaParserVisitor;
+import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.parse.SimpleNode;
+
+/**
+ * CompilingVisitor visits a formula in tree form in order to produce a tree of
+ * Evaluator objects that will calculate the value of the formula.
+ * 
+ * Operators are bound to the OperatorLibrary of the FormulaManager (and to an
+ * OperatorAction once the classes of the arguments are known), functions are
+ * bound to the Function from the FunctionLibrary of the FormulaManager, and
+ * literal values are converted to constants. The resulting tree of Evaluator
+ * objects produces the same result as EvaluateVisitor would produce on the
+ * original tree, as long as it is evaluated with the same FunctionLibrary and
+ * OperatorLibrary.
+ * 
+ * Logical operators are compiled to LogicalEvaluator objects, so that the
+ * second argument is only evaluated when it is required (as in
+ * EvaluateVisitor).
+ * 
+ * Arithmetic, relational and equality operators are compiled to
+ * NumericEvaluator objects, so that Integer and Double intermediate results
+ * are passed between those operators as primitive values.
+ * 
+ * The data parameter to the visit methods should be the FormulaManager
+ * containing the FunctionLibrary and OperatorLibrary to which the formula is to
+ * be bound. Each visit method returns an Evaluator.
+ * 
+ * CompilingVisitor enforces no contract that it will validate a formula. The
+ * behavior of CompilingVisitor is not defined if SemanticsVisitor returned a
+ * FormulaSemantics that indicated isValid() was false.
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+public class CompilingVisitor implements FormulaParserVisitor
+{
+
+	/**
+	 * Visits a SimpleNode. Because this cannot be processed, due to lack of
+	 * knowledge as to the exact type of SimpleNode encountered, the node is
+	 * visited, which - through double dispatch - will result in another method
+	 * on this CompilingVisitor being called.
+	 */
+	@Override
+	public Object visit(SimpleNode node, Object data)
+	{
+		//Delegate to the appropriate class
+		return node.jjtAccept(this, data);
+	}
+
+	/**
+	 * Compiles the (single) child of this node, as a root is simply a
+	 * structural placeholder.
+	 */
+	@Override
+	public Object visit(ASTRoot node, Object data)
+	{
+		return compileSingleChild(node, data);
+	}
+
+	/**
+	 * Compiles the node, based on the Operator in the node.
+	 */
+	@Override
+	public Object visit(ASTLogical node, Object data)
+	{
+		//Evaluated without an asserted format, as in EvaluateVisitor
+		return new UnassertedEvaluator(compileLogicalNode(node, data));
+	}
+
+	/**
+	 * Compiles the node, based on the Operator in the node.
+	 */
+	@Override
+	public Object visit(ASTEquality node, Object data)
+	{
+		return compileRelational(node, data);
+	}
+
+	/**
+	 * Compiles the node, based on the Operator in the node.
+	 */
+	@Override
+	public Object visit(ASTRelational node, Object data)
+	{
+		return compileRelational(node, data);
+	}
+
+	/**
+	 * Compiles the node, based on the Operator in the node.
+	 */
+	@Override
+	public Object visit(ASTArithmetic node, Object data)
+	{
+		return compileNumericNode(node, data);
+	}
+
+	/**
+	 * Compiles the node, based on the Operator in the node.
+	 */
+	@Override
+	public Object visit(ASTGeometric node, Object data)
+	{
+		return compileNumericNode(node, data);
+	}
+
+	/**
+	 * Compiles the node, which is a unary negation.
+	 */
+	@Override
+	public Object visit(ASTUnaryMinus node, Object data)
+	{
+		Evaluator child = (Evaluator) node.jjtGetChild(0).jjtAccept(this, data);
+		FormulaManager formulaManager = (FormulaManager) data;
+		return new NumericUnaryEvaluator(formulaManager.getOperatorLibrary(),
+			node.getOperator(), NumericAdapter.getNumeric(child));
+	}
+
+	/**
+	 * Compiles the node, which is a unary negation.
+	 */
+	@Override
+	public Object visit(ASTUnaryNot node, Object data)
+	{
+		return compileUnaryNode(node, data);
+	}
+
+	/**
+	 * Compiles the exponential node.
+	 */
+	@Override
+	public Object visit(ASTExpon node, Object data)
+	{
+		return compileNumericNode(node, data);
+	}
+
+	/**
+	 * Compiles the (single) child of this node, as grouping parenthesis are
+	 * logically present only to define order of operations (now implicit in the
+	 * tree structure).
+	 */
+	@Override
+	public Object visit(ASTParen node, Object data)
+	{
+		return compileSingleChild(node, data);
+	}
+
+	/**
+	 * Numbers are compiled to a constant.
+	 */
+	@Override
+	public Object visit(ASTNum node, Object data)
+	{
+		return new ConstantEvaluator(node.getValue());
+	}
+
+	/**
+	 * Compiles a function (binding the Function from the FunctionLibrary) or
+	 * an array access encountered in the formula.
+	 */
+	@Override
+	public Object visit(ASTPCGenLookup node, Object data)
+	{
+		FormulaManager formulaManager = (FormulaManager) data;
+		ASTPCGenSingleWord fnode = (ASTPCGenSingleWord) node.jjtGetChild(0);
+		String name = fnode.getText();
+		Node argNode = node.jjtGetChild(1);
+		Node[] args = VisitorUtilities.accumulateArguments(argNode);
+		if (argNode instanceof ASTFParen)
+		{
+			Function function =
+					formulaManager.get(FormulaManager.FUNCTION).getFunction(name);
+			if (function == null)
+			{
+				throw new IllegalStateException(
+					"Compile called on invalid Formula (unknown function: "
+						+ name + ")");
+			}
+			for (int i = 0; i < args.length; i++)
+			{
+				args[i] = compileArgument(args[i], data);
+			}
+			return new FunctionEvaluator(function, args);
+		}
+		else if (argNode instanceof ASTPCGenBracket)
+		{
+			return new ArrayEvaluator(name,
+				(Evaluator) args[0].jjtAccept(this, data));
+		}
+		throw new IllegalStateException("Invalid Formula (unrecognized node: "
+			+ argNode + ")");
+	}
+
+	/**
+	 * Variables are compiled to a VariableEvaluator.
+	 */
+	@Override
+	public Object visit(ASTPCGenSingleWord node, Object data)
+	{
+		return new VariableEvaluator(node.getText());
+	}
+
+	/**
+	 * This type of node is ONLY encountered as part of a function. Since the
+	 * function should have "consumed" these elements and not called back into
+	 * CompilingVisitor, reaching this node in CompilingVisitor indicates either
+	 * an error in the implementation of the formula or a tree structure problem
+	 * in the formula.
+	 */
+	@Override
+	public Object visit(ASTPCGenBracket node, Object data)
+	{
+		//Should be stripped by the function
+		throw new IllegalStateException(
+			"Compile called on invalid Formula (reached Function Brackets)");
+	}
+
+	/**
+	 * This type of node is ONLY encountered as part of a function. Since the
+	 * function should have "consumed" these elements and not called back into
+	 * CompilingVisitor, reaching this node in CompilingVisitor indicates either
+	 * an error in the implementation of the formula or a tree structure problem
+	 * in the formula.
+	 */
+	@Override
+	public Object visit(ASTFParen node, Object data)
+	{
+		//Should be stripped by the function
+		throw new IllegalStateException(
+			"Compile called on invalid Formula (reached Function Parenthesis)");
+	}
+
+	/**
+	 * Quoted Strings are compiled to a constant.
+	 */
+	@Override
+	public Object visit(ASTQuotString node, Object data)
+	{
+		//The quotes are stripped by the parser
+		return new ConstantEvaluator(node.getText());
+	}
+
+	/**
+	 * Compiles an argument to a Function. Simple values (numbers, strings and
+	 * variables) are left as they are, since a Function may rely on the type
+	 * of those nodes. Other arguments are replaced by an EvaluatorNode, so they
+	 * are evaluated in compiled form when evaluated by the Function.
+	 * 
+	 * @param arg
+	 *            The argument to be compiled
+	 * @param data
+	 *            The FormulaManager used in compilation
+	 * @return The node to be provided to the Function as the argument
+	 */
+	private Node compileArgument(Node arg, Object data)
+	{
+		if ((arg instanceof ASTNum) || (arg instanceof ASTQuotString)
+			|| (arg instanceof ASTPCGenSingleWord))
+		{
+			return arg;
+		}
+		return new EvaluatorNode((SimpleNode) arg,
+			(Evaluator) arg.jjtAccept(this, data));
+	}
+
+	/**
+	 * Compiles a logical node. Must have 2 children and a node that contains
+	 * an Operator.
+	 * 
+	 * @param node
+	 *            The node that contains an Operator and has exactly 2 children.
+	 * @param data
+	 *            The FormulaManager used in compilation
+	 * @return The Evaluator for the operation acting on the 2 children
+	 */
+	private Evaluator compileLogicalNode(SimpleNode node, Object data)
+	{
+		Evaluator child1 = (Evaluator) node.jjtGetChild(0).jjtAccept(this, data);
+		Evaluator child2 = (Evaluator) node.jjtGetChild(1).jjtAccept(this, data);
+		FormulaManager formulaManager = (FormulaManager) data;
+		return new LogicalEvaluator(formulaManager.getOperatorLibrary(),
+			node.getOperator(), child1, child2);
+	}
+
+	/**
+	 * Compiles an operator node. Must have 1 child and a node that contains a
+	 * Unary Operator.
+	 * 
+	 * @param node
+	 *            The node that contains a Unary Operator and has exactly 1
+	 *            child.
+	 * @param data
+	 *            The FormulaManager used in compilation
+	 * @return The Evaluator for the operation acting on the child
+	 */
+	private Evaluator compileUnaryNode(SimpleNode node, Object data)
+	{
+		Evaluator child = (Evaluator) node.jjtGetChild(0).jjtAccept(this, data);
+		FormulaManager formulaManager = (FormulaManager) data;
+		return new UnaryEvaluator(formulaManager.getOperatorLibrary(),
+			node.getOperator(), child);
+	}
+
+	/**
+	 * Compiles a single child node. Effectively extracts the child and then
+	 * performs a double-dispatch to get back into one of the methods on this
+	 * CompilingVisitor.
+	 * 
+	 * @param node
+	 *            The node for which the (single) child will be compiled
+	 * @param data
+	 *            The FormulaManager used in compilation
+	 * @return The Evaluator for the child of the given node
+	 */
+	private Object compileSingleChild(SimpleNode node, Object data)
+	{
+		return node.jjtGetChild(0).jjtAccept(this, data);
+	}
+
+	/**
+	 * Compiles a relational node. Must have 2 children and a node that contains
+	 * an Operator.
+	 * 
+	 * @param node
+	 *            The node that contains an Operator and has exactly 2 children.
+	 * @param data
+	 *            The FormulaManager used in compilation
+	 * @return The Evaluator for the operation acting on the 2 children
+	 */
+	private Evaluator compileRelational(SimpleNode node, Object data)
+	{
+		//Evaluated without an asserted format, as in EvaluateVisitor
+		return new UnassertedEvaluator(compileNumericNode(node, data));
+	}
+
+	/**
+	 * Compiles an operator node that (typically) acts on Number values, so
+	 * that Integer and Double values are processed as primitive values. Must
+	 * have 2 children and a node that contains an Operator.
+	 * 
+	 * @param node
+	 *            The node that contains an Operator and has exactly 2 children.
+	 * @param data
+	 *            The FormulaManager used in compilation
+	 * @return The NumericEvaluator for the operation acting on the 2 children
+	 */
+	private Evaluator compileNumericNode(SimpleNode node, Object data)
+	{
+		Evaluator child1 = (Evaluator) node.jjtGetChild(0).jjtAccept(this, data);
+		Evaluator child2 = (Evaluator) node.jjtGetChild(1).jjtAccept(this, data);
+		FormulaManager formulaManager = (FormulaManager) data;
+		return new NumericOperatorEvaluator(formulaManager.getOperatorLibrary(),
+			node.getOperator(), NumericAdapter.getNumeric(child1),
+			NumericAdapter.getNumeric(child2));
+	}
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.visitor;
+
+import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.parse.ASTArithmetic;
+import pcgen.base.formula.parse.ASTEquality;
+import pcgen.base.formula.parse.ASTExpon;
+import pcgen.base.formula.parse.ASTFParen;
+import pcgen.base.formula.parse.ASTGeometric;
+import pcgen.base.formula.parse.ASTLogical;
+import pcgen.base.formula.parse.ASTNum;
+import pcgen.base.formula.parse.ASTPCGenBracket;
+import pcgen.base.formula.parse.ASTPCGenLookup;
+import pcgen.base.formula.parse.ASTPCGenSingleWord;
+import pcgen.base.formula.parse.ASTParen;
+import pcgen.base.formula.parse.ASTQuotString;
+import pcgen.base.formula.parse.ASTRelational;
+import pcgen.base.formula.parse.ASTRoot;
+import pcgen.base.formula.parse.ASTUnaryMinus;
+import pcgen.base.formula.parse.ASTUnaryNot;
+import pcgen.base.formula.parse.FormulaParserTreeConstants;
+import pcgen.base.formula.parse.FormulaParserVisitor;
+import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.parse.SimpleNode;
+
+/**
+ * ConstantFoldingVisitor visits a formula in tree form in order to replace
+ * static portions of the formula with their (precomputed) value.
+ *
+ * For example, "(3*4)+T" will be returned as "12+T", and "MAX(2,5)" will be
+ * returned as "5". Whether a portion of the formula is static is determined by
+ * StaticVisitor, so the conservative contract of StaticVisitor applies here as
+ * well.
+ *
+ * ConstantFoldingVisitor does not modify the tree it visits. Each visit method
+ * returns the node that should replace the visited node. If nothing within the
+ * visited node could be folded, the visited node itself is returned, so
+ * unchanged portions of the tree are shared with the original tree. Otherwise,
+ * a new node is returned.
+ *
+ * Only static values that have a literal representation in a formula (Integer,
+ * Double and String) are folded. A static subtree that produces any other value
+ * (such as "4&lt;6") is left in place, although static subtrees within it are
+ * still folded.
+ *
+ * The data parameter to the visit methods should be an EvaluationManager that
+ * contains the FormulaManager to be used to evaluate the static portions of the
+ * formula. The results of ConstantFoldingVisitor are only valid for use with
+ * the FunctionLibrary and OperatorLibrary used during folding.
+ *
+ * ConstantFoldingVisitor enforces no contract that it will validate a formula.
+ * The behavior of ConstantFoldingVisitor is not defined if SemanticsVisitor
+ * returned a FormulaSemantics that indicated isValid() was false.
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+public class ConstantFoldingVisitor implements FormulaParserVisitor
+{
+
+	/**
+	 * The EvaluateVisitor used to calculate the value of static portions of the
+	 * formula.
+	 */
+	private static final EvaluateVisitor EVALUATE_VISITOR =
+			new EvaluateVisitor();
+
+	/**
+	 * The StaticVisitor used to determine if a portion of the formula is
+	 * static.
+	 */
+	private final StaticVisitor staticVisitor;
+
+	/**
+	 * Constructs a new ConstantFoldingVisitor that will use the given
+	 * FunctionLibrary to determine if functions are static.
+	 *
+	 * @param fl
+	 *            The FunctionLibrary to be used to get functions when they are
+	 *            encountered in a formula
+	 */
+	public ConstantFoldingVisitor(FunctionLibrary fl)
+	{
+		staticVisitor = new StaticVisitor(fl);
+	}
+
+	/**
+	 * Visits a SimpleNode. Because this cannot be processed, due to lack of
+	 * knowledge as to the exact type of SimpleNode encountered, the node is
+	 * visited, which - through double dispatch - will result in another method
+	 * on this ConstantFoldingVisitor being called.
+	 */
+	@Override
+	public Object visit(SimpleNode node, Object data)
+	{
+		//Delegate to the appropriate class
+		return node.jjtAccept(this, data);
+	}
+
+	/**
+	 * Folds the child of this node, as a root is simply a structural
+	 * placeholder.
+	 */
+	@Override
+	public Object visit(ASTRoot node, Object data)
+	{
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTRoot(FormulaParserTreeConstants.JJTROOT), children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the children of the node.
+	 */
+	@Override
+	public Object visit(ASTLogical node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTLogical(FormulaParserTreeConstants.JJTLOGICAL), children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the children of the node.
+	 */
+	@Override
+	public Object visit(ASTEquality node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTEquality(FormulaParserTreeConstants.JJTEQUALITY), children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the children of the node.
+	 */
+	@Override
+	public Object visit(ASTRelational node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTRelational(FormulaParserTreeConstants.JJTRELATIONAL),
+				children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the children of the node.
+	 */
+	@Override
+	public Object visit(ASTArithmetic node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTArithmetic(FormulaParserTreeConstants.JJTARITHMETIC),
+				children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the children of the node.
+	 */
+	@Override
+	public Object visit(ASTGeometric node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTGeometric(FormulaParserTreeConstants.JJTGEOMETRIC),
+				children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the child of the node.
+	 */
+	@Override
+	public Object visit(ASTUnaryMinus node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTUnaryMinus(FormulaParserTreeConstants.JJTUNARYMINUS),
+				children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the child of the node.
+	 */
+	@Override
+	public Object visit(ASTUnaryNot node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTUnaryNot(FormulaParserTreeConstants.JJTUNARYNOT),
+				children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the children of the node.
+	 */
+	@Override
+	public Object visit(ASTExpon node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTExpon(FormulaParserTreeConstants.JJTEXPON), children);
+	}
+
+	/**
+	 * Folds the node if static, otherwise folds the child of the node.
+	 */
+	@Override
+	public Object visit(ASTParen node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTParen(FormulaParserTreeConstants.JJTPAREN), children);
+	}
+
+	/**
+	 * Numbers are already a literal value.
+	 */
+	@Override
+	public Object visit(ASTNum node, Object data)
+	{
+		return node;
+	}
+
+	/**
+	 * Folds the function if static (as defined by the isStatic method of the
+	 * Function), otherwise folds the arguments to the function or the index of
+	 * the array.
+	 */
+	@Override
+	public Object visit(ASTPCGenLookup node, Object data)
+	{
+		SimpleNode folded = foldStatic(node, data);
+		if (folded != null)
+		{
+			return folded;
+		}
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTPCGenLookup(FormulaParserTreeConstants.JJTPCGENLOOKUP),
+				children);
+	}
+
+	/**
+	 * Variables (and function names) cannot be folded.
+	 */
+	@Override
+	public Object visit(ASTPCGenSingleWord node, Object data)
+	{
+		return node;
+	}
+
+	/**
+	 * Folds the index of the array access.
+	 */
+	@Override
+	public Object visit(ASTPCGenBracket node, Object data)
+	{
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTPCGenBracket(FormulaParserTreeConstants.JJTPCGENBRACKET),
+				children);
+	}
+
+	/**
+	 * Folds the arguments to the function.
+	 */
+	@Override
+	public Object visit(ASTFParen node, Object data)
+	{
+		Node[] children = foldChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTFParen(FormulaParserTreeConstants.JJTFPAREN), children);
+	}
+
+	/**
+	 * Strings are already a literal value.
+	 */
+	@Override
+	public Object visit(ASTQuotString node, Object data)
+	{
+		return node;
+	}
+
+	/**
+	 * Returns a literal node containing the value of the given node, if the
+	 * given node is static and the value has a literal representation.
+	 *
+	 * @param node
+	 *            The node to be folded
+	 * @param data
+	 *            The EvaluationManager used to evaluate the node
+	 * @return A literal node containing the value of the given node; null if
+	 *         the given node is not static or the value of the node has no
+	 *         literal representation
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingGenericException")
+	private SimpleNode foldStatic(SimpleNode node, Object data)
+	{
+		if (!((Boolean) staticVisitor.visit(node, null)).booleanValue())
+		{
+			return null;
+		}
+		Object value;
+		try
+		{
+			value = EVALUATE_VISITOR.visit(node, data);
+		}
+		catch (RuntimeException e)
+		{
+			//Leave it in place, so any problem is reported when resolved
+			return null;
+		}
+		if (value == null)
+		{
+			return null;
+		}
+		Class<?> valueClass = value.getClass();
+		/*
+		 * Only exact classes, since EvaluateVisitor must produce an identical
+		 * value (and class) from the literal
+		 */
+		if (valueClass.equals(Integer.class) || valueClass.equals(Double.class))
+		{
+			ASTNum num = new ASTNum(FormulaParserTreeConstants.JJTNUM);
+			num.setToken(value.toString());
+			return num;
+		}
+		if (valueClass.equals(String.class))
+		{
+			ASTQuotString string =
+					new ASTQuotString(FormulaParserTreeConstants.JJTQUOTSTRING);
+			string.setToken((String) value);
+			return string;
+		}
+		return null;
+	}
+
+	/**
+	 * Folds the children of the given node.
+	 *
+	 * @param node
+	 *            The node for which the children should be folded
+	 * @param data
+	 *            The EvaluationManager used to evaluate the children
+	 * @return The folded children of the given node; null if no child of the
+	 *         given node was changed by folding
+	 */
+	private Node[] foldChildren(SimpleNode node, Object data)
+	{
+		int childCount = node.jjtGetNumChildren();
+		Node[] children = new Node[childCount];
+		boolean changed = false;
+		for (int i = 0; i < childCount; i++)
+		{
+			Node child = node.jjtGetChild(i);
+			children[i] = (Node) child.jjtAccept(this, data);
+			changed |= (children[i] != child);
+		}
+		return changed ? children : null;
+	}
+
+	/**
+	 * Loads the given replacement node with the characteristics (Operator and
+	 * text) of the given original node and the given children.
+	 *
+	 * @param original
+	 *            The node being replaced
+	 * @param replacement
+	 *            The node replacing the original node
+	 * @param children
+	 *            The children of the replacement node
+	 * @return The replacement node
+	 */
+	private static SimpleNode rebuild(SimpleNode original,
+		SimpleNode replacement, Node[] children)
+	{
+		replacement.setOperator(original.getOperator());
+		replacement.setToken(original.getText());
+		for (int i = 0; i < children.length; i++)
+		{
+			replacement.jjtAddChild(children[i], i);
+		}
+		return replacement;
+	}
+}
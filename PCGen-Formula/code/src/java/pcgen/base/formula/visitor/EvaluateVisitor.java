@@ -21,10 +21,13 @@ import java.lang.reflect.Array;
 
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaManager;
-import pcgen.base.formula.base.Function;
 import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.base.OperatorAction;
 import pcgen.base.formula.base.OperatorLibrary;
 import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.ShortCircuitAction;
+import pcgen.base.formula.base.UnaryAction;
+import pcgen.base.formula.base.VariableBinding;
 import pcgen.base.formula.base.VariableID;
 import pcgen.base.formula.base.VariableLibrary;
 import pcgen.base.formula.base.VariableStore;
@@ -46,6 +49,7 @@ import pcgen.base.formula.parse.ASTUnaryMinus;
 import pcgen.base.formula.parse.ASTUnaryNot;
 import pcgen.base.formula.parse.FormulaParserVisitor;
 import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.parse.Operator;
 import pcgen.base.formula.parse.SimpleNode;
 import pcgen.base.util.FormatManager;
 
@@ -67,6 +71,19 @@ import pcgen.base.util.FormatManager;
  * Also, a user of EvaluateVisitor should ensure that DependencyVisitor has been
  * called and successfully processed to ensure that evaluation will run without
  * an Exception.
+ * 
+ * For each operator node, EvaluateVisitor retains (as the inline cache of the
+ * node) the OperatorAction or UnaryAction selected by the OperatorLibrary for
+ * the classes of the values last seen by that node. As long as subsequent
+ * evaluations see the same OperatorLibrary and classes, the action is used
+ * directly without consulting the OperatorLibrary. (Just as with
+ * OperatorEvaluator, this relies on the action selected for a given set of
+ * classes not changing once it has been selected.)
+ * 
+ * Logical operators are evaluated from left to right, and the second argument
+ * is not evaluated if the OperatorLibrary provides a ShortCircuitAction for
+ * the class of the first argument (see OperatorLibrary.getShortCircuitAction)
+ * that determines the result from the first argument (e.g. false &amp;&amp; x).
  */
 @SuppressWarnings("PMD.TooManyMethods")
 public class EvaluateVisitor implements FormulaParserVisitor
@@ -97,12 +114,14 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	}
 
 	/**
-	 * Evaluates the node, based on the Operator in the node.
+	 * Evaluates the node, based on the Operator in the node. The second child
+	 * is only evaluated if the result is not determined by the first child
+	 * (see ShortCircuitAction).
 	 */
 	@Override
 	public Object visit(ASTLogical node, Object data)
 	{
-		return evaluateRelational(node, data);
+		return evaluateLogical(node, data);
 	}
 
 	/**
@@ -180,20 +199,13 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	}
 
 	/**
-	 * Returns the contents of the node, which is a numeric value.
+	 * Returns the contents of the node, which is a numeric value (parsed when
+	 * the node was constructed).
 	 */
 	@Override
 	public Object visit(ASTNum node, Object data)
 	{
-		String nodeText = node.getText();
-		try
-		{
-			return Integer.valueOf(nodeText);
-		}
-		catch (NumberFormatException e)
-		{
-			return Double.valueOf(nodeText);
-		}
+		return node.getValue();
 	}
 
 	/**
@@ -202,27 +214,28 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	 * This will decode what function is being called, using the
 	 * FunctionLibrary, and then call evaluate() on the Function, relying on the
 	 * behavior of that method (as defined in the contract of the Function
-	 * interface) to calculate the return value.
+	 * interface) to calculate the return value. The Function is bound to the
+	 * node (see FunctionCallSite), so it is only decoded again if a different
+	 * FunctionLibrary is used.
 	 */
 	@Override
 	public Object visit(ASTPCGenLookup node, Object data)
 	{
 		EvaluationManager manager = (EvaluationManager) data;
-		ASTPCGenSingleWord fnode = (ASTPCGenSingleWord) node.jjtGetChild(0);
-		String name = fnode.getText();
 		Node argNode = node.jjtGetChild(1);
-		Node[] args = VisitorUtilities.accumulateArguments(argNode);
 		if (argNode instanceof ASTFParen)
 		{
 			FunctionLibrary ftnLib = manager.get(EvaluationManager.FMANAGER)
 				.get(FormulaManager.FUNCTION);
-			Function function = ftnLib.getFunction(name);
-			return function.evaluate(this, args, manager);
+			FunctionCallSite site = FunctionCallSite.bind(node, ftnLib);
+			return site.getFunction().evaluate(this, site.getArguments(),
+				manager);
 		}
 		else if (argNode instanceof ASTPCGenBracket)
 		{
-			int index = (Integer) visit((SimpleNode) args[0], data);
-			return Array.get(visitVariable(name, manager), index);
+			ASTPCGenSingleWord fnode = (ASTPCGenSingleWord) node.jjtGetChild(0);
+			int index = (Integer) visit((SimpleNode) argNode.jjtGetChild(0), data);
+			return Array.get(visitVariable(fnode.getText(), manager), index);
 		}
 		throw new IllegalStateException("Invalid Formula (unrecognized node: "
 			+ argNode + ")");
@@ -294,10 +307,81 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	{
 		Object child1result = node.jjtGetChild(0).jjtAccept(this, data);
 		Object child2result = node.jjtGetChild(1).jjtAccept(this, data);
-		EvaluationManager manager = (EvaluationManager) data;
-		OperatorLibrary opLib =
-				manager.get(EvaluationManager.FMANAGER).getOperatorLibrary();
-		return opLib.evaluate(node.getOperator(), child1result, child2result);
+		return evaluateOperation(node, getOperatorLibrary(data), child1result,
+			child2result);
+	}
+
+	/**
+	 * Evaluates a logical node. Must have 2 children and a node that contains
+	 * an Operator. The second child is not evaluated if the OperatorLibrary
+	 * provides a ShortCircuitAction for the class of the first child that
+	 * determines the result from the first child.
+	 * 
+	 * @param node
+	 *            The node that contains an Operator and has exactly 2 children.
+	 * @param data
+	 *            The EvaluationManager used in evaluation
+	 * @return The result of the operation acting on the 2 children
+	 */
+	private Object evaluateLogical(SimpleNode node, Object data)
+	{
+		//Pass in null since we can't assert what each side of the logical expression is
+		EvaluationManager manager = ((EvaluationManager) data)
+			.getWith(EvaluationManager.ASSERTED, null);
+		OperatorLibrary opLib = getOperatorLibrary(manager);
+		Object child1result = node.jjtGetChild(0).jjtAccept(this, manager);
+		ShortCircuitAction shortCircuit = opLib
+			.getShortCircuitAction(node.getOperator(), child1result.getClass());
+		if (shortCircuit != null)
+		{
+			Object result = shortCircuit.shortCircuit(child1result);
+			if (result != null)
+			{
+				return result;
+			}
+		}
+		Object child2result = node.jjtGetChild(1).jjtAccept(this, manager);
+		return evaluateOperation(node, opLib, child1result, child2result);
+	}
+
+	/**
+	 * Evaluates the Operator in the given node on the given arguments.
+	 * 
+	 * @param node
+	 *            The node that contains an Operator
+	 * @param opLib
+	 *            The OperatorLibrary used in evaluation
+	 * @param child1result
+	 *            The first argument to the operation
+	 * @param child2result
+	 *            The second argument to the operation
+	 * @return The result of the operation acting on the given arguments
+	 */
+	private Object evaluateOperation(SimpleNode node, OperatorLibrary opLib,
+		Object child1result, Object child2result)
+	{
+		Class<?> format1 = child1result.getClass();
+		Class<?> format2 = child2result.getClass();
+		Object cached = node.getInlineCache();
+		if (cached instanceof OperatorCache)
+		{
+			OperatorCache cache = (OperatorCache) cached;
+			if ((cache.library == opLib) && (cache.format1 == format1)
+				&& (cache.format2 == format2))
+			{
+				return cache.action.evaluate(child1result, child2result);
+			}
+		}
+		Operator operator = node.getOperator();
+		OperatorAction action =
+				opLib.getOperatorAction(operator, format1, format2);
+		if (action == null)
+		{
+			//Let the OperatorLibrary report the problem
+			return opLib.evaluate(operator, child1result, child2result);
+		}
+		node.setInlineCache(new OperatorCache(opLib, format1, format2, action));
+		return action.evaluate(child1result, child2result);
 	}
 
 	/**
@@ -314,10 +398,39 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	private Object evaluateUnaryNode(SimpleNode node, Object data)
 	{
 		Object result = node.jjtGetChild(0).jjtAccept(this, data);
-		EvaluationManager manager = (EvaluationManager) data;
-		OperatorLibrary opLib =
-				manager.get(EvaluationManager.FMANAGER).getOperatorLibrary();
-		return opLib.evaluate(node.getOperator(), result);
+		OperatorLibrary opLib = getOperatorLibrary(data);
+		Class<?> format = result.getClass();
+		Object cached = node.getInlineCache();
+		if (cached instanceof UnaryCache)
+		{
+			UnaryCache cache = (UnaryCache) cached;
+			if ((cache.library == opLib) && (cache.format == format))
+			{
+				return cache.action.evaluate(result);
+			}
+		}
+		Operator operator = node.getOperator();
+		UnaryAction action = opLib.getUnaryAction(operator, format);
+		if (action == null)
+		{
+			//Let the OperatorLibrary report the problem
+			return opLib.evaluate(operator, result);
+		}
+		node.setInlineCache(new UnaryCache(opLib, format, action));
+		return action.evaluate(result);
+	}
+
+	/**
+	 * Returns the OperatorLibrary from the given EvaluationManager.
+	 * 
+	 * @param data
+	 *            The EvaluationManager used in evaluation
+	 * @return The OperatorLibrary used in evaluation
+	 */
+	private static OperatorLibrary getOperatorLibrary(Object data)
+	{
+		return ((EvaluationManager) data).get(EvaluationManager.FMANAGER)
+			.getOperatorLibrary();
 	}
 
 	/**
@@ -356,6 +469,10 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	/**
 	 * Returns the value for a specific variable.
 	 * 
+	 * If the EvaluationManager contains a VariableBinding that has bound the
+	 * variable in the current ScopeInstance, the value is read directly from
+	 * the VariableBinding.
+	 * 
 	 * @param varName
 	 *            The name of the variable to be evaluated
 	 * @param manager
@@ -365,8 +482,18 @@ public class EvaluateVisitor implements FormulaParserVisitor
 	public Object visitVariable(String varName, EvaluationManager manager)
 	{
 		FormulaManager fm = manager.get(EvaluationManager.FMANAGER);
-		VariableLibrary varLibrary = fm.getFactory();
 		ScopeInstance scopeInst = manager.get(EvaluationManager.INSTANCE);
+		VariableBinding binding = manager.get(EvaluationManager.BINDING);
+		if (binding != null)
+		{
+			Object value =
+					binding.getValue(scopeInst, fm.getResolver(), varName);
+			if (value != null)
+			{
+				return value;
+			}
+		}
+		VariableLibrary varLibrary = fm.getFactory();
 		FormatManager<?> formatManager =
 				varLibrary
 					.getVariableFormat(scopeInst.getLegalScope(), varName);
@@ -393,4 +520,44 @@ public class EvaluateVisitor implements FormulaParserVisitor
 		return fm.getDefault(asserted);
 	}
 
+	/**
+	 * An OperatorCache is the inline cache of an operator node with two
+	 * children: the OperatorAction selected by an OperatorLibrary for a
+	 * specific pair of classes.
+	 */
+	private static final class OperatorCache
+	{
+		private final OperatorLibrary library;
+		private final Class<?> format1;
+		private final Class<?> format2;
+		private final OperatorAction action;
+
+		private OperatorCache(OperatorLibrary library, Class<?> format1,
+			Class<?> format2, OperatorAction action)
+		{
+			this.library = library;
+			this.format1 = format1;
+			this.format2 = format2;
+			this.action = action;
+		}
+	}
+
+	/**
+	 * A UnaryCache is the inline cache of a unary operator node: the
+	 * UnaryAction selected by an OperatorLibrary for a specific class.
+	 */
+	private static final class UnaryCache
+	{
+		private final OperatorLibrary library;
+		private final Class<?> format;
+		private final UnaryAction action;
+
+		private UnaryCache(OperatorLibrary library, Class<?> format,
+			UnaryAction action)
+		{
+			this.library = library;
+			this.format = format;
+			this.action = action;
+		}
+	}
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.visitor;
+
+import pcgen.base.formula.base.Function;
+import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.parse.ASTPCGenLookup;
+import pcgen.base.formula.parse.ASTPCGenSingleWord;
+import pcgen.base.formula.parse.Node;
+
+/**
+ * A FunctionCallSite is the Function (and the array of argument nodes) bound to
+ * a specific function call (ASTPCGenLookup node with an ASTFParen argument node)
+ * in a formula.
+ * 
+ * The FunctionCallSite is resolved once and then stored as the inline cache of
+ * the node, so that repeated visits to the node do not need to look up the
+ * Function by name or gather the arguments again. Since a FunctionLibrary
+ * cannot replace a Function once it has been added, the FunctionCallSite only
+ * needs to be resolved again if a different FunctionLibrary is used.
+ * 
+ * The array of argument nodes is shared by every use of the FunctionCallSite,
+ * and thus must not be modified.
+ */
+final class FunctionCallSite
+{
+
+	/**
+	 * The FunctionLibrary from which the Function was resolved.
+	 */
+	private final FunctionLibrary library;
+
+	/**
+	 * The Function bound to the call site.
+	 */
+	private final Function function;
+
+	/**
+	 * The argument nodes of the call site.
+	 */
+	private final Node[] args;
+
+	private FunctionCallSite(FunctionLibrary library, Function function,
+		Node[] args)
+	{
+		this.library = library;
+		this.function = function;
+		this.args = args;
+	}
+
+	/**
+	 * Returns the Function bound to the call site.
+	 * 
+	 * @return The Function bound to the call site
+	 */
+	Function getFunction()
+	{
+		return function;
+	}
+
+	/**
+	 * Returns the argument nodes of the call site. The returned array is shared
+	 * and must not be modified.
+	 * 
+	 * @return The argument nodes of the call site
+	 */
+	Node[] getArguments()
+	{
+		return args;
+	}
+
+	/**
+	 * Returns the FunctionCallSite for the given function call, as resolved in
+	 * the given FunctionLibrary. If the function call has not been bound, or
+	 * was bound using a different FunctionLibrary, the Function is resolved
+	 * and the resulting FunctionCallSite stored on the node.
+	 * 
+	 * @param node
+	 *            The ASTPCGenLookup node (with an ASTFParen argument node)
+	 *            representing the function call
+	 * @param library
+	 *            The FunctionLibrary used to resolve the Function
+	 * @return The FunctionCallSite for the given function call; null if the
+	 *         FunctionLibrary does not contain the Function
+	 */
+	static FunctionCallSite bind(ASTPCGenLookup node, FunctionLibrary library)
+	{
+		Object cached = node.getInlineCache();
+		if (cached instanceof FunctionCallSite)
+		{
+			FunctionCallSite site = (FunctionCallSite) cached;
+			if (site.library == library)
+			{
+				return site;
+			}
+		}
+		String name = ((ASTPCGenSingleWord) node.jjtGetChild(0)).getText();
+		Function function = library.getFunction(name);
+		if (function == null)
+		{
+			return null;
+		}
+		Node[] args =
+				VisitorUtilities.accumulateArguments(node.jjtGetChild(1));
+		FunctionCallSite site = new FunctionCallSite(library, function, args);
+		node.setInlineCache(site);
+		return site;
+	}
+}
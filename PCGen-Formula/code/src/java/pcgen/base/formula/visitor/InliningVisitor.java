@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.visitor;
+
+import java.util.Objects;
+
+import pcgen.base.formula.base.Function;
+import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.base.InlinableFunction;
+import pcgen.base.formula.parse.ASTFParen;
+import pcgen.base.formula.parse.ASTPCGenLookup;
+import pcgen.base.formula.parse.ASTPCGenSingleWord;
+import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.parse.SimpleNode;
+
+/**
+ * InliningVisitor visits a formula in tree form in order to replace calls to an
+ * InlinableFunction (such as a user-defined function) with the tree of nodes
+ * equivalent to that call.
+ *
+ * For example, if "d20Mod" is defined as "floor((arg(0)-10)/2)", then
+ * "d20Mod(STR)+1" will be returned as "floor((STR-10)/2)+1".
+ *
+ * Calls within the arguments to an InlinableFunction and within the resulting
+ * expansion are also inlined. In order to prevent unbounded growth of the tree
+ * (e.g. from recursive or very large functions), expansions are not inlined
+ * beyond a depth of MAXIMUM_DEPTH, and an expansion is not used if it would
+ * contain more than MAXIMUM_SIZE nodes. A call that is not inlined is left in
+ * place, and is evaluated as a normal function call.
+ *
+ * InliningVisitor does not modify the tree it visits (see
+ * TreeRewritingVisitor). The data parameter to the visit methods should be
+ * null. The results of InliningVisitor are only valid for use with the
+ * FunctionLibrary used during inlining.
+ *
+ * InliningVisitor enforces no contract that it will validate a formula. The
+ * behavior of InliningVisitor is not defined if SemanticsVisitor returned a
+ * FormulaSemantics that indicated isValid() was false.
+ */
+public class InliningVisitor extends TreeRewritingVisitor
+{
+
+	/**
+	 * The maximum depth of nested expansions that will be inlined.
+	 */
+	public static final int MAXIMUM_DEPTH = 8;
+
+	/**
+	 * The maximum number of nodes in an expansion that will be inlined.
+	 */
+	public static final int MAXIMUM_SIZE = 256;
+
+	/**
+	 * The FunctionLibrary used to identify the InlinableFunction objects.
+	 */
+	private final FunctionLibrary library;
+
+	/**
+	 * Constructs a new InliningVisitor which will inline the InlinableFunction
+	 * objects in the given FunctionLibrary.
+	 * 
+	 * @param library
+	 *            The FunctionLibrary used to identify the InlinableFunction
+	 *            objects
+	 */
+	public InliningVisitor(FunctionLibrary library)
+	{
+		this.library = Objects.requireNonNull(library);
+	}
+
+	/**
+	 * Replaces a call to an InlinableFunction with the expansion of that call.
+	 * 
+	 * The data parameter (once within an expansion) is the depth of the
+	 * expansion, as an Integer.
+	 */
+	@Override
+	protected Node rewrite(SimpleNode node, Object data)
+	{
+		if (!(node instanceof ASTPCGenLookup))
+		{
+			return null;
+		}
+		int depth = (data == null) ? 0 : ((Integer) data).intValue();
+		Node argNode = node.jjtGetChild(1);
+		if ((depth >= MAXIMUM_DEPTH) || !(argNode instanceof ASTFParen))
+		{
+			return null;
+		}
+		String name = ((ASTPCGenSingleWord) node.jjtGetChild(0)).getText();
+		Function function = library.getFunction(name);
+		if (!(function instanceof InlinableFunction))
+		{
+			return null;
+		}
+		int argCount = argNode.jjtGetNumChildren();
+		Node[] args = new Node[argCount];
+		for (int i = 0; i < argCount; i++)
+		{
+			args[i] = (Node) argNode.jjtGetChild(i).jjtAccept(this, data);
+		}
+		Node expansion =
+				((InlinableFunction) function).getInlineExpansion(args);
+		if (expansion == null)
+		{
+			return null;
+		}
+		Node result = (Node) expansion.jjtAccept(this, depth + 1);
+		return (countNodes(result, MAXIMUM_SIZE) > MAXIMUM_SIZE) ? null
+			: result;
+	}
+
+	/**
+	 * Counts the nodes in the tree with the given root, stopping once the
+	 * given limit has been exceeded.
+	 * 
+	 * @param node
+	 *            The root of the tree to be counted
+	 * @param limit
+	 *            The count beyond which counting may stop
+	 * @return The number of nodes in the tree, or a number greater than the
+	 *         given limit if the tree is larger than the given limit
+	 */
+	private static int countNodes(Node node, int limit)
+	{
+		int count = 1;
+		int childCount = node.jjtGetNumChildren();
+		for (int i = 0; (i < childCount) && (count <= limit); i++)
+		{
+			count += countNodes(node.jjtGetChild(i), limit - count);
+		}
+		return count;
+	}
+}
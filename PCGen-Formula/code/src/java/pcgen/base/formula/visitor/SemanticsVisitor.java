@@ -22,7 +22,6 @@ import java.util.Arrays;
 import pcgen.base.formatmanager.FormatUtilities;
 import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.FormulaSemantics;
-import pcgen.base.formula.base.Function;
 import pcgen.base.formula.base.FunctionLibrary;
 import pcgen.base.formula.base.LegalScope;
 import pcgen.base.formula.base.OperatorLibrary;
@@ -218,17 +217,13 @@ public class SemanticsVisitor implements FormulaParserVisitor
 			semantics.setInvalid(getInvalidCountReport(node, 0));
 			return null;
 		}
-		try
-		{
-			Double.parseDouble(node.getText());
-			return FormatUtilities.NUMBER_MANAGER;
-		}
-		catch (NumberFormatException e)
+		if (node.getValue() == null)
 		{
 			semantics.setInvalid(node.getClass() + " had invalid number: "
 				+ node.getText());
 			return null;
 		}
+		return FormatUtilities.NUMBER_MANAGER;
 	}
 
 	/**
@@ -271,16 +266,16 @@ public class SemanticsVisitor implements FormulaParserVisitor
 		{
 			FunctionLibrary library = semantics.get(FormulaSemantics.FMANAGER)
 				.get(FormulaManager.FUNCTION);
-			Function function = library.getFunction(name);
-			if (function == null)
+			//Binds the function (and arguments) for later evaluation
+			FunctionCallSite site = FunctionCallSite.bind(node, library);
+			if (site == null)
 			{
 				semantics.setInvalid("Function: " + name
 					+ " was not found (called as: " + name + "(...))");
 				return null;
 			}
-			//Extract arguments from the grouping to give them to the function
-			Node[] args = VisitorUtilities.accumulateArguments(argNode);
-			return function.allowArgs(this, args, semantics);
+			return site.getFunction().allowArgs(this, site.getArguments(),
+				semantics);
 		}
 		else if (argNode instanceof ASTPCGenBracket)
 		{
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.visitor;
+
+import pcgen.base.formula.parse.ASTArithmetic;
+import pcgen.base.formula.parse.ASTEquality;
+import pcgen.base.formula.parse.ASTExpon;
+import pcgen.base.formula.parse.ASTFParen;
+import pcgen.base.formula.parse.ASTGeometric;
+import pcgen.base.formula.parse.ASTLogical;
+import pcgen.base.formula.parse.ASTNum;
+import pcgen.base.formula.parse.ASTPCGenBracket;
+import pcgen.base.formula.parse.ASTPCGenLookup;
+import pcgen.base.formula.parse.ASTPCGenSingleWord;
+import pcgen.base.formula.parse.ASTParen;
+import pcgen.base.formula.parse.ASTQuotString;
+import pcgen.base.formula.parse.ASTRelational;
+import pcgen.base.formula.parse.ASTRoot;
+import pcgen.base.formula.parse.ASTUnaryMinus;
+import pcgen.base.formula.parse.ASTUnaryNot;
+import pcgen.base.formula.parse.FormulaParserTreeConstants;
+import pcgen.base.formula.parse.FormulaParserVisitor;
+import pcgen.base.formula.parse.Node;
+import pcgen.base.formula.parse.SimpleNode;
+
+/**
+ * TreeRewritingVisitor visits a formula in tree form in order to produce a new
+ * tree in which some nodes have been replaced. The nodes to be replaced are
+ * identified by the rewrite method, which is provided by a subclass.
+ *
+ * TreeRewritingVisitor does not modify the tree it visits. Each visit method
+ * returns the node that should replace the visited node. If rewrite returns a
+ * node, that node is used. Otherwise, the children of the visited node are
+ * visited; if none of them was replaced, the visited node itself is returned,
+ * so unchanged portions of the tree are shared with the original tree. If a
+ * child was replaced, a new node (of the same type as the visited node) is
+ * returned.
+ *
+ * The data parameter to the visit methods is passed unchanged to the rewrite
+ * method, so its meaning is defined by the subclass.
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+public abstract class TreeRewritingVisitor implements FormulaParserVisitor
+{
+
+	/**
+	 * Returns the node that should replace the given node, or null if the given
+	 * node should not be replaced (in which case the children of the given node
+	 * are visited).
+	 * 
+	 * @param node
+	 *            The node to be (potentially) replaced
+	 * @param data
+	 *            The data parameter provided to the visit method
+	 * @return The node that should replace the given node, or null if the given
+	 *         node should not be replaced
+	 */
+	protected abstract Node rewrite(SimpleNode node, Object data);
+
+	@Override
+	public Object visit(SimpleNode node, Object data)
+	{
+		//Delegate to the appropriate class
+		return node.jjtAccept(this, data);
+	}
+
+	@Override
+	public Object visit(ASTRoot node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTRoot(FormulaParserTreeConstants.JJTROOT), children);
+	}
+
+	@Override
+	public Object visit(ASTLogical node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTLogical(FormulaParserTreeConstants.JJTLOGICAL), children);
+	}
+
+	@Override
+	public Object visit(ASTEquality node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTEquality(FormulaParserTreeConstants.JJTEQUALITY), children);
+	}
+
+	@Override
+	public Object visit(ASTRelational node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTRelational(FormulaParserTreeConstants.JJTRELATIONAL),
+				children);
+	}
+
+	@Override
+	public Object visit(ASTArithmetic node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTArithmetic(FormulaParserTreeConstants.JJTARITHMETIC),
+				children);
+	}
+
+	@Override
+	public Object visit(ASTGeometric node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTGeometric(FormulaParserTreeConstants.JJTGEOMETRIC),
+				children);
+	}
+
+	@Override
+	public Object visit(ASTUnaryMinus node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTUnaryMinus(FormulaParserTreeConstants.JJTUNARYMINUS),
+				children);
+	}
+
+	@Override
+	public Object visit(ASTUnaryNot node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTUnaryNot(FormulaParserTreeConstants.JJTUNARYNOT), children);
+	}
+
+	@Override
+	public Object visit(ASTExpon node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTExpon(FormulaParserTreeConstants.JJTEXPON), children);
+	}
+
+	@Override
+	public Object visit(ASTParen node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTParen(FormulaParserTreeConstants.JJTPAREN), children);
+	}
+
+	@Override
+	public Object visit(ASTNum node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		return (replacement == null) ? node : replacement;
+	}
+
+	@Override
+	public Object visit(ASTPCGenLookup node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTPCGenLookup(FormulaParserTreeConstants.JJTPCGENLOOKUP),
+				children);
+	}
+
+	@Override
+	public Object visit(ASTPCGenSingleWord node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		return (replacement == null) ? node : replacement;
+	}
+
+	@Override
+	public Object visit(ASTPCGenBracket node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node
+			: rebuild(node,
+				new ASTPCGenBracket(FormulaParserTreeConstants.JJTPCGENBRACKET),
+				children);
+	}
+
+	@Override
+	public Object visit(ASTFParen node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		if (replacement != null)
+		{
+			return replacement;
+		}
+		Node[] children = rewriteChildren(node, data);
+		return (children == null) ? node : rebuild(node,
+			new ASTFParen(FormulaParserTreeConstants.JJTFPAREN), children);
+	}
+
+	@Override
+	public Object visit(ASTQuotString node, Object data)
+	{
+		Node replacement = rewrite(node, data);
+		return (replacement == null) ? node : replacement;
+	}
+
+	/**
+	 * Visits the children of the given node.
+	 * 
+	 * @param node
+	 *            The node for which the children should be visited
+	 * @param data
+	 *            The data parameter provided to the visit method
+	 * @return The (partially replaced) children of the given node, or null if
+	 *         no child of the given node was replaced
+	 */
+	private Node[] rewriteChildren(SimpleNode node, Object data)
+	{
+		int childCount = node.jjtGetNumChildren();
+		Node[] children = new Node[childCount];
+		boolean changed = false;
+		for (int i = 0; i < childCount; i++)
+		{
+			Node child = node.jjtGetChild(i);
+			children[i] = (Node) child.jjtAccept(this, data);
+			changed |= (children[i] != child);
+		}
+		return changed ? children : null;
+	}
+
+	/**
+	 * Loads the given replacement node with the contents of the original node
+	 * and the given children.
+	 * 
+	 * @param original
+	 *            The node being replaced
+	 * @param replacement
+	 *            The (new, empty) node replacing the original node
+	 * @param children
+	 *            The children of the replacement node
+	 * @return The replacement node
+	 */
+	private static SimpleNode rebuild(SimpleNode original,
+		SimpleNode replacement, Node[] children)
+	{
+		replacement.setOperator(original.getOperator());
+		replacement.setToken(original.getText());
+		for (int i = 0; i < children.length; i++)
+		{
+			replacement.jjtAddChild(children[i], i);
+		}
+		return replacement;
+	}
+}
@@ -0,0 +1,1266 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
+import pcgen.base.formula.base.DynamicDependency;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableBinding;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.VariableSlot;
+import pcgen.base.formula.base.WriteableVariableStore;
+import pcgen.base.formula.inst.OverlayVariableStore;
+import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
+import pcgen.base.graph.inst.DirectionalSetMapGraph;
+
+/**
+ * An AbstractSolverManager holds the channels, Modifiers, dependencies and batch of a
+ * SolverManager. Each SolverManager in this package maintains these identically, and
+ * differs only in when (and in what order) the Solver objects are processed after a
+ * change (see solveFrom, solveChildren and commitBatch).
+ *
+ * An AbstractSolverManager may be forked from another AbstractSolverManager (the
+ * parent). A fork reads any channel (with its Solver and VariableSlot) or source that it
+ * has not changed from the parent, and copies it the first time it is changed, so the
+ * parent is never changed by the fork. The VariableBinding of each Modifier in a copied
+ * Solver is rebound to the VariableSlot objects of the fork.
+ *
+ * A fork reads the value of a channel of the parent into a VariableSlot of the fork the
+ * first time it is bound, and relies on the dependencies and Solvers of the parent, so
+ * the parent must not be changed while a fork is in use. A change to the parent may be
+ * partially visible in the fork (or not at all).
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+abstract class AbstractSolverManager implements SolverManager
+{
+
+	/**
+	 * The FormulaManager used by the Solver members of this AbstractSolverManager.
+	 */
+	private final FormulaManager formulaManager;
+
+	/**
+	 * The ManagerFactory to be used to generate visitor managers in this
+	 * AbstractSolverManager.
+	 */
+	private final ManagerFactory managerFactory;
+
+	/**
+	 * The relationship from each VariableID to the Solver calculating the value of the
+	 * VariableID. The Solver is null (and not built) for a VariableID that has only the
+	 * default value.
+	 */
+	private final Map<VariableID<?>, Solver<?>> scopedChannels =
+			new HashMap<VariableID<?>, Solver<?>>();
+
+	/**
+	 * The VariableSlot for each VariableID with a Solver in this AbstractSolverManager.
+	 * Each VariableSlot mirrors the value of the VariableID in the resultStore, and is
+	 * bound (see VariableBinding) to the Modifiers that depend on the VariableID.
+	 */
+	private final Map<VariableID<?>, VariableSlot<?>> slots =
+			new HashMap<VariableID<?>, VariableSlot<?>>();
+
+	/**
+	 * The "summarized" results of the calculation of each Solver.
+	 */
+	private final WriteableVariableStore resultStore;
+
+	/**
+	 * A mathematical graph used to store dependencies between VariableIDs. Since there is
+	 * a 1:1 relationship with the Solver used for a VariableID, this implicitly stores
+	 * the dependencies between the Solvers that are part of this AbstractSolverManager.
+	 */
+	private final DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> dependencies;
+
+	/**
+	 * Detects, as each edge is added to the dependency graph, whether the edge introduces
+	 * a cycle.
+	 */
+	private final CycleDetector cycleDetector;
+
+	/**
+	 * The AbstractSolverManager from which this AbstractSolverManager was forked; null if
+	 * this AbstractSolverManager was not forked.
+	 */
+	private final AbstractSolverManager parent;
+
+	/**
+	 * The SolverFactory to be used to construct the Solver objects that are members of
+	 * this AbstractSolverManager.
+	 */
+	private final SolverFactory solverFactory;
+
+	/**
+	 * The ModifierHandle for each Modifier in this AbstractSolverManager, by the source of
+	 * the Modifier. This allows every Modifier from a source to be removed without
+	 * visiting each channel.
+	 */
+	private final Map<ScopeInstance, Set<ModifierHandle<?>>> sources = new HashMap<>();
+
+	/**
+	 * Returns the VariableSlot of this AbstractSolverManager for a VariableID (see
+	 * localSlot). Used to rebind the entries of a Solver copied from the parent.
+	 */
+	private final Function<VariableID<?>, VariableSlot<?>> slotSource =
+			new Function<VariableID<?>, VariableSlot<?>>()
+			{
+				@Override
+				public VariableSlot<?> apply(VariableID<?> varID)
+				{
+					return localSlot(varID);
+				}
+			};
+
+	/**
+	 * The SolverBatch in progress in this AbstractSolverManager; null if no batch is in
+	 * progress.
+	 */
+	private SolverBatch batch;
+
+	/**
+	 * Constructs a new AbstractSolverManager which will use the given FormulaMananger and
+	 * store results in the given VariableStore.
+	 *
+	 * @param manager
+	 *            The FormulaManager to be used by any Solver in this
+	 *            AbstractSolverManager
+	 * @param managerFactory
+	 *            The ManagerFactory to be used to generate visitor managers in this
+	 *            AbstractSolverManager
+	 * @param solverFactory
+	 *            The SolverFactory used to store Defaults and build Solver objects
+	 * @param resultStore
+	 *            The WriteableVariableStore used to store results of the calculations of
+	 *            the Solver objects within this AbstractSolverManager
+	 */
+	AbstractSolverManager(FormulaManager manager, ManagerFactory managerFactory,
+		SolverFactory solverFactory, WriteableVariableStore resultStore)
+	{
+		this.formulaManager = Objects.requireNonNull(manager);
+		this.managerFactory = Objects.requireNonNull(managerFactory);
+		this.solverFactory = Objects.requireNonNull(solverFactory);
+		this.resultStore = Objects.requireNonNull(resultStore);
+		this.dependencies = new DirectionalSetMapGraph<>();
+		this.cycleDetector = new CycleDetector(dependencies);
+		this.parent = null;
+	}
+
+	/**
+	 * Constructs a new AbstractSolverManager forked from the given AbstractSolverManager,
+	 * which will store results in the given OverlayVariableStore.
+	 *
+	 * @param parent
+	 *            The AbstractSolverManager from which the new AbstractSolverManager is
+	 *            forked
+	 * @param resultStore
+	 *            The OverlayVariableStore (layered over the VariableStore of the given
+	 *            AbstractSolverManager) used to store results of the calculations of the
+	 *            Solver objects within the new AbstractSolverManager
+	 */
+	AbstractSolverManager(AbstractSolverManager parent, OverlayVariableStore resultStore)
+	{
+		this.formulaManager = parent.formulaManager.getWithResolver(resultStore);
+		this.managerFactory = parent.managerFactory;
+		this.solverFactory = parent.solverFactory;
+		this.resultStore = resultStore;
+		this.dependencies = new OverlayGraph(parent.dependencies);
+		this.cycleDetector = new CycleDetector(dependencies, parent.cycleDetector);
+		this.parent = parent;
+	}
+
+	/**
+	 * Returns true if each change made to this AbstractSolverManager while no batch is in
+	 * progress is made in a batch of its own (so the Solvers are processed once the
+	 * change is complete, and the change is rolled back if it fails). Otherwise, a change
+	 * made while no batch is in progress processes the Solvers as it is made.
+	 *
+	 * @return true if each change is made in a batch of its own; false otherwise
+	 */
+	boolean isBatchedImplicitly()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns true if the dependencies in this AbstractSolverManager may contain a cycle.
+	 * If true, an edge is added to the dependency graph without checking for a cycle.
+	 *
+	 * @return true if the dependencies in this AbstractSolverManager may contain a cycle;
+	 *         false otherwise
+	 */
+	boolean permitsCycles()
+	{
+		return false;
+	}
+
+	/**
+	 * Triggers Solvers to be processed, from the given VariableID, after a change to the
+	 * Solver for the given VariableID. If a batch is in progress, the VariableID is
+	 * instead marked dirty in the batch.
+	 *
+	 * @param varID
+	 *            The VariableID as a starting point for triggering Solvers to be
+	 *            processed
+	 */
+	abstract void solveFrom(VariableID<?> varID);
+
+	/*
+	 * Note: This creates a "local" scoped channel that only exists for the item in
+	 * question (item is "in" the VariableID). The key here being that there is the
+	 * ability to have a local variable (e.g. Equipment variable).
+	 */
+	@Override
+	public <T> void createChannel(VariableID<T> varID)
+	{
+		if (!startImplicitBatch())
+		{
+			applyCreateChannel(varID);
+			return;
+		}
+		try
+		{
+			applyCreateChannel(varID);
+		}
+		catch (RuntimeException e)
+		{
+			rollbackBatch();
+			throw e;
+		}
+		commitBatch();
+	}
+
+	@Override
+	public <T> ModifierHandle<T> addModifier(VariableID<T> varID, Modifier<T> modifier,
+		ScopeInstance source)
+	{
+		if (!startImplicitBatch())
+		{
+			return applyAddModifier(varID, modifier, source);
+		}
+		ModifierHandle<T> handle;
+		try
+		{
+			handle = applyAddModifier(varID, modifier, source);
+		}
+		catch (RuntimeException e)
+		{
+			rollbackBatch();
+			throw e;
+		}
+		commitBatch();
+		return handle;
+	}
+
+	@Override
+	public <T> void removeModifier(VariableID<T> varID, Modifier<T> modifier,
+		ScopeInstance source)
+	{
+		if (!startImplicitBatch())
+		{
+			applyRemoveModifier(varID, modifier, source);
+			return;
+		}
+		try
+		{
+			applyRemoveModifier(varID, modifier, source);
+		}
+		catch (RuntimeException e)
+		{
+			rollbackBatch();
+			throw e;
+		}
+		commitBatch();
+	}
+
+	@Override
+	public void removeModifier(ModifierHandle<?> handle)
+	{
+		if (handle == null)
+		{
+			throw new IllegalArgumentException("ModifierHandle cannot be null");
+		}
+		if (!owns(handle))
+		{
+			throw new IllegalArgumentException(
+				"ModifierHandle was not provided by this SolverManager");
+		}
+		if (!startImplicitBatch())
+		{
+			removeHandle(handle);
+			return;
+		}
+		try
+		{
+			removeHandle(handle);
+		}
+		catch (RuntimeException e)
+		{
+			rollbackBatch();
+			throw e;
+		}
+		commitBatch();
+	}
+
+	@Override
+	public void removeFromSource(ScopeInstance source)
+	{
+		if (source == null)
+		{
+			throw new IllegalArgumentException("Source cannot be null");
+		}
+		Set<ModifierHandle<?>> handles = getHandles(source);
+		if (handles == null)
+		{
+			return;
+		}
+		boolean implicit = (batch == null);
+		if (implicit)
+		{
+			//Solve everything affected once, rather than once per Modifier
+			startBatch();
+		}
+		try
+		{
+			for (ModifierHandle<?> handle : new ArrayList<>(handles))
+			{
+				removeHandle(handle);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			if (implicit)
+			{
+				rollbackBatch();
+			}
+			throw e;
+		}
+		if (implicit)
+		{
+			commitBatch();
+		}
+	}
+
+	/**
+	 * Starts a batch for a single change, if each change to this AbstractSolverManager is
+	 * made in a batch of its own (see isBatchedImplicitly) and no batch is in progress.
+	 *
+	 * @return true if a batch was started; false otherwise
+	 */
+	private boolean startImplicitBatch()
+	{
+		if ((batch != null) || !isBatchedImplicitly())
+		{
+			return false;
+		}
+		startBatch();
+		return true;
+	}
+
+	private <T> void applyCreateChannel(VariableID<T> varID)
+	{
+		if (hasChannel(Objects.requireNonNull(varID)))
+		{
+			throw new IllegalArgumentException(
+				"Attempt to recreate local channel: " + varID);
+		}
+		unconditionallyCreateChannel(varID);
+		solveFrom(varID);
+	}
+
+	private <T> ModifierHandle<T> applyAddModifier(VariableID<T> varID,
+		Modifier<T> modifier, ScopeInstance source)
+	{
+		if (varID == null)
+		{
+			throw new IllegalArgumentException("VariableID cannot be null");
+		}
+		if (modifier == null)
+		{
+			throw new IllegalArgumentException("Modifier cannot be null");
+		}
+		if (source == null)
+		{
+			throw new IllegalArgumentException("Source cannot be null");
+		}
+
+		if (!formulaManager.getFactory()
+			.isLegalVariableID(varID.getScope().getLegalScope(), varID.getName()))
+		{
+			/*
+			 * The above check allows the implicit create below for only items within the
+			 * VariableLibrary
+			 */
+			throw new IllegalArgumentException("Request to add Modifier to Solver for "
+				+ varID + " but that channel was never defined");
+		}
+		if (!hasChannel(varID))
+		{
+			//CONSIDER This build is implicit - do we want explicit or implicit?
+			unconditionallyCreateChannel(varID);
+		}
+		//Note: This cast is enforced by the solver during addModifier
+		Solver<T> solver = getSolver(varID);
+		/*
+		 * Now build new edges of things this solver will be dependent upon...
+		 */
+		DependencyTemplate template = getTemplate(varID, modifier, source);
+		Set<VariableID<?>> deps =
+				template.getVariables(formulaManager.getFactory(), source);
+		for (VariableID<?> depID : deps)
+		{
+			ensureSolverExists(depID);
+		}
+		List<DynamicDependency> dynamicDeps =
+				addDependencies(varID, template, source, deps);
+		VariableBinding binding = bind(source, deps);
+		//Cast above effectively enforced here
+		final ModifierHandle<T> handle = new ModifierHandle<>(this, varID, modifier,
+			source, deps, dynamicDeps, solver.addEntry(modifier, source, binding,
+				dynamicDeps.isEmpty() ? deps : null));
+		indexHandle(handle);
+		if (batch != null)
+		{
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					removeEntry(handle);
+				}
+			});
+		}
+		/*
+		 * Solve this solver and anything that requires it (recursively)
+		 */
+		solveFrom(varID);
+		return handle;
+	}
+
+	/**
+	 * Adds the edges of the dependency graph for a Modifier (with the given
+	 * DependencyTemplate) from the given source, which modifies the given VariableID.
+	 * Each of the given VariableIDs already has a channel in this AbstractSolverManager.
+	 *
+	 * @param varID
+	 *            The VariableID modified by the Modifier
+	 * @param template
+	 *            The DependencyTemplate of the Modifier
+	 * @param source
+	 *            The ScopeInstance in which the Modifier is evaluated
+	 * @param deps
+	 *            The VariableIDs upon which the Modifier depends
+	 * @return The DynamicDependency objects of the Modifier, which are not followed by
+	 *         this AbstractSolverManager (and are thus empty)
+	 * @throws IllegalStateException
+	 *             if no batch is in progress and a dependency would introduce a cycle
+	 */
+	List<DynamicDependency> addDependencies(VariableID<?> varID,
+		DependencyTemplate template, ScopeInstance source, Set<VariableID<?>> deps)
+	{
+		if (batch == null)
+		{
+			//Report a cycle before any dependency is added
+			checkCycles(varID, deps);
+		}
+		for (VariableID<?> depID : deps)
+		{
+			/*
+			 * Better to use depID here rather than Solver: (1) No order of operations
+			 * risk (2) Process can still write to cache knowing ID
+			 */
+			@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+			DefaultDirectionalGraphEdge<VariableID<?>> edge =
+					new DefaultDirectionalGraphEdge<VariableID<?>>(depID, varID);
+			addEdge(edge);
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns the DependencyTemplate for the given Modifier, which modifies the given
+	 * VariableID, as captured from the given source. A Modifier which contains a formula
+	 * may return a template retained by that formula (see
+	 * Modifier.getDependencyTemplate), so this does not retain the template itself.
+	 *
+	 * @param varID
+	 *            The VariableID modified by the given Modifier
+	 * @param modifier
+	 *            The Modifier for which the DependencyTemplate should be returned
+	 * @param source
+	 *            The ScopeInstance in which the Modifier is evaluated
+	 * @return The DependencyTemplate for the given Modifier
+	 */
+	private DependencyTemplate getTemplate(VariableID<?> varID, Modifier<?> modifier,
+		ScopeInstance source)
+	{
+		Class<?> assertedFormat = varID.getFormatManager().getManagedClass();
+		return modifier
+			.getDependencyTemplate(generateDependencyManager(source, assertedFormat));
+	}
+
+	/**
+	 * Returns the DependencyManager used to capture the dependencies of a Modifier
+	 * evaluated in the given source.
+	 *
+	 * @param source
+	 *            The ScopeInstance in which the Modifier is evaluated
+	 * @param assertedFormat
+	 *            The format (class) asserted for the result of the Modifier
+	 * @return The DependencyManager used to capture the dependencies of a Modifier
+	 */
+	DependencyManager generateDependencyManager(ScopeInstance source,
+		Class<?> assertedFormat)
+	{
+		return managerFactory.generateDependencyManager(formulaManager, source,
+			assertedFormat);
+	}
+
+	/**
+	 * Returns a VariableBinding of the given VariableIDs (on which a Modifier from the
+	 * given source depends) to their VariableSlot objects. Each VariableID must already
+	 * have a channel in this AbstractSolverManager.
+	 *
+	 * @param source
+	 *            The ScopeInstance in which the Modifier is evaluated
+	 * @param deps
+	 *            The VariableIDs on which the Modifier depends
+	 * @return A VariableBinding of the given VariableIDs to their VariableSlot objects
+	 */
+	private VariableBinding bind(ScopeInstance source, Set<VariableID<?>> deps)
+	{
+		List<VariableSlot<?>> slotList = new ArrayList<>(deps.size());
+		for (VariableID<?> depID : deps)
+		{
+			slotList.add(localSlot(depID));
+		}
+		return new VariableBinding(formulaManager.getFactory(), source, resultStore,
+			slotList);
+	}
+
+	private void ensureSolverExists(VariableID<?> varID)
+	{
+		if (!hasChannel(varID))
+		{
+			unconditionallyCreateChannel(varID);
+			solveFrom(varID);
+		}
+	}
+
+	private <T> void unconditionallyCreateChannel(final VariableID<T> varID)
+	{
+		//No Solver is built until a Modifier is added
+		scopedChannels.put(varID, null);
+		slots.put(varID, new VariableSlot<>(varID));
+		dependencies.addNode(varID);
+		if (batch != null)
+		{
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					scopedChannels.remove(varID);
+					slots.remove(varID);
+					dependencies.removeNode(varID);
+					cycleDetector.nodeRemoved(varID);
+					if (resultStore.containsKey(varID))
+					{
+						//A failed commit may have solved the channel
+						resultStore.remove(varID);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the Solver for the given VariableID, building the Solver if the channel for
+	 * the VariableID has only the default value. The channel must already exist in this
+	 * AbstractSolverManager.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the given VariableID
+	 * @param varID
+	 *            The VariableID for which the Solver should be returned
+	 * @return The Solver for the given VariableID
+	 */
+	private <T> Solver<T> getSolver(VariableID<T> varID)
+	{
+		Solver<T> solver = localSolver(varID);
+		if (solver == null)
+		{
+			solver = solverFactory.getSolver(varID.getFormatManager());
+			scopedChannels.put(varID, solver);
+		}
+		return solver;
+	}
+
+	/**
+	 * Returns true if a channel exists for the given VariableID in this
+	 * AbstractSolverManager (including a channel of the parent, if this
+	 * AbstractSolverManager was forked).
+	 *
+	 * @param varID
+	 *            The VariableID to be checked
+	 * @return true if a channel exists for the given VariableID; false otherwise
+	 */
+	boolean hasChannel(VariableID<?> varID)
+	{
+		return scopedChannels.containsKey(varID)
+			|| ((parent != null) && parent.hasChannel(varID));
+	}
+
+	/**
+	 * Returns the Solver for the given VariableID, which may be the Solver of the parent
+	 * (if this AbstractSolverManager was forked). The returned Solver must therefore not
+	 * be changed (or processed, unless the Solver does not need an update).
+	 *
+	 * @param varID
+	 *            The VariableID for which the Solver should be returned
+	 * @return The Solver for the given VariableID; null if the channel for the
+	 *         VariableID has only the default value (or does not exist)
+	 */
+	private Solver<?> peekSolver(VariableID<?> varID)
+	{
+		if ((parent == null) || scopedChannels.containsKey(varID))
+		{
+			return scopedChannels.get(varID);
+		}
+		return parent.peekSolver(varID);
+	}
+
+	/**
+	 * Returns the Solver for the given VariableID, which may be changed (or processed).
+	 * If this AbstractSolverManager was forked, the Solver of the parent is copied the
+	 * first time it is returned. The channel must already exist in this
+	 * AbstractSolverManager.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the given VariableID
+	 * @param varID
+	 *            The VariableID for which the Solver should be returned
+	 * @return The Solver for the given VariableID; null if the channel for the
+	 *         VariableID has only the default value
+	 */
+	<T> Solver<T> localSolver(VariableID<T> varID)
+	{
+		if ((parent != null) && !scopedChannels.containsKey(varID))
+		{
+			@SuppressWarnings("unchecked")
+			Solver<T> inherited = (Solver<T>) parent.peekSolver(varID);
+			scopedChannels.put(varID,
+				(inherited == null) ? null : inherited.copy(resultStore, slotSource));
+		}
+		@SuppressWarnings("unchecked")
+		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
+		return solver;
+	}
+
+	/**
+	 * Returns the VariableSlot for the given VariableID, which mirrors the value in the
+	 * resultStore of this AbstractSolverManager. If this AbstractSolverManager was
+	 * forked, a VariableSlot is built the first time it is returned for a channel of the
+	 * parent. The channel must already exist in this AbstractSolverManager.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the given VariableID
+	 * @param varID
+	 *            The VariableID for which the VariableSlot should be returned
+	 * @return The VariableSlot for the given VariableID
+	 */
+	private <T> VariableSlot<T> localSlot(VariableID<T> varID)
+	{
+		@SuppressWarnings("unchecked")
+		VariableSlot<T> slot = (VariableSlot<T>) slots.get(varID);
+		if (slot == null)
+		{
+			slot = new VariableSlot<>(varID);
+			slot.setValue(resultStore.get(varID));
+			slots.put(varID, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns true if the given ModifierHandle was returned by this AbstractSolverManager
+	 * (or by the parent, if this AbstractSolverManager was forked).
+	 *
+	 * @param handle
+	 *            The ModifierHandle to be checked
+	 * @return true if the given ModifierHandle was returned by this AbstractSolverManager
+	 *         (or the parent); false otherwise
+	 */
+	private boolean owns(ModifierHandle<?> handle)
+	{
+		return handle.isOwnedBy(this) || ((parent != null) && parent.owns(handle));
+	}
+
+	/**
+	 * Returns the ModifierHandle for the given Modifier (with the given source) on the
+	 * given VariableID; null if there is no such Modifier in this AbstractSolverManager.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the given VariableID
+	 * @param varID
+	 *            The VariableID modified by the Modifier
+	 * @param modifier
+	 *            The Modifier for which the ModifierHandle should be returned
+	 * @param source
+	 *            The source of the Modifier
+	 * @return The ModifierHandle for the given Modifier (with the given source) on the
+	 *         given VariableID
+	 */
+	private <T> ModifierHandle<T> findHandle(VariableID<T> varID, Modifier<T> modifier,
+		ScopeInstance source)
+	{
+		Set<ModifierHandle<?>> handles = getHandles(source);
+		if (handles != null)
+		{
+			for (ModifierHandle<?> handle : handles)
+			{
+				if (handle.getVariableID().equals(varID)
+					&& handle.getModifier().equals(modifier))
+				{
+					@SuppressWarnings("unchecked")
+					ModifierHandle<T> found = (ModifierHandle<T>) handle;
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the given ModifierHandle to the index of ModifierHandle objects by source.
+	 *
+	 * @param handle
+	 *            The ModifierHandle to be added to the index
+	 */
+	private void indexHandle(ModifierHandle<?> handle)
+	{
+		localHandles(handle.getSource()).add(handle);
+	}
+
+	/**
+	 * Removes the given ModifierHandle from the index of ModifierHandle objects by
+	 * source.
+	 *
+	 * @param handle
+	 *            The ModifierHandle to be removed from the index
+	 */
+	private void unindexHandle(ModifierHandle<?> handle)
+	{
+		Set<ModifierHandle<?>> handles = localHandles(handle.getSource());
+		handles.remove(handle);
+		if (handles.isEmpty() && (parent == null))
+		{
+			//A fork retains the empty Set, since it hides the Set of the parent
+			sources.remove(handle.getSource());
+		}
+	}
+
+	/**
+	 * Returns the ModifierHandle objects for the given source, which may be those of the
+	 * parent (if this AbstractSolverManager was forked). The returned Set must therefore
+	 * not be changed.
+	 *
+	 * @param source
+	 *            The source for which the ModifierHandle objects should be returned
+	 * @return The ModifierHandle objects for the given source; null if there are none
+	 */
+	private Set<ModifierHandle<?>> getHandles(ScopeInstance source)
+	{
+		if ((parent == null) || sources.containsKey(source))
+		{
+			return sources.get(source);
+		}
+		return parent.getHandles(source);
+	}
+
+	/**
+	 * Returns the ModifierHandle objects for the given source, which may be changed. If
+	 * this AbstractSolverManager was forked, the ModifierHandle objects of the parent are
+	 * copied the first time they are returned.
+	 *
+	 * @param source
+	 *            The source for which the ModifierHandle objects should be returned
+	 * @return The ModifierHandle objects for the given source
+	 */
+	private Set<ModifierHandle<?>> localHandles(ScopeInstance source)
+	{
+		Set<ModifierHandle<?>> handles = sources.get(source);
+		if (handles == null)
+		{
+			Set<ModifierHandle<?>> inherited =
+					(parent == null) ? null : parent.getHandles(source);
+			handles = (inherited == null) ? new LinkedHashSet<ModifierHandle<?>>()
+				: new LinkedHashSet<>(inherited);
+			sources.put(source, handles);
+		}
+		return handles;
+	}
+
+	/**
+	 * Removes the entry of the given ModifierHandle from the Solver for the VariableID of
+	 * the ModifierHandle. The Solver is discarded if only the default value remains.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the VariableID of the given
+	 *            ModifierHandle
+	 * @param handle
+	 *            The ModifierHandle for which the entry should be removed
+	 * @return The entry which was removed from the Solver (see Solver.takeEntry); null
+	 *         if the Modifier had already been removed
+	 */
+	private <T> Solver.ModInfo<T> removeEntry(ModifierHandle<T> handle)
+	{
+		VariableID<T> varID = handle.getVariableID();
+		Solver<T> solver = localSolver(varID);
+		Solver.ModInfo<T> removed = ((solver == null) || handle.isRemoved()) ? null
+			: solver.takeEntry(handle.getEntry());
+		if (handle.isOwnedBy(this))
+		{
+			//A ModifierHandle of the parent is never changed by a fork
+			handle.setEntry(null);
+		}
+		unindexHandle(handle);
+		if ((removed != null) && solver.isEmpty())
+		{
+			scopedChannels.put(varID, null);
+		}
+		return removed;
+	}
+
+	/**
+	 * Checks that making the given VariableID dependent upon the given VariableIDs would
+	 * not introduce a cycle into the dependencies between VariableIDs.
+	 *
+	 * @param varID
+	 *            The VariableID that would depend upon the given VariableIDs
+	 * @param deps
+	 *            The VariableIDs upon which the given VariableID would depend
+	 * @throws IllegalStateException
+	 *             if a cycle would be introduced
+	 */
+	void checkCycles(VariableID<?> varID, Collection<VariableID<?>> deps)
+	{
+		for (VariableID<?> depID : deps)
+		{
+			List<VariableID<?>> cycle = cycleDetector.findCycle(depID, varID);
+			if (cycle != null)
+			{
+				throw new IllegalStateException(
+					"Infinite Loop in Variable Processing: " + cycle);
+			}
+		}
+	}
+
+	/**
+	 * Adds the given edge to the dependency graph, recording the addition if a batch is
+	 * in progress.
+	 *
+	 * If the edge introduces a cycle while a batch is in progress, the cycle is recorded
+	 * in the batch and reported when the batch is committed.
+	 *
+	 * @param edge
+	 *            The edge to be added to the dependency graph
+	 * @throws IllegalStateException
+	 *             if no batch is in progress and the edge would introduce a cycle
+	 */
+	void addEdge(final DefaultDirectionalGraphEdge<VariableID<?>> edge)
+	{
+		if (!permitsCycles() && ((batch == null) || (batch.getCycle() == null)))
+		{
+			List<VariableID<?>> cycle =
+					cycleDetector.edgeAdded(edge.getNodeAt(0), edge.getNodeAt(1));
+			if (cycle != null)
+			{
+				if (batch == null)
+				{
+					throw new IllegalStateException(
+						"Infinite Loop in Variable Processing: " + cycle);
+				}
+				//Reported (and rolled back) when the batch is committed
+				batch.cycleFound(cycle);
+			}
+		}
+		dependencies.addEdge(edge);
+		if (batch != null)
+		{
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					dependencies.removeEdge(edge);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Removes the given edge from the dependency graph, recording the removal if a batch
+	 * is in progress.
+	 *
+	 * @param edge
+	 *            The edge to be removed from the dependency graph
+	 */
+	void removeEdge(final DefaultDirectionalGraphEdge<VariableID<?>> edge)
+	{
+		dependencies.removeEdge(edge);
+		if (batch != null)
+		{
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					//The state before the removal is restored, so there is no cycle
+					dependencies.addEdge(edge);
+					if (!permitsCycles())
+					{
+						cycleDetector.edgeAdded(edge.getNodeAt(0), edge.getNodeAt(1));
+					}
+				}
+			});
+		}
+	}
+
+	private <T> void applyRemoveModifier(VariableID<T> varID, Modifier<T> modifier,
+		ScopeInstance source)
+	{
+		if (varID == null)
+		{
+			throw new IllegalArgumentException("VariableID cannot be null");
+		}
+		if (modifier == null)
+		{
+			throw new IllegalArgumentException("Modifier cannot be null");
+		}
+		if (source == null)
+		{
+			throw new IllegalArgumentException("Source cannot be null");
+		}
+		if (!hasChannel(varID))
+		{
+			throw new IllegalArgumentException("Request to remove Modifier to Solver for "
+				+ varID + " but that channel was never defined");
+		}
+		ModifierHandle<T> handle = findHandle(varID, modifier, source);
+		if (handle != null)
+		{
+			removeHandle(handle);
+		}
+	}
+
+	/**
+	 * Removes the Modifier identified by the given ModifierHandle, using the dependencies
+	 * recorded in the ModifierHandle.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the VariableID of the given
+	 *            ModifierHandle
+	 * @param handle
+	 *            The ModifierHandle identifying the Modifier to be removed
+	 */
+	private <T> void removeHandle(final ModifierHandle<T> handle)
+	{
+		final Solver.ModInfo<T> entry = handle.getEntry();
+		final Solver.ModInfo<T> removed = removeEntry(handle);
+		if (removed == null)
+		{
+			return;
+		}
+		final VariableID<T> varID = handle.getVariableID();
+		if (batch != null)
+		{
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					getSolver(varID).insertEntry(removed);
+					if (handle.isOwnedBy(AbstractSolverManager.this))
+					{
+						handle.setEntry(entry);
+					}
+					indexHandle(handle);
+				}
+			});
+		}
+		removeDependencies(handle);
+		solveFrom(varID);
+	}
+
+	/**
+	 * Removes the edges of the dependency graph for the Modifier identified by the given
+	 * ModifierHandle.
+	 *
+	 * @param handle
+	 *            The ModifierHandle identifying the Modifier for which the edges should
+	 *            be removed
+	 * @throws IllegalStateException
+	 *             if the dependency graph does not contain an edge for each dependency
+	 *             of the Modifier
+	 */
+	void removeDependencies(ModifierHandle<?> handle)
+	{
+		VariableID<?> varID = handle.getVariableID();
+		Set<VariableID<?>> deps = new HashSet<>(handle.getDependencies());
+		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : dependencies
+			.getAdjacentEdges(varID))
+		{
+			if ((edge.getNodeAt(1) == varID) && deps.remove(edge.getNodeAt(0)))
+			{
+				removeEdge(edge);
+			}
+		}
+		if (!deps.isEmpty())
+		{
+			throw new IllegalStateException("Dependency graph for " + varID
+				+ " was missing the dependencies: " + deps);
+		}
+	}
+
+	@Override
+	public void startBatch()
+	{
+		if (batch != null)
+		{
+			throw new IllegalStateException(
+				"Cannot start a batch: a batch is already in progress");
+		}
+		batch = new SolverBatch();
+	}
+
+	@Override
+	public void rollbackBatch()
+	{
+		endBatch().rollback();
+	}
+
+	/**
+	 * Ends the batch in progress in this AbstractSolverManager.
+	 *
+	 * @return The SolverBatch that was in progress
+	 * @throws IllegalStateException
+	 *             if no batch is in progress
+	 */
+	SolverBatch endBatch()
+	{
+		SolverBatch ended = batch;
+		if (ended == null)
+		{
+			throw new IllegalStateException("No batch is in progress");
+		}
+		batch = null;
+		return ended;
+	}
+
+	/**
+	 * Triggers Solvers to be processed, from the given VariableID. When the Solvers are
+	 * processed depends upon the SolverManager.
+	 *
+	 * The Solver for the given VariableID processes all of its Modifiers, since a value
+	 * they read may have changed without the change being known to this SolverManager.
+	 *
+	 * @param varID
+	 *            The VariableID as a starting point for triggering Solvers to be
+	 *            processed
+	 */
+	public void solveFromNode(VariableID<?> varID)
+	{
+		//Only copy a Solver of the parent if it exists
+		if (peekSolver(varID) != null)
+		{
+			localSolver(varID).invalidateAll();
+		}
+		solveFrom(varID);
+	}
+
+	/**
+	 * Informs the Solvers that depend upon the given VariableID that the value of the
+	 * given VariableID has changed.
+	 *
+	 * @param varID
+	 *            The VariableID that has changed value
+	 */
+	void notifyChildren(VariableID<?> varID)
+	{
+		for (VariableID<?> child : DependencyOrder.getChildren(dependencies, varID))
+		{
+			//Only copy a Solver of the parent if the Solver is invalidated
+			Solver<?> solver = peekSolver(child);
+			if ((solver != null) && ((parent == null) || solver.isAffectedBy(varID)))
+			{
+				localSolver(child).dependencyChanged(varID);
+			}
+		}
+	}
+
+	/**
+	 * Processes a single Solver represented by the given VariableID. Returns true if the
+	 * value of the Variable calculated by the Solver has changed due to this processing.
+	 *
+	 * @param <T>
+	 *            The format (class) of object contained by the given VariableID
+	 * @param varID
+	 *            The VariableID for which the given Solver should be processed.
+	 *
+	 * @return true if the value of the Variable calculated by the Solver has changed due
+	 *         to this processing; false otherwise
+	 */
+	<T> boolean processSolver(VariableID<T> varID)
+	{
+		@SuppressWarnings("unchecked")
+		Solver<T> solver = (Solver<T>) peekSolver(varID);
+		if ((solver != null) && solver.needsUpdate())
+		{
+			//Processing changes the Solver, so a Solver of the parent must be copied
+			solver = localSolver(varID);
+		}
+		T newValue;
+		if (solver == null)
+		{
+			//Only the default value
+			newValue = solverFactory.getDefault(varID.getVariableFormat());
+		}
+		else
+		{
+			EvaluationManager evalManager = managerFactory
+				.generateEvaluationManager(formulaManager, varID.getVariableFormat());
+			newValue = solver.update(evalManager);
+		}
+		Object oldValue = resultStore.put(varID, newValue);
+		localSlot(varID).setValue(newValue);
+		return !newValue.equals(oldValue);
+	}
+
+	@Override
+	public <T> List<ProcessStep<T>> diagnose(VariableID<T> varID)
+	{
+		if (!hasChannel(varID))
+		{
+			throw new IllegalArgumentException("Request to diagnose VariableID " + varID
+				+ " but that channel was never defined");
+		}
+		@SuppressWarnings("unchecked")
+		Solver<T> solver = (Solver<T>) peekSolver(varID);
+		if (solver == null)
+		{
+			//Only the default value, so diagnose a Solver with no Modifiers
+			solver = solverFactory.getSolver(varID.getFormatManager());
+		}
+		EvaluationManager evalManager = managerFactory
+			.generateEvaluationManager(formulaManager, varID.getVariableFormat());
+		return solver.diagnose(evalManager);
+	}
+
+	@Override
+	public <T> T getDefaultValue(Class<T> varFormat)
+	{
+		return solverFactory.getDefault(varFormat);
+	}
+
+	/**
+	 * Returns the FormulaManager used by the Solver members of this
+	 * AbstractSolverManager.
+	 *
+	 * @return The FormulaManager used by the Solver members of this
+	 *         AbstractSolverManager
+	 */
+	FormulaManager getFormulaManager()
+	{
+		return formulaManager;
+	}
+
+	/**
+	 * Returns the SolverFactory used to construct the Solver objects that are members of
+	 * this AbstractSolverManager.
+	 *
+	 * @return The SolverFactory used to construct the Solver objects that are members of
+	 *         this AbstractSolverManager
+	 */
+	SolverFactory getSolverFactory()
+	{
+		return solverFactory;
+	}
+
+	/**
+	 * Returns the WriteableVariableStore in which the results of the calculations of the
+	 * Solver objects within this AbstractSolverManager are stored.
+	 *
+	 * @return The WriteableVariableStore in which the results of the calculations of the
+	 *         Solver objects within this AbstractSolverManager are stored
+	 */
+	WriteableVariableStore getResultStore()
+	{
+		return resultStore;
+	}
+
+	/**
+	 * Returns the graph of the dependencies between the VariableIDs in this
+	 * AbstractSolverManager. The graph must only be changed through addEdge and
+	 * removeEdge, unless no batch is in progress and the change cannot introduce a cycle.
+	 *
+	 * @return The graph of the dependencies between the VariableIDs in this
+	 *         AbstractSolverManager
+	 */
+	DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> getDependencies()
+	{
+		return dependencies;
+	}
+
+	/**
+	 * Returns the CycleDetector for the graph of the dependencies in this
+	 * AbstractSolverManager.
+	 *
+	 * @return The CycleDetector for the graph of the dependencies in this
+	 *         AbstractSolverManager
+	 */
+	CycleDetector getCycleDetector()
+	{
+		return cycleDetector;
+	}
+
+	/**
+	 * Returns the SolverBatch in progress in this AbstractSolverManager.
+	 *
+	 * @return The SolverBatch in progress in this AbstractSolverManager; null if no batch
+	 *         is in progress
+	 */
+	SolverBatch getBatch()
+	{
+		return batch;
+	}
+}
@@ -15,23 +15,16 @@
  */
 package pcgen.base.solver;
 
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.Stack;
 
-import pcgen.base.formula.base.DependencyManager;
-import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.ManagerFactory;
-import pcgen.base.formula.base.ScopeInstance;
 import pcgen.base.formula.base.VariableID;
 import pcgen.base.formula.base.WriteableVariableStore;
+import pcgen.base.formula.inst.OverlayVariableStore;
 import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
-import pcgen.base.graph.inst.DirectionalSetMapGraph;
-import pcgen.base.util.FormatManager;
 
 /**
  * An AggressiveSolverManager manages a series of Solver objects in order to manage
@@ -43,47 +36,13 @@ import pcgen.base.util.FormatManager;
  * will consider items as represented by a given "VariableID", whereas the
  * AggressiveSolverManager will build and manage the associated Solver for that
  * VariableID.
+ * 
+ * An AggressiveSolverManager can be forked (see fork), in order to evaluate the
+ * consequences of a change without changing the AggressiveSolverManager.
  */
-public class AggressiveSolverManager implements SolverManager
+public class AggressiveSolverManager extends AbstractSolverManager
 {
 
-	/**
-	 * The FormulaManager used by the Solver members of this AggressiveSolverManager.
-	 */
-	private final FormulaManager formulaManager;
-
-	/**
-	 * The ManagerFactory to be used to generate visitor managers in this
-	 * AggressiveSolverManager.
-	 */
-	private final ManagerFactory managerFactory;
-
-	/**
-	 * The relationship from each VariableID to the Solver calculating the value of the
-	 * VariableID.
-	 */
-	private final Map<VariableID<?>, Solver<?>> scopedChannels =
-			new HashMap<VariableID<?>, Solver<?>>();
-
-	/**
-	 * The "summarized" results of the calculation of each Solver.
-	 */
-	private final WriteableVariableStore resultStore;
-
-	/**
-	 * A mathematical graph used to store dependencies between VariableIDs. Since there is
-	 * a 1:1 relationship with the Solver used for a VariableID, this implicitly stores
-	 * the dependencies between the Solvers that are part of this AggressiveSolverManager.
-	 */
-	private final DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> dependencies =
-			new DirectionalSetMapGraph<>();
-
-	/**
-	 * The SolverFactory to be used to construct the Solver objects that are members of
-	 * this AggressiveSolverFactory.
-	 */
-	private final SolverFactory solverFactory;
-
 	/**
 	 * Constructs a new AggressiveSolverManager which will use the given FormulaMananger
 	 * and store results in the given VariableStore.
@@ -109,182 +68,111 @@ public class AggressiveSolverManager implements SolverManager
 	public AggressiveSolverManager(FormulaManager manager, ManagerFactory managerFactory,
 		SolverFactory solverFactory, WriteableVariableStore resultStore)
 	{
-		this.formulaManager = Objects.requireNonNull(manager);
-		this.managerFactory = Objects.requireNonNull(managerFactory);
-		this.solverFactory = Objects.requireNonNull(solverFactory);
-		this.resultStore = Objects.requireNonNull(resultStore);
+		super(manager, managerFactory, solverFactory, resultStore);
 	}
 
-	/*
-	 * Note: This creates a "local" scoped channel that only exists for the item in
-	 * question (item is "in" the VariableID). The key here being that there is the
-	 * ability to have a local variable (e.g. Equipment variable).
+	/**
+	 * Constructs a new AggressiveSolverManager forked from the given
+	 * AggressiveSolverManager, which will store results in the given
+	 * OverlayVariableStore.
+	 * 
+	 * @param parent
+	 *            The AggressiveSolverManager from which the new AggressiveSolverManager
+	 *            is forked
+	 * @param resultStore
+	 *            The OverlayVariableStore (layered over the VariableStore of the given
+	 *            AggressiveSolverManager) used to store results of the calculations of
+	 *            the Solver objects within the new AggressiveSolverManager
 	 */
-	@Override
-	public <T> void createChannel(VariableID<T> varID)
+	private AggressiveSolverManager(AggressiveSolverManager parent,
+		OverlayVariableStore resultStore)
 	{
-		Solver<?> currentSolver = scopedChannels.get(Objects.requireNonNull(varID));
-		if (currentSolver != null)
-		{
-			throw new IllegalArgumentException(
-				"Attempt to recreate local channel: " + varID);
-		}
-		unconditionallyBuildSolver(varID);
-		solveFromNode(varID);
+		super(parent, resultStore);
 	}
 
-	@Override
-	public <T> void addModifier(VariableID<T> varID, Modifier<T> modifier,
-		ScopeInstance source)
+	/**
+	 * Returns a fork of this AggressiveSolverManager, which will store results in the
+	 * given OverlayVariableStore.
+	 * 
+	 * The fork initially has the same channels, Modifiers and values as this
+	 * AggressiveSolverManager. It can then be changed as any other SolverManager, but a
+	 * change to the fork never changes this AggressiveSolverManager (or its
+	 * VariableStore). This allows the consequences of a change to be evaluated (in the
+	 * given OverlayVariableStore) and then discarded, by discarding the fork.
+	 * 
+	 * Forking does not copy this AggressiveSolverManager: the fork holds only the
+	 * Solvers, dependencies and values that differ from this AggressiveSolverManager, and
+	 * reads everything else from this AggressiveSolverManager. This
+	 * AggressiveSolverManager must therefore not be changed while the fork is in use: a
+	 * change may be partially visible in the fork (or not at all).
+	 * 
+	 * A ModifierHandle returned by this AggressiveSolverManager can be provided to the
+	 * fork, in order to remove the Modifier from the fork.
+	 * 
+	 * @param forkStore
+	 *            The OverlayVariableStore used to store results of the calculations of
+	 *            the fork; must be layered over the VariableStore of this
+	 *            AggressiveSolverManager
+	 * @return A fork of this AggressiveSolverManager
+	 * @throws IllegalArgumentException
+	 *             if the given OverlayVariableStore is not layered over the VariableStore
+	 *             of this AggressiveSolverManager
+	 * @throws IllegalStateException
+	 *             if a batch is in progress
+	 */
+	public AggressiveSolverManager fork(OverlayVariableStore forkStore)
 	{
-		if (varID == null)
-		{
-			throw new IllegalArgumentException("VariableID cannot be null");
-		}
-		if (modifier == null)
-		{
-			throw new IllegalArgumentException("Modifier cannot be null");
-		}
-		if (source == null)
-		{
-			throw new IllegalArgumentException("Source cannot be null");
-		}
-
-		if (!formulaManager.getFactory()
-			.isLegalVariableID(varID.getScope().getLegalScope(), varID.getName()))
-		{
-			/*
-			 * The above check allows the implicit create below for only items within the
-			 * VariableLibrary
-			 */
-			throw new IllegalArgumentException("Request to add Modifier to Solver for "
-				+ varID + " but that channel was never defined");
-		}
-		//Note: This cast is enforced by the solver during addModifier
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		if (solver == null)
-		{
-			//CONSIDER This build is implicit - do we want explicit or implicit?
-			solver = unconditionallyBuildSolver(varID);
-		}
-		/*
-		 * Now build new edges of things this solver will be dependent upon...
-		 */
-		DependencyManager fdm = managerFactory.generateDependencyManager(formulaManager,
-			source, varID.getFormatManager().getManagedClass());
-		modifier.getDependencies(fdm);
-		for (VariableID<?> depID : fdm.getVariables())
+		if (forkStore.getParent() != getResultStore())
 		{
-			ensureSolverExists(depID);
-			/*
-			 * Better to use depID here rather than Solver: (1) No order of operations
-			 * risk (2) Process can still write to cache knowing ID
-			 */
-			@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-			DefaultDirectionalGraphEdge<VariableID<?>> edge =
-					new DefaultDirectionalGraphEdge<VariableID<?>>(depID, varID);
-			dependencies.addEdge(edge);
+			throw new IllegalArgumentException("Fork must store results in an "
+				+ "OverlayVariableStore layered over the VariableStore of this "
+				+ "SolverManager");
 		}
-		//Cast above effectively enforced here
-		solver.addModifier(modifier, source);
-		/*
-		 * Solve this solver and anything that requires it (recursively)
-		 */
-		solveFromNode(varID);
-	}
-
-	private void ensureSolverExists(VariableID<?> varID)
-	{
-		if (scopedChannels.get(varID) == null)
+		if (getBatch() != null)
 		{
-			unconditionallyBuildSolver(varID);
-			solveFromNode(varID);
+			throw new IllegalStateException(
+				"Cannot fork: a batch is in progress");
 		}
-	}
-
-	private <T> Solver<T> unconditionallyBuildSolver(VariableID<T> varID)
-	{
-		FormatManager<T> formatManager = varID.getFormatManager();
-		Solver<T> solver = solverFactory.getSolver(formatManager);
-		scopedChannels.put(varID, solver);
-		dependencies.addNode(varID);
-		return solver;
+		return new AggressiveSolverManager(this, forkStore);
 	}
 
 	@Override
-	public <T> void removeModifier(VariableID<T> varID, Modifier<T> modifier,
-		ScopeInstance source)
+	public void commitBatch()
 	{
-		if (varID == null)
+		SolverBatch committed = endBatch();
+		List<VariableID<?>> cycle = committed.getCycle();
+		if (cycle != null)
 		{
-			throw new IllegalArgumentException("VariableID cannot be null");
+			committed.rollback();
+			throw new IllegalStateException(
+				"Batch introduced a cycle in Variable Processing: " + cycle);
 		}
-		if (modifier == null)
-		{
-			throw new IllegalArgumentException("Modifier cannot be null");
-		}
-		if (source == null)
-		{
-			throw new IllegalArgumentException("Source cannot be null");
-		}
-		//Note: This cast is enforced by the solver during addModifier
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		if (solver == null)
-		{
-			throw new IllegalArgumentException("Request to remove Modifier to Solver for "
-				+ varID + " but that channel was never defined");
-		}
-		DependencyManager fdm = managerFactory.generateDependencyManager(formulaManager,
-			source, varID.getFormatManager().getManagedClass());
-		modifier.getDependencies(fdm);
-		processDependencies(varID, fdm);
-		//Cast above effectively enforced here
-		solver.removeModifier(modifier, source);
-		solveFromNode(varID);
+		Set<VariableID<?>> dirty = committed.getDirty();
+		//The dependencies never contain a cycle, so there is always an order
+		solveInOrder(DependencyOrder.sort(getDependencies(), dirty), dirty);
 	}
 
 	/**
-	 * Process Dependencies to be removed for the given VariableID stored in the given
-	 * DependencyManager.
+	 * Solves the given VariableIDs in the given order. A VariableID is only processed if
+	 * it is in the given Set of dirty VariableIDs or if a VariableID upon which it depends
+	 * changed value.
 	 * 
-	 * @param <T>
-	 *            The format (class) of object contained by the given VariableID
-	 * @param varID
-	 *            The VariableID for which dependencies will be removed
-	 * @param dm
-	 *            The DependencyManager containing the dependencies of the given
-	 *            VariableID
+	 * @param order
+	 *            The VariableIDs to be solved, in topological order
+	 * @param dirty
+	 *            The VariableIDs that must be processed
 	 */
-	private <T> void processDependencies(VariableID<T> varID, DependencyManager dm)
+	private void solveInOrder(List<VariableID<?>> order, Set<VariableID<?>> dirty)
 	{
-		List<VariableID<?>> deps = dm.getVariables();
-		if (deps == null)
+		Set<VariableID<?>> stale = new HashSet<>(dirty);
+		for (VariableID<?> varID : order)
 		{
-			return;
-		}
-		Set<DefaultDirectionalGraphEdge<VariableID<?>>> edges =
-				dependencies.getAdjacentEdges(varID);
-		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : edges)
-		{
-			if (edge.getNodeAt(1) == varID)
+			if (stale.contains(varID) && processSolver(varID))
 			{
-				VariableID<?> depID = edge.getNodeAt(0);
-				if (deps.contains(depID))
-				{
-					dependencies.removeEdge(edge);
-					deps.remove(depID);
-				}
+				notifyChildren(varID);
+				stale.addAll(DependencyOrder.getChildren(getDependencies(), varID));
 			}
 		}
-		if (!deps.isEmpty())
-		{
-			/*
-			 * TODO Some form of error here since couldn't find matching edges for all
-			 * dependencies...
-			 */
-		}
 	}
 
 	/**
@@ -295,98 +183,42 @@ public class AggressiveSolverManager implements SolverManager
 	 *            The VariableID as a starting point for triggering Solvers to be
 	 *            processed
 	 */
-	public void solveFromNode(VariableID<?> varID)
+	@Override
+	void solveFrom(VariableID<?> varID)
 	{
-		boolean warning = varStack.contains(varID);
-		try
+		SolverBatch batch = getBatch();
+		if (batch != null)
 		{
-			varStack.push(varID);
-			if (processSolver(varID))
-			{
-				if (warning)
-				{
-					throw new IllegalStateException(
-						"Infinite Loop in Variable Processing: " + varStack);
-				}
-				/*
-				 * Only necessary if the answer changes. The problem is that this is not
-				 * doing them in order of a topological sort - it is completely random...
-				 * so things may be processed twice :/
-				 */
-				solveChildren(varID);
-			}
+			batch.markDirty(varID);
+			return;
 		}
-		finally
+		if (processSolver(varID))
 		{
-			varStack.pop();
+			/*
+			 * Only necessary if the answer changes. The problem is that this is not
+			 * doing them in order of a topological sort - it is completely random...
+			 * so things may be processed twice :/
+			 */
+			solveChildren(varID);
 		}
 	}
 
 	@Override
 	public void solveChildren(VariableID<?> varID)
 	{
+		notifyChildren(varID);
 		Set<DefaultDirectionalGraphEdge<VariableID<?>>> adjacentEdges =
-				dependencies.getAdjacentEdges(varID);
+				getDependencies().getAdjacentEdges(varID);
 		if (adjacentEdges != null)
 		{
 			for (DefaultDirectionalGraphEdge<VariableID<?>> edge : adjacentEdges)
 			{
 				if (edge.getNodeAt(0).equals(varID))
 				{
-					solveFromNode(edge.getNodeAt(1));
+					solveFrom(edge.getNodeAt(1));
 				}
 			}
 		}
 	}
 
-	private Stack<VariableID<?>> varStack = new Stack<>();
-
-	/**
-	 * Processes a single Solver represented by the given VariableID. Returns true if the
-	 * value of the Variable calculated by the Solver has changed due to this processing.
-	 * 
-	 * @param <T>
-	 *            The format (class) of object contained by the given VariableID
-	 * @param varID
-	 *            The VariableID for which the given Solver should be processed.
-	 * 
-	 * @return true if the value of the Variable calculated by the Solver has changed due
-	 *         to this processing; false otherwise
-	 */
-	private <T> boolean processSolver(VariableID<T> varID)
-	{
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		/*
-		 * Solver should "never" be null here, so we accept risk of NPE, since it's always
-		 * a code bug
-		 */
-		EvaluationManager evalManager = managerFactory
-			.generateEvaluationManager(formulaManager, varID.getVariableFormat());
-		T newValue = solver.process(evalManager);
-		Object oldValue = resultStore.put(varID, newValue);
-		return !newValue.equals(oldValue);
-	}
-
-	@Override
-	public <T> List<ProcessStep<T>> diagnose(VariableID<T> varID)
-	{
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		if (solver == null)
-		{
-			throw new IllegalArgumentException("Request to diagnose VariableID " + varID
-				+ " but that channel was never defined");
-		}
-		EvaluationManager evalManager = managerFactory
-			.generateEvaluationManager(formulaManager, varID.getVariableFormat());
-		return solver.diagnose(evalManager);
-	}
-
-	@Override
-	public <T> T getDefaultValue(Class<T> varFormat)
-	{
-		return solverFactory.getDefault(varFormat);
-	}
-
 }
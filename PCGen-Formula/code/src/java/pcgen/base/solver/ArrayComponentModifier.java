@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Objects;
 
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.EvaluationManager;
 
 /**
@@ -110,6 +111,12 @@ public class ArrayComponentModifier<T> implements Modifier<T[]>
 		modifier.getDependencies(fdm);
 	}
 
+	@Override
+	public DependencyTemplate getDependencyTemplate(DependencyManager fdm)
+	{
+		return modifier.getDependencyTemplate(fdm);
+	}
+
 	@Override
 	public String getIdentification()
 	{
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
+import pcgen.base.graph.inst.DirectionalSetMapGraph;
+
+/**
+ * A CycleDetector detects, as each edge is added to a dependency graph, whether the edge
+ * would introduce a cycle.
+ *
+ * The CycleDetector maintains a topological order of the VariableIDs in the dependency
+ * graph (using the algorithm of Pearce and Kelly). When an edge is added that is
+ * consistent with the order, no search is required. Otherwise, only the VariableIDs
+ * between the two ends of the edge in the order are searched, and then reordered.
+ * Removing an edge never invalidates the order.
+ *
+ * Every edge in the dependency graph must be reported to edgeAdded (with the exception
+ * of edges that are removed again before any other edge is reported), or the order is
+ * no longer valid.
+ */
+final class CycleDetector
+{
+
+	/**
+	 * The dependency graph for which cycles are detected.
+	 */
+	private final DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph;
+
+	/**
+	 * The CycleDetector from which this CycleDetector was forked, which provides the
+	 * position of any VariableID not positioned by this CycleDetector; null if this
+	 * CycleDetector was not forked.
+	 */
+	private final CycleDetector parent;
+
+	/**
+	 * The position of each VariableID in the topological order. Positions need not be
+	 * contiguous. For a forked CycleDetector, this holds only the positions that differ
+	 * from the parent CycleDetector.
+	 */
+	private final Map<VariableID<?>, Integer> positions = new HashMap<>();
+
+	/**
+	 * The position before every position held by a VariableID.
+	 */
+	private int first = -1;
+
+	/**
+	 * The position after every position held by a VariableID.
+	 */
+	private int last = 0;
+
+	/**
+	 * Orders VariableIDs by their position in the topological order.
+	 */
+	private final Comparator<VariableID<?>> byPosition = new Comparator<VariableID<?>>()
+	{
+		@Override
+		public int compare(VariableID<?> o1, VariableID<?> o2)
+		{
+			return Integer.compare(positionOf(o1), positionOf(o2));
+		}
+	};
+
+	/**
+	 * Constructs a new CycleDetector for the given dependency graph, which must not yet
+	 * contain any edges.
+	 *
+	 * @param graph
+	 *            The dependency graph for which cycles are detected
+	 */
+	CycleDetector(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph)
+	{
+		this.graph = graph;
+		this.parent = null;
+	}
+
+	/**
+	 * Constructs a new CycleDetector for the given dependency graph, which must be a fork
+	 * (see OverlayGraph) of the dependency graph of the given CycleDetector.
+	 *
+	 * The topological order is initially that of the given CycleDetector, but is not
+	 * copied: the new CycleDetector holds only the positions that it changes, and never
+	 * changes the given CycleDetector.
+	 *
+	 * @param graph
+	 *            The dependency graph for which cycles are detected
+	 * @param parent
+	 *            The CycleDetector for the dependency graph from which the given graph
+	 *            was forked
+	 */
+	CycleDetector(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		CycleDetector parent)
+	{
+		this.graph = graph;
+		this.parent = parent;
+		first = parent.first;
+		last = parent.last;
+	}
+
+	/**
+	 * Returns the cycle that would be introduced by an edge from the given source
+	 * VariableID to the given target VariableID. The path starts and ends with the
+	 * target. This does not change the order.
+	 *
+	 * @param source
+	 *            The VariableID upon which the target would depend
+	 * @param target
+	 *            The VariableID which would depend upon the source
+	 * @return The cycle that would be introduced by the edge; null if the edge would not
+	 *         introduce a cycle
+	 */
+	List<VariableID<?>> findCycle(VariableID<?> source, VariableID<?> target)
+	{
+		if (source.equals(target))
+		{
+			return new ArrayList<>(Arrays.asList(target, target));
+		}
+		int upper = getPosition(source, false);
+		if (getPosition(target, true) > upper)
+		{
+			return null;
+		}
+		return searchForward(source, target, upper, new LinkedHashMap<>());
+	}
+
+	/**
+	 * Indicates that an edge from the given source VariableID to the given target
+	 * VariableID has been (or is about to be) added to the dependency graph, and reorders
+	 * the VariableIDs as necessary.
+	 *
+	 * If the edge introduces a cycle, the cycle is returned (starting and ending with the
+	 * target) and the order is not changed. The order then does not account for the
+	 * edge, so the edge must be removed again before any other edge is reported.
+	 *
+	 * @param source
+	 *            The VariableID upon which the target depends
+	 * @param target
+	 *            The VariableID which depends upon the source
+	 * @return The cycle introduced by the edge; null if the edge does not introduce a
+	 *         cycle
+	 */
+	List<VariableID<?>> edgeAdded(VariableID<?> source, VariableID<?> target)
+	{
+		if (source.equals(target))
+		{
+			return new ArrayList<>(Arrays.asList(target, target));
+		}
+		int upper = getPosition(source, false);
+		int lower = getPosition(target, true);
+		if (lower > upper)
+		{
+			//Already consistent with the order
+			return null;
+		}
+		Map<VariableID<?>, VariableID<?>> forward = new LinkedHashMap<>();
+		List<VariableID<?>> cycle = searchForward(source, target, upper, forward);
+		if (cycle != null)
+		{
+			return cycle;
+		}
+		Set<VariableID<?>> backward = new LinkedHashSet<>();
+		backward.add(source);
+		Deque<VariableID<?>> work = new ArrayDeque<>();
+		work.push(source);
+		while (!work.isEmpty())
+		{
+			for (VariableID<?> dependency : DependencyOrder.getParents(graph,
+				work.pop()))
+			{
+				if ((positionOf(dependency) > lower) && backward.add(dependency))
+				{
+					work.push(dependency);
+				}
+			}
+		}
+		reorder(backward, forward.keySet());
+		return null;
+	}
+
+	/**
+	 * Indicates that the given VariableID has been removed from the dependency graph.
+	 *
+	 * @param varID
+	 *            The VariableID removed from the dependency graph
+	 */
+	void nodeRemoved(VariableID<?> varID)
+	{
+		positions.remove(varID);
+	}
+
+	/**
+	 * Searches the VariableIDs that depend upon the given target (and are before the
+	 * given upper bound in the order) for the given source.
+	 *
+	 * @param source
+	 *            The VariableID being searched for
+	 * @param target
+	 *            The VariableID from which the search starts
+	 * @param upper
+	 *            The position of the source
+	 * @param reachedFrom
+	 *            The VariableIDs visited by the search (as keys), each mapped to the
+	 *            VariableID from which it was reached; loaded by this method
+	 * @return The cycle from the target through the source and back to the target; null
+	 *         if the source was not found
+	 */
+	private List<VariableID<?>> searchForward(VariableID<?> source,
+		VariableID<?> target, int upper, Map<VariableID<?>, VariableID<?>> reachedFrom)
+	{
+		reachedFrom.put(target, target);
+		Deque<VariableID<?>> work = new ArrayDeque<>();
+		work.push(target);
+		while (!work.isEmpty())
+		{
+			VariableID<?> varID = work.pop();
+			for (VariableID<?> child : DependencyOrder.getChildren(graph, varID))
+			{
+				if (child.equals(source))
+				{
+					List<VariableID<?>> cycle = new ArrayList<>();
+					cycle.add(target);
+					cycle.add(source);
+					for (VariableID<?> step = varID; !step.equals(target);
+							step = reachedFrom.get(step))
+					{
+						cycle.add(step);
+					}
+					cycle.add(target);
+					Collections.reverse(cycle);
+					return cycle;
+				}
+				if (!reachedFrom.containsKey(child) && (positionOf(child) < upper))
+				{
+					reachedFrom.put(child, varID);
+					work.push(child);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reorders the given VariableIDs so that each VariableID in backward is before each
+	 * VariableID in forward, using only the positions already held by those VariableIDs.
+	 *
+	 * @param backward
+	 *            The VariableIDs (upon which the source of a new edge depends) that must
+	 *            be moved earlier
+	 * @param forward
+	 *            The VariableIDs (that depend upon the target of a new edge) that must be
+	 *            moved later
+	 */
+	private void reorder(Collection<VariableID<?>> backward,
+		Collection<VariableID<?>> forward)
+	{
+		List<VariableID<?>> moved = new ArrayList<>(backward);
+		Collections.sort(moved, byPosition);
+		List<VariableID<?>> sortedForward = new ArrayList<>(forward);
+		Collections.sort(sortedForward, byPosition);
+		moved.addAll(sortedForward);
+		List<Integer> available = new ArrayList<>(moved.size());
+		for (VariableID<?> varID : moved)
+		{
+			available.add(positionOf(varID));
+		}
+		Collections.sort(available);
+		for (int i = 0; i < moved.size(); i++)
+		{
+			positions.put(moved.get(i), available.get(i));
+		}
+	}
+
+	/**
+	 * Returns the position of the given VariableID in the topological order.
+	 *
+	 * A VariableID without a position is not yet part of any edge, so it can be placed
+	 * anywhere in the order. It is placed at the end if it is the target of an edge, and
+	 * at the start if it is the source, so that the new edge is consistent with the
+	 * order.
+	 *
+	 * @param varID
+	 *            The VariableID for which the position should be returned
+	 * @param target
+	 *            true if the VariableID is the target of an edge; false if it is the
+	 *            source
+	 * @return The position of the given VariableID in the topological order
+	 */
+	private int getPosition(VariableID<?> varID, boolean target)
+	{
+		Integer position = positionOf(varID);
+		if (position == null)
+		{
+			position = target ? last++ : first--;
+			positions.put(varID, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the position of the given VariableID in the topological order, from the
+	 * parent CycleDetector if this CycleDetector has not positioned the VariableID.
+	 *
+	 * @param varID
+	 *            The VariableID for which the position should be returned
+	 * @return The position of the given VariableID in the topological order; null if the
+	 *         VariableID has no position
+	 */
+	private Integer positionOf(VariableID<?> varID)
+	{
+		Integer position = positions.get(varID);
+		if ((position == null) && (parent != null))
+		{
+			position = parent.positionOf(varID);
+		}
+		return position;
+	}
+}
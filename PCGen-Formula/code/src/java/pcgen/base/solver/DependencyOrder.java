@@ -0,0 +1,354 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
+import pcgen.base.graph.inst.DirectionalSetMapGraph;
+
+/**
+ * DependencyOrder is a set of common behaviors used by the SolverManager objects to
+ * process the dependency graph between VariableIDs in dependency order.
+ */
+final class DependencyOrder
+{
+
+	/**
+	 * Private Constructor for Utility Class.
+	 */
+	private DependencyOrder()
+	{
+	}
+
+	/**
+	 * Returns the VariableIDs that are dependent (directly or indirectly) upon the given
+	 * VariableIDs, including the given VariableIDs, in the order they must be solved.
+	 *
+	 * Null is returned if the VariableIDs reachable from the given VariableIDs contain a
+	 * cycle (and thus there is no such order).
+	 *
+	 * @param graph
+	 *            The dependency graph to be sorted
+	 * @param roots
+	 *            The VariableIDs from which the graph should be sorted
+	 * @return The VariableIDs reachable from the given VariableIDs, in topological order;
+	 *         null if those VariableIDs contain a cycle
+	 */
+	static List<VariableID<?>> sort(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		Collection<VariableID<?>> roots)
+	{
+		Set<VariableID<?>> reachable = new LinkedHashSet<>();
+		Deque<VariableID<?>> work = new ArrayDeque<>(roots);
+		while (!work.isEmpty())
+		{
+			VariableID<?> varID = work.pop();
+			if (reachable.add(varID))
+			{
+				work.addAll(getChildren(graph, varID));
+			}
+		}
+		Map<VariableID<?>, Integer> inDegree = new HashMap<>();
+		for (VariableID<?> varID : reachable)
+		{
+			for (VariableID<?> child : getChildren(graph, varID))
+			{
+				Integer count = inDegree.get(child);
+				inDegree.put(child, (count == null) ? 1 : count + 1);
+			}
+		}
+		for (VariableID<?> varID : reachable)
+		{
+			if (!inDegree.containsKey(varID))
+			{
+				work.add(varID);
+			}
+		}
+		List<VariableID<?>> order = new ArrayList<>(reachable.size());
+		while (!work.isEmpty())
+		{
+			VariableID<?> varID = work.poll();
+			order.add(varID);
+			for (VariableID<?> child : getChildren(graph, varID))
+			{
+				int count = inDegree.get(child) - 1;
+				if (count == 0)
+				{
+					inDegree.remove(child);
+					work.add(child);
+				}
+				else
+				{
+					inDegree.put(child, count);
+				}
+			}
+		}
+		return (order.size() == reachable.size()) ? order : null;
+	}
+
+	/**
+	 * Divides the given VariableIDs (which must be in topological order, as returned by
+	 * sort) into levels. Each VariableID depends only upon VariableIDs in earlier levels,
+	 * so the VariableIDs within a level are independent of each other.
+	 *
+	 * @param graph
+	 *            The dependency graph containing the given VariableIDs
+	 * @param order
+	 *            The VariableIDs to be divided into levels, in topological order
+	 * @return The levels of the given VariableIDs, each in topological order
+	 */
+	static List<List<VariableID<?>>> levels(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		List<VariableID<?>> order)
+	{
+		Map<VariableID<?>, Integer> depth = new HashMap<>();
+		List<List<VariableID<?>>> levels = new ArrayList<>();
+		for (VariableID<?> varID : order)
+		{
+			Integer known = depth.get(varID);
+			int level = (known == null) ? 0 : known;
+			if (level == levels.size())
+			{
+				levels.add(new ArrayList<VariableID<?>>());
+			}
+			levels.get(level).add(varID);
+			for (VariableID<?> child : getChildren(graph, varID))
+			{
+				Integer childLevel = depth.get(child);
+				if ((childLevel == null) || (childLevel <= level))
+				{
+					depth.put(child, level + 1);
+				}
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Returns the strongly connected components of the VariableIDs that are dependent
+	 * (directly or indirectly) upon the given VariableIDs, including the given
+	 * VariableIDs. Each component is a set of VariableIDs that (directly or indirectly)
+	 * depend upon each other, so a component of more than one VariableID contains a
+	 * cycle.
+	 *
+	 * The components are returned in the order they must be solved: each component
+	 * depends only upon components earlier in the list.
+	 *
+	 * @param graph
+	 *            The dependency graph to be divided into components
+	 * @param roots
+	 *            The VariableIDs from which the graph should be divided
+	 * @return The strongly connected components of the VariableIDs reachable from the
+	 *         given VariableIDs, in topological order
+	 */
+	static List<List<VariableID<?>>> components(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		Collection<VariableID<?>> roots)
+	{
+		//Tarjan's algorithm, with an explicit stack rather than recursion
+		Map<VariableID<?>, Integer> index = new HashMap<>();
+		Map<VariableID<?>, Integer> lowLink = new HashMap<>();
+		Deque<VariableID<?>> unassigned = new ArrayDeque<>();
+		Set<VariableID<?>> onStack = new HashSet<>();
+		Deque<VariableID<?>> path = new ArrayDeque<>();
+		Deque<Iterator<VariableID<?>>> pending = new ArrayDeque<>();
+		List<List<VariableID<?>>> components = new ArrayList<>();
+		for (VariableID<?> root : roots)
+		{
+			if (!index.containsKey(root))
+			{
+				path.push(root);
+			}
+			while (!path.isEmpty())
+			{
+				VariableID<?> varID = path.peek();
+				if (!index.containsKey(varID))
+				{
+					index.put(varID, index.size());
+					lowLink.put(varID, index.get(varID));
+					unassigned.push(varID);
+					onStack.add(varID);
+					pending.push(getChildren(graph, varID).iterator());
+				}
+				Iterator<VariableID<?>> children = pending.peek();
+				if (children.hasNext())
+				{
+					VariableID<?> child = children.next();
+					if (!index.containsKey(child))
+					{
+						path.push(child);
+					}
+					else if (onStack.contains(child))
+					{
+						lowLink.put(varID,
+							Math.min(lowLink.get(varID), index.get(child)));
+					}
+					continue;
+				}
+				path.pop();
+				pending.pop();
+				int low = lowLink.get(varID);
+				if (!path.isEmpty())
+				{
+					VariableID<?> parent = path.peek();
+					lowLink.put(parent, Math.min(lowLink.get(parent), low));
+				}
+				if (low == index.get(varID))
+				{
+					List<VariableID<?>> component = new ArrayList<>();
+					VariableID<?> member;
+					do
+					{
+						member = unassigned.pop();
+						onStack.remove(member);
+						component.add(member);
+					}
+					while (!member.equals(varID));
+					Collections.reverse(component);
+					components.add(component);
+				}
+			}
+		}
+		//Tarjan's algorithm finds each component after every component depending on it
+		Collections.reverse(components);
+		return components;
+	}
+
+	/**
+	 * Returns a path of dependencies from the given source VariableID to the given target
+	 * VariableID. The path starts with the source and ends with the target.
+	 *
+	 * Null is returned if the target is not dependent (directly or indirectly) upon the
+	 * source.
+	 *
+	 * @param graph
+	 *            The dependency graph to be searched
+	 * @param source
+	 *            The VariableID at the start of the path
+	 * @param target
+	 *            The VariableID at the end of the path
+	 * @return A path of dependencies from the source VariableID to the target VariableID;
+	 *         null if there is no such path
+	 */
+	static List<VariableID<?>> findPath(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		VariableID<?> source, VariableID<?> target)
+	{
+		Map<VariableID<?>, VariableID<?>> reachedFrom = new HashMap<>();
+		reachedFrom.put(source, source);
+		Deque<VariableID<?>> work = new ArrayDeque<>();
+		work.add(source);
+		while (!work.isEmpty())
+		{
+			VariableID<?> varID = work.poll();
+			if (varID.equals(target))
+			{
+				List<VariableID<?>> path = new ArrayList<>();
+				path.add(varID);
+				while (!varID.equals(source))
+				{
+					varID = reachedFrom.get(varID);
+					path.add(varID);
+				}
+				Collections.reverse(path);
+				return path;
+			}
+			for (VariableID<?> child : getChildren(graph, varID))
+			{
+				if (!reachedFrom.containsKey(child))
+				{
+					reachedFrom.put(child, varID);
+					work.add(child);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the VariableIDs that are directly dependent upon the given VariableID.
+	 *
+	 * @param graph
+	 *            The dependency graph containing the given VariableID
+	 * @param varID
+	 *            The VariableID for which the dependent VariableIDs should be returned
+	 * @return The VariableIDs that are directly dependent upon the given VariableID
+	 */
+	static List<VariableID<?>> getChildren(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		VariableID<?> varID)
+	{
+		Set<DefaultDirectionalGraphEdge<VariableID<?>>> adjacentEdges =
+				graph.getAdjacentEdges(varID);
+		if (adjacentEdges == null)
+		{
+			return Collections.emptyList();
+		}
+		List<VariableID<?>> children = new ArrayList<>(adjacentEdges.size());
+		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : adjacentEdges)
+		{
+			if (edge.getNodeAt(0).equals(varID))
+			{
+				children.add(edge.getNodeAt(1));
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * Returns the VariableIDs upon which the given VariableID directly depends.
+	 *
+	 * @param graph
+	 *            The dependency graph containing the given VariableID
+	 * @param varID
+	 *            The VariableID for which the VariableIDs it depends upon should be
+	 *            returned
+	 * @return The VariableIDs upon which the given VariableID directly depends
+	 */
+	static List<VariableID<?>> getParents(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> graph,
+		VariableID<?> varID)
+	{
+		Set<DefaultDirectionalGraphEdge<VariableID<?>>> adjacentEdges =
+				graph.getAdjacentEdges(varID);
+		if (adjacentEdges == null)
+		{
+			return Collections.emptyList();
+		}
+		List<VariableID<?>> parents = new ArrayList<>(adjacentEdges.size());
+		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : adjacentEdges)
+		{
+			if (edge.getNodeAt(1).equals(varID))
+			{
+				parents.add(edge.getNodeAt(0));
+			}
+		}
+		return parents;
+	}
+}
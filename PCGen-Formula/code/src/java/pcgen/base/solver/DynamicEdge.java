@@ -178,7 +178,7 @@ public class DynamicEdge extends DefaultGraphEdge<Object>
 	}
 
 	/**
-	 * Returns true if this DynamicEdge represents the given DynamicDependency.
+	 * Returns true if this DynamicEdge was created for the given DynamicDependency object.
 	 * 
 	 * @param dep
 	 *            The DynamicDependency to be tested
@@ -187,7 +187,7 @@ public class DynamicEdge extends DefaultGraphEdge<Object>
 	 */
 	public boolean isDependency(DynamicDependency dep)
 	{
-		return dd.equals(dep);
+		return dd == dep;
 	}
 
 	/**
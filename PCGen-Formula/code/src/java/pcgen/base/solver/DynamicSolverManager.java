@@ -15,17 +15,15 @@
  */
 package pcgen.base.solver;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.Stack;
 
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.DynamicDependency;
 import pcgen.base.formula.base.DynamicManager;
-import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.ManagerFactory;
 import pcgen.base.formula.base.ScopeInstance;
@@ -36,7 +34,6 @@ import pcgen.base.formula.base.WriteableVariableStore;
 import pcgen.base.formula.inst.ScopeInstanceFactory;
 import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
 import pcgen.base.graph.inst.DirectionalSetMapGraph;
-import pcgen.base.util.FormatManager;
 
 /**
  * An DynamicSolverManager manages a series of Solver objects in order to manage
@@ -50,40 +47,9 @@ import pcgen.base.util.FormatManager;
  * will build and manage the associated Solver for that VariableID.
  */
 @SuppressWarnings("PMD.TooManyMethods")
-public class DynamicSolverManager implements SolverManager
+public class DynamicSolverManager extends AbstractSolverManager
 {
 
-	/**
-	 * The FormulaManager used by the Solver members of this DynamicSolverManager.
-	 */
-	private final FormulaManager formulaManager;
-
-	/**
-	 * The ManagerFactory to be used to generate visitor managers in this
-	 * DynamicSolverManager.
-	 */
-	private final ManagerFactory managerFactory;
-
-	/**
-	 * The relationship from each VariableID to the Solver calculating the value of the
-	 * VariableID.
-	 */
-	private final Map<VariableID<?>, Solver<?>> scopedChannels =
-			new HashMap<VariableID<?>, Solver<?>>();
-
-	/**
-	 * The "summarized" results of the calculation of each Solver.
-	 */
-	private final WriteableVariableStore resultStore;
-
-	/**
-	 * A mathematical graph used to store dependencies between VariableIDs. Since there is
-	 * a 1:1 relationship with the Solver used for a VariableID, this implicitly stores
-	 * the dependencies between the Solvers that are part of this DynamicSolverManager.
-	 */
-	private final DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> dependencies =
-			new DirectionalSetMapGraph<>();
-
 	/**
 	 * A mathematical graph used to store dynamic dependencies. This links from a
 	 * VariableID to a DynamicEdge. The DynamicEdge contains the information indicating
@@ -93,12 +59,6 @@ public class DynamicSolverManager implements SolverManager
 	private final DirectionalSetMapGraph<Object, DynamicEdge> dynamic =
 			new DirectionalSetMapGraph<>();
 
-	/**
-	 * The SolverFactory to be used to construct the Solver objects that are members of
-	 * this AggressiveSolverFactory.
-	 */
-	private final SolverFactory solverFactory;
-
 	/**
 	 * Constructs a new DynamicSolverManager which will use the given FormulaMananger and
 	 * store results in the given VariableStore.
@@ -123,89 +83,67 @@ public class DynamicSolverManager implements SolverManager
 	public DynamicSolverManager(FormulaManager manager, ManagerFactory managerFactory,
 		SolverFactory solverFactory, WriteableVariableStore resultStore)
 	{
-		this.formulaManager = Objects.requireNonNull(manager);
-		this.managerFactory = Objects.requireNonNull(managerFactory);
-		this.solverFactory = Objects.requireNonNull(solverFactory);
-		this.resultStore = Objects.requireNonNull(resultStore);
+		super(manager, managerFactory, solverFactory, resultStore);
 	}
 
-	/*
-	 * Note: This creates a "local" scoped channel that only exists for the item in
-	 * question (item is "in" the VariableID). The key here being that there is the
-	 * ability to have a local variable (e.g. Equipment variable).
-	 */
 	@Override
-	public <T> void createChannel(VariableID<T> varID)
+	DependencyManager generateDependencyManager(ScopeInstance source,
+		Class<?> assertedFormat)
 	{
-		Solver<?> currentSolver = scopedChannels.get(Objects.requireNonNull(varID));
-		if (currentSolver != null)
-		{
-			throw new IllegalArgumentException(
-				"Attempt to recreate local channel: " + varID);
-		}
-		unconditionallyBuildSolver(varID);
-		solveFromNode(varID);
+		return super.generateDependencyManager(source, assertedFormat)
+			.getWith(DependencyManager.DYNAMIC, new DynamicManager());
 	}
 
+	/*
+	 * Note: This adds an edge from each VariableID upon which a DynamicDependency of the
+	 * Modifier currently depends, in addition to the edges of the direct dependencies.
+	 */
 	@Override
-	public <T> void addModifier(VariableID<T> varID, Modifier<T> modifier,
-		ScopeInstance source)
+	List<DynamicDependency> addDependencies(VariableID<?> varID,
+		DependencyTemplate template, ScopeInstance source, Set<VariableID<?>> deps)
 	{
-		if (varID == null)
+		List<DynamicDependency> dynamicDeps = template
+			.getDynamicDependencies(getFormulaManager().getFactory(), source);
+		List<List<VariableID<?>>> dynamicSources = generateSources(dynamicDeps);
+		if (getBatch() == null)
 		{
-			throw new IllegalArgumentException("VariableID cannot be null");
-		}
-		if (modifier == null)
-		{
-			throw new IllegalArgumentException("Modifier cannot be null");
-		}
-		if (source == null)
-		{
-			throw new IllegalArgumentException("Source cannot be null");
-		}
-
-		if (!formulaManager.getFactory()
-			.isLegalVariableID(varID.getScope().getLegalScope(), varID.getName()))
-		{
-			/*
-			 * The above check allows the implicit create below for only items within the
-			 * VariableLibrary
-			 */
-			throw new IllegalArgumentException("Request to add Modifier to Solver for "
-				+ varID + " but that channel was never defined");
-		}
-		//Note: This cast is enforced by the solver during addModifier
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		if (solver == null)
-		{
-			//CONSIDER This build is implicit - do we want explicit or implicit?
-			solver = unconditionallyBuildSolver(varID);
+			//Report a cycle before any dependency is added
+			for (List<VariableID<?>> inputs : dynamicSources)
+			{
+				checkCycles(varID, inputs);
+			}
 		}
-		/*
-		 * Now build new edges of things this solver will be dependent upon...
-		 */
-		DependencyManager fdm = managerFactory.generateDependencyManager(formulaManager,
-			source, varID.getFormatManager().getManagedClass());
-		fdm = fdm.getWith(DependencyManager.DYNAMIC, new DynamicManager());
-		modifier.getDependencies(fdm);
-		addDirectDependencies(varID, fdm);
-		addDynamicDependencies(varID, fdm);
-		//Cast above effectively enforced here
-		solver.addModifier(modifier, source);
-		/*
-		 * Solve this solver and anything that requires it (recursively)
-		 */
-		solveFromNode(varID);
+		super.addDependencies(varID, template, source, deps);
+		addDynamicDependencies(varID, dynamicDeps, dynamicSources);
+		return dynamicDeps;
 	}
 
-	private <T> void addDynamicDependencies(VariableID<T> varID, DependencyManager fdm)
+	/**
+	 * Returns the VariableIDs upon which each of the given DynamicDependency objects
+	 * currently depends, given the current value of its control variable.
+	 * 
+	 * @param dynamicDeps
+	 *            The DynamicDependency objects for which the VariableIDs should be
+	 *            returned
+	 * @return The VariableIDs upon which each of the given DynamicDependency objects
+	 *         depends, in the same order as the DynamicDependency objects
+	 */
+	private List<List<VariableID<?>>> generateSources(List<DynamicDependency> dynamicDeps)
 	{
-		DynamicManager dd = fdm.get(DependencyManager.DYNAMIC);
-		for (DynamicDependency dep : dd.getDependencies())
+		List<List<VariableID<?>>> sources = new ArrayList<>(dynamicDeps.size());
+		for (DynamicDependency dep : dynamicDeps)
 		{
 			VariableID<?> controlVar = dep.getControlVar();
-			VarScoped vs = (VarScoped) resultStore.get(controlVar);
+			VarScoped vs = (VarScoped) getResultStore().get(controlVar);
+			if ((vs == null) && (getBatch() != null))
+			{
+				/*
+				 * The control variable may have been created in this batch, and thus not
+				 * yet solved. Its value is the default until the batch is committed.
+				 */
+				vs = (VarScoped) getSolverFactory()
+					.getDefault(controlVar.getVariableFormat());
+			}
 			if (vs == null)
 			{
 				throw new IllegalArgumentException(
@@ -213,142 +151,136 @@ public class DynamicSolverManager implements SolverManager
 						+ controlVar.getFormatManager()
 						+ " because no default was provided for that format");
 			}
-			List<VariableID<?>> inputs = dep.generateSources(formulaManager.getFactory(),
-				formulaManager.getScopeInstanceFactory(), vs);
-			for (VariableID<?> input : inputs)
+			FormulaManager formulaManager = getFormulaManager();
+			sources.add(dep.generateSources(formulaManager.getFactory(),
+				formulaManager.getScopeInstanceFactory(), vs));
+		}
+		return sources;
+	}
+
+	private <T> void addDynamicDependencies(VariableID<T> varID,
+		List<DynamicDependency> dynamicDeps, List<List<VariableID<?>>> dynamicSources)
+	{
+		for (int i = 0; i < dynamicDeps.size(); i++)
+		{
+			DynamicDependency dep = dynamicDeps.get(i);
+			for (VariableID<?> input : dynamicSources.get(i))
 			{
 				@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
 				DefaultDirectionalGraphEdge<VariableID<?>> edge =
 						new DefaultDirectionalGraphEdge<>(input, varID);
-				dependencies.addEdge(edge);
+				addEdge(edge);
 				@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-				DynamicEdge de = new DynamicEdge(controlVar, edge, dep);
-				dynamic.addEdge(de);
+				DynamicEdge de = new DynamicEdge(dep.getControlVar(), edge, dep);
+				addDynamicEdge(de);
 			}
 		}
 	}
 
-	private <T> void addDirectDependencies(VariableID<T> varID, DependencyManager fdm)
+	/**
+	 * Adds the given DynamicEdge to the dynamic graph, recording the addition if a batch
+	 * is in progress.
+	 * 
+	 * @param edge
+	 *            The DynamicEdge to be added to the dynamic graph
+	 */
+	private void addDynamicEdge(final DynamicEdge edge)
 	{
-		for (VariableID<?> depID : fdm.getVariables())
+		dynamic.addEdge(edge);
+		SolverBatch batch = getBatch();
+		if (batch != null)
 		{
-			ensureSolverExists(depID);
-			/*
-			 * Better to use depID here rather than Solver: (1) No order of operations
-			 * risk (2) Process can still write to cache knowing ID
-			 */
-			@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-			DefaultDirectionalGraphEdge<VariableID<?>> edge =
-					new DefaultDirectionalGraphEdge<>(depID, varID);
-			dependencies.addEdge(edge);
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					dynamic.removeEdge(edge);
+				}
+			});
 		}
 	}
 
-	private void ensureSolverExists(VariableID<?> varID)
+	/**
+	 * Removes the given DynamicEdge from the dynamic graph, recording the removal if a
+	 * batch is in progress.
+	 * 
+	 * @param edge
+	 *            The DynamicEdge to be removed from the dynamic graph
+	 */
+	private void removeDynamicEdge(final DynamicEdge edge)
 	{
-		if (scopedChannels.get(varID) == null)
+		dynamic.removeEdge(edge);
+		SolverBatch batch = getBatch();
+		if (batch != null)
 		{
-			unconditionallyBuildSolver(varID);
-			solveFromNode(varID);
+			batch.onRollback(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					dynamic.addEdge(edge);
+				}
+			});
 		}
 	}
 
-	private <T> Solver<T> unconditionallyBuildSolver(VariableID<T> varID)
-	{
-		FormatManager<T> formatManager = varID.getFormatManager();
-		Solver<T> solver = solverFactory.getSolver(formatManager);
-		scopedChannels.put(varID, solver);
-		dependencies.addNode(varID);
-		return solver;
-	}
-
 	@Override
-	public <T> void removeModifier(VariableID<T> varID, Modifier<T> modifier,
-		ScopeInstance source)
+	void removeDependencies(ModifierHandle<?> handle)
 	{
-		if (varID == null)
-		{
-			throw new IllegalArgumentException("VariableID cannot be null");
-		}
-		if (modifier == null)
-		{
-			throw new IllegalArgumentException("Modifier cannot be null");
-		}
-		if (source == null)
-		{
-			throw new IllegalArgumentException("Source cannot be null");
-		}
-		//Note: This cast is enforced by the solver during addModifier
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		if (solver == null)
-		{
-			throw new IllegalArgumentException("Request to remove Modifier to Solver for "
-				+ varID + " but that channel was never defined");
-		}
-		DependencyManager fdm = managerFactory.generateDependencyManager(formulaManager,
-			source, varID.getFormatManager().getManagedClass());
-		fdm = fdm.getWith(DependencyManager.DYNAMIC, new DynamicManager());
-		modifier.getDependencies(fdm);
-		processDependencies(varID, fdm);
-		//Cast above effectively enforced here
-		solver.removeModifier(modifier, source);
-		solveFromNode(varID);
-	}
-
-	/**
-	 * Process Dependencies to be removed for the given VariableID stored in the given
-	 * DependencyManager.
-	 * 
-	 * @param <T>
-	 *            The format (class) of object contained by the given VariableID
-	 * @param varID
-	 *            The VariableID for which dependencies will be removed
-	 * @param dm
-	 *            The DependencyManager containing the dependencies of the given
-	 *            VariableID
-	 */
-	private <T> void processDependencies(VariableID<T> varID, DependencyManager dm)
-	{
-		DynamicManager dd = dm.get(DependencyManager.DYNAMIC);
-		for (DynamicDependency dep : dd.getDependencies())
+		for (DynamicDependency dep : handle.getDynamicDependencies())
 		{
 			VariableID<?> controlVar = dep.getControlVar();
 			for (DynamicEdge edge : dynamic.getAdjacentEdges(controlVar))
 			{
 				if (edge.isDependency(dep))
 				{
-					dependencies.removeEdge(edge.getTargetEdge());
-					dynamic.removeEdge(edge);
+					removeEdge(edge.getTargetEdge());
+					removeDynamicEdge(edge);
 				}
 			}
 		}
-		List<VariableID<?>> deps = dm.getVariables();
-		if (deps == null)
+		super.removeDependencies(handle);
+	}
+
+	@Override
+	public void commitBatch()
+	{
+		SolverBatch committed = endBatch();
+		List<VariableID<?>> cycle = committed.getCycle();
+		if (cycle != null)
 		{
-			return;
+			committed.rollback();
+			throw new IllegalStateException(
+				"Batch introduced a cycle in Variable Processing: " + cycle);
 		}
-		Set<DefaultDirectionalGraphEdge<VariableID<?>>> edges =
-				dependencies.getAdjacentEdges(varID);
-		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : edges)
+		Set<VariableID<?>> dirty = committed.getDirty();
+		//The dependencies never contain a cycle, so there is always an order
+		solveInOrder(DependencyOrder.sort(getDependencies(), dirty), dirty);
+	}
+
+	/**
+	 * Solves the given VariableIDs in the given order. A VariableID is only processed if
+	 * it is in the given Set of dirty VariableIDs or if a VariableID upon which it depends
+	 * changed value.
+	 * 
+	 * @param order
+	 *            The VariableIDs to be solved, in topological order
+	 * @param dirty
+	 *            The VariableIDs that must be processed
+	 */
+	private void solveInOrder(List<VariableID<?>> order, Set<VariableID<?>> dirty)
+	{
+		Set<VariableID<?>> stale = new HashSet<>(dirty);
+		for (VariableID<?> varID : order)
 		{
-			if (edge.getNodeAt(1) == varID)
+			if (stale.contains(varID) && processSolver(varID))
 			{
-				VariableID<?> depID = edge.getNodeAt(0);
-				if (deps.contains(depID))
-				{
-					dependencies.removeEdge(edge);
-					deps.remove(depID);
-				}
+				notifyChildren(varID);
+				resolveDynamic(varID);
+				stale.addAll(DependencyOrder.getChildren(getDependencies(), varID));
 			}
 		}
-		if (!deps.isEmpty())
-		{
-			/*
-			 * TODO Some form of error here since couldn't find matching edges for all
-			 * dependencies...
-			 */
-		}
 	}
 
 	/**
@@ -359,31 +291,24 @@ public class DynamicSolverManager implements SolverManager
 	 *            The VariableID as a starting point for triggering Solvers to be
 	 *            processed
 	 */
-	public void solveFromNode(VariableID<?> varID)
+	@Override
+	void solveFrom(VariableID<?> varID)
 	{
-		boolean warning = varStack.contains(varID);
-		try
+		SolverBatch batch = getBatch();
+		if (batch != null)
 		{
-			varStack.push(varID);
-			if (processSolver(varID))
-			{
-				if (warning)
-				{
-					throw new IllegalStateException(
-						"Infinite Loop in Variable Processing: " + varStack);
-				}
-				/*
-				 * Only necessary if the answer changes. The problem is that this is not
-				 * doing them in order of a topological sort - it is completely random...
-				 * so things may be processed twice :/
-				 */
-				resolveDynamic(varID);
-				solveChildren(varID);
-			}
+			batch.markDirty(varID);
+			return;
 		}
-		finally
+		if (processSolver(varID))
 		{
-			varStack.pop();
+			/*
+			 * Only necessary if the answer changes. The problem is that this is not
+			 * doing them in order of a topological sort - it is completely random...
+			 * so things may be processed twice :/
+			 */
+			resolveDynamic(varID);
+			solveChildren(varID);
 		}
 	}
 
@@ -393,9 +318,12 @@ public class DynamicSolverManager implements SolverManager
 		{
 			return;
 		}
-		VarScoped vs = (VarScoped) resultStore.get(varID);
+		VarScoped vs = (VarScoped) getResultStore().get(varID);
+		FormulaManager formulaManager = getFormulaManager();
 		ScopeInstanceFactory siFactory = formulaManager.getScopeInstanceFactory();
 		VariableLibrary varLibrary = formulaManager.getFactory();
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> dependencies =
+				getDependencies();
 		for (DynamicEdge edge : dynamic.getAdjacentEdges(varID))
 		{
 			DefaultDirectionalGraphEdge<VariableID<?>> target = edge.getTargetEdge();
@@ -403,6 +331,13 @@ public class DynamicSolverManager implements SolverManager
 				target.getNodeAt(1));
 			DefaultDirectionalGraphEdge<VariableID<?>> newTarget =
 					newEdge.getTargetEdge();
+			List<VariableID<?>> cycle = getCycleDetector()
+				.edgeAdded(newTarget.getNodeAt(0), newTarget.getNodeAt(1));
+			if (cycle != null)
+			{
+				throw new IllegalStateException(
+					"Infinite Loop in Variable Processing: " + cycle);
+			}
 			dynamic.removeEdge(edge);
 			if (!dynamic.hasAdjacentEdge(varID))
 			{
@@ -412,75 +347,32 @@ public class DynamicSolverManager implements SolverManager
 			dependencies.removeEdge(target);
 			dependencies.addEdge(newTarget);
 			dynamic.addEdge(newEdge);
-			solveFromNode(newTarget.getNodeAt(1));
+			//The Solver now depends upon a different variable
+			Solver<?> targetSolver = localSolver(newTarget.getNodeAt(1));
+			if (targetSolver != null)
+			{
+				targetSolver.dependencyChanged(newTarget.getNodeAt(0));
+			}
+			solveFrom(newTarget.getNodeAt(1));
 		}
 	}
 
 	@Override
 	public void solveChildren(VariableID<?> varID)
 	{
+		notifyChildren(varID);
 		Set<DefaultDirectionalGraphEdge<VariableID<?>>> adjacentEdges =
-				dependencies.getAdjacentEdges(varID);
+				getDependencies().getAdjacentEdges(varID);
 		if (adjacentEdges != null)
 		{
 			for (DefaultDirectionalGraphEdge<VariableID<?>> edge : adjacentEdges)
 			{
 				if (edge.getNodeAt(0).equals(varID))
 				{
-					solveFromNode(edge.getNodeAt(1));
+					solveFrom(edge.getNodeAt(1));
 				}
 			}
 		}
 	}
 
-	private Stack<VariableID<?>> varStack = new Stack<>();
-
-	/**
-	 * Processes a single Solver represented by the given VariableID. Returns true if the
-	 * value of the Variable calculated by the Solver has changed due to this processing.
-	 * 
-	 * @param <T>
-	 *            The format (class) of object contained by the given VariableID
-	 * @param varID
-	 *            The VariableID for which the given Solver should be processed.
-	 * 
-	 * @return true if the value of the Variable calculated by the Solver has changed due
-	 *         to this processing; false otherwise
-	 */
-	private <T> boolean processSolver(VariableID<T> varID)
-	{
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		/*
-		 * Solver should "never" be null here, so we accept risk of NPE, since it's always
-		 * a code bug
-		 */
-		EvaluationManager evalManager = managerFactory
-			.generateEvaluationManager(formulaManager, varID.getVariableFormat());
-		T newValue = solver.process(evalManager);
-		Object oldValue = resultStore.put(varID, newValue);
-		return !newValue.equals(oldValue);
-	}
-
-	@Override
-	public <T> List<ProcessStep<T>> diagnose(VariableID<T> varID)
-	{
-		@SuppressWarnings("unchecked")
-		Solver<T> solver = (Solver<T>) scopedChannels.get(varID);
-		if (solver == null)
-		{
-			throw new IllegalArgumentException("Request to diagnose VariableID " + varID
-				+ " but that channel was never defined");
-		}
-		EvaluationManager evalManager = managerFactory
-			.generateEvaluationManager(formulaManager, varID.getVariableFormat());
-		return solver.diagnose(evalManager);
-	}
-
-	@Override
-	public <T> T getDefaultValue(Class<T> varFormat)
-	{
-		return solverFactory.getDefault(varFormat);
-	}
-
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.VariableID;
+
+/**
+ * A LazySolverManager manages a series of Solver objects in order to manage dependencies
+ * between those Solver objects, calculating the value of a variable only when that value
+ * is read.
+ * 
+ * Unlike the AggressiveSolverManager, which processes every Solver affected by a change
+ * as soon as the change is made, the LazySolverManager only marks the affected Solvers
+ * as out of date. When the value of a variable is read from the LazyVariableStore of the
+ * LazySolverManager, the out of date Solvers upon which that variable depends (and the
+ * Solver for the variable itself) are processed. Variables that are not read are never
+ * calculated, and many changes between reads cause each affected Solver to be processed
+ * at most once.
+ * 
+ * A cycle in the dependencies is not permitted. A change that would introduce a cycle is
+ * rolled back, and an IllegalStateException is thrown.
+ * 
+ * One of the primary characteristic of the LazySolverManager is also that callers will
+ * consider items as represented by a given "VariableID", whereas the LazySolverManager
+ * will build and manage the associated Solver for that VariableID.
+ */
+public class LazySolverManager extends AbstractSolverManager
+{
+
+	/**
+	 * The VariableIDs for which the value in the resultStore is out of date. If a
+	 * VariableID is in this Set, then every VariableID that depends upon it is also in
+	 * this Set.
+	 */
+	private final Set<VariableID<?>> stale = new HashSet<>();
+
+	/**
+	 * Constructs a new LazySolverManager which will use the given FormulaMananger and
+	 * store results in the given LazyVariableStore.
+	 * 
+	 * The given LazyVariableStore must be the VariableStore used by the given
+	 * FormulaManager, so that formulas read up to date values of the variables upon which
+	 * they depend. A LazyVariableStore can only be used by one LazySolverManager.
+	 * 
+	 * @param manager
+	 *            The FormulaManager to be used by any Solver in this LazySolverManager
+	 * @param managerFactory
+	 *            The ManagerFactory to be used to generate visitor managers in this
+	 *            LazySolverManager
+	 * @param solverFactory
+	 *            The SolverFactory used to store Defaults and build Solver objects
+	 * @param resultStore
+	 *            The LazyVariableStore used to store results of the calculations of the
+	 *            Solver objects within this LazySolverManager
+	 * @throws IllegalStateException
+	 *             if the given LazyVariableStore is already used by another
+	 *             LazySolverManager
+	 */
+	public LazySolverManager(FormulaManager manager, ManagerFactory managerFactory,
+		SolverFactory solverFactory, LazyVariableStore resultStore)
+	{
+		super(manager, managerFactory, solverFactory, resultStore);
+		resultStore.setManager(this);
+	}
+
+	@Override
+	boolean isBatchedImplicitly()
+	{
+		return true;
+	}
+
+	@Override
+	public void commitBatch()
+	{
+		SolverBatch committed = endBatch();
+		List<VariableID<?>> cycle = committed.getCycle();
+		if (cycle != null)
+		{
+			committed.rollback();
+			throw new IllegalStateException(
+				"Infinite Loop in Variable Processing: " + cycle);
+		}
+		for (VariableID<?> varID : committed.getDirty())
+		{
+			markStale(varID);
+		}
+	}
+
+	/**
+	 * Indicates that the given VariableID (and thus everything that depends upon it) is
+	 * out of date. The value will be calculated when it is next read.
+	 * 
+	 * @param varID
+	 *            The VariableID as a starting point for marking Solvers as out of date
+	 */
+	@Override
+	void solveFrom(VariableID<?> varID)
+	{
+		SolverBatch batch = getBatch();
+		if (batch != null)
+		{
+			batch.markDirty(varID);
+			return;
+		}
+		markStale(varID);
+	}
+
+	/**
+	 * Indicates that the children of the given VariableID (and thus everything that
+	 * depends upon them) are out of date. The values will be calculated when they are
+	 * next read.
+	 */
+	@Override
+	public void solveChildren(VariableID<?> varID)
+	{
+		notifyChildren(varID);
+		for (VariableID<?> child : DependencyOrder.getChildren(getDependencies(), varID))
+		{
+			solveFrom(child);
+		}
+	}
+
+	/**
+	 * Marks the given VariableID, and every VariableID that depends upon it, as out of
+	 * date.
+	 * 
+	 * @param varID
+	 *            The VariableID to be marked as out of date
+	 */
+	private void markStale(VariableID<?> varID)
+	{
+		Deque<VariableID<?>> work = new ArrayDeque<>();
+		work.push(varID);
+		while (!work.isEmpty())
+		{
+			VariableID<?> current = work.pop();
+			//If already stale, everything that depends upon it is also stale
+			if (stale.add(current))
+			{
+				work.addAll(DependencyOrder.getChildren(getDependencies(), current));
+			}
+		}
+	}
+
+	/**
+	 * Ensures the value of the given VariableID in the LazyVariableStore is up to date,
+	 * processing the out of date Solvers upon which the VariableID depends (in dependency
+	 * order) and then the Solver for the VariableID.
+	 * 
+	 * No Solver is processed while a batch is in progress, so values read during a batch
+	 * are the values last calculated before the batch.
+	 * 
+	 * @param varID
+	 *            The VariableID for which the value should be up to date
+	 */
+	void ensureSolved(VariableID<?> varID)
+	{
+		if ((getBatch() != null) || !stale.contains(varID))
+		{
+			return;
+		}
+		Deque<VariableID<?>> work = new ArrayDeque<>();
+		work.push(varID);
+		while (!work.isEmpty())
+		{
+			VariableID<?> current = work.peek();
+			boolean ready = true;
+			for (VariableID<?> parent : DependencyOrder.getParents(getDependencies(),
+				current))
+			{
+				if (stale.contains(parent))
+				{
+					work.push(parent);
+					ready = false;
+				}
+			}
+			if (ready)
+			{
+				work.pop();
+				/*
+				 * A VariableID can be pushed more than once (by each VariableID that
+				 * depends upon it), but is only processed once
+				 */
+				if (stale.remove(current) && processSolver(current))
+				{
+					notifyChildren(current);
+				}
+			}
+		}
+	}
+
+	@Override
+	public <T> List<ProcessStep<T>> diagnose(VariableID<T> varID)
+	{
+		ensureSolved(varID);
+		return super.diagnose(varID);
+	}
+
+}
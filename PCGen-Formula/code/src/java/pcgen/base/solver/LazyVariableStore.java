@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.WriteableVariableStore;
+import pcgen.base.formula.inst.SimpleVariableStore;
+
+/**
+ * A LazyVariableStore is the WriteableVariableStore for a LazySolverManager.
+ * 
+ * The LazySolverManager does not calculate the value of a variable when a dependency of
+ * that variable changes. Instead, reading the value of the variable from the
+ * LazyVariableStore (with get or containsKey) triggers the LazySolverManager to calculate
+ * the value of that variable (and any variable it depends upon that is out of date).
+ * 
+ * Since formulas read the values of variables from the VariableStore of the
+ * FormulaManager, the LazyVariableStore must also be the VariableStore used by the
+ * FormulaManager of the LazySolverManager.
+ * 
+ * A LazyVariableStore (and the LazySolverManager) is not thread-safe.
+ */
+public class LazyVariableStore implements WriteableVariableStore
+{
+
+	/**
+	 * The underlying storage for the calculated values in this LazyVariableStore.
+	 */
+	private final WriteableVariableStore values = new SimpleVariableStore();
+
+	/**
+	 * The LazySolverManager that calculates the values in this LazyVariableStore; null if
+	 * no LazySolverManager has been constructed for this LazyVariableStore.
+	 */
+	private LazySolverManager manager;
+
+	/**
+	 * Sets the LazySolverManager that calculates the values in this LazyVariableStore.
+	 * 
+	 * @param solverManager
+	 *            The LazySolverManager that calculates the values in this
+	 *            LazyVariableStore
+	 * @throws IllegalStateException
+	 *             if a LazySolverManager has already been set for this LazyVariableStore
+	 */
+	void setManager(LazySolverManager solverManager)
+	{
+		if (manager != null)
+		{
+			throw new IllegalStateException(
+				"LazyVariableStore is already used by another LazySolverManager");
+		}
+		manager = solverManager;
+	}
+
+	/**
+	 * Returns the value in this LazyVariableStore for the given VariableID, calculating
+	 * the value first if it is out of date.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <T> T get(VariableID<T> varID)
+	{
+		if (manager != null)
+		{
+			manager.ensureSolved(varID);
+		}
+		return values.get(varID);
+	}
+
+	/**
+	 * Returns true if this LazyVariableStore contains a value for the given VariableID,
+	 * calculating the value first if it is out of date.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsKey(VariableID<?> varID)
+	{
+		if (manager != null)
+		{
+			manager.ensureSolved(varID);
+		}
+		return values.containsKey(varID);
+	}
+
+	@Override
+	public <T> T put(VariableID<T> varID, T value)
+	{
+		return values.put(varID, value);
+	}
+
+	@Override
+	public <T> T remove(VariableID<T> varID)
+	{
+		return values.remove(varID);
+	}
+}
@@ -18,6 +18,7 @@
 package pcgen.base.solver;
 
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.EvaluationManager;
 
 /**
@@ -58,6 +59,26 @@ public interface Modifier<T>
 	 */
 	public void getDependencies(DependencyManager fdm);
 
+	/**
+	 * Returns the DependencyTemplate for the Modifier, as captured with the
+	 * given DependencyManager.
+	 * 
+	 * A Modifier that contains a formula should return the DependencyTemplate
+	 * of that formula (see NEPFormula.getDependencyTemplate), which allows the
+	 * template to be captured once for the formula rather than once for each
+	 * Modifier. In that case the given DependencyManager may not be loaded.
+	 * 
+	 * @param fdm
+	 *            The DependencyManager to be used to capture the dependencies
+	 *            of this Modifier
+	 * @return The DependencyTemplate for the Modifier
+	 */
+	public default DependencyTemplate getDependencyTemplate(DependencyManager fdm)
+	{
+		getDependencies(fdm);
+		return new DependencyTemplate(fdm);
+	}
+
 	/**
 	 * Returns the priority of this Modifier. This is defined by the developer,
 	 * and is intended to set the order of operations for a Modifier when
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import pcgen.base.formula.base.DynamicDependency;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableID;
+
+/**
+ * A ModifierHandle identifies a Modifier added to a SolverManager, so that the Modifier
+ * can later be removed without the SolverManager having to locate it again.
+ *
+ * The ModifierHandle records the dependencies of the Modifier as they were bound when
+ * the Modifier was added, as well as the entry for the Modifier in the Solver. Removing
+ * the Modifier by its ModifierHandle therefore does not analyze the dependencies of the
+ * Modifier again, nor does it search the Solver for an equal Modifier and source.
+ *
+ * A ModifierHandle is only valid for the SolverManager that returned it.
+ *
+ * @param <T>
+ *            The format (class) of object modified by the Modifier
+ */
+public final class ModifierHandle<T>
+{
+
+	/**
+	 * The SolverManager to which the Modifier was added.
+	 */
+	private final SolverManager owner;
+
+	/**
+	 * The VariableID modified by the Modifier.
+	 */
+	private final VariableID<T> varID;
+
+	/**
+	 * The Modifier identified by this ModifierHandle.
+	 */
+	private final Modifier<T> modifier;
+
+	/**
+	 * The source of the Modifier.
+	 */
+	private final ScopeInstance source;
+
+	/**
+	 * The VariableIDs upon which the Modifier depends, as bound when it was added.
+	 */
+	private final Set<VariableID<?>> dependencies;
+
+	/**
+	 * The DynamicDependency objects of the Modifier, as bound when it was added.
+	 */
+	private final List<DynamicDependency> dynamicDependencies;
+
+	/**
+	 * The entry for the Modifier in the Solver; null if the Modifier has been removed.
+	 */
+	private Solver.ModInfo<T> entry;
+
+	/**
+	 * Constructs a new ModifierHandle for the given Modifier.
+	 * 
+	 * @param owner
+	 *            The SolverManager to which the Modifier was added
+	 * @param varID
+	 *            The VariableID modified by the Modifier
+	 * @param modifier
+	 *            The Modifier identified by this ModifierHandle
+	 * @param source
+	 *            The source of the Modifier
+	 * @param dependencies
+	 *            The VariableIDs upon which the Modifier depends (ownership is
+	 *            transferred to this ModifierHandle)
+	 * @param dynamicDependencies
+	 *            The DynamicDependency objects of the Modifier (ownership is transferred
+	 *            to this ModifierHandle)
+	 * @param entry
+	 *            The entry for the Modifier in the Solver
+	 */
+	ModifierHandle(SolverManager owner, VariableID<T> varID, Modifier<T> modifier,
+		ScopeInstance source, Set<VariableID<?>> dependencies,
+		List<DynamicDependency> dynamicDependencies, Solver.ModInfo<T> entry)
+	{
+		this.owner = owner;
+		this.varID = varID;
+		this.modifier = modifier;
+		this.source = source;
+		this.dependencies = Collections.unmodifiableSet(dependencies);
+		this.dynamicDependencies = Collections.unmodifiableList(dynamicDependencies);
+		this.entry = entry;
+	}
+
+	/**
+	 * Returns the VariableID modified by the Modifier.
+	 * 
+	 * @return The VariableID modified by the Modifier
+	 */
+	public VariableID<T> getVariableID()
+	{
+		return varID;
+	}
+
+	/**
+	 * Returns the Modifier identified by this ModifierHandle.
+	 * 
+	 * @return The Modifier identified by this ModifierHandle
+	 */
+	public Modifier<T> getModifier()
+	{
+		return modifier;
+	}
+
+	/**
+	 * Returns the source of the Modifier.
+	 * 
+	 * @return The source of the Modifier
+	 */
+	public ScopeInstance getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * Returns true if the Modifier identified by this ModifierHandle has been removed
+	 * from the SolverManager; false otherwise.
+	 * 
+	 * @return true if the Modifier identified by this ModifierHandle has been removed
+	 *         from the SolverManager; false otherwise
+	 */
+	public boolean isRemoved()
+	{
+		return entry == null;
+	}
+
+	/**
+	 * Returns the VariableIDs upon which the Modifier depends, as bound when it was
+	 * added.
+	 * 
+	 * @return The (unmodifiable) VariableIDs upon which the Modifier depends
+	 */
+	Set<VariableID<?>> getDependencies()
+	{
+		return dependencies;
+	}
+
+	/**
+	 * Returns the DynamicDependency objects of the Modifier, as bound when it was added.
+	 * 
+	 * @return The (unmodifiable) DynamicDependency objects of the Modifier
+	 */
+	List<DynamicDependency> getDynamicDependencies()
+	{
+		return dynamicDependencies;
+	}
+
+	/**
+	 * Returns the entry for the Modifier in the Solver; null if the Modifier has been
+	 * removed.
+	 * 
+	 * @return The entry for the Modifier in the Solver
+	 */
+	Solver.ModInfo<T> getEntry()
+	{
+		return entry;
+	}
+
+	/**
+	 * Sets the entry for the Modifier in the Solver (null when the Modifier is removed).
+	 * 
+	 * @param entry
+	 *            The entry for the Modifier in the Solver
+	 */
+	void setEntry(Solver.ModInfo<T> entry)
+	{
+		this.entry = entry;
+	}
+
+	/**
+	 * Returns true if this ModifierHandle was returned by the given SolverManager.
+	 * 
+	 * @param solverManager
+	 *            The SolverManager to be checked
+	 * @return true if this ModifierHandle was returned by the given SolverManager; false
+	 *         otherwise
+	 */
+	boolean isOwnedBy(SolverManager solverManager)
+	{
+		return owner == solverManager;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
+import pcgen.base.graph.inst.DirectionalSetMapGraph;
+
+/**
+ * An OverlayGraph is a copy-on-write dependency graph, layered over a parent dependency
+ * graph.
+ *
+ * The edges of a VariableID are read from the parent graph until an edge of that
+ * VariableID is added or removed. The edges of the VariableID are then copied into the
+ * OverlayGraph, which is changed instead, so the parent graph is never changed.
+ * Constructing an OverlayGraph therefore does not copy the parent graph, and the
+ * OverlayGraph holds only the VariableIDs whose edges have changed.
+ *
+ * An OverlayGraph only supports the methods used by a SolverManager to maintain and
+ * traverse its dependencies: addNode, removeNode, addEdge, removeEdge and
+ * getAdjacentEdges. The parent graph should not be changed while the OverlayGraph is in
+ * use.
+ */
+final class OverlayGraph
+		extends DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>>
+{
+
+	/**
+	 * The dependency graph from which the edges of any VariableID not changed in this
+	 * OverlayGraph are read.
+	 */
+	private final DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> parent;
+
+	/**
+	 * The edges of each VariableID changed in this OverlayGraph. The edges are null for
+	 * a VariableID that has been removed from this OverlayGraph.
+	 */
+	private final Map<VariableID<?>, Set<DefaultDirectionalGraphEdge<VariableID<?>>>> changed =
+			new HashMap<>();
+
+	/**
+	 * Constructs a new OverlayGraph layered over the given dependency graph.
+	 *
+	 * @param parent
+	 *            The dependency graph from which the edges of any VariableID not changed
+	 *            in this OverlayGraph are read
+	 */
+	OverlayGraph(
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> parent)
+	{
+		this.parent = Objects.requireNonNull(parent);
+	}
+
+	@Override
+	public boolean addNode(VariableID<?> varID)
+	{
+		if ((varID == null) || (getEdges(varID) != null))
+		{
+			return false;
+		}
+		changed.put(varID, new HashSet<DefaultDirectionalGraphEdge<VariableID<?>>>());
+		return true;
+	}
+
+	@Override
+	public boolean removeNode(VariableID<?> varID)
+	{
+		Set<DefaultDirectionalGraphEdge<VariableID<?>>> edges = getEdges(varID);
+		if (edges == null)
+		{
+			return false;
+		}
+		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : new HashSet<>(edges))
+		{
+			removeEdge(edge);
+		}
+		changed.put(varID, null);
+		return true;
+	}
+
+	@Override
+	public boolean addEdge(DefaultDirectionalGraphEdge<VariableID<?>> edge)
+	{
+		if ((edge == null) || containsEdge(edge))
+		{
+			return false;
+		}
+		for (VariableID<?> varID : edge.getAdjacentNodes())
+		{
+			addNode(varID);
+			copyEdges(varID).add(edge);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removeEdge(DefaultDirectionalGraphEdge<VariableID<?>> edge)
+	{
+		if ((edge == null) || !containsEdge(edge))
+		{
+			return false;
+		}
+		for (VariableID<?> varID : edge.getAdjacentNodes())
+		{
+			copyEdges(varID).remove(edge);
+		}
+		return true;
+	}
+
+	@Override
+	public Set<DefaultDirectionalGraphEdge<VariableID<?>>> getAdjacentEdges(
+		VariableID<?> varID)
+	{
+		Set<DefaultDirectionalGraphEdge<VariableID<?>>> edges = getEdges(varID);
+		return (edges == null) ? null : new HashSet<>(edges);
+	}
+
+	/**
+	 * Returns true if the given edge is in this OverlayGraph.
+	 *
+	 * @param edge
+	 *            The edge to be checked
+	 * @return true if the given edge is in this OverlayGraph; false otherwise
+	 */
+	private boolean containsEdge(DefaultDirectionalGraphEdge<VariableID<?>> edge)
+	{
+		Set<DefaultDirectionalGraphEdge<VariableID<?>>> edges =
+				getEdges(edge.getNodeAt(0));
+		return (edges != null) && edges.contains(edge);
+	}
+
+	/**
+	 * Returns the edges of the given VariableID, from this OverlayGraph if the edges of
+	 * the VariableID have changed, otherwise from the parent graph. The returned Set must
+	 * not be modified.
+	 *
+	 * @param varID
+	 *            The VariableID for which the edges should be returned
+	 * @return The edges of the given VariableID; null if the VariableID is not in this
+	 *         OverlayGraph
+	 */
+	private Set<DefaultDirectionalGraphEdge<VariableID<?>>> getEdges(VariableID<?> varID)
+	{
+		if (changed.containsKey(varID))
+		{
+			return changed.get(varID);
+		}
+		return parent.getAdjacentEdges(varID);
+	}
+
+	/**
+	 * Returns the (modifiable) edges of the given VariableID held by this OverlayGraph,
+	 * copying the edges from the parent graph if they have not yet changed. The
+	 * VariableID must be in this OverlayGraph.
+	 *
+	 * @param varID
+	 *            The VariableID for which the edges should be returned
+	 * @return The edges of the given VariableID held by this OverlayGraph
+	 */
+	private Set<DefaultDirectionalGraphEdge<VariableID<?>>> copyEdges(VariableID<?> varID)
+	{
+		Set<DefaultDirectionalGraphEdge<VariableID<?>>> edges = changed.get(varID);
+		if (edges == null)
+		{
+			edges = new HashSet<>(parent.getAdjacentEdges(varID));
+			changed.put(varID, edges);
+		}
+		return edges;
+	}
+}
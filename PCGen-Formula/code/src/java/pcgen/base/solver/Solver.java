@@ -18,14 +18,19 @@
 package pcgen.base.solver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.Identified;
 import pcgen.base.formula.base.ScopeInstance;
-import pcgen.base.util.HashMapToList;
-import pcgen.base.util.TreeMapToList;
+import pcgen.base.formula.base.VariableBinding;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.VariableSlot;
+import pcgen.base.formula.base.VariableStore;
 
 /**
  * A Solver manages a series of Modifiers in order to "solve" those Modifiers to
@@ -41,6 +46,17 @@ import pcgen.base.util.TreeMapToList;
  * correctly relative to other Solver instances. That cross-variable resolution
  * is done by a SolverManager.
  * 
+ * A Solver retains the result after each Modifier when it is processed. When
+ * only some Modifiers are affected by a change (a Modifier is added or removed,
+ * or a variable upon which a Modifier depends changes value, as reported to
+ * dependencyChanged), the update method restarts processing from the retained
+ * result just before the first affected Modifier, rather than from the default
+ * value.
+ * 
+ * The Modifiers are stored in a single array (sorted by priority), with the
+ * retained results in a parallel array, since most Solvers have few Modifiers.
+ * No storage beyond the Solver itself is allocated until a Modifier is added.
+ * 
  * @param <T>
  *            The format of object that this Solver operates on (e.g.
  *            java.lang.Number)
@@ -59,19 +75,29 @@ public class Solver<T>
 	private final Modifier<T> defaultModifier;
 
 	/**
-	 * The list of Modifiers for this Solver. This is maintained as an ordered
-	 * list: TreeMap sorts the Modifiers by their priority.
+	 * The Modifiers for this Solver, in the order they are processed: sorted
+	 * by priority, and in the order they were added within a priority. Only
+	 * the first size entries are used; null if no Modifier has been added.
+	 */
+	private ModInfo<T>[] modifiers;
+
+	/**
+	 * The result retained after each Modifier was last processed, at the same
+	 * index as the Modifier in modifiers. Only the first validCount entries
+	 * are meaningful; null if no Modifier has been added.
+	 */
+	private Object[] results;
+
+	/**
+	 * The number of Modifiers in this Solver.
 	 */
-	private final TreeMapToList<Long, ModInfo<T>> modifierList =
-			new TreeMapToList<Long, ModInfo<T>>();
+	private int size;
 
 	/**
-	 * A map of sources to the Modifiers provided by that source. This is used
-	 * for tracing responsibility for modification as well as allowing a
-	 * "global remove" of Modifiers from a given source.
+	 * The number of leading Modifiers for which the retained result is valid.
+	 * Processing restarts from the Modifier at this index.
 	 */
-	private final HashMapToList<Object, Modifier<T>> sourceList =
-			new HashMapToList<Object, Modifier<T>>();
+	private int validCount;
 
 	/**
 	 * Constructs a new Solver with the given default Modifier and
@@ -105,6 +131,70 @@ public class Solver<T>
 		this.defaultModifier = defaultModifier;
 	}
 
+	/**
+	 * Constructs a new Solver with the same default Modifier, Modifiers and
+	 * retained results as the given Solver.
+	 * 
+	 * @param original
+	 *            The Solver to be copied
+	 */
+	private Solver(Solver<T> original)
+	{
+		defaultModifier = original.defaultModifier;
+		if (original.modifiers != null)
+		{
+			modifiers = Arrays.copyOf(original.modifiers, original.size);
+			results = Arrays.copyOf(original.results, original.size);
+		}
+		size = original.size;
+		validCount = original.validCount;
+	}
+
+	/**
+	 * Returns a copy of this Solver. The copy contains the same Modifiers
+	 * (and entries, as returned by addEntry) as this Solver, and retains the
+	 * same results, but is then independent of this Solver: a change to
+	 * either Solver does not affect the other.
+	 * 
+	 * @return A copy of this Solver
+	 */
+	Solver<T> copy()
+	{
+		return new Solver<>(this);
+	}
+
+	/**
+	 * Returns a copy of this Solver, as copy(), except that each entry with a
+	 * VariableBinding is replaced in the copy by an entry with that
+	 * VariableBinding rebound to the given VariableStore and the VariableSlot
+	 * objects returned by the given Function (see VariableBinding.rebind).
+	 * 
+	 * A replaced entry is still removed from the copy when the original entry
+	 * is provided to removeEntry.
+	 * 
+	 * @param store
+	 *            The VariableStore against which the copy will be processed
+	 * @param slotSource
+	 *            The Function returning the VariableSlot (mirroring the given
+	 *            VariableStore) for a VariableID
+	 * @return A copy of this Solver, with each VariableBinding rebound
+	 */
+	Solver<T> copy(VariableStore store,
+		Function<VariableID<?>, VariableSlot<?>> slotSource)
+	{
+		Solver<T> copy = new Solver<>(this);
+		for (int i = 0; i < size; i++)
+		{
+			ModInfo<T> modInfo = copy.modifiers[i];
+			if (modInfo.binding != null)
+			{
+				copy.modifiers[i] = new ModInfo<>(modInfo,
+					modInfo.binding.rebind(store, slotSource));
+			}
+		}
+		return copy;
+	}
+
 	/**
 	 * Add a Modifier (from the given source) to this Solver. The Modifier will
 	 * be processed in the order defined by the priority of the Modifier.
@@ -117,6 +207,87 @@ public class Solver<T>
 	 *            The source object for the given Modifier
 	 */
 	public void addModifier(Modifier<T> modifier, ScopeInstance source)
+	{
+		addModifier(modifier, source, null);
+	}
+
+	/**
+	 * Add a Modifier (from the given source) to this Solver. The Modifier will
+	 * be processed in the order defined by the priority of the Modifier.
+	 * 
+	 * The given VariableBinding (if not null) is provided to the Modifier
+	 * (in the EvaluationManager) whenever the Modifier is processed, so that
+	 * the variables used by the Modifier can be read directly.
+	 * 
+	 * null is not a valid source.
+	 * 
+	 * @param modifier
+	 *            The Modifier to be added to this Solver
+	 * @param source
+	 *            The source object for the given Modifier
+	 * @param binding
+	 *            The VariableBinding for the given Modifier in the given
+	 *            source; may be null
+	 */
+	public void addModifier(Modifier<T> modifier, ScopeInstance source,
+		VariableBinding binding)
+	{
+		addModifier(modifier, source, binding, null);
+	}
+
+	/**
+	 * Add a Modifier (from the given source) to this Solver. The Modifier will
+	 * be processed in the order defined by the priority of the Modifier.
+	 * 
+	 * The given VariableBinding (if not null) is provided to the Modifier
+	 * (in the EvaluationManager) whenever the Modifier is processed, so that
+	 * the variables used by the Modifier can be read directly.
+	 * 
+	 * The given dependencies (if not null) must be every VariableID upon which
+	 * the Modifier depends in the given source. The Modifier is then only
+	 * processed again by update when one of those VariableIDs changes. If the
+	 * dependencies are null, the Modifier is processed again by update when any
+	 * dependency of this Solver changes.
+	 * 
+	 * null is not a valid source.
+	 * 
+	 * @param modifier
+	 *            The Modifier to be added to this Solver
+	 * @param source
+	 *            The source object for the given Modifier
+	 * @param binding
+	 *            The VariableBinding for the given Modifier in the given
+	 *            source; may be null
+	 * @param dependencies
+	 *            The VariableIDs upon which the given Modifier depends in the
+	 *            given source; may be null
+	 */
+	public void addModifier(Modifier<T> modifier, ScopeInstance source,
+		VariableBinding binding, Collection<VariableID<?>> dependencies)
+	{
+		addEntry(modifier, source, binding, dependencies);
+	}
+
+	/**
+	 * Add a Modifier (from the given source) to this Solver, as addModifier,
+	 * and returns the entry for the Modifier in this Solver. The entry can be
+	 * provided to removeEntry in order to remove the Modifier without
+	 * searching for an equal Modifier and source.
+	 * 
+	 * @param modifier
+	 *            The Modifier to be added to this Solver
+	 * @param source
+	 *            The source object for the given Modifier
+	 * @param binding
+	 *            The VariableBinding for the given Modifier in the given
+	 *            source; may be null
+	 * @param dependencies
+	 *            The VariableIDs upon which the given Modifier depends in the
+	 *            given source; may be null
+	 * @return The entry for the given Modifier in this Solver
+	 */
+	ModInfo<T> addEntry(Modifier<T> modifier, ScopeInstance source,
+		VariableBinding binding, Collection<VariableID<?>> dependencies)
 	{
 		//Ensure someone isn't playing fast and loose with generics
 		Class<?> varFormat = defaultModifier.getVariableFormat();
@@ -127,9 +298,45 @@ public class Solver<T>
 					+ varFormat.getCanonicalName() + " but got: "
 					+ modifier.getVariableFormat().getCanonicalName());
 		}
-		modifierList.addToListFor(Long.valueOf(modifier.getPriority()),
-			new ModInfo<>(modifier, Objects.requireNonNull(source)));
-		sourceList.addToListFor(source, modifier);
+		ModInfo<T> modInfo = new ModInfo<>(modifier,
+			Objects.requireNonNull(source), binding, dependencies);
+		insertEntry(modInfo);
+		return modInfo;
+	}
+
+	/**
+	 * Inserts the given entry (as returned by addEntry, and since removed by
+	 * removeEntry) into this Solver. The entry is processed in the order
+	 * defined by the priority of the Modifier, after any existing Modifier of
+	 * the same priority.
+	 * 
+	 * @param modInfo
+	 *            The entry to be inserted into this Solver
+	 */
+	void insertEntry(ModInfo<T> modInfo)
+	{
+		if (modifiers == null)
+		{
+			@SuppressWarnings("unchecked")
+			ModInfo<T>[] array = (ModInfo<T>[]) new ModInfo<?>[1];
+			modifiers = array;
+			results = new Object[1];
+		}
+		else if (size == modifiers.length)
+		{
+			modifiers = Arrays.copyOf(modifiers, size * 2);
+			results = Arrays.copyOf(results, size * 2);
+		}
+		//After any existing Modifiers of the same priority
+		int index = size;
+		while ((index > 0) && (modifiers[index - 1].priority > modInfo.priority))
+		{
+			index--;
+		}
+		System.arraycopy(modifiers, index, modifiers, index + 1, size - index);
+		modifiers[index] = modInfo;
+		size++;
+		invalidate(index);
 	}
 
 	/**
@@ -147,9 +354,77 @@ public class Solver<T>
 	 */
 	public void removeModifier(Modifier<T> modifier, ScopeInstance source)
 	{
-		modifierList.removeFromListFor(Long.valueOf(modifier.getPriority()),
-			new ModInfo<>(modifier, Objects.requireNonNull(source)));
-		sourceList.removeFromListFor(source, modifier);
+		Objects.requireNonNull(source);
+		long priority = modifier.getPriority();
+		for (int i = 0; i < size; i++)
+		{
+			ModInfo<T> modInfo = modifiers[i];
+			if ((modInfo.priority == priority) && modInfo.modifier.equals(modifier)
+				&& modInfo.inst.equals(source))
+			{
+				remove(i);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes the given entry (as returned by addEntry) from this Solver.
+	 * 
+	 * The entry is located by identity among the Modifiers of the same
+	 * priority, so no Modifier or source is compared with .equals(). An entry
+	 * replaced by copy(VariableStore, Function) is located by the original
+	 * entry.
+	 * 
+	 * @param entry
+	 *            The entry to be removed from this Solver
+	 * @return true if the entry was removed; false if it was not present in
+	 *         this Solver
+	 */
+	boolean removeEntry(ModInfo<T> entry)
+	{
+		return takeEntry(entry) != null;
+	}
+
+	/**
+	 * Removes the given entry (as returned by addEntry) from this Solver, as
+	 * removeEntry, and returns the entry as it was held by this Solver. This
+	 * is the given entry, unless the entry was replaced by
+	 * copy(VariableStore, Function).
+	 * 
+	 * @param entry
+	 *            The entry to be removed from this Solver
+	 * @return The entry which was removed from this Solver; null if the entry
+	 *         was not present in this Solver
+	 */
+	ModInfo<T> takeEntry(ModInfo<T> entry)
+	{
+		//Find the first Modifier of the same priority
+		int low = 0;
+		int high = size;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (modifiers[mid].priority < entry.priority)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		for (int i = low; (i < size) && (modifiers[i].priority == entry.priority);
+				i++)
+		{
+			ModInfo<T> modInfo = modifiers[i];
+			if (modInfo.origin == entry.origin)
+			{
+				remove(i);
+				return modInfo;
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -164,16 +439,137 @@ public class Solver<T>
 	 */
 	public void removeFromSource(ScopeInstance source)
 	{
-		List<Modifier<T>> removed = sourceList.removeListFor(Objects.requireNonNull(source));
-		if (removed != null)
+		Objects.requireNonNull(source);
+		for (int i = size - 1; i >= 0; i--)
+		{
+			if (modifiers[i].inst.equals(source))
+			{
+				remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if this Solver contains no Modifiers (other than the default
+	 * Modifier); false otherwise.
+	 * 
+	 * @return true if this Solver contains no Modifiers (other than the default
+	 *         Modifier); false otherwise
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Removes the Modifier at the given index.
+	 * 
+	 * @param index
+	 *            The index of the Modifier to be removed
+	 */
+	private void remove(int index)
+	{
+		size--;
+		System.arraycopy(modifiers, index + 1, modifiers, index, size - index);
+		modifiers[size] = null;
+		if (size == 0)
+		{
+			modifiers = null;
+			results = null;
+		}
+		invalidate(index);
+	}
+
+	/**
+	 * Indicates that the value of the given VariableID has changed, so the
+	 * Modifiers in this Solver that depend upon that VariableID must be
+	 * processed again by update.
+	 * 
+	 * If the given VariableID is not a declared dependency of any Modifier in
+	 * this Solver, every Modifier is processed again by update (as the
+	 * VariableID may be a dependency that could not be declared).
+	 * 
+	 * @param varID
+	 *            The VariableID that has changed value
+	 */
+	public void dependencyChanged(VariableID<?> varID)
+	{
+		invalidate(firstAffected(varID));
+	}
+
+	/**
+	 * Returns true if dependencyChanged for the given VariableID would require any
+	 * Modifier in this Solver that is currently processed to be processed again by
+	 * update.
+	 * 
+	 * @param varID
+	 *            The VariableID to be checked
+	 * @return true if dependencyChanged for the given VariableID would change this
+	 *         Solver; false otherwise
+	 */
+	boolean isAffectedBy(VariableID<?> varID)
+	{
+		return firstAffected(varID) < validCount;
+	}
+
+	/**
+	 * Returns true if update must process any Modifier in this Solver (because a
+	 * Modifier was added or a dependency changed since this Solver was last processed).
+	 * If false, update does not change this Solver.
+	 * 
+	 * @return true if update must process any Modifier in this Solver; false otherwise
+	 */
+	boolean needsUpdate()
+	{
+		return validCount < size;
+	}
+
+	/**
+	 * Returns the index of the first Modifier that must be processed again by update if
+	 * the value of the given VariableID changes.
+	 * 
+	 * @param varID
+	 *            The VariableID that has changed value
+	 * @return The index of the first Modifier affected by a change to the given
+	 *         VariableID
+	 */
+	private int firstAffected(VariableID<?> varID)
+	{
+		int first = -1;
+		boolean declared = false;
+		for (int i = 0; i < size; i++)
 		{
-			for (Modifier<T> modifier : removed)
+			VariableID<?>[] dependencies = modifiers[i].dependencies;
+			if (dependencies == null)
 			{
-				@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-				ModInfo<T> modInfo = new ModInfo<>(modifier, source);
-				modifierList.removeFromListFor(
-					Long.valueOf(modifier.getPriority()), modInfo);
+				first = (first == -1) ? i : first;
+				continue;
 			}
+			for (VariableID<?> dependency : dependencies)
+			{
+				if (dependency.equals(varID))
+				{
+					first = (first == -1) ? i : first;
+					declared = true;
+					break;
+				}
+			}
+		}
+		return declared ? first : 0;
+	}
+
+	/**
+	 * Indicates that the Modifiers at or after the given index must be
+	 * processed again by update.
+	 * 
+	 * @param index
+	 *            The index of the first Modifier that must be processed again
+	 */
+	private void invalidate(int index)
+	{
+		if (index < validCount)
+		{
+			validCount = index;
 		}
 	}
 
@@ -188,18 +584,53 @@ public class Solver<T>
 	 */
 	public T process(EvaluationManager evalManager)
 	{
-		T result = defaultModifier.process(null);
-		for (Long priority : modifierList.getKeySet())
+		invalidateAll();
+		return update(evalManager);
+	}
+
+	/**
+	 * Indicates that all Modifiers must be processed again by update. This is used when
+	 * a value read by the Modifiers may have changed without being reported to
+	 * dependencyChanged.
+	 */
+	void invalidateAll()
+	{
+		validCount = 0;
+	}
+
+	/**
+	 * Process this Solver to provide the value after all Modifiers are processed (in
+	 * priority order), processing only the Modifiers affected by changes since this
+	 * Solver was last processed.
+	 * 
+	 * Processing restarts from the result retained just before the first Modifier that
+	 * was added, removed, or identified by dependencyChanged since this Solver was last
+	 * processed. The caller is therefore responsible for reporting each change in a
+	 * dependency to dependencyChanged before calling this method.
+	 * 
+	 * @param evalManager
+	 *            The EvaluationManager used to support evaluation of the Modifiers in
+	 *            this Solver
+	 * @return The resulting value after all Modifier objects are processed
+	 */
+	public T update(EvaluationManager evalManager)
+	{
+		@SuppressWarnings("unchecked")
+		T result = (validCount == 0) ? defaultModifier.process(null)
+			: (T) results[validCount - 1];
+		for (int i = validCount; i < size; i++)
 		{
-			for (ModInfo<T> modInfo : modifierList.getListFor(priority))
-			{
-				EvaluationManager thisManager =
-						evalManager.getWith(EvaluationManager.INPUT, result);
-				thisManager = thisManager.getWith(EvaluationManager.INSTANCE,
-					modInfo.getInstance());
-				result = modInfo.getModifier().process(thisManager);
-			}
+			ModInfo<T> modInfo = modifiers[i];
+			EvaluationManager thisManager =
+					evalManager.getWith(EvaluationManager.INPUT, result);
+			thisManager =
+					thisManager.getWith(EvaluationManager.INSTANCE, modInfo.inst);
+			thisManager =
+					thisManager.getWith(EvaluationManager.BINDING, modInfo.binding);
+			result = modInfo.modifier.process(thisManager);
+			results[i] = result;
 		}
+		validCount = size;
 		return result;
 	}
 
@@ -216,27 +647,24 @@ public class Solver<T>
 	 */
 	public List<ProcessStep<T>> diagnose(EvaluationManager evalManager)
 	{
-		List<ProcessStep<T>> steps = new ArrayList<ProcessStep<T>>();
+		List<ProcessStep<T>> steps = new ArrayList<ProcessStep<T>>(size + 1);
 		T stepResult = defaultModifier.process(null);
 		steps.add(new ProcessStep<T>(defaultModifier, new DefaultValue(
 			defaultModifier.getVariableFormat().getSimpleName()), stepResult));
-		if (!modifierList.isEmpty())
+		for (int i = 0; i < size; i++)
 		{
-			for (Long priority : modifierList.getKeySet())
-			{
-				for (ModInfo<T> modInfo : modifierList.getListFor(priority))
-				{
-					EvaluationManager thisManager =
-							evalManager.getWith(EvaluationManager.INPUT, stepResult);
-					thisManager = thisManager.getWith(EvaluationManager.INSTANCE,
-						modInfo.getInstance());
-					stepResult = modInfo.getModifier().process(thisManager);
-					@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-					ProcessStep<T> step = new ProcessStep<T>(modInfo.getModifier(),
-						modInfo.getInstance(), stepResult);
-					steps.add(step);
-				}
-			}
+			ModInfo<T> modInfo = modifiers[i];
+			EvaluationManager thisManager =
+					evalManager.getWith(EvaluationManager.INPUT, stepResult);
+			thisManager =
+					thisManager.getWith(EvaluationManager.INSTANCE, modInfo.inst);
+			thisManager =
+					thisManager.getWith(EvaluationManager.BINDING, modInfo.binding);
+			stepResult = modInfo.modifier.process(thisManager);
+			@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+			ProcessStep<T> step =
+					new ProcessStep<T>(modInfo.modifier, modInfo.inst, stepResult);
+			steps.add(step);
 		}
 		return steps;
 	}
@@ -264,49 +692,66 @@ public class Solver<T>
 	}
 
 	/**
-	 * Constructs a new ModInfo to store information about a Modifier and the
-	 * source of the modifier
+	 * A ModInfo stores information about a Modifier in this Solver: the source
+	 * of the Modifier and the information used to process it.
+	 * 
+	 * A ModInfo is also the entry for the Modifier returned by addEntry, but
+	 * is otherwise opaque outside of Solver. A ModInfo is immutable, so it is
+	 * shared by a Solver and any copy of that Solver (unless the copy rebinds
+	 * the VariableBinding, in which case the copy holds a ModInfo with the
+	 * same origin).
 	 * 
 	 * @param <IT>
 	 *            The format the included Modifier acts upon
 	 */
-	private static final class ModInfo<IT>
+	static final class ModInfo<IT>
 	{
+		/**
+		 * The priority of the Modifier (retained to avoid repeated calls).
+		 */
+		private final long priority;
+
 		private final Modifier<IT> modifier;
 		private final ScopeInstance inst;
 
-		private ModInfo(Modifier<IT> modifier, ScopeInstance source)
-		{
-			this.modifier = Objects.requireNonNull(modifier);
-			this.inst = Objects.requireNonNull(source);
-		}
+		/**
+		 * The VariableBinding for the Modifier in the source, if any.
+		 */
+		private final VariableBinding binding;
 
-		public Modifier<IT> getModifier()
-		{
-			return modifier;
-		}
+		/**
+		 * The VariableIDs upon which the Modifier depends in the source; null
+		 * if not declared.
+		 */
+		private final VariableID<?>[] dependencies;
 
-		public ScopeInstance getInstance()
-		{
-			return inst;
-		}
+		/**
+		 * The entry returned by addEntry for the Modifier. This is this
+		 * ModInfo, unless this ModInfo replaced that entry in a copy of a
+		 * Solver.
+		 */
+		private final ModInfo<IT> origin;
 
-		@Override
-		public int hashCode()
+		private ModInfo(Modifier<IT> modifier, ScopeInstance source,
+			VariableBinding binding, Collection<VariableID<?>> dependencies)
 		{
-			return modifier.hashCode() ^ inst.hashCode();
+			this.modifier = Objects.requireNonNull(modifier);
+			this.priority = modifier.getPriority();
+			this.inst = Objects.requireNonNull(source);
+			this.binding = binding;
+			this.dependencies = (dependencies == null) ? null
+				: dependencies.toArray(new VariableID<?>[dependencies.size()]);
+			this.origin = this;
 		}
 
-		@Override
-		public boolean equals(Object obj)
+		private ModInfo(ModInfo<IT> original, VariableBinding binding)
 		{
-			if (obj instanceof ModInfo)
-			{
-				ModInfo<?> other = (ModInfo<?>) obj;
-				return modifier.equals(other.modifier) && inst.equals(other.inst);
-			}
-			return false;
+			this.modifier = original.modifier;
+			this.priority = original.priority;
+			this.inst = original.inst;
+			this.binding = binding;
+			this.dependencies = original.dependencies;
+			this.origin = original.origin;
 		}
-
 	}
 }
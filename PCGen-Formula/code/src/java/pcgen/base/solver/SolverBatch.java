@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import pcgen.base.formula.base.VariableID;
+
+/**
+ * A SolverBatch records the changes made to a SolverManager between the start of a batch
+ * and the commit (or rollback) of that batch.
+ *
+ * The VariableIDs that require solving are accumulated (rather than solved as each
+ * change is made), and an action to undo each change is retained so that the batch can
+ * be rolled back.
+ */
+final class SolverBatch
+{
+
+	/**
+	 * The VariableIDs that require solving when this SolverBatch is committed.
+	 */
+	private final Set<VariableID<?>> dirty = new LinkedHashSet<>();
+
+	/**
+	 * The first cycle introduced into the dependencies between VariableIDs during this
+	 * SolverBatch; null if no cycle has been introduced.
+	 */
+	private List<VariableID<?>> cycle;
+
+	/**
+	 * The actions that undo the changes made during this SolverBatch, with the most
+	 * recent change first.
+	 */
+	private final Deque<Runnable> undo = new ArrayDeque<>();
+
+	/**
+	 * Indicates that the given VariableID requires solving when this SolverBatch is
+	 * committed.
+	 *
+	 * @param varID
+	 *            The VariableID that requires solving
+	 */
+	void markDirty(VariableID<?> varID)
+	{
+		dirty.add(varID);
+	}
+
+	/**
+	 * Returns the VariableIDs that require solving when this SolverBatch is committed.
+	 *
+	 * @return The VariableIDs that require solving when this SolverBatch is committed
+	 */
+	Set<VariableID<?>> getDirty()
+	{
+		return dirty;
+	}
+
+	/**
+	 * Records a cycle introduced into the dependencies between VariableIDs during this
+	 * SolverBatch. Only the first cycle is retained.
+	 *
+	 * @param path
+	 *            The cycle introduced during this SolverBatch
+	 */
+	void cycleFound(List<VariableID<?>> path)
+	{
+		if (cycle == null)
+		{
+			cycle = path;
+		}
+	}
+
+	/**
+	 * Returns the first cycle introduced into the dependencies between VariableIDs during
+	 * this SolverBatch.
+	 *
+	 * @return The first cycle introduced during this SolverBatch; null if no cycle has
+	 *         been introduced
+	 */
+	List<VariableID<?>> getCycle()
+	{
+		return cycle;
+	}
+
+	/**
+	 * Records an action that undoes a change made during this SolverBatch.
+	 *
+	 * @param action
+	 *            The action that undoes a change made during this SolverBatch
+	 */
+	void onRollback(Runnable action)
+	{
+		undo.push(action);
+	}
+
+	/**
+	 * Undoes the changes made during this SolverBatch, most recent change first.
+	 */
+	void rollback()
+	{
+		while (!undo.isEmpty())
+		{
+			undo.pop().run();
+		}
+		dirty.clear();
+		cycle = null;
+	}
+}
@@ -57,10 +57,13 @@ public interface SolverManager
 	 *            The Modifier to be added to the Solver for the given VariableID
 	 * @param source
 	 *            The source of the Modifier to be added to the Solver
+	 * @return A ModifierHandle which can be provided to removeModifier in order to remove
+	 *         the Modifier
 	 * @throws IllegalArgumentException
 	 *             if any of the parameters is null
 	 */
-	public <T> void addModifier(VariableID<T> varID, Modifier<T> modifier, ScopeInstance source);
+	public <T> ModifierHandle<T> addModifier(VariableID<T> varID, Modifier<T> modifier,
+		ScopeInstance source);
 
 	/**
 	 * Removes a Modifier (with the given source object) from the Solver identified by the
@@ -87,6 +90,60 @@ public interface SolverManager
 	public <T> void removeModifier(VariableID<T> varID, Modifier<T> modifier,
 		ScopeInstance source);
 
+	/**
+	 * Removes the Modifier identified by the given ModifierHandle (as returned by
+	 * addModifier) from the Solver for the VariableID of the ModifierHandle.
+	 * 
+	 * The dependencies recorded in the ModifierHandle are used, so the dependencies of
+	 * the Modifier are not analyzed again. If the Modifier has already been removed, this
+	 * has no effect.
+	 * 
+	 * By default, the Modifier is removed by its VariableID, Modifier and source (see
+	 * removeModifier(VariableID, Modifier, ScopeInstance)), so the dependencies of the
+	 * Modifier are analyzed again, and the ModifierHandle is not checked to have been
+	 * returned by this SolverManager.
+	 * 
+	 * @param handle
+	 *            The ModifierHandle identifying the Modifier to be removed
+	 * @throws IllegalArgumentException
+	 *             if the ModifierHandle is null or was not returned by this SolverManager
+	 */
+	public default void removeModifier(ModifierHandle<?> handle)
+	{
+		if (handle == null)
+		{
+			throw new IllegalArgumentException("ModifierHandle cannot be null");
+		}
+		//The VariableID and Modifier of a ModifierHandle always share a format
+		@SuppressWarnings("unchecked")
+		ModifierHandle<Object> typed = (ModifierHandle<Object>) handle;
+		removeModifier(typed.getVariableID(), typed.getModifier(), typed.getSource());
+	}
+
+	/**
+	 * Removes every Modifier with the given source object, from the Solver of every
+	 * VariableID.
+	 * 
+	 * The variables affected by the removal are solved once (in dependency order) after
+	 * all of the Modifiers are removed, rather than once per Modifier. If a batch is in
+	 * progress, they are instead solved when the batch is committed.
+	 * 
+	 * By default, removing every Modifier from a source is not supported.
+	 * 
+	 * @param source
+	 *            The source object for which all Modifiers should be removed
+	 * @throws IllegalArgumentException
+	 *             if the given source object is null
+	 * @throws UnsupportedOperationException
+	 *             if this SolverManager does not support removing the Modifiers of a
+	 *             source
+	 */
+	public default void removeFromSource(ScopeInstance source)
+	{
+		throw new UnsupportedOperationException(
+			getClass().getSimpleName() + " does not support removeFromSource");
+	}
+
 	/**
 	 * Provides a List of ProcessStep objects identifying how the current value of the
 	 * variable identified by the given VariableID has been calculated.
@@ -125,4 +182,57 @@ public interface SolverManager
 	 *            for triggering Solvers to be processed
 	 */
 	public void solveChildren(VariableID<?> varID);
+
+	/**
+	 * Starts a batch of changes to this SolverManager.
+	 * 
+	 * While a batch is in progress, Modifiers can be added and removed (and channels
+	 * created) as normal, but the affected variables are not solved as each change is
+	 * made. Instead, they are solved once (in dependency order) when the batch is
+	 * committed. Values read from the VariableStore during a batch are therefore the
+	 * values as of the start of the batch.
+	 * 
+	 * By default, batches are not supported.
+	 * 
+	 * @throws IllegalStateException
+	 *             if a batch is already in progress
+	 * @throws UnsupportedOperationException
+	 *             if this SolverManager does not support batches
+	 */
+	public default void startBatch()
+	{
+		throw new UnsupportedOperationException(
+			getClass().getSimpleName() + " does not support batches");
+	}
+
+	/**
+	 * Commits the batch of changes in progress in this SolverManager, solving every
+	 * variable affected by those changes.
+	 * 
+	 * If the changes in the batch introduced a cycle into the dependencies between
+	 * variables, the batch is rolled back and an IllegalStateException is thrown.
+	 * 
+	 * By default, batches are not supported, so a batch is never in progress.
+	 * 
+	 * @throws IllegalStateException
+	 *             if no batch is in progress, or if the batch introduced a cycle
+	 */
+	public default void commitBatch()
+	{
+		throw new IllegalStateException("No batch is in progress");
+	}
+
+	/**
+	 * Rolls back the batch of changes in progress in this SolverManager, restoring the
+	 * SolverManager to its state at the start of the batch.
+	 * 
+	 * By default, batches are not supported, so a batch is never in progress.
+	 * 
+	 * @throws IllegalStateException
+	 *             if no batch is in progress
+	 */
+	public default void rollbackBatch()
+	{
+		throw new IllegalStateException("No batch is in progress");
+	}
 }
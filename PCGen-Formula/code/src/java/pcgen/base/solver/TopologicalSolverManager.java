@@ -0,0 +1,457 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.WriteableVariableStore;
+
+/**
+ * A TopologicalSolverManager manages a series of Solver objects in order to manage
+ * dependencies between those Solver objects and ensure that any Solver which needs to be
+ * processed to update a value is processed as soon as a dependency has changed.
+ * 
+ * Unlike the AggressiveSolverManager, which recursively solves the dependencies of each
+ * changed Solver, the TopologicalSolverManager identifies the region of the dependency
+ * graph that is affected by a change and then processes that region in topological
+ * order, using a worklist rather than recursion. Each Solver in the region is processed
+ * at most once (so a "diamond" of dependencies does not cause repeated processing), and
+ * a Solver is only processed if a Solver upon which it depends has changed value.
+ * 
+ * A cycle in the dependencies is not permitted, unless fixpoint processing has been
+ * enabled (see enableFixpoint). A change that would introduce a cycle is rolled back, and
+ * an IllegalStateException (identifying the cycle) is thrown.
+ * 
+ * One of the primary characteristic of the TopologicalSolverManager is also that callers
+ * will consider items as represented by a given "VariableID", whereas the
+ * TopologicalSolverManager will build and manage the associated Solver for that
+ * VariableID.
+ */
+public class TopologicalSolverManager extends AbstractSolverManager
+{
+
+	/**
+	 * The ForkJoinPool used to process independent Solvers in parallel; null if Solvers
+	 * are processed on the calling thread.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The maximum number of times the VariableIDs in a cycle are processed in order to
+	 * reach a fixpoint; zero if a cycle is not permitted.
+	 */
+	private int fixpointLimit = 0;
+
+	/**
+	 * Constructs a new TopologicalSolverManager which will use the given FormulaMananger
+	 * and store results in the given VariableStore.
+	 * 
+	 * It is assumed that the WriteableVariableStore provided to this
+	 * TopologicalSolverManager will not be shared as a Writeable object to any other
+	 * Object. (So for purposes of ownership, the ownership of that WriteableVariableStore
+	 * transfers to this TopologicalSolverManager. It can be shared to other locations as a
+	 * (readable) VariableStore, as necessary.)
+	 * 
+	 * @param manager
+	 *            The FormulaManager to be used by any Solver in this
+	 *            TopologicalSolverManager
+	 * @param managerFactory
+	 *            The ManagerFactory to be used to generate visitor managers in this
+	 *            TopologicalSolverManager
+	 * @param solverFactory
+	 *            The SolverFactory used to store Defaults and build Solver objects
+	 * @param resultStore
+	 *            The WriteableVariableStore used to store results of the calculations of
+	 *            the Solver objects within this TopologicalSolverManager.
+	 */
+	public TopologicalSolverManager(FormulaManager manager, ManagerFactory managerFactory,
+		SolverFactory solverFactory, WriteableVariableStore resultStore)
+	{
+		super(manager, managerFactory, solverFactory, resultStore);
+		this.pool = null;
+	}
+
+	/**
+	 * Constructs a new TopologicalSolverManager which will use the given FormulaMananger,
+	 * store results in the given VariableStore, and process independent Solvers in
+	 * parallel in the given ForkJoinPool.
+	 * 
+	 * The affected region of the dependency graph is divided into levels, where each
+	 * Solver depends only upon Solvers in earlier levels. The Solvers in a level are
+	 * processed in parallel, and each level is completed before the next is started, so
+	 * the results are identical to those of sequential processing.
+	 * 
+	 * The given WriteableVariableStore will be written by multiple threads, and thus
+	 * must be thread-safe (see ConcurrentVariableStore). The ownership of that
+	 * WriteableVariableStore transfers to this TopologicalSolverManager, as described
+	 * for the sequential constructor.
+	 * 
+	 * @param manager
+	 *            The FormulaManager to be used by any Solver in this
+	 *            TopologicalSolverManager
+	 * @param managerFactory
+	 *            The ManagerFactory to be used to generate visitor managers in this
+	 *            TopologicalSolverManager
+	 * @param solverFactory
+	 *            The SolverFactory used to store Defaults and build Solver objects
+	 * @param resultStore
+	 *            The (thread-safe) WriteableVariableStore used to store results of the
+	 *            calculations of the Solver objects within this TopologicalSolverManager
+	 * @param pool
+	 *            The ForkJoinPool in which independent Solvers are processed
+	 */
+	public TopologicalSolverManager(FormulaManager manager, ManagerFactory managerFactory,
+		SolverFactory solverFactory, WriteableVariableStore resultStore,
+		ForkJoinPool pool)
+	{
+		super(manager, managerFactory, solverFactory, resultStore);
+		this.pool = Objects.requireNonNull(pool);
+	}
+
+	/**
+	 * Permits cycles in the dependencies between variables in this
+	 * TopologicalSolverManager.
+	 * 
+	 * The variables in a cycle are processed repeatedly, until none of their values
+	 * change (a fixpoint). This is suitable for cycles whose values converge, such as a
+	 * value that is capped by a value that depends upon it. If the values have not
+	 * converged after the given number of iterations, the change that introduced the
+	 * cycle is rolled back and an IllegalStateException is thrown.
+	 * 
+	 * Once permitted, cycles cannot be rejected again, since the dependencies may then
+	 * contain a cycle.
+	 * 
+	 * @param iterationLimit
+	 *            The maximum number of times the variables in a cycle are processed
+	 * @throws IllegalArgumentException
+	 *             if the iteration limit is less than one
+	 */
+	public void enableFixpoint(int iterationLimit)
+	{
+		if (iterationLimit < 1)
+		{
+			throw new IllegalArgumentException(
+				"Fixpoint iteration limit must be at least 1: " + iterationLimit);
+		}
+		fixpointLimit = iterationLimit;
+	}
+
+	@Override
+	boolean isBatchedImplicitly()
+	{
+		return true;
+	}
+
+	@Override
+	boolean permitsCycles()
+	{
+		return fixpointLimit != 0;
+	}
+
+	@Override
+	public void commitBatch()
+	{
+		SolverBatch committed = endBatch();
+		List<VariableID<?>> cycle = committed.getCycle();
+		if (cycle != null)
+		{
+			committed.rollback();
+			throw new IllegalStateException(
+				"Infinite Loop in Variable Processing: " + cycle);
+		}
+		Set<VariableID<?>> dirty = new LinkedHashSet<>(committed.getDirty());
+		try
+		{
+			solve(dirty);
+		}
+		catch (IllegalStateException e)
+		{
+			//A cycle did not converge: undo the batch and restore the previous values
+			committed.rollback();
+			for (Iterator<VariableID<?>> it = dirty.iterator(); it.hasNext();)
+			{
+				if (!hasChannel(it.next()))
+				{
+					it.remove();
+				}
+			}
+			List<VariableID<?>> region = new ArrayList<>();
+			for (List<VariableID<?>> component : DependencyOrder
+				.components(getDependencies(), dirty))
+			{
+				region.addAll(component);
+			}
+			solve(region);
+			throw e;
+		}
+	}
+
+	/**
+	 * Solves the given VariableIDs in the given order. A VariableID is only processed if
+	 * it is one of the given dirty VariableIDs or if a VariableID upon which it depends
+	 * changed value.
+	 * 
+	 * @param order
+	 *            The VariableIDs to be solved, in topological order
+	 * @param dirty
+	 *            The VariableIDs that must be processed
+	 */
+	private void solveInOrder(List<VariableID<?>> order,
+		Collection<VariableID<?>> dirty)
+	{
+		Set<VariableID<?>> stale = new HashSet<>(dirty);
+		if (pool == null)
+		{
+			for (VariableID<?> varID : order)
+			{
+				if (stale.contains(varID) && processSolver(varID))
+				{
+					notifyChildren(varID);
+					stale.addAll(DependencyOrder.getChildren(getDependencies(), varID));
+				}
+			}
+			return;
+		}
+		for (List<VariableID<?>> level : DependencyOrder.levels(getDependencies(), order))
+		{
+			List<VariableID<?>> toProcess = new ArrayList<>(level.size());
+			for (VariableID<?> varID : level)
+			{
+				if (stale.contains(varID))
+				{
+					toProcess.add(varID);
+				}
+			}
+			boolean[] changed = new boolean[toProcess.size()];
+			LevelTask task = new LevelTask(toProcess, changed, 0, toProcess.size());
+			if (toProcess.size() < 2 * LevelTask.SEQUENTIAL_LIMIT)
+			{
+				task.compute();
+			}
+			else
+			{
+				pool.invoke(task);
+			}
+			for (int i = 0; i < changed.length; i++)
+			{
+				if (changed[i])
+				{
+					notifyChildren(toProcess.get(i));
+					stale.addAll(
+						DependencyOrder.getChildren(getDependencies(), toProcess.get(i)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * A LevelTask processes a range of the Solvers in a level of the dependency graph
+	 * (which are independent of each other), splitting the range across the ForkJoinPool.
+	 */
+	private final class LevelTask extends RecursiveAction
+	{
+
+		/**
+		 * The serialization version of LevelTask.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The number of Solvers below which a LevelTask will not be split further.
+		 */
+		private static final int SEQUENTIAL_LIMIT = 8;
+
+		/**
+		 * The VariableIDs identifying the Solvers to be processed.
+		 */
+		private final List<VariableID<?>> varIDs;
+
+		/**
+		 * Receives (at the same index as the VariableID) whether each Solver changed
+		 * value.
+		 */
+		private final boolean[] changed;
+
+		/**
+		 * The index of the first VariableID processed by this LevelTask.
+		 */
+		private final int from;
+
+		/**
+		 * The index after the last VariableID processed by this LevelTask.
+		 */
+		private final int to;
+
+		private LevelTask(List<VariableID<?>> varIDs, boolean[] changed, int from,
+			int to)
+		{
+			this.varIDs = varIDs;
+			this.changed = changed;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= SEQUENTIAL_LIMIT)
+			{
+				for (int i = from; i < to; i++)
+				{
+					changed[i] = processSolver(varIDs.get(i));
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new LevelTask(varIDs, changed, from, mid),
+				new LevelTask(varIDs, changed, mid, to));
+		}
+	}
+
+	/**
+	 * Triggers Solvers to be called, in topological order, from the given VariableID.
+	 * 
+	 * @param varID
+	 *            The VariableID as a starting point for triggering Solvers to be
+	 *            processed
+	 */
+	@Override
+	void solveFrom(VariableID<?> varID)
+	{
+		SolverBatch batch = getBatch();
+		if (batch != null)
+		{
+			batch.markDirty(varID);
+			return;
+		}
+		solve(Collections.<VariableID<?>> singleton(varID));
+	}
+
+	@Override
+	public void solveChildren(VariableID<?> varID)
+	{
+		notifyChildren(varID);
+		List<VariableID<?>> children =
+				DependencyOrder.getChildren(getDependencies(), varID);
+		SolverBatch batch = getBatch();
+		if (batch == null)
+		{
+			solve(children);
+			return;
+		}
+		for (VariableID<?> child : children)
+		{
+			batch.markDirty(child);
+		}
+	}
+
+	/**
+	 * Solves the given VariableIDs and the region of the dependency graph that depends
+	 * upon them, in topological order.
+	 * 
+	 * @param dirty
+	 *            The VariableIDs that must be processed
+	 * @throws IllegalStateException
+	 *             if the region of the dependency graph that depends upon the given
+	 *             VariableIDs contains a cycle that is not permitted, or that did not
+	 *             reach a fixpoint
+	 */
+	private void solve(Collection<VariableID<?>> dirty)
+	{
+		List<VariableID<?>> order = DependencyOrder.sort(getDependencies(), dirty);
+		if (order != null)
+		{
+			solveInOrder(order, dirty);
+		}
+		else if (fixpointLimit == 0)
+		{
+			throw new IllegalStateException(
+				"Infinite Loop in Variable Processing from: " + dirty);
+		}
+		else
+		{
+			solveComponents(DependencyOrder.components(getDependencies(), dirty), dirty);
+		}
+	}
+
+	/**
+	 * Solves the given strongly connected components of the dependency graph in the
+	 * given order. A VariableID is only processed if it is in the given Set of dirty
+	 * VariableIDs or if a VariableID upon which it depends changed value.
+	 * 
+	 * The VariableIDs in a component are processed repeatedly until none of them change
+	 * value, which (for a component without a cycle) is after a single iteration.
+	 * 
+	 * @param components
+	 *            The components to be solved, in topological order
+	 * @param dirty
+	 *            The VariableIDs that must be processed
+	 * @throws IllegalStateException
+	 *             if a component did not reach a fixpoint within the iteration limit
+	 */
+	private void solveComponents(List<List<VariableID<?>>> components,
+		Collection<VariableID<?>> dirty)
+	{
+		Set<VariableID<?>> stale = new HashSet<>(dirty);
+		for (List<VariableID<?>> component : components)
+		{
+			Set<VariableID<?>> members = new HashSet<>(component);
+			Set<VariableID<?>> pending = new HashSet<>(members);
+			pending.retainAll(stale);
+			for (int iteration = 0; !pending.isEmpty(); iteration++)
+			{
+				if (iteration == fixpointLimit)
+				{
+					throw new IllegalStateException(
+						"Cycle in Variable Processing did not converge in "
+							+ fixpointLimit + " iterations: " + component);
+				}
+				Set<VariableID<?>> next = new HashSet<>();
+				for (VariableID<?> varID : component)
+				{
+					if (pending.contains(varID) && processSolver(varID))
+					{
+						notifyChildren(varID);
+						for (VariableID<?> child : DependencyOrder
+							.getChildren(getDependencies(), varID))
+						{
+							stale.add(child);
+							if (members.contains(child))
+							{
+								next.add(child);
+							}
+						}
+					}
+				}
+				pending = next;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/* Generated By:JJTree: Do not edit this line. ASTNum.java */
+
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package pcgen.base.formula.parse;
+
+public class ASTNum extends SimpleNode
+{
+	public ASTNum(int id)
+	{
+		super(id);
+	}
+
+	public ASTNum(FormulaParser p, int id)
+	{
+		super(p, id);
+	}
+
+	/** Accept the visitor. **/
+	@Override
+	public Object jjtAccept(FormulaParserVisitor visitor, Object data)
+	{
+		return visitor.visit(this, data);
+	}
+
+	/*
+	 * Items below this point are not auto-generated by javacc, but content
+	 * unique to this implementation.
+	 */
+	/**
+	 * The numeric value of this node, as parsed from the text of the node.
+	 * This is an Integer if the text represents a value that can be stored in
+	 * an Integer, otherwise a Double. Null if the text of the node is not a
+	 * valid number.
+	 */
+	private Number value;
+
+	/**
+	 * Sets the text String contained by the node, and parses the numeric value
+	 * represented by that text. Under normal circumstances, this method should
+	 * only be called by the parser, not by any method at runtime.
+	 *
+	 * @param s
+	 *            The text String contained by the node
+	 */
+	@Override
+	public void setToken(String s)
+	{
+		super.setToken(s);
+		value = parseNumber(s);
+	}
+
+	/**
+	 * Returns the numeric value of this node. This will be an Integer if the
+	 * text of the node represents a value that can be stored in an Integer,
+	 * otherwise a Double. Null is returned if the text of this node is not a
+	 * valid number.
+	 *
+	 * @return The numeric value of this node
+	 */
+	public Number getValue()
+	{
+		return value;
+	}
+
+	/**
+	 * Parses the given String into a Number. Integer values (within the range
+	 * of an Integer) are returned as an Integer, otherwise a Double is
+	 * returned.
+	 *
+	 * @param s
+	 *            The String to be parsed
+	 * @return The Number represented by the given String; null if the given
+	 *         String is not a valid number
+	 */
+	private static Number parseNumber(String s)
+	{
+		if (s == null)
+		{
+			return null;
+		}
+		if (isInteger(s))
+		{
+			long longValue = Long.parseLong(s);
+			if ((longValue >= Integer.MIN_VALUE)
+				&& (longValue <= Integer.MAX_VALUE))
+			{
+				return Integer.valueOf((int) longValue);
+			}
+		}
+		try
+		{
+			return Double.valueOf(s);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Returns true if the given String is an integer (optionally negative)
+	 * short enough to be safely parsed as a long.
+	 *
+	 * @param s
+	 *            The String to be checked
+	 * @return true if the given String is a (reasonably short) integer; false
+	 *         otherwise
+	 */
+	private static boolean isInteger(String s)
+	{
+		int length = s.length();
+		int start = ((length > 1) && (s.charAt(0) == '-')) ? 1 : 0;
+		if ((length == 0) || (length - start > 18))
+		{
+			return false;
+		}
+		for (int i = start; i < length; i++)
+		{
+			char c = s.charAt(i);
+			if ((c < '0') || (c > '9'))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -113,11 +113,23 @@ public class SimpleNode implements Node
 	/**
 	 * The String containing the text for the node, if any. This is only loaded
 	 * for text-related nodes (variables, formula names, etc.). This does
-	 * include numerical nodes, as they are stored as a String until the formula
-	 * is visited.
+	 * include numerical nodes, although ASTNum also stores the parsed numeric
+	 * value of the node.
 	 */
 	private String text;
 
+	/**
+	 * The inline cache for this node, if any. This is not part of the
+	 * structure of the tree; it is available to visitors that wish to retain
+	 * information about previous visits to this node (such as the
+	 * OperatorAction selected for the formats last seen by the node).
+	 * 
+	 * A visitor must treat the contents as a hint: the cache may be replaced
+	 * at any time (including by another thread), so the contents must be
+	 * immutable and validated before they are used.
+	 */
+	private volatile Object inlineCache;
+
 	/**
 	 * Sets the Operator for this Node. Under normal circumstances, this method
 	 * should only be called by the parser, not by any method at runtime.
@@ -181,4 +193,28 @@ public class SimpleNode implements Node
 	{
 		return text;
 	}
+
+	/**
+	 * Returns the inline cache for this node, if any. Null may be returned if
+	 * no inline cache has been set.
+	 * 
+	 * @return The inline cache for this node, if any. Null is a legal return
+	 *         value if no inline cache has been set.
+	 */
+	public Object getInlineCache()
+	{
+		return inlineCache;
+	}
+
+	/**
+	 * Sets the inline cache for this node. This should only be called by
+	 * visitors retaining information about previous visits to this node.
+	 * 
+	 * @param cache
+	 *            The (immutable) inline cache for this node
+	 */
+	public void setInlineCache(Object cache)
+	{
+		inlineCache = cache;
+	}
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.FormulaSemantics;
+import pcgen.base.formula.base.LegalScope;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.solver.IndividualSetup;
+import pcgen.base.solver.SplitFormulaSetup;
+
+/**
+ * FormulaEvaluationBenchmark compares the time to resolve a formula by visiting
+ * the tree of the formula with EvaluateVisitor (ComplexNEPFormula) and by
+ * evaluating a tree of Evaluator objects (CompiledNEPFormula).
+ * 
+ * Run with: gradle jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaEvaluationBenchmark
+{
+
+	@Param({"a*2+b", "floor((a-10)/2)+b*3", "if(a>=b,a*1.5,b/2)",
+		"(a+1)*(b-2)-(b^2)/(a+b)"})
+	private String formulaText;
+
+	private EvaluationManager manager;
+
+	private ComplexNEPFormula<Number> visitorFormula;
+
+	private CompiledNEPFormula<Number> compiledFormula;
+
+	@Setup
+	public void setUp()
+	{
+		SplitFormulaSetup setup = new SplitFormulaSetup();
+		setup.loadBuiltIns();
+		setup.getLegalScopeLibrary()
+			.registerScope(new SimpleLegalScope(null, "Global"));
+		SimpleVariableStore store = new SimpleVariableStore();
+		IndividualSetup localSetup =
+				new IndividualSetup(setup, "Global", store);
+		FormulaManager formulaManager = localSetup.getFormulaManager();
+		ScopeInstance globalInst = localSetup.getGlobalScopeInst();
+		LegalScope global = globalInst.getLegalScope();
+		setup.getVariableLibrary().assertLegalVariableID("a", global,
+			FormatUtilities.NUMBER_MANAGER);
+		setup.getVariableLibrary().assertLegalVariableID("b", global,
+			FormatUtilities.NUMBER_MANAGER);
+		store.put(new VariableID<>(globalInst, FormatUtilities.NUMBER_MANAGER,
+			"a"), 14);
+		store.put(new VariableID<>(globalInst, FormatUtilities.NUMBER_MANAGER,
+			"b"), 2.5);
+		ManagerFactory managerFactory = new ManagerFactory()
+		{
+		};
+		manager = managerFactory
+			.generateEvaluationManager(formulaManager, Number.class)
+			.getWith(EvaluationManager.INSTANCE, globalInst);
+		visitorFormula = new ComplexNEPFormula<>(formulaText);
+		FormulaSemantics semantics = managerFactory
+			.generateFormulaSemantics(formulaManager, global, null);
+		visitorFormula.isValid(FormatUtilities.NUMBER_MANAGER, semantics);
+		if (!semantics.isValid())
+		{
+			throw new IllegalStateException(
+				formulaText + " is not valid: " + semantics.getReport());
+		}
+		compiledFormula =
+				new CompiledNEPFormula<>(visitorFormula, formulaManager);
+	}
+
+	@Benchmark
+	public Number evaluateVisitor()
+	{
+		return visitorFormula.resolve(manager);
+	}
+
+	@Benchmark
+	public Number compiled()
+	{
+		return compiledFormula.resolve(manager);
+	}
+}
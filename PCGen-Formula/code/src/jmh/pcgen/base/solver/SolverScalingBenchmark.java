@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.LegalScope;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.VariableLibrary;
+import pcgen.base.formula.inst.ComplexNEPFormula;
+import pcgen.base.formula.inst.ConcurrentVariableStore;
+import pcgen.base.formula.inst.SimpleLegalScope;
+
+/**
+ * SolverScalingBenchmark measures the time for a TopologicalSolverManager to
+ * re-solve a wide dependency graph (many independent chains of variables that
+ * depend upon a single root variable) when the root variable changes, as the
+ * number of threads available to the TopologicalSolverManager increases.
+ * 
+ * A parallelism of 0 indicates the sequential TopologicalSolverManager.
+ * 
+ * Run with: gradle jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverScalingBenchmark
+{
+
+	@Param({"0", "1", "2", "4", "8"})
+	private int parallelism;
+
+	@Param({"1000"})
+	private int width;
+
+	@Param({"4"})
+	private int depth;
+
+	private ForkJoinPool pool;
+
+	private TopologicalSolverManager manager;
+
+	private ConcurrentVariableStore store;
+
+	private ScopeInstance globalInst;
+
+	private VariableID<Number> root;
+
+	private VariableID<Number> leaf;
+
+	private Modifier<Number> rootModifier;
+
+	@Setup
+	public void setUp()
+	{
+		SplitFormulaSetup setup = new SplitFormulaSetup();
+		setup.loadBuiltIns();
+		setup.getLegalScopeLibrary()
+			.registerScope(new SimpleLegalScope(null, "Global"));
+		store = new ConcurrentVariableStore();
+		IndividualSetup localSetup =
+				new IndividualSetup(setup, "Global", store);
+		globalInst = localSetup.getGlobalScopeInst();
+		LegalScope global = globalInst.getLegalScope();
+		setup.getSolverFactory().addSolverFormat(Number.class,
+			new FormulaModifier("0", 0));
+		ManagerFactory managerFactory = new ManagerFactory()
+		{
+		};
+		if (parallelism == 0)
+		{
+			manager = new TopologicalSolverManager(
+				localSetup.getFormulaManager(), managerFactory,
+				setup.getSolverFactory(), store);
+		}
+		else
+		{
+			pool = new ForkJoinPool(parallelism);
+			manager = new TopologicalSolverManager(
+				localSetup.getFormulaManager(), managerFactory,
+				setup.getSolverFactory(), store, pool);
+		}
+		VariableLibrary varLibrary = setup.getVariableLibrary();
+		varLibrary.assertLegalVariableID("Root", global,
+			FormatUtilities.NUMBER_MANAGER);
+		root = getVariable(varLibrary, "Root");
+		manager.startBatch();
+		for (int i = 0; i < width; i++)
+		{
+			String previous = "Root";
+			for (int j = 0; j < depth; j++)
+			{
+				String name = "C" + i + "_" + j;
+				varLibrary.assertLegalVariableID(name, global,
+					FormatUtilities.NUMBER_MANAGER);
+				manager.addModifier(getVariable(varLibrary, name),
+					new FormulaModifier(previous + "+" + i, 100), globalInst);
+				previous = name;
+			}
+		}
+		manager.commitBatch();
+		leaf = getVariable(varLibrary, "C" + (width - 1) + "_" + (depth - 1));
+		rootModifier = new FormulaModifier("7", 5);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private VariableID<Number> getVariable(VariableLibrary varLibrary,
+		String name)
+	{
+		return (VariableID<Number>) varLibrary.getVariableID(globalInst, name);
+	}
+
+	@Benchmark
+	public Number changeRoot()
+	{
+		manager.addModifier(root, rootModifier, globalInst);
+		manager.removeModifier(root, rootModifier, globalInst);
+		return store.get(leaf);
+	}
+
+	/**
+	 * A FormulaModifier is a Modifier that sets the value of a variable to the
+	 * result of a formula.
+	 */
+	private static final class FormulaModifier implements Modifier<Number>
+	{
+
+		private final ComplexNEPFormula<Number> formula;
+
+		private final long priority;
+
+		private FormulaModifier(String formulaText, long priority)
+		{
+			this.formula = new ComplexNEPFormula<>(formulaText);
+			this.priority = priority;
+		}
+
+		@Override
+		public Number process(EvaluationManager evalManager)
+		{
+			return formula.resolve(evalManager);
+		}
+
+		@Override
+		public void getDependencies(DependencyManager fdm)
+		{
+			formula.getDependencies(fdm);
+		}
+
+		@Override
+		public long getPriority()
+		{
+			return priority;
+		}
+
+		@Override
+		public Class<Number> getVariableFormat()
+		{
+			return Number.class;
+		}
+
+		@Override
+		public String getIdentification()
+		{
+			return "SET";
+		}
+
+		@Override
+		public String getInstructions()
+		{
+			return formula.toString();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+import pcgen.base.formula.inst.ComplexNEPFormula;
+import pcgen.base.formula.inst.SimpleLegalScope;
+import pcgen.base.testsupport.AbstractFormulaTestCase;
+import pcgen.base.testsupport.SimpleVarScoped;
+
+public class DependencyTemplateTest extends AbstractFormulaTestCase
+{
+
+	private ManagerFactory managerFactory = new ManagerFactory()
+	{
+	};
+
+	private ScopeInstance getEquipment(String name)
+	{
+		SimpleVarScoped equip = new SimpleVarScoped();
+		equip.name = name;
+		equip.scopeName = "EQUIPMENT";
+		return getScopeInstance("EQUIPMENT", equip);
+	}
+
+	public void testGetVariables()
+	{
+		SimpleLegalScope equipScope =
+				new SimpleLegalScope(getGlobalScope(), "EQUIPMENT");
+		getScopeLibrary().registerScope(equipScope);
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(),
+			numberManager);
+		getVariableLibrary().assertLegalVariableID("weight", equipScope,
+			numberManager);
+		ScopeInstance sword = getEquipment("Sword");
+		ScopeInstance shield = getEquipment("Shield");
+
+		DependencyManager fdm = managerFactory.generateDependencyManager(
+			getFormulaManager(), sword, Number.class);
+		new ComplexNEPFormula<>("weight*a+weight").getDependencies(fdm);
+		DependencyTemplate template = new DependencyTemplate(fdm);
+		assertEquals(Number.class, template.getAssertedFormat());
+
+		VariableID<Number> a =
+				new VariableID<>(getGlobalScopeInst(), numberManager, "a");
+		Set<VariableID<?>> vars =
+				template.getVariables(getVariableLibrary(), sword);
+		assertEquals(Arrays.asList(
+			new VariableID<>(sword, numberManager, "weight"), a),
+			new ArrayList<>(vars));
+		vars = template.getVariables(getVariableLibrary(), shield);
+		assertEquals(Arrays.asList(
+			new VariableID<>(shield, numberManager, "weight"), a),
+			new ArrayList<>(vars));
+		//Ownership is transferred
+		vars.clear();
+		assertEquals(2, template.getVariables(getVariableLibrary(), shield).size());
+		assertTrue(template.getDynamicDependencies(getVariableLibrary(), shield)
+			.isEmpty());
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pcgen.base.util.TypedKey;
+
+public class EvaluationManagerTest extends TestCase
+{
+
+	private static final TypedKey<String> CUSTOM = new TypedKey<String>();
+	private static final TypedKey<Integer> DEFAULTED =
+			new TypedKey<Integer>(Integer.valueOf(7));
+
+	@Test
+	public void testNullKey()
+	{
+		EvaluationManager manager = new EvaluationManager();
+		try
+		{
+			manager.get(null);
+			fail("null key must be rejected");
+		}
+		catch (NullPointerException | IllegalArgumentException e)
+		{
+			//ok
+		}
+		try
+		{
+			manager.getWith(null, "Value");
+			fail("null key must be rejected");
+		}
+		catch (NullPointerException | IllegalArgumentException e)
+		{
+			//ok
+		}
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		EvaluationManager manager = new EvaluationManager();
+		assertNull(manager.get(EvaluationManager.FMANAGER));
+		assertNull(manager.get(EvaluationManager.INSTANCE));
+		assertNull(manager.get(EvaluationManager.ASSERTED));
+		assertNull(manager.get(EvaluationManager.INPUT));
+		assertNull(manager.get(EvaluationManager.BINDING));
+		assertNull(manager.get(CUSTOM));
+		assertEquals(Integer.valueOf(7), manager.get(DEFAULTED));
+	}
+
+	@Test
+	public void testWellKnownKeys()
+	{
+		EvaluationManager base = new EvaluationManager();
+		EvaluationManager asserted =
+				base.getWith(EvaluationManager.ASSERTED, Number.class);
+		EvaluationManager input = asserted.getWith(EvaluationManager.INPUT, 4);
+		assertNull(base.get(EvaluationManager.ASSERTED));
+		assertEquals(Number.class, asserted.get(EvaluationManager.ASSERTED));
+		assertNull(asserted.get(EvaluationManager.INPUT));
+		assertEquals(Number.class, input.get(EvaluationManager.ASSERTED));
+		assertEquals(4, input.get(EvaluationManager.INPUT));
+		EvaluationManager cleared =
+				input.getWith(EvaluationManager.ASSERTED, null);
+		assertNull(cleared.get(EvaluationManager.ASSERTED));
+		assertEquals(4, cleared.get(EvaluationManager.INPUT));
+		assertEquals(Number.class, input.get(EvaluationManager.ASSERTED));
+	}
+
+	@Test
+	public void testCustomKeys()
+	{
+		EvaluationManager base =
+				new EvaluationManager().getWith(EvaluationManager.INPUT, 1);
+		EvaluationManager first = base.getWith(CUSTOM, "First");
+		EvaluationManager second = first.getWith(DEFAULTED, 3);
+		EvaluationManager third = second.getWith(CUSTOM, "Third");
+		assertNull(base.get(CUSTOM));
+		assertEquals("First", first.get(CUSTOM));
+		assertEquals(Integer.valueOf(7), first.get(DEFAULTED));
+		assertEquals("First", second.get(CUSTOM));
+		assertEquals(Integer.valueOf(3), second.get(DEFAULTED));
+		assertEquals("Third", third.get(CUSTOM));
+		assertEquals(Integer.valueOf(3), third.get(DEFAULTED));
+		assertEquals(1, third.get(EvaluationManager.INPUT));
+		//null restores the default
+		assertEquals(Integer.valueOf(7),
+			third.getWith(DEFAULTED, null).get(DEFAULTED));
+		assertEquals(Integer.valueOf(3), third.get(DEFAULTED));
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import junit.framework.TestCase;
+
+public class NumericValueTest extends TestCase
+{
+
+	public void testInteger()
+	{
+		NumericValue value = new NumericValue();
+		value.setInteger(4);
+		assertTrue(value.isInteger());
+		assertTrue(value.isNumber());
+		assertEquals(4, value.getInteger());
+		assertEquals(4.0, value.getDouble());
+		assertEquals(Integer.valueOf(4), value.getObject());
+		value.set(Integer.valueOf(-7));
+		assertTrue(value.isInteger());
+		assertEquals(-7, value.getInteger());
+	}
+
+	public void testDouble()
+	{
+		NumericValue value = new NumericValue();
+		value.setDouble(4.0);
+		assertFalse(value.isInteger());
+		assertTrue(value.isNumber());
+		assertEquals(4.0, value.getDouble());
+		assertEquals(Double.valueOf(4.0), value.getObject());
+		value.set(Double.valueOf(-0.5));
+		assertFalse(value.isInteger());
+		assertEquals(Double.valueOf(-0.5), value.getObject());
+	}
+
+	public void testObject()
+	{
+		NumericValue value = new NumericValue();
+		assertFalse(value.isNumber());
+		assertNull(value.getObject());
+		value.set("Hello");
+		assertFalse(value.isInteger());
+		assertFalse(value.isNumber());
+		assertEquals("Hello", value.getObject());
+		//Other Numbers are not stored as a primitive
+		value.set(Long.valueOf(3L));
+		assertFalse(value.isNumber());
+		assertEquals(Long.valueOf(3L), value.getObject());
+		value.setInteger(1);
+		assertEquals(Integer.valueOf(1), value.getObject());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pcgen.base.format.NumberManager;
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.inst.ScopeInstanceFactory;
+import pcgen.base.formula.inst.SimpleLegalScope;
+import pcgen.base.formula.inst.SimpleVariableStore;
+import pcgen.base.testsupport.SimpleVarScoped;
+
+public class VariableBindingTest extends TestCase
+{
+
+	private NumberManager numberManager = FormatUtilities.NUMBER_MANAGER;
+	private VariableLibrary varLib;
+	private VariableStore store;
+	private ScopeInstance globalInst;
+	private ScopeInstance eqInst;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		LegalScopeLibrary scopeLib = new LegalScopeLibrary();
+		ScopeInstanceFactory instanceFactory = new ScopeInstanceFactory(scopeLib);
+		varLib = new VariableLibrary(scopeLib);
+		store = new SimpleVariableStore();
+		SimpleLegalScope globalScope = new SimpleLegalScope(null, "Global");
+		scopeLib.registerScope(globalScope);
+		SimpleLegalScope eqScope = new SimpleLegalScope(globalScope, "Equipment");
+		scopeLib.registerScope(eqScope);
+		varLib.assertLegalVariableID("Walk", globalScope, numberManager);
+		varLib.assertLegalVariableID("Float", eqScope, numberManager);
+		globalInst = instanceFactory.getGlobalInstance("Global");
+		SimpleVarScoped eq = new SimpleVarScoped();
+		eq.scopeName = "Equipment";
+		eq.name = "Sword";
+		eqInst = instanceFactory.get("Equipment", eq);
+	}
+
+	private VariableSlot<?> slot(ScopeInstance inst, String name, Object value)
+	{
+		@SuppressWarnings("unchecked")
+		VariableSlot<Object> slot = new VariableSlot<>(
+			(VariableID<Object>) varLib.getVariableID(inst, name));
+		slot.setValue(value);
+		return slot;
+	}
+
+	@Test
+	public void testSlot()
+	{
+		try
+		{
+			new VariableSlot<>(null);
+			fail("null VariableID must be rejected");
+		}
+		catch (NullPointerException | IllegalArgumentException e)
+		{
+			//ok
+		}
+		VariableID<?> walk = varLib.getVariableID(globalInst, "Walk");
+		VariableSlot<?> slot = new VariableSlot<>(walk);
+		assertSame(walk, slot.getVariableID());
+		assertNull(slot.getValue());
+	}
+
+	@Test
+	public void testBinding()
+	{
+		List<VariableSlot<?>> slots = new ArrayList<>();
+		VariableSlot<?> walk = slot(globalInst, "Walk", 30);
+		slots.add(walk);
+		slots.add(slot(eqInst, "Float", 4));
+		VariableBinding binding =
+				new VariableBinding(varLib, eqInst, store, slots);
+		assertEquals(2, binding.size());
+		assertEquals(30, binding.getValue(eqInst, store, "Walk"));
+		assertEquals(4, binding.getValue(eqInst, store, "Float"));
+		assertNull(binding.getValue(eqInst, store, "Run"));
+		//Only applicable to the original ScopeInstance and VariableStore
+		assertNull(binding.getValue(globalInst, store, "Walk"));
+		assertNull(binding.getValue(eqInst, new SimpleVariableStore(), "Walk"));
+		//Slots are read live
+		@SuppressWarnings("unchecked")
+		VariableSlot<Object> writeable = (VariableSlot<Object>) walk;
+		writeable.setValue(40);
+		assertEquals(40, binding.getValue(eqInst, store, "Walk"));
+	}
+
+	@Test
+	public void testRebind()
+	{
+		List<VariableSlot<?>> slots = new ArrayList<>();
+		slots.add(slot(globalInst, "Walk", 30));
+		slots.add(slot(eqInst, "Float", 4));
+		VariableBinding binding =
+				new VariableBinding(varLib, eqInst, store, slots);
+		VariableStore newStore = new SimpleVariableStore();
+		VariableBinding rebound = binding.rebind(newStore,
+			new Function<VariableID<?>, VariableSlot<?>>()
+			{
+				@Override
+				public VariableSlot<?> apply(VariableID<?> varID)
+				{
+					return slot(varID.getScope(), varID.getName(), 10);
+				}
+			});
+		assertEquals(2, rebound.size());
+		assertEquals(10, rebound.getValue(eqInst, newStore, "Walk"));
+		assertEquals(10, rebound.getValue(eqInst, newStore, "Float"));
+		//Only applicable to the new VariableStore
+		assertNull(rebound.getValue(eqInst, store, "Walk"));
+		assertEquals(30, binding.getValue(eqInst, store, "Walk"));
+	}
+
+	@Test
+	public void testNotResolvedInScope()
+	{
+		List<VariableSlot<?>> slots = new ArrayList<>();
+		slots.add(slot(globalInst, "Walk", 30));
+		slots.add(slot(eqInst, "Float", 4));
+		//Float is not legal in Global
+		VariableBinding binding =
+				new VariableBinding(varLib, globalInst, store, slots);
+		assertEquals(1, binding.size());
+		assertEquals(30, binding.getValue(globalInst, store, "Walk"));
+		assertNull(binding.getValue(globalInst, store, "Float"));
+	}
+}
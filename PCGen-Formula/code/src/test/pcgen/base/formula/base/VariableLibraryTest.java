@@ -569,5 +569,21 @@ public class VariableLibraryTest extends TestCase
 		assertFalse(vidf.equals(vidm));
 
 	}
-	
+
+	@Test
+	public void testRevision()
+	{
+		SimpleLegalScope globalScope = new SimpleLegalScope(null, "Global");
+		SimpleLegalScope eqScope =
+				new SimpleLegalScope(globalScope, "Equipment");
+		int revision = varLib.getRevision();
+		assertTrue(
+			varLib.assertLegalVariableID("Walk", globalScope, numberManager));
+		assertFalse(revision == varLib.getRevision());
+		revision = varLib.getRevision();
+		//Conflict does not add a variable
+		assertFalse(
+			varLib.assertLegalVariableID("Walk", eqScope, numberManager));
+		assertEquals(revision, varLib.getRevision());
+	}
 }
@@ -21,7 +21,10 @@ import java.util.List;
 
 import org.junit.Test;
 
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.inst.SimpleFunctionLibrary;
 import pcgen.base.formula.parse.SimpleNode;
 import pcgen.base.formula.visitor.ReconstructionVisitor;
 import pcgen.base.testsupport.AbstractFormulaTestCase;
@@ -197,4 +200,31 @@ public class MaxFunctionTest extends AbstractFormulaTestCase
 		VariableID<?> var = vars.get(0);
 		assertEquals("a", var.getName());
 	}
+
+	@Test
+	public void testRebindOnLibraryChange()
+	{
+		String formula = "max(1,2)";
+		SimpleNode node = TestUtilities.doParse(formula);
+		isValid(formula, node, numberManager, null);
+		evaluatesTo(formula, node, Integer.valueOf(2));
+		evaluatesTo(formula, node, Integer.valueOf(2));
+		//A different library with a different MAX
+		SimpleFunctionLibrary library = new SimpleFunctionLibrary();
+		library.addFunction(new MinFunction()
+		{
+			@Override
+			public String getFunctionName()
+			{
+				return "MAX";
+			}
+		});
+		FormulaManager altManager =
+				getFormulaManager().getWith(FormulaManager.FUNCTION, library);
+		EvaluationManager manager = generateManager()
+			.getWith(EvaluationManager.FMANAGER, altManager);
+		performEvaluation(formula, node, Integer.valueOf(1), manager);
+		//And back again
+		evaluatesTo(formula, node, Integer.valueOf(2));
+	}
 }
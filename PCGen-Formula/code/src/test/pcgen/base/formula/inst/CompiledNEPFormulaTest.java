@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.FormulaSemantics;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.library.GenericFunction;
+import pcgen.base.testsupport.AbstractFormulaTestCase;
+import pcgen.base.testsupport.TestUtilities;
+import pcgen.base.util.FormatManager;
+
+public class CompiledNEPFormulaTest extends AbstractFormulaTestCase
+{
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(),
+			numberManager);
+		getVariableLibrary().assertLegalVariableID("b", getGlobalScope(),
+			numberManager);
+		getVariableLibrary().assertLegalVariableID("c", getGlobalScope(),
+			FormatUtilities.BOOLEAN_MANAGER);
+		getVariableStore().put(
+			new VariableID<>(getGlobalScopeInst(), numberManager, "a"), 4);
+		getVariableStore().put(
+			new VariableID<>(getGlobalScopeInst(), numberManager, "b"), 1.5);
+		getVariableStore().put(new VariableID<>(getGlobalScopeInst(),
+			FormatUtilities.BOOLEAN_MANAGER, "c"), true);
+		getFunctionLibrary().addFunction(new GenericFunction("d20Mod",
+			TestUtilities.doParse("floor((arg(0)-10)/2)")));
+	}
+
+	public void testConstructor()
+	{
+		try
+		{
+			new CompiledNEPFormula<>(null, getFormulaManager());
+			fail("Expected null formula to fail");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			new CompiledNEPFormula<>(new ComplexNEPFormula<>("3+a"), null);
+			fail("Expected null FormulaManager to fail");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+	}
+
+	public void testIdentical()
+	{
+		FormatManager<Number> numberMgr = numberManager;
+		FormatManager<Boolean> booleanMgr = FormatUtilities.BOOLEAN_MANAGER;
+		assertIdentical(numberMgr, "3+5");
+		assertIdentical(numberMgr, "3.5*2");
+		assertIdentical(numberMgr, "a-b");
+		assertIdentical(numberMgr, "a*(3/2)");
+		assertIdentical(numberMgr, "a/2");
+		assertIdentical(numberMgr, "a/3");
+		assertIdentical(numberMgr, "a^2");
+		assertIdentical(numberMgr, "a/0");
+		assertIdentical(numberMgr, "a-b*0");
+		assertIdentical(numberMgr, "(a*a-a)/(b+b)");
+		assertIdentical(numberMgr, "-a");
+		assertIdentical(numberMgr, "-b+a");
+		assertIdentical(numberMgr, "if(a>=b,5,9)");
+		assertIdentical(numberMgr, "if(c,a,b)");
+		assertIdentical(numberMgr, "if(a==4,a*b,-9)");
+		assertIdentical(numberMgr, "max(a,b,2)+min(a,b)");
+		assertIdentical(numberMgr, "abs(-a)+ceil(b)+floor(b)+round(b)");
+		assertIdentical(numberMgr, "max(a*2,if(c,b+1,3))");
+		assertIdentical(numberMgr, "d20Mod(a+14)");
+		assertIdentical(numberMgr, "d20Mod(d20Mod(a*10)+20)");
+		assertIdentical(booleanMgr, "(a==b)||c");
+		assertIdentical(booleanMgr, "!c&&(a!=b)");
+		assertIdentical(booleanMgr, "a<b");
+		assertIdentical(booleanMgr, "a==4");
+		assertIdentical(booleanMgr, "(a*2)==(b+6.5)");
+		assertIdentical(FormatUtilities.STRING_MANAGER,
+			"if(a>b,\"A\",\"B\")");
+	}
+
+	public void testNotValidated()
+	{
+		assertCompiled("value()+a", 6);
+	}
+
+	public void testShortCircuit()
+	{
+		//The second argument would fail if evaluated (a is not an array)
+		assertCompiled("!c&&(a[0]==1)", false);
+		assertCompiled("c||(a[0]==1)", true);
+		assertCompiled("(c||(a[0]==1))&&!(!c&&(a[0]==1))", true);
+	}
+
+	public void testOtherLibrary()
+	{
+		ComplexNEPFormula<Number> formula = new ComplexNEPFormula<>("a+2");
+		CompiledNEPFormula<Number> compiled =
+				new CompiledNEPFormula<>(formula, getFormulaManager());
+		//Different function library, so falls back to ComplexNEPFormula
+		FormulaManager other = getFormulaManager()
+			.getWith(FormulaManager.FUNCTION, new SimpleFunctionLibrary());
+		EvaluationManager manager =
+				generateManager().getWith(EvaluationManager.FMANAGER, other);
+		assertEquals(6, compiled.resolve(manager));
+	}
+
+	public void testDelegation()
+	{
+		ComplexNEPFormula<String> formula = new ComplexNEPFormula<>("(a+2)*3");
+		CompiledNEPFormula<String> compiled =
+				new CompiledNEPFormula<>(formula, getFormulaManager());
+		assertEquals("(a+2)*3", compiled.toString());
+		FormulaSemantics fs = getManagerFactory().generateFormulaSemantics(
+			getFormulaManager(), getGlobalScope(), null);
+		compiled.isValid(FormatUtilities.STRING_MANAGER, fs);
+		assertFalse(fs.isValid());
+	}
+
+	private <T> void assertIdentical(FormatManager<T> formatManager,
+		String formulaText)
+	{
+		ComplexNEPFormula<T> formula = new ComplexNEPFormula<>(formulaText);
+		EvaluationManager manager = generateManager();
+		Object expected = formula.resolve(manager);
+		//Before validation
+		Object result = new CompiledNEPFormula<>(formula, getFormulaManager())
+			.resolve(manager);
+		assertEquals(formulaText, expected, result);
+		assertEquals(formulaText, expected.getClass(), result.getClass());
+		//After validation (includes folding)
+		FormulaSemantics fs = getManagerFactory().generateFormulaSemantics(
+			getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(formatManager, fs);
+		assertTrue(formulaText + " " + fs.getReport(), fs.isValid());
+		CompiledNEPFormula<T> compiled =
+				new CompiledNEPFormula<>(formula, getFormulaManager());
+		result = compiled.resolve(manager);
+		assertEquals(formulaText, expected, result);
+		assertEquals(formulaText, expected.getClass(), result.getClass());
+		//Twice, to ensure bound actions are reused properly
+		assertEquals(formulaText, expected, compiled.resolve(manager));
+	}
+
+	private void assertCompiled(String formulaText, Object expected)
+	{
+		ComplexNEPFormula<Object> formula = new ComplexNEPFormula<>(formulaText);
+		EvaluationManager manager = generateManager(2);
+		assertEquals(expected, formula.resolve(manager));
+		assertEquals(expected,
+			new CompiledNEPFormula<>(formula, getFormulaManager())
+				.resolve(manager));
+	}
+}
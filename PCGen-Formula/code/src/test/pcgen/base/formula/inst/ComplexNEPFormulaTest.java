@@ -1,5 +1,7 @@
 package pcgen.base.formula.inst;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import pcgen.base.format.BooleanManager;
@@ -8,11 +10,17 @@ import pcgen.base.format.StringManager;
 import pcgen.base.formatmanager.FormatUtilities;
 import pcgen.base.formula.analysis.ArgumentDependencyManager;
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaSemantics;
 import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.ScopeInstance;
 import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.library.GenericFunction;
 import pcgen.base.testsupport.AbstractFormulaTestCase;
+import pcgen.base.testsupport.SimpleVarScoped;
+import pcgen.base.testsupport.TestUtilities;
+import pcgen.base.util.FormatManager;
 
 public class ComplexNEPFormulaTest extends AbstractFormulaTestCase
 {
@@ -248,4 +256,174 @@ public class ComplexNEPFormulaTest extends AbstractFormulaTestCase
 		assertEquals(4, new ComplexNEPFormula<>("value()").resolve(manager));
 		assertEquals(243.0, new ComplexNEPFormula<>("3^5").resolve(evalManager));
 	}
+
+	public void testResolveFolded()
+	{
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(), numberMgr);
+		getVariableLibrary().assertLegalVariableID("b", getGlobalScope(), numberMgr);
+		getVariableStore().put(new VariableID<>(getGlobalScopeInst(), numberMgr, "a"), 4);
+		getVariableStore().put(new VariableID<>(getGlobalScopeInst(), numberMgr, "b"), 1.5);
+
+		assertFolded(numberMgr, "(3*4)+max(2,5)", 17);
+		assertFolded(numberMgr, "(3*4)+a", 16);
+		assertFolded(numberMgr, "a+max(2,5)", 9);
+		assertFolded(numberMgr, "a*(3/2)", 6.0);
+		assertFolded(numberMgr, "a*(4/2)", 8);
+		assertFolded(numberMgr, "-(2+3)*a", -20);
+		assertFolded(numberMgr, "if(3<4,a,b)", 4);
+		assertFolded(numberMgr, "if(a<4,2+3,b)", 1.5);
+		assertFolded(numberMgr, "abs(-4)+ceil(2.5)+floor(2.5)+round(2.5)", 12);
+		assertFolded(numberMgr, "min(a,2^2)", 4);
+		assertFolded(numberMgr, "b+(1/0)", Double.POSITIVE_INFINITY);
+		assertFolded(booleanMgr, "(1==1)&&(a>b)", true);
+		assertFolded(booleanMgr, "!(1>2)", true);
+		assertFolded(stringMgr, "if(a>=b,if(1<2,\"A\",\"B\"),\"C\")", "A");
+	}
+
+	public void testIsValidRetained()
+	{
+		ComplexNEPFormula<Number> formula = new ComplexNEPFormula<>("a+twice(2)");
+		FormulaSemantics fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(numberMgr, fs);
+		assertFalse(fs.isValid());
+		String report = fs.getReport();
+		fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(numberMgr, fs);
+		assertFalse(fs.isValid());
+		assertEquals(report, fs.getReport());
+		//Adding the variable is not sufficient, since the function is not defined
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(), numberMgr);
+		fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(numberMgr, fs);
+		assertFalse(fs.isValid());
+		assertFalse(report.equals(fs.getReport()));
+		getFunctionLibrary().addFunction(
+			new GenericFunction("twice", TestUtilities.doParse("arg(0)*2")));
+		fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(numberMgr, fs);
+		assertTrue(fs.isValid());
+		fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(numberMgr, fs);
+		assertTrue(fs.isValid());
+		//Different inputs are validated separately
+		FormulaSemantics input = fs.getWith(FormulaSemantics.INPUT_FORMAT, stringMgr);
+		formula.isValid(numberMgr, input);
+		assertTrue(input.isValid());
+		getVariableStore().put(new VariableID<>(getGlobalScopeInst(), numberMgr, "a"), 3);
+		assertEquals(7, formula.resolve(generateManager()));
+		//A formula that is already invalid stays invalid
+		fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		fs.setInvalid("Previous Error");
+		formula.isValid(numberMgr, fs);
+		assertFalse(fs.isValid());
+	}
+
+	public void testDependencyTemplateRetained()
+	{
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(), numberMgr);
+		ComplexNEPFormula<Number> formula = new ComplexNEPFormula<>("a*2");
+		DependencyTemplate template =
+				formula.getDependencyTemplate(managerFactory.generateDependencyManager(
+					getFormulaManager(), getGlobalScopeInst(), Number.class));
+		assertEquals(
+			Collections.singleton(
+				new VariableID<>(getGlobalScopeInst(), numberMgr, "a")),
+			template.getVariables(getVariableLibrary(), getGlobalScopeInst()));
+		//The tree is not walked again for the same inputs
+		DependencyManager depManager = managerFactory.generateDependencyManager(
+			getFormulaManager(), getGlobalScopeInst(), Number.class);
+		assertSame(template, formula.getDependencyTemplate(depManager));
+		assertTrue(depManager.getVariables().isEmpty());
+		//Different inputs are captured separately
+		DependencyTemplate other =
+				formula.getDependencyTemplate(managerFactory.generateDependencyManager(
+					getFormulaManager(), getGlobalScopeInst(), String.class));
+		assertNotSame(template, other);
+		assertEquals(String.class, other.getAssertedFormat());
+		//A change to the FunctionLibrary discards the retained template
+		getFunctionLibrary().addFunction(
+			new GenericFunction("twice", TestUtilities.doParse("arg(0)*2")));
+		assertNotSame(template,
+			formula.getDependencyTemplate(managerFactory.generateDependencyManager(
+				getFormulaManager(), getGlobalScopeInst(), Number.class)));
+	}
+
+	public void testResolveAll()
+	{
+		SimpleLegalScope equipScope =
+				new SimpleLegalScope(getGlobalScope(), "EQUIPMENT");
+		getScopeLibrary().registerScope(equipScope);
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(), numberMgr);
+		getVariableLibrary().assertLegalVariableID("weight", equipScope, numberMgr);
+		getVariableStore().put(new VariableID<>(getGlobalScopeInst(), numberMgr, "a"), 4);
+		List<ScopeInstance> instances = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+		{
+			SimpleVarScoped equip = new SimpleVarScoped();
+			equip.name = "Equip" + i;
+			equip.scopeName = "EQUIPMENT";
+			ScopeInstance inst = getScopeInstance("EQUIPMENT", equip);
+			getVariableStore().put(new VariableID<>(inst, numberMgr, "weight"), i);
+			instances.add(inst);
+		}
+		EvaluationManager evalManager = generateManager();
+		ComplexNEPFormula<Number> formula =
+				new ComplexNEPFormula<>("max(weight,10)*(3-1)+a");
+		assertResolveAll(formula, evalManager, instances, 24, 202);
+		FormulaSemantics fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), equipScope, null);
+		formula.isValid(numberMgr, fs);
+		assertTrue(fs.isValid());
+		assertResolveAll(formula, evalManager, instances, 24, 202);
+		assertResolveAll(
+			new CompiledNEPFormula<>(formula, getFormulaManager()),
+			evalManager, instances, 24, 202);
+		assertEquals(Collections.emptyList(), formula.resolveAll(evalManager,
+			Collections.<ScopeInstance> emptyList(), true));
+	}
+
+	private void assertResolveAll(NEPFormula<Number> formula,
+		EvaluationManager evalManager, List<ScopeInstance> instances,
+		int first, int last)
+	{
+		List<Number> sequential =
+				formula.resolveAll(evalManager, instances, false);
+		List<Number> parallel = formula.resolveAll(evalManager, instances, true);
+		assertEquals(instances.size(), sequential.size());
+		assertEquals(sequential, parallel);
+		for (int i = 0; i < instances.size(); i++)
+		{
+			assertEquals(formula.resolve(evalManager
+				.getWith(EvaluationManager.INSTANCE, instances.get(i))),
+				sequential.get(i));
+		}
+		assertEquals(first, sequential.get(0));
+		assertEquals(last, sequential.get(instances.size() - 1));
+	}
+
+	private <T> void assertFolded(FormatManager<T> formatManager, String formula,
+		Object expected)
+	{
+		EvaluationManager evalManager = generateManager();
+		FormulaSemantics fs = managerFactory
+			.generateFormulaSemantics(getFormulaManager(), getGlobalScope(), null);
+		ComplexNEPFormula<T> unfolded = new ComplexNEPFormula<>(formula);
+		Object original = unfolded.resolve(evalManager);
+		assertEquals(expected, original);
+
+		ComplexNEPFormula<T> folded = new ComplexNEPFormula<>(formula);
+		folded.isValid(formatManager, fs);
+		assertTrue(fs.isValid());
+		Object result = folded.resolve(evalManager);
+		assertEquals(original, result);
+		assertEquals(original.getClass(), result.getClass());
+		//Reconstruction is based on the original formula
+		assertEquals(unfolded.toString(), folded.toString());
+	}
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import junit.framework.TestCase;
+import pcgen.base.format.NumberManager;
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.base.LegalScopeLibrary;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableID;
+
+public class ConcurrentVariableStoreTest extends TestCase
+{
+
+	private LegalScopeLibrary library;
+	private ScopeInstanceFactory instanceFactory;
+		
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		library = new LegalScopeLibrary();
+		library.registerScope(new SimpleLegalScope(null, "Global"));
+		instanceFactory = new ScopeInstanceFactory(library);
+	}
+
+	public void testNulls()
+	{
+		ConcurrentVariableStore varStore = new ConcurrentVariableStore();
+		NumberManager numberManager = new NumberManager();
+		ScopeInstance globalInst = instanceFactory.getGlobalInstance("Global");
+		VariableID<Number> vid = new VariableID<>(globalInst, numberManager, "test");
+		try
+		{
+			varStore.put(null, Integer.valueOf(4));
+			fail();
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//yep
+		}
+		try
+		{
+			varStore.put(vid, null);
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//yep
+		}
+		try
+		{
+			//Intentionally break generics
+			varStore.put((VariableID) vid, "NotANumber!");
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			//yep
+		}
+	}
+
+	public void testGlobal()
+	{
+		ConcurrentVariableStore varStore = new ConcurrentVariableStore();
+		NumberManager numberManager = FormatUtilities.NUMBER_MANAGER;
+		ScopeInstance globalInst = instanceFactory.getGlobalInstance("Global");
+		VariableID vid = new VariableID(globalInst, numberManager, "test");
+		assertFalse(varStore.containsKey(vid));
+		assertNull(varStore.put(vid, Integer.valueOf(9)));
+		assertTrue(varStore.containsKey(vid));
+		assertEquals(Integer.valueOf(9), varStore.get(vid));
+		assertEquals(Integer.valueOf(9), varStore.put(vid, Integer.valueOf(4)));
+		assertTrue(varStore.containsKey(vid));
+		assertEquals(Integer.valueOf(4), varStore.get(vid));
+		assertEquals(Integer.valueOf(4), varStore.remove(vid));
+		assertFalse(varStore.containsKey(vid));
+		assertNull(varStore.get(vid));
+		assertNull(varStore.remove(vid));
+	}
+
+	public void testIndependence()
+	{
+		ConcurrentVariableStore varStore = new ConcurrentVariableStore();
+		NumberManager numberManager = new NumberManager();
+		ScopeInstance globalInst = instanceFactory.getGlobalInstance("Global");
+		VariableID vid1 = new VariableID(globalInst, numberManager, "test");
+		VariableID vid2 = new VariableID(globalInst, numberManager, "test");
+		VariableID vid3 = new VariableID(globalInst, numberManager, "test2");
+		library.registerScope(new SimpleLegalScope(null, "Global2"));
+		ScopeInstance globalInst2 = instanceFactory.getGlobalInstance("Global2");
+		VariableID vid4 = new VariableID(globalInst2, numberManager, "test");
+		assertNull(varStore.put(vid1, Integer.valueOf(9)));
+		assertTrue(varStore.containsKey(vid1));
+		assertTrue(varStore.containsKey(vid2));
+		assertFalse(varStore.containsKey(vid3));
+		assertFalse(varStore.containsKey(vid4));
+		assertEquals(Integer.valueOf(9), varStore.put(vid2, Integer.valueOf(4)));
+		assertTrue(varStore.containsKey(vid1));
+		assertTrue(varStore.containsKey(vid2));
+		assertFalse(varStore.containsKey(vid3));
+		assertFalse(varStore.containsKey(vid4));
+		assertEquals(Integer.valueOf(4), varStore.get(vid1));
+		assertNull(varStore.put(vid4, Integer.valueOf(3)));
+		assertTrue(varStore.containsKey(vid1));
+		assertTrue(varStore.containsKey(vid2));
+		assertFalse(varStore.containsKey(vid3));
+		assertTrue(varStore.containsKey(vid4));
+		assertEquals(Integer.valueOf(4), varStore.get(vid1));
+		assertEquals(Integer.valueOf(3), varStore.get(vid4));
+	}
+
+	public void testConcurrentPut() throws InterruptedException
+	{
+		final ConcurrentVariableStore varStore = new ConcurrentVariableStore();
+		final NumberManager numberManager = FormatUtilities.NUMBER_MANAGER;
+		final ScopeInstance globalInst =
+				instanceFactory.getGlobalInstance("Global");
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int offset = t * 1000;
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = offset; i < offset + 1000; i++)
+					{
+						varStore.put(new VariableID<>(globalInst, numberManager,
+							"v" + i), Integer.valueOf(i));
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		for (int i = 0; i < 4000; i++)
+		{
+			assertEquals(Integer.valueOf(i), varStore.get(
+				new VariableID<>(globalInst, numberManager, "v" + i)));
+		}
+	}
+}
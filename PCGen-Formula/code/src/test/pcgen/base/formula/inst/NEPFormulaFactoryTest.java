@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import junit.framework.TestCase;
+
+public class NEPFormulaFactoryTest extends TestCase
+{
+
+	public void testConstructor()
+	{
+		try
+		{
+			new NEPFormulaFactory(0);
+			fail("Expected zero capacity to fail");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+	}
+
+	public void testInvalidFormula()
+	{
+		NEPFormulaFactory factory = new NEPFormulaFactory();
+		try
+		{
+			factory.getFormula(null);
+			fail("Expected null formula text to fail");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			factory.getFormula("3+*5");
+			fail("Expected bad formula text to fail");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+		assertEquals(0, factory.size());
+	}
+
+	public void testShared()
+	{
+		NEPFormulaFactory factory = new NEPFormulaFactory();
+		ComplexNEPFormula<Number> f1 = factory.getFormula("STR/2");
+		assertEquals(0, factory.getHitCount());
+		assertEquals(1, factory.getMissCount());
+		ComplexNEPFormula<Number> f2 = factory.getFormula("STR/2");
+		assertSame(f1, f2);
+		assertEquals(1, factory.getHitCount());
+		assertEquals(1, factory.getMissCount());
+		ComplexNEPFormula<Number> f3 = factory.getFormula("BAB+1");
+		assertNotSame(f1, f3);
+		assertEquals("BAB+1", f3.toString());
+		assertEquals(1, factory.getHitCount());
+		assertEquals(2, factory.getMissCount());
+		assertEquals(2, factory.size());
+	}
+
+	public void testEviction()
+	{
+		NEPFormulaFactory factory = new NEPFormulaFactory(2);
+		ComplexNEPFormula<Number> f1 = factory.getFormula("1+a");
+		ComplexNEPFormula<Number> f2 = factory.getFormula("2+a");
+		//Touch f1 so that f2 is the least recently used
+		assertSame(f1, factory.getFormula("1+a"));
+		factory.getFormula("3+a");
+		assertEquals(2, factory.size());
+		assertSame(f1, factory.getFormula("1+a"));
+		assertNotSame(f2, factory.getFormula("2+a"));
+		assertEquals(2, factory.getHitCount());
+		assertEquals(4, factory.getMissCount());
+	}
+
+	public void testClear()
+	{
+		NEPFormulaFactory factory = new NEPFormulaFactory();
+		ComplexNEPFormula<Number> f1 = factory.getFormula("1+a");
+		factory.clear();
+		assertEquals(0, factory.size());
+		assertNotSame(f1, factory.getFormula("1+a"));
+		assertEquals(2, factory.getMissCount());
+	}
+}
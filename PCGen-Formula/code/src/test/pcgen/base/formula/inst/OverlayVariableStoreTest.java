@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.inst;
+
+import junit.framework.TestCase;
+import pcgen.base.format.NumberManager;
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.base.LegalScopeLibrary;
+import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableID;
+
+public class OverlayVariableStoreTest extends TestCase
+{
+
+	private LegalScopeLibrary library;
+	private ScopeInstanceFactory instanceFactory;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		library = new LegalScopeLibrary();
+		library.registerScope(new SimpleLegalScope(null, "Global"));
+		instanceFactory = new ScopeInstanceFactory(library);
+	}
+
+	public void testNulls()
+	{
+		try
+		{
+			new OverlayVariableStore(null);
+			fail();
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//yep
+		}
+		OverlayVariableStore varStore =
+				new OverlayVariableStore(new SimpleVariableStore());
+		NumberManager numberManager = new NumberManager();
+		ScopeInstance globalInst = instanceFactory.getGlobalInstance("Global");
+		VariableID<Number> vid = new VariableID<>(globalInst, numberManager, "test");
+		try
+		{
+			varStore.put(null, Integer.valueOf(4));
+			fail();
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//yep
+		}
+		try
+		{
+			varStore.put(vid, null);
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//yep
+		}
+		try
+		{
+			//Intentionally break generics
+			varStore.put((VariableID) vid, "NotANumber!");
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			//yep
+		}
+	}
+
+	public void testOverlay()
+	{
+		SimpleVariableStore parent = new SimpleVariableStore();
+		OverlayVariableStore varStore = new OverlayVariableStore(parent);
+		assertSame(parent, varStore.getParent());
+		NumberManager numberManager = FormatUtilities.NUMBER_MANAGER;
+		ScopeInstance globalInst = instanceFactory.getGlobalInstance("Global");
+		VariableID<Number> vid1 = new VariableID<>(globalInst, numberManager, "test");
+		VariableID<Number> vid2 = new VariableID<>(globalInst, numberManager, "test2");
+		parent.put(vid1, Integer.valueOf(9));
+		assertTrue(varStore.containsKey(vid1));
+		assertEquals(Integer.valueOf(9), varStore.get(vid1));
+		assertFalse(varStore.containsKey(vid2));
+		assertNull(varStore.get(vid2));
+		//The previous value is the value from the parent
+		assertEquals(Integer.valueOf(9), varStore.put(vid1, Integer.valueOf(4)));
+		assertEquals(Integer.valueOf(4), varStore.get(vid1));
+		assertEquals(Integer.valueOf(4), varStore.put(vid1, Integer.valueOf(5)));
+		assertNull(varStore.put(vid2, Integer.valueOf(3)));
+		assertEquals(Integer.valueOf(3), varStore.get(vid2));
+		//Parent is unchanged
+		assertEquals(Integer.valueOf(9), parent.get(vid1));
+		assertFalse(parent.containsKey(vid2));
+		//Overlay of an overlay
+		OverlayVariableStore nested = new OverlayVariableStore(varStore);
+		assertEquals(Integer.valueOf(5), nested.get(vid1));
+		assertEquals(Integer.valueOf(5), nested.put(vid1, Integer.valueOf(6)));
+		assertEquals(Integer.valueOf(5), varStore.get(vid1));
+		assertEquals(Integer.valueOf(9), parent.get(vid1));
+		//Removing a value makes the value in the parent visible again
+		assertEquals(Integer.valueOf(5), varStore.remove(vid1));
+		assertEquals(Integer.valueOf(9), varStore.get(vid1));
+		assertEquals(Integer.valueOf(3), varStore.remove(vid2));
+		assertFalse(varStore.containsKey(vid2));
+		assertNull(varStore.remove(vid2));
+	}
+}
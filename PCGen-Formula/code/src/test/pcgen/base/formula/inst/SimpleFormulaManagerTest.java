@@ -18,6 +18,7 @@ package pcgen.base.formula.inst;
 import org.junit.Test;
 
 import junit.framework.TestCase;
+import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.LegalScopeLibrary;
 import pcgen.base.formula.base.VariableLibrary;
 import pcgen.base.solver.SolverFactory;
@@ -108,4 +109,28 @@ public class SimpleFormulaManagerTest extends TestCase
 		}
 	}
 
+	@Test
+	public void testGetWithResolver()
+	{
+		SimpleFunctionLibrary functions = new SimpleFunctionLibrary();
+		FormulaManager manager = new SimpleFormulaManager(opLibrary, varLibrary,
+			siFactory, resultsStore, defaultStore).getWith(FormulaManager.FUNCTION,
+			functions);
+		OverlayVariableStore overlay = new OverlayVariableStore(resultsStore);
+		FormulaManager replacement = manager.getWithResolver(overlay);
+		assertSame(overlay, replacement.getResolver());
+		assertSame(functions, replacement.get(FormulaManager.FUNCTION));
+		assertSame(varLibrary, replacement.getFactory());
+		assertSame(resultsStore, manager.getResolver());
+		try
+		{
+			manager.getWithResolver(null);
+			fail("null resolver must be rejected");
+		}
+		catch (NullPointerException | IllegalArgumentException e)
+		{
+			//ok
+		}
+	}
+
 }
@@ -148,4 +148,15 @@ public class SimpleFunctionLibraryTest extends TestCase
 			}
 		};
 	}
+
+	@Test
+	public void testRevision()
+	{
+		int revision = library.getRevision();
+		library.addFunction(getPseudoFunction("Abs"));
+		assertFalse(revision == library.getRevision());
+		revision = library.getRevision();
+		library.getFunction("Abs");
+		assertEquals(revision, library.getRevision());
+	}
 }
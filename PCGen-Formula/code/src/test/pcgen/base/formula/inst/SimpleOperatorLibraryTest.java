@@ -23,11 +23,14 @@ import org.junit.Test;
 
 import pcgen.base.formula.base.OperatorAction;
 import pcgen.base.formula.base.UnaryAction;
+import pcgen.base.formula.operator.bool.BooleanAnd;
+import pcgen.base.formula.operator.bool.BooleanOr;
 import pcgen.base.formula.operator.generic.GenericEquals;
 import pcgen.base.formula.operator.number.NumberAdd;
 import pcgen.base.formula.operator.number.NumberEquals;
 import pcgen.base.formula.operator.number.NumberMinus;
 import pcgen.base.formula.parse.Operator;
+import pcgen.base.util.FormatManager;
 
 public class SimpleOperatorLibraryTest extends TestCase
 {
@@ -138,4 +141,106 @@ public class SimpleOperatorLibraryTest extends TestCase
 		assertEquals(Boolean.FALSE, library.evaluate(Operator.EQ, 1, 2));
 	}
 
+	@Test
+	public void testGetAction()
+	{
+		assertNull(
+			library.getOperatorAction(Operator.EQ, INTEGER_CLASS, INTEGER_CLASS));
+		assertNull(library.getUnaryAction(Operator.MINUS, INTEGER_CLASS));
+		GenericEquals genericEquals = new GenericEquals();
+		NumberEquals numberEquals = new NumberEquals();
+		NumberMinus numberMinus = new NumberMinus();
+		library.addAction(genericEquals);
+		library.addAction(numberEquals);
+		library.addAction(numberMinus);
+		assertSame(genericEquals,
+			library.getOperatorAction(Operator.EQ, INTEGER_CLASS, INTEGER_CLASS));
+		assertSame(numberEquals,
+			library.getOperatorAction(Operator.EQ, INTEGER_CLASS, Double.class));
+		assertNull(
+			library.getOperatorAction(Operator.ADD, INTEGER_CLASS, INTEGER_CLASS));
+		assertSame(numberMinus,
+			library.getUnaryAction(Operator.MINUS, INTEGER_CLASS));
+		assertNull(library.getUnaryAction(Operator.MINUS, Boolean.class));
+	}
+
+	@Test
+	public void testDispatchAfterAdd()
+	{
+		//Cache the absence of an action before it is added
+		assertNull(
+			library.getOperatorAction(Operator.ADD, INTEGER_CLASS, INTEGER_CLASS));
+		assertNull(library.processAbstract(Operator.MINUS, INTEGER_CLASS));
+		NumberAdd numberAdd = new NumberAdd();
+		NumberMinus numberMinus = new NumberMinus();
+		library.addAction(numberAdd);
+		library.addAction(numberMinus);
+		assertSame(numberAdd,
+			library.getOperatorAction(Operator.ADD, INTEGER_CLASS, INTEGER_CLASS));
+		assertEquals(Number.class,
+			library.processAbstract(Operator.ADD, INTEGER_CLASS, INTEGER_CLASS).getManagedClass());
+		assertSame(numberMinus,
+			library.getUnaryAction(Operator.MINUS, INTEGER_CLASS));
+		assertEquals(Number.class,
+			library.processAbstract(Operator.MINUS, INTEGER_CLASS).getManagedClass());
+		//An earlier action continues to take precedence
+		library.addAction(new NumberEquals());
+		GenericEquals genericEquals = new GenericEquals();
+		library.addAction(genericEquals);
+		assertNotSame(genericEquals,
+			library.getOperatorAction(Operator.EQ, INTEGER_CLASS, INTEGER_CLASS));
+		assertSame(genericEquals,
+			library.getOperatorAction(Operator.EQ, Boolean.class, Boolean.class));
+	}
+
+	@Test
+	public void testShortCircuitAction()
+	{
+		assertNull(library.getShortCircuitAction(Operator.AND, Boolean.class));
+		BooleanAnd booleanAnd = new BooleanAnd();
+		library.addAction(booleanAnd);
+		library.addAction(new BooleanOr());
+		assertSame(booleanAnd,
+			library.getShortCircuitAction(Operator.AND, Boolean.class));
+		assertNull(library.getShortCircuitAction(Operator.AND, INTEGER_CLASS));
+		assertNull(library.getShortCircuitAction(Operator.ADD, Boolean.class));
+		//The class of the second argument could select this action instead
+		library.addAction(new OperatorAction()
+		{
+			@Override
+			public Operator getOperator()
+			{
+				return Operator.AND;
+			}
+
+			@Override
+			public FormatManager<?> abstractEvaluate(Class<?> format1,
+				Class<?> format2)
+			{
+				return null;
+			}
+
+			@Override
+			public Object evaluate(Object left, Object right)
+			{
+				return null;
+			}
+		});
+		assertNull(library.getShortCircuitAction(Operator.AND, Boolean.class));
+		assertNotNull(library.getShortCircuitAction(Operator.OR, Boolean.class));
+	}
+
+	@Test
+	public void testRevision()
+	{
+		int revision = library.getRevision();
+		library.addAction(new NumberAdd());
+		assertFalse(revision == library.getRevision());
+		revision = library.getRevision();
+		library.addAction(new NumberMinus());
+		assertFalse(revision == library.getRevision());
+		revision = library.getRevision();
+		library.getOperatorAction(Operator.ADD, INTEGER_CLASS, INTEGER_CLASS);
+		assertEquals(revision, library.getRevision());
+	}
 }
@@ -87,6 +87,10 @@ public class SimpleVariableStoreTest extends TestCase
 		assertEquals(Integer.valueOf(9), varStore.put(vid, Integer.valueOf(4)));
 		assertTrue(varStore.containsKey(vid));
 		assertEquals(Integer.valueOf(4), varStore.get(vid));
+		assertEquals(Integer.valueOf(4), varStore.remove(vid));
+		assertFalse(varStore.containsKey(vid));
+		assertNull(varStore.get(vid));
+		assertNull(varStore.remove(vid));
 	}
 
 	public void testIndependence()
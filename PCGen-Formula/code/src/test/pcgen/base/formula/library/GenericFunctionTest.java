@@ -21,9 +21,12 @@ import org.junit.Test;
 
 import pcgen.base.formula.analysis.ArgumentDependencyManager;
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.FormulaSemantics;
 import pcgen.base.formula.base.FunctionLibrary;
+import pcgen.base.formula.inst.ComplexNEPFormula;
 import pcgen.base.formula.parse.SimpleNode;
 import pcgen.base.formula.visitor.DependencyVisitor;
+import pcgen.base.formula.visitor.InliningVisitor;
 import pcgen.base.formula.visitor.ReconstructionVisitor;
 import pcgen.base.testsupport.AbstractFormulaTestCase;
 import pcgen.base.testsupport.TestUtilities;
@@ -179,4 +182,75 @@ public class GenericFunctionTest extends AbstractFormulaTestCase
 		assertEquals(1, argManager.getMaximumArgument());
 	}
 
+	private String inline(String formula)
+	{
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(),
+			numberManager);
+		getVariableLibrary().assertLegalVariableID("b", getGlobalScope(),
+			numberManager);
+		SimpleNode node = TestUtilities.doParse(formula);
+		isValid(formula, node, numberManager, null);
+		Object inlined =
+				new InliningVisitor(getFunctionLibrary()).visit(node, null);
+		return new ReconstructionVisitor()
+			.visit((SimpleNode) inlined, new StringBuilder()).toString();
+	}
+
+	@Test
+	public void testInline()
+	{
+		assertEquals("floor((14-10)/2)", inline("d20Mod(14)"));
+		assertEquals("floor(((a+1)-10)/2)*2", inline("d20Mod(a+1)*2"));
+		String formula2 = "floor((arg(0)-arg(1))/2)";
+		SimpleNode node2 = TestUtilities.doParse(formula2);
+		getFunctionLibrary().addFunction(new GenericFunction("embed", node2));
+		assertEquals("floor(((floor((a-10)/2))-10)/2)",
+			inline("d20Mod(d20Mod(a))"));
+		assertEquals("floor(((floor((a-b)/2))-10)/2)",
+			inline("d20Mod(embed(a,b))"));
+		assertEquals("floor((a-(floor((b-10)/2)))/2)",
+			inline("embed(a,d20Mod(b))"));
+	}
+
+	@Test
+	public void testInlineLimits()
+	{
+		//Recursion is cut off at the maximum depth
+		SimpleNode recursive = TestUtilities.doParse("rec(arg(0))+1");
+		getFunctionLibrary().addFunction(new GenericFunction("rec", recursive));
+		SimpleNode node = TestUtilities.doParse("rec(2)");
+		Object inlined =
+				new InliningVisitor(getFunctionLibrary()).visit(node, null);
+		String result = new ReconstructionVisitor()
+			.visit((SimpleNode) inlined, new StringBuilder()).toString();
+		assertTrue(result, result.startsWith("rec(2)+1"));
+		assertTrue(result, result.endsWith("+1+1+1+1+1+1+1"));
+		//Expansions that are too large are left as calls
+		SimpleNode twice = TestUtilities.doParse("arg(0)+arg(0)");
+		getFunctionLibrary().addFunction(new GenericFunction("dbl", twice));
+		String formula = "dbl(dbl(dbl(dbl(dbl(dbl(dbl(dbl(a))))))))";
+		String big = inline(formula);
+		assertTrue(big, big.startsWith("dbl("));
+		getVariableStore().put(getVariable("a"), 3);
+		inlined = new InliningVisitor(getFunctionLibrary())
+			.visit(TestUtilities.doParse(formula), null);
+		evaluatesTo(formula, (SimpleNode) inlined, Integer.valueOf(768));
+	}
+
+	@Test
+	public void testInlineFormula()
+	{
+		getVariableLibrary().assertLegalVariableID("a", getGlobalScope(),
+			numberManager);
+		getVariableStore().put(getVariable("a"), 16);
+		ComplexNEPFormula<Number> formula =
+				new ComplexNEPFormula<>("d20Mod(a)+d20Mod(12)");
+		FormulaSemantics semantics =
+				getManagerFactory().generateFormulaSemantics(
+					getFormulaManager(), getGlobalScope(), null);
+		formula.isValid(numberManager, semantics);
+		assertTrue(semantics.isValid());
+		assertEquals(4, formula.resolve(generateManager()));
+		assertEquals("d20Mod(a)+d20Mod(12)", formula.toString());
+	}
 }
@@ -134,4 +134,26 @@ public class BooleanOrTest extends TestCase
 		assertEquals(Boolean.TRUE, op.evaluate(Boolean.TRUE, Boolean.FALSE));
 		assertEquals(Boolean.FALSE, op.evaluate(Boolean.FALSE, Boolean.FALSE));
 	}
+
+	public void testShortCircuit()
+	{
+		assertEquals(Boolean.TRUE, op.shortCircuit(Boolean.TRUE));
+		assertNull(op.shortCircuit(Boolean.FALSE));
+		try
+		{
+			op.shortCircuit(Integer.valueOf(1));
+			fail();
+		}
+		catch (RuntimeException e)
+		{
+			//expected
+		}
+	}
+
+	public void testCanShortCircuit()
+	{
+		assertTrue(op.canShortCircuit(BOOLEAN_CLASS));
+		assertFalse(op.canShortCircuit(NUMBER_CLASS));
+		assertFalse(op.canShortCircuit(INTEGER_CLASS));
+	}
 }
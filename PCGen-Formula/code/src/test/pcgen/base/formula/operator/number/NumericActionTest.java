@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.operator.number;
+
+import junit.framework.TestCase;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericUnaryAction;
+import pcgen.base.testsupport.TestUtilities;
+
+/**
+ * Checks that the evaluation of each number operator on primitive values
+ * produces the same result as the evaluation on boxed values.
+ */
+public class NumericActionTest extends TestCase
+{
+
+	private static final NumericOperatorAction[] OPERATOR_ACTIONS =
+			{new NumberAdd(), new NumberSubtract(), new NumberMultiply(),
+				new NumberDivide(), new NumberRemainder(), new NumberExp(),
+				new NumberEquals(), new NumberNotEqual(), new NumberLessThan(),
+				new NumberLessThanOrEqualTo(), new NumberGreaterThan(),
+				new NumberGreaterThanOrEqualTo()};
+
+	private static final NumericUnaryAction[] UNARY_ACTIONS =
+			{new NumberMinus()};
+
+	public void testOperatorActions()
+	{
+		for (NumericOperatorAction action : OPERATOR_ACTIONS)
+		{
+			TestUtilities.assertNumericIdentical(action);
+		}
+	}
+
+	public void testUnaryActions()
+	{
+		for (NumericUnaryAction action : UNARY_ACTIONS)
+		{
+			TestUtilities.assertNumericIdentical(action);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.formula.parse;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class ASTNumTest extends TestCase
+{
+
+	private Number parse(String formula) throws ParseException
+	{
+		SimpleNode root = new FormulaParser(new StringReader(formula)).query();
+		return ((ASTNum) root.jjtGetChild(0)).getValue();
+	}
+
+	private Number setToken(String text)
+	{
+		ASTNum node = new ASTNum(FormulaParserTreeConstants.JJTNUM);
+		node.setToken(text);
+		assertEquals(text, node.getText());
+		return node.getValue();
+	}
+
+	public void testParsedValue() throws ParseException
+	{
+		assertEquals(Integer.valueOf(1), parse("1"));
+		assertEquals(Integer.valueOf(0), parse("0"));
+		assertEquals(Integer.valueOf(7), parse("007"));
+		assertEquals(Double.valueOf(1.0), parse("1.0"));
+		assertEquals(Double.valueOf(0.5), parse(".5"));
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE), parse("2147483647"));
+		assertEquals(Double.valueOf(2147483648.0), parse("2147483648"));
+		assertEquals(Double.valueOf(1.0E20), parse("100000000000000000000"));
+	}
+
+	public void testSetToken()
+	{
+		assertNull(new ASTNum(FormulaParserTreeConstants.JJTNUM).getValue());
+		assertEquals(Integer.valueOf(-5), setToken("-5"));
+		assertEquals(Integer.valueOf(Integer.MIN_VALUE), setToken("-2147483648"));
+		assertEquals(Double.valueOf(-2.5), setToken("-2.5"));
+		assertEquals(Double.valueOf(1.0E10), setToken("1.0E10"));
+		assertEquals(Double.valueOf(Double.NaN), setToken("NaN"));
+		assertEquals(Double.valueOf(Double.NEGATIVE_INFINITY),
+			setToken("-Infinity"));
+		assertNull(setToken("-"));
+		assertNull(setToken(""));
+		assertNull(setToken("abc"));
+		assertNull(setToken(null));
+	}
+}
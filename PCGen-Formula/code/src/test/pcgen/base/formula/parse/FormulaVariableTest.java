@@ -404,4 +404,26 @@ public class FormulaVariableTest extends AbstractFormulaTestCase
 		assertTrue(rv.toString().equals(formula));
 	}
 
+	@Test
+	public void testInlineCache()
+	{
+		String formula = "a+b";
+		store.put(getVariable("a"), 2);
+		store.put(getVariable("b"), 3);
+		SimpleNode node = TestUtilities.doParse(formula);
+		isValid(formula, node, numberManager, null);
+		SimpleNode add = (SimpleNode) node.jjtGetChild(0);
+		assertNull(add.getInlineCache());
+		evaluatesTo(formula, node, Integer.valueOf(5));
+		Object cache = add.getInlineCache();
+		assertNotNull(cache);
+		evaluatesTo(formula, node, Integer.valueOf(5));
+		assertSame(cache, add.getInlineCache());
+		//Change the class of one side, so the cache must be replaced
+		store.put(getVariable("b"), 3.5);
+		evaluatesTo(formula, node, Double.valueOf(5.5));
+		assertNotSame(cache, add.getInlineCache());
+		store.put(getVariable("b"), 4);
+		evaluatesTo(formula, node, Integer.valueOf(6));
+	}
 }
@@ -15,8 +15,11 @@
  */
 package pcgen.base.solver;
 
+import java.util.ArrayList;
+
 import org.junit.Test;
 
+import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.FormulaManager;
 import pcgen.base.formula.base.LegalScope;
 import pcgen.base.formula.base.ManagerFactory;
@@ -24,7 +27,11 @@ import pcgen.base.formula.base.ScopeInstance;
 import pcgen.base.formula.base.VariableID;
 import pcgen.base.formula.base.WriteableVariableStore;
 import pcgen.base.formula.inst.ComplexNEPFormula;
+import pcgen.base.formula.inst.OverlayVariableStore;
+import pcgen.base.formula.inst.SimpleVariableStore;
 import pcgen.base.formula.inst.SimpleLegalScope;
+import pcgen.base.graph.inst.DefaultDirectionalGraphEdge;
+import pcgen.base.graph.inst.DirectionalSetMapGraph;
 import pcgen.base.solver.testsupport.AbstractModifier;
 import pcgen.base.solver.testsupport.AbstractSolverManagerTest;
 import pcgen.base.solver.testsupport.MockStat;
@@ -94,12 +101,250 @@ public class AggressiveSolverManagerTest extends AbstractSolverManagerTest
 		manager.solveChildren(limbs);
 	}
 
+	@Test
+	public void testSolveFromNode()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		final int[] external = {4};
+		manager.addModifier(str, new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				return external[0];
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return "external";
+			}
+		}, getGlobalScopeInst());
+		manager.addModifier(hp,
+			AbstractModifier.add(new ComplexNEPFormula<>("str*2"), 100),
+			getGlobalScopeInst());
+		assertEquals(4, store.get(str));
+		assertEquals(8, store.get(hp));
+		//A value read by a Modifier changed without the manager knowing
+		external[0] = 5;
+		manager.solveFromNode(str);
+		assertEquals(5, store.get(str));
+		assertEquals(10, store.get(hp));
+	}
+
+	@Test
+	public void testForeignModifierHandle()
+	{
+		getVariableLibrary().assertLegalVariableID("Limbs", getGlobalScope(),
+			numberManager);
+		VariableID<Number> limbs = (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), "Limbs");
+		AggressiveSolverManager other = new AggressiveSolverManager(
+			getFormulaManager(), managerFactory, getSolverFactory(),
+			new SimpleVariableStore());
+		ModifierHandle<Number> handle = other.addModifier(limbs,
+			AbstractModifier.setNumber(4, 5), getGlobalScopeInst());
+		try
+		{
+			manager.removeModifier(handle);
+			fail("handle from another SolverManager must be rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+		assertFalse(handle.isRemoved());
+	}
+
+	@Test
+	public void testMissingDependencyEdge()
+	{
+		WriteableVariableStore store = getVariableStore();
+		ScopeInstance globalScopeInst = getGlobalScopeInst();
+		VariableID<Number> x = getNumberVariable("x");
+		VariableID<Number> y = getNumberVariable("y");
+		manager.addModifier(y, AbstractModifier.setNumber(3, 5), globalScopeInst);
+		ModifierHandle<Number> handle = manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100), globalScopeInst);
+		assertEquals(4, store.get(x));
+		//Lose the edge from y to x behind the back of the manager
+		DirectionalSetMapGraph<VariableID<?>, DefaultDirectionalGraphEdge<VariableID<?>>> dependencies =
+				manager.getDependencies();
+		for (DefaultDirectionalGraphEdge<VariableID<?>> edge : new ArrayList<>(
+			dependencies.getAdjacentEdges(x)))
+		{
+			dependencies.removeEdge(edge);
+		}
+		manager.startBatch();
+		try
+		{
+			manager.removeModifier(handle);
+			fail("missing dependency edge must be reported");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		manager.rollbackBatch();
+		assertFalse(handle.isRemoved());
+		assertEquals(4, store.get(x));
+		assertEquals(2, manager.diagnose(x).size());
+	}
+
+	@Test
+	public void testFork()
+	{
+		WriteableVariableStore store = getVariableStore();
+		ScopeInstance globalScopeInst = getGlobalScopeInst();
+		VariableID<Number> x = getNumberVariable("x");
+		VariableID<Number> y = getNumberVariable("y");
+		VariableID<Number> z = getNumberVariable("z");
+		manager.addModifier(y, AbstractModifier.setNumber(3, 5), globalScopeInst);
+		ModifierHandle<Number> xHandle = manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100), globalScopeInst);
+		manager.addModifier(z,
+			AbstractModifier.add(new ComplexNEPFormula<>("x*2"), 100), globalScopeInst);
+		assertEquals(8, store.get(z));
+
+		OverlayVariableStore forkStore = new OverlayVariableStore(store);
+		AggressiveSolverManager fork = manager.fork(forkStore);
+		assertEquals(8, forkStore.get(z));
+		fork.addModifier(y, AbstractModifier.setNumber(10, 6), globalScopeInst);
+		assertEquals(10, forkStore.get(y));
+		assertEquals(11, forkStore.get(x));
+		assertEquals(22, forkStore.get(z));
+		assertEquals(3, fork.diagnose(y).size());
+		//Parent is unchanged
+		assertEquals(3, store.get(y));
+		assertEquals(4, store.get(x));
+		assertEquals(8, store.get(z));
+		assertEquals(2, manager.diagnose(y).size());
+
+		//A ModifierHandle of the parent can be removed from the fork
+		fork.removeModifier(xHandle);
+		assertEquals(0, forkStore.get(x));
+		assertEquals(0, forkStore.get(z));
+		assertFalse(xHandle.isRemoved());
+		assertEquals(4, store.get(x));
+		//Has no effect once removed
+		fork.removeModifier(xHandle);
+		fork.removeModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100), globalScopeInst);
+		assertEquals(0, forkStore.get(x));
+
+		//A rolled back batch in the fork restores the fork
+		fork.startBatch();
+		fork.removeFromSource(globalScopeInst);
+		fork.rollbackBatch();
+		assertEquals(3, fork.diagnose(y).size());
+		fork.removeFromSource(globalScopeInst);
+		assertEquals(0, forkStore.get(y));
+		assertEquals(1, fork.diagnose(z).size());
+		assertEquals(3, store.get(y));
+		assertEquals(8, store.get(z));
+		assertEquals(2, manager.diagnose(z).size());
+
+		//Discarding the fork leaves the parent usable
+		manager.addModifier(y, AbstractModifier.setNumber(5, 6), globalScopeInst);
+		assertEquals(6, store.get(x));
+		assertEquals(12, store.get(z));
+		manager.removeModifier(xHandle);
+		assertTrue(xHandle.isRemoved());
+		assertEquals(0, store.get(z));
+	}
+
+	@Test
+	public void testForkOfFork()
+	{
+		WriteableVariableStore store = getVariableStore();
+		ScopeInstance globalScopeInst = getGlobalScopeInst();
+		VariableID<Number> x = getNumberVariable("x");
+		VariableID<Number> y = getNumberVariable("y");
+		VariableID<Number> w = getNumberVariable("w");
+		manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100), globalScopeInst);
+		OverlayVariableStore forkStore = new OverlayVariableStore(store);
+		AggressiveSolverManager fork = manager.fork(forkStore);
+		//A channel only in the fork
+		fork.addModifier(w,
+			AbstractModifier.add(new ComplexNEPFormula<>("x*3"), 100), globalScopeInst);
+		assertEquals(3, forkStore.get(w));
+		assertFalse(store.containsKey(w));
+		try
+		{
+			manager.diagnose(w);
+			fail("Channel of the fork must not be in the parent");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+		OverlayVariableStore nestedStore = new OverlayVariableStore(forkStore);
+		AggressiveSolverManager nested = fork.fork(nestedStore);
+		nested.addModifier(y, AbstractModifier.setNumber(4, 5), globalScopeInst);
+		assertEquals(15, nestedStore.get(w));
+		assertEquals(3, forkStore.get(w));
+		assertEquals(1, store.get(x));
+		//Cycles are detected in the fork, without affecting the parent
+		try
+		{
+			nested.addModifier(y,
+				AbstractModifier.add(new ComplexNEPFormula<>("w"), 100),
+				globalScopeInst);
+			fail("Expected cycle to be rejected");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		assertEquals(15, nestedStore.get(w));
+		//Discarding the nested fork leaves the fork usable
+		fork.addModifier(y, AbstractModifier.setNumber(2, 5), globalScopeInst);
+		assertEquals(9, forkStore.get(w));
+		assertEquals(1, store.get(x));
+	}
+
+	@Test
+	public void testIllegalFork()
+	{
+		try
+		{
+			manager.fork(new OverlayVariableStore(new SimpleVariableStore()));
+			fail("Fork must be layered over the VariableStore of the SolverManager");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+		manager.startBatch();
+		try
+		{
+			manager.fork(new OverlayVariableStore(getVariableStore()));
+			fail("Cannot fork during a batch");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		manager.rollbackBatch();
+	}
+
 	@Override
 	protected SolverManager getManager()
 	{
 		return manager;
 	}
 
+	private VariableID<Number> getNumberVariable(String name)
+	{
+		getVariableLibrary().assertLegalVariableID(name, getGlobalScope(),
+			numberManager);
+		return (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), name);
+	}
+
 	@Test
 	public void testAddModifierExternal()
 	{
@@ -224,6 +224,45 @@ public class DynamicSolverManagerTest extends AbstractSolverManagerTest
 		manager.solveChildren(limbs);
 	}
 
+	@Test
+	public void testSolveFromNode()
+	{
+		WriteableVariableStore store = getVariableStore();
+		getVariableLibrary().assertLegalVariableID("STR", getGlobalScope(),
+			numberManager);
+		getVariableLibrary().assertLegalVariableID("HP", getGlobalScope(),
+			numberManager);
+		VariableID<Number> str = (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), "STR");
+		VariableID<Number> hp = (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), "HP");
+		final int[] external = {4};
+		manager.addModifier(str, new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				return external[0];
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return "external";
+			}
+		}, getGlobalScopeInst());
+		manager.addModifier(hp,
+			AbstractModifier.add(new ComplexNEPFormula<>("str*2"), 100),
+			getGlobalScopeInst());
+		assertEquals(4, store.get(str));
+		assertEquals(8, store.get(hp));
+		//A value read by a Modifier changed without the manager knowing
+		external[0] = 5;
+		manager.solveFromNode(str);
+		assertEquals(5, store.get(str));
+		assertEquals(10, store.get(hp));
+	}
+
 	public class LimbManager implements FormatManager<Limb>
 	{
 
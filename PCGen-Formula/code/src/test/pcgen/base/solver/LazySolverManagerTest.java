@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.WriteableVariableStore;
+import pcgen.base.formula.inst.ComplexNEPFormula;
+import pcgen.base.solver.testsupport.AbstractModifier;
+import pcgen.base.solver.testsupport.AbstractSolverManagerTest;
+
+public class LazySolverManagerTest extends AbstractSolverManagerTest
+{
+	private ManagerFactory managerFactory = new ManagerFactory(){};
+	private LazySolverManager manager;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		manager = new LazySolverManager(getFormulaManager(), managerFactory,
+			getSolverFactory(), (LazyVariableStore) getVariableStore());
+	}
+
+	@Override
+	protected WriteableVariableStore createVariableStore()
+	{
+		return new LazyVariableStore();
+	}
+
+	@Override
+	protected SolverManager getManager()
+	{
+		return manager;
+	}
+
+	@Test
+	public void testIllegalConstruction()
+	{
+		LazyVariableStore store = new LazyVariableStore();
+		try
+		{
+			new LazySolverManager(null, managerFactory, getSolverFactory(), store);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		FormulaManager formulaManager = getFormulaManager();
+		try
+		{
+			new LazySolverManager(formulaManager, null, getSolverFactory(), store);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			new LazySolverManager(formulaManager, managerFactory, null, store);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			new LazySolverManager(formulaManager, managerFactory, getSolverFactory(),
+				null);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			new LazySolverManager(formulaManager, managerFactory, getSolverFactory(),
+				(LazyVariableStore) getVariableStore());
+			fail("LazyVariableStore cannot be shared");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+	}
+
+	@Test
+	public void testSolvedOnRead()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		final int[] count = new int[1];
+		manager.addModifier(hp, countingModifier("str*2", count),
+			getGlobalScopeInst());
+		assertEquals(0, count[0]);
+		for (int i = 1; i <= 10; i++)
+		{
+			manager.addModifier(str, AbstractModifier.setNumber(i, i),
+				getGlobalScopeInst());
+		}
+		//Nothing read, so nothing calculated
+		assertEquals(0, count[0]);
+		assertEquals(20, store.get(hp));
+		assertEquals(1, count[0]);
+		//Up to date, so not calculated again
+		assertEquals(20, store.get(hp));
+		assertTrue(store.containsKey(hp));
+		assertEquals(1, count[0]);
+	}
+
+	@Test
+	public void testOnlyUpstreamSolved()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		VariableID<Number> max = getNumberVariable("Max");
+		final int[] count = new int[1];
+		manager.addModifier(hp,
+			AbstractModifier.add(new ComplexNEPFormula<>("str*2"), 100),
+			getGlobalScopeInst());
+		manager.addModifier(max, countingModifier("hp+10", count),
+			getGlobalScopeInst());
+		manager.addModifier(str, AbstractModifier.setNumber(3, 5),
+			getGlobalScopeInst());
+		assertEquals(6, store.get(hp));
+		assertEquals(0, count[0]);
+		assertEquals(16, store.get(max));
+		assertEquals(1, count[0]);
+	}
+
+	@Test
+	public void testSolveChildren()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		final int[] count = new int[1];
+		manager.addModifier(hp, countingModifier("str*2", count),
+			getGlobalScopeInst());
+		assertEquals(0, store.get(hp));
+		assertEquals(1, count[0]);
+		manager.solveChildren(str);
+		assertEquals(1, count[0]);
+		assertEquals(0, store.get(hp));
+		assertEquals(2, count[0]);
+	}
+
+	@Test
+	public void testSolveFromNode()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		final int[] external = {4};
+		manager.addModifier(str, new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				return external[0];
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return "external";
+			}
+		}, getGlobalScopeInst());
+		manager.addModifier(hp,
+			AbstractModifier.add(new ComplexNEPFormula<>("str*2"), 100),
+			getGlobalScopeInst());
+		assertEquals(4, store.get(str));
+		assertEquals(8, store.get(hp));
+		//A value read by a Modifier changed without the manager knowing
+		external[0] = 5;
+		manager.solveFromNode(str);
+		assertEquals(5, store.get(str));
+		assertEquals(10, store.get(hp));
+	}
+
+	@Test
+	public void testDiagnose()
+	{
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		manager.addModifier(hp,
+			AbstractModifier.add(new ComplexNEPFormula<>("str*2"), 100),
+			getGlobalScopeInst());
+		manager.addModifier(str, AbstractModifier.setNumber(4, 5),
+			getGlobalScopeInst());
+		List<ProcessStep<Number>> steps = manager.diagnose(hp);
+		assertEquals(2, steps.size());
+		assertEquals(8, steps.get(1).getResult());
+	}
+
+	private AbstractModifier<Number> countingModifier(String text,
+		final int[] count)
+	{
+		final ComplexNEPFormula<Number> formula = new ComplexNEPFormula<>(text);
+		return new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				count[0]++;
+				return formula.resolve(evalManager);
+			}
+
+			@Override
+			public void getDependencies(DependencyManager fdm)
+			{
+				formula.getDependencies(fdm);
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return formula.toString();
+			}
+		};
+	}
+
+	private VariableID<Number> getNumberVariable(String name)
+	{
+		getVariableLibrary().assertLegalVariableID(name, getGlobalScope(),
+			numberManager);
+		return (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), name);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.WriteableVariableStore;
+import pcgen.base.formula.inst.ComplexNEPFormula;
+import pcgen.base.formula.inst.ConcurrentVariableStore;
+import pcgen.base.solver.testsupport.AbstractModifier;
+import pcgen.base.solver.testsupport.AbstractSolverManagerTest;
+
+public class ParallelTopologicalSolverManagerTest extends AbstractSolverManagerTest
+{
+	private ManagerFactory managerFactory = new ManagerFactory(){};
+	private ForkJoinPool pool;
+	private TopologicalSolverManager manager;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		pool = new ForkJoinPool(4);
+		manager = new TopologicalSolverManager(getFormulaManager(), managerFactory,
+			getSolverFactory(), getVariableStore(), pool);
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		pool.shutdown();
+		super.tearDown();
+	}
+
+	@Override
+	protected WriteableVariableStore createVariableStore()
+	{
+		return new ConcurrentVariableStore();
+	}
+
+	@Override
+	protected SolverManager getManager()
+	{
+		return manager;
+	}
+
+	@Test
+	public void testIllegalConstruction()
+	{
+		try
+		{
+			new TopologicalSolverManager(getFormulaManager(), managerFactory,
+				getSolverFactory(), getVariableStore(), null);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+	}
+
+	@Test
+	public void testWide()
+	{
+		int width = 200;
+		int depth = 5;
+		VariableID<Number> root = getNumberVariable("Root");
+		manager.startBatch();
+		for (int i = 0; i < width; i++)
+		{
+			String previous = "Root";
+			for (int j = 0; j < depth; j++)
+			{
+				String name = "C" + i + "_" + j;
+				manager.addModifier(getNumberVariable(name),
+					AbstractModifier.add(
+						new ComplexNEPFormula<>(previous + "+" + i), 100),
+					getGlobalScopeInst());
+				previous = name;
+			}
+		}
+		manager.commitBatch();
+		assertWide(width, depth, 0);
+		manager.addModifier(root, AbstractModifier.setNumber(7, 5),
+			getGlobalScopeInst());
+		assertWide(width, depth, 7);
+	}
+
+	private void assertWide(int width, int depth, int rootValue)
+	{
+		for (int i = 0; i < width; i++)
+		{
+			for (int j = 0; j < depth; j++)
+			{
+				VariableID<Number> varID = getNumberVariable("C" + i + "_" + j);
+				assertEquals(rootValue + (j + 1) * i,
+					getVariableStore().get(varID).intValue());
+			}
+		}
+	}
+
+	private VariableID<Number> getNumberVariable(String name)
+	{
+		getVariableLibrary().assertLegalVariableID(name, getGlobalScope(),
+			numberManager);
+		return (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), name);
+	}
+}
@@ -18,14 +18,23 @@
 package pcgen.base.solver;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 import org.junit.Test;
 
 import junit.framework.TestCase;
+import pcgen.base.formatmanager.FormatUtilities;
+import pcgen.base.formula.base.DependencyManager;
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.ManagerFactory;
 import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableBinding;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.VariableLibrary;
+import pcgen.base.formula.base.VariableSlot;
+import pcgen.base.formula.base.VariableStore;
 import pcgen.base.formula.inst.SimpleLegalScope;
 import pcgen.base.formula.inst.SimpleVariableStore;
 import pcgen.base.solver.testsupport.AbstractModifier;
@@ -38,12 +47,14 @@ public class SolverTest extends TestCase
 	private ScopeInstance inst;
 	private ScopeInstance str;
 	private ScopeInstance con;
+	private VariableLibrary varLib;
 
 	@Override
 	protected void setUp() throws Exception
 	{
 		super.setUp();
 		SplitFormulaSetup sfs = new SplitFormulaSetup();
+		varLib = sfs.getVariableLibrary();
 		SimpleLegalScope globalScope = new SimpleLegalScope(null, "Global");
 		sfs.getLegalScopeLibrary().registerScope(globalScope);
 		IndividualSetup indSetup = new IndividualSetup(sfs, "Global", new SimpleVariableStore());
@@ -306,4 +317,233 @@ public class SolverTest extends TestCase
 		solver.removeModifier(add1, inst);
 		assertTrue(Arrays.equals(new Number[]{3, 6}, solver.process(evalManager)));
 	}
+
+	@Test
+	public void testIsEmpty()
+	{
+		Modifier<Number> addm = AbstractModifier.add(1, 100);
+		Modifier<Number> multm = AbstractModifier.multiply(2, 50);
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(6, 0));
+		assertTrue(solver.isEmpty());
+		solver.addModifier(addm, inst);
+		solver.addModifier(multm, str);
+		assertFalse(solver.isEmpty());
+		assertEquals(Integer.valueOf(13), solver.process(evalManager));
+		solver.removeModifier(addm, inst);
+		assertFalse(solver.isEmpty());
+		assertEquals(Integer.valueOf(12), solver.update(evalManager));
+		solver.removeFromSource(str);
+		assertTrue(solver.isEmpty());
+		assertEquals(Integer.valueOf(6), solver.update(evalManager));
+	}
+
+	@Test
+	public void testRemoveEntry()
+	{
+		Modifier<Number> addm = AbstractModifier.add(1, 100);
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(6, 0));
+		Solver.ModInfo<Number> first = solver.addEntry(addm, inst, null, null);
+		Solver.ModInfo<Number> second = solver.addEntry(addm, inst, null, null);
+		solver.addModifier(AbstractModifier.multiply(2, 50), str);
+		assertEquals(Integer.valueOf(14), solver.process(evalManager));
+		//Equal Modifier and source, but only the given entry is removed
+		assertTrue(solver.removeEntry(second));
+		assertEquals(Integer.valueOf(13), solver.update(evalManager));
+		assertFalse(solver.removeEntry(second));
+		assertTrue(solver.removeEntry(first));
+		assertEquals(Integer.valueOf(12), solver.update(evalManager));
+	}
+
+	@Test
+	public void testCopy()
+	{
+		Modifier<Number> addm = AbstractModifier.add(1, 100);
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(6, 0));
+		Solver.ModInfo<Number> entry = solver.addEntry(addm, inst, null, null);
+		assertEquals(Integer.valueOf(7), solver.process(evalManager));
+		Solver<Number> copy = solver.copy();
+		assertEquals(Integer.valueOf(7), copy.update(evalManager));
+		//Entries are shared, but the Solvers are independent
+		assertTrue(copy.removeEntry(entry));
+		copy.addModifier(AbstractModifier.multiply(2, 50), str);
+		assertEquals(Integer.valueOf(12), copy.update(evalManager));
+		assertEquals(Integer.valueOf(7), solver.update(evalManager));
+		copy.insertEntry(entry);
+		assertEquals(Integer.valueOf(13), copy.update(evalManager));
+		assertTrue(solver.removeEntry(entry));
+		assertEquals(Integer.valueOf(6), solver.update(evalManager));
+		assertEquals(Integer.valueOf(13), copy.update(evalManager));
+		assertTrue(solver.copy().isEmpty());
+	}
+
+	@Test
+	public void testCopyRebind()
+	{
+		varLib.assertLegalVariableID("a", inst.getLegalScope(),
+			FormatUtilities.NUMBER_MANAGER);
+		@SuppressWarnings("unchecked")
+		VariableID<Number> a = (VariableID<Number>) varLib.getVariableID(inst, "a");
+		VariableSlot<Number> slot = new VariableSlot<>(a);
+		slot.setValue(3);
+		final VariableSlot<Number> copySlot = new VariableSlot<>(a);
+		copySlot.setValue(5);
+		VariableStore store = new SimpleVariableStore();
+		final VariableStore copyStore = new SimpleVariableStore();
+		//Reports the value of a, if bound for copyStore
+		Modifier<Number> readA = new AbstractModifier<Number>(0, Number.class)
+		{
+			@Override
+			public Number process(EvaluationManager manager)
+			{
+				Object value = manager.get(EvaluationManager.BINDING)
+					.getValue(inst, copyStore, "a");
+				return (value == null) ? -1 : (Number) value;
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return "a";
+			}
+		};
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(6, 0));
+		Solver.ModInfo<Number> entry = solver.addEntry(readA, inst,
+			new VariableBinding(varLib, inst, store,
+				Collections.<VariableSlot<?>> singletonList(slot)),
+			null);
+		assertEquals(Integer.valueOf(-1), solver.process(evalManager));
+		Solver<Number> copy = solver.copy(copyStore,
+			new Function<VariableID<?>, VariableSlot<?>>()
+			{
+				@Override
+				public VariableSlot<?> apply(VariableID<?> varID)
+				{
+					return copySlot;
+				}
+			});
+		assertEquals(Integer.valueOf(5), copy.process(evalManager));
+		assertEquals(Integer.valueOf(-1), solver.process(evalManager));
+		//The original entry still removes the rebound entry
+		assertTrue(copy.removeEntry(entry));
+		assertTrue(copy.isEmpty());
+		assertFalse(solver.isEmpty());
+	}
+
+	@Test
+	public void testUpdate()
+	{
+		VariableID<Number> a =
+				new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "a");
+		VariableID<Number> b =
+				new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "b");
+		int[] count = new int[3];
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(0, 0));
+		solver.addModifier(countingAdd(1, 100, count, 0), inst, null,
+			Collections.<VariableID<?>> singletonList(a));
+		solver.addModifier(countingAdd(2, 200, count, 1), inst, null,
+			Collections.<VariableID<?>> singletonList(b));
+		Modifier<Number> last = countingAdd(4, 300, count, 2);
+		solver.addModifier(last, inst, null,
+			Collections.<VariableID<?>> emptyList());
+		assertEquals(7, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 1, 1}, count));
+		//Nothing changed
+		assertEquals(7, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 1, 1}, count));
+		//Restarts at the priority of the Modifier depending on b
+		solver.dependencyChanged(b);
+		assertEquals(7, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 2, 2}, count));
+		solver.removeModifier(last, inst);
+		assertEquals(3, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 2, 2}, count));
+		solver.addModifier(last, inst, null,
+			Collections.<VariableID<?>> emptyList());
+		assertEquals(7, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 2, 3}, count));
+		//Not a declared dependency, so everything is processed
+		solver.dependencyChanged(
+			new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "c"));
+		assertEquals(7, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{2, 3, 4}, count));
+		//process always processes everything
+		assertEquals(7, solver.process(evalManager));
+		assertTrue(Arrays.equals(new int[]{3, 4, 5}, count));
+	}
+
+	@Test
+	public void testIsAffectedBy()
+	{
+		VariableID<Number> a =
+				new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "a");
+		VariableID<Number> b =
+				new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "b");
+		int[] count = new int[2];
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(0, 0));
+		assertFalse(solver.needsUpdate());
+		solver.addModifier(countingAdd(1, 100, count, 0), inst, null,
+			Collections.<VariableID<?>> singletonList(a));
+		solver.addModifier(countingAdd(2, 200, count, 1), inst, null,
+			Collections.<VariableID<?>> singletonList(b));
+		assertTrue(solver.needsUpdate());
+		//Nothing processed, so nothing to invalidate
+		assertFalse(solver.isAffectedBy(a));
+		assertEquals(3, solver.update(evalManager));
+		assertFalse(solver.needsUpdate());
+		assertTrue(solver.isAffectedBy(a));
+		assertTrue(solver.isAffectedBy(b));
+		solver.dependencyChanged(b);
+		assertTrue(solver.needsUpdate());
+		assertTrue(solver.isAffectedBy(a));
+		assertFalse(solver.isAffectedBy(b));
+		//Not a declared dependency, so everything would be processed
+		assertTrue(solver.isAffectedBy(
+			new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "c")));
+		assertEquals(3, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 2}, count));
+	}
+
+	@Test
+	public void testUpdateUndeclared()
+	{
+		VariableID<Number> a =
+				new VariableID<>(inst, FormatUtilities.NUMBER_MANAGER, "a");
+		int[] count = new int[2];
+		Solver<Number> solver = new Solver<Number>(AbstractModifier.setNumber(0, 0));
+		solver.addModifier(countingAdd(1, 100, count, 0), inst, null,
+			Collections.<VariableID<?>> singletonList(a));
+		solver.addModifier(countingAdd(2, 50, count, 1), inst);
+		assertEquals(3, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{1, 1}, count));
+		//Undeclared dependencies are processed for any change
+		solver.dependencyChanged(a);
+		assertEquals(3, solver.update(evalManager));
+		assertTrue(Arrays.equals(new int[]{2, 2}, count));
+	}
+
+	private Modifier<Number> countingAdd(final int value, int priority,
+		final int[] count, final int index)
+	{
+		return new AbstractModifier<Number>(0, Number.class, priority)
+		{
+			@Override
+			public Number process(EvaluationManager manager)
+			{
+				count[index]++;
+				Number input = (Number) manager.get(EvaluationManager.INPUT);
+				return input.intValue() + value;
+			}
+
+			@Override
+			public void getDependencies(DependencyManager fdm)
+			{
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return "+" + value;
+			}
+		};
+	}
 }
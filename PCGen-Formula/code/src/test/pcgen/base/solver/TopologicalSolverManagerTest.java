@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 (C) Tom Parker <thpr@users.sourceforge.net>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 59 Temple Place,
+ * Suite 330, Boston, MA 02111-1307 USA
+ */
+package pcgen.base.solver;
+
+import org.junit.Test;
+
+import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.EvaluationManager;
+import pcgen.base.formula.base.FormulaManager;
+import pcgen.base.formula.base.ManagerFactory;
+import pcgen.base.formula.base.VariableID;
+import pcgen.base.formula.base.WriteableVariableStore;
+import pcgen.base.formula.inst.ComplexNEPFormula;
+import pcgen.base.solver.testsupport.AbstractModifier;
+import pcgen.base.solver.testsupport.AbstractSolverManagerTest;
+
+public class TopologicalSolverManagerTest extends AbstractSolverManagerTest
+{
+	private ManagerFactory managerFactory = new ManagerFactory(){};
+	private TopologicalSolverManager manager;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		manager = new TopologicalSolverManager(getFormulaManager(), managerFactory,
+			getSolverFactory(), getVariableStore());
+	}
+
+	@Test
+	public void testIllegalConstruction()
+	{
+		try
+		{
+			new TopologicalSolverManager(null, managerFactory, getSolverFactory(), getVariableStore());
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		FormulaManager formulaManager = getFormulaManager();
+		try
+		{
+			new TopologicalSolverManager(formulaManager, null, getSolverFactory(), getVariableStore());
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			new TopologicalSolverManager(formulaManager, managerFactory, getSolverFactory(), null);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+		try
+		{
+			new TopologicalSolverManager(formulaManager, managerFactory, getSolverFactory(), null);
+			fail("No nulls in constructor");
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			//ok
+		}
+	}
+
+	@Test
+	public void testTrivial()
+	{
+		getVariableLibrary().assertLegalVariableID("Limbs", getGlobalScope(),
+			numberManager);
+		VariableID<Number> limbs = (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), "Limbs");
+		manager.solveChildren(limbs);
+	}
+
+	@Test
+	public void testSolveFromNode()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> str = getNumberVariable("STR");
+		VariableID<Number> hp = getNumberVariable("HP");
+		final int[] external = {4};
+		manager.addModifier(str, new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				return external[0];
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return "external";
+			}
+		}, getGlobalScopeInst());
+		manager.addModifier(hp,
+			AbstractModifier.add(new ComplexNEPFormula<>("str*2"), 100),
+			getGlobalScopeInst());
+		assertEquals(4, store.get(str));
+		assertEquals(8, store.get(hp));
+		//A value read by a Modifier changed without the manager knowing
+		external[0] = 5;
+		manager.solveFromNode(str);
+		assertEquals(5, store.get(str));
+		assertEquals(10, store.get(hp));
+	}
+
+	@Override
+	protected SolverManager getManager()
+	{
+		return manager;
+	}
+
+	@Test
+	public void testDiamond()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> top = getNumberVariable("Top");
+		VariableID<Number> left = getNumberVariable("Left");
+		VariableID<Number> right = getNumberVariable("Right");
+		VariableID<Number> bottom = getNumberVariable("Bottom");
+		final int[] count = new int[1];
+		final ComplexNEPFormula<Number> formula =
+				new ComplexNEPFormula<>("left+right");
+		manager.addModifier(bottom, new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				count[0]++;
+				return formula.resolve(evalManager);
+			}
+
+			@Override
+			public void getDependencies(DependencyManager fdm)
+			{
+				formula.getDependencies(fdm);
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return formula.toString();
+			}
+		}, getGlobalScopeInst());
+		manager.addModifier(left,
+			AbstractModifier.add(new ComplexNEPFormula<>("top+1"), 100),
+			getGlobalScopeInst());
+		manager.addModifier(right,
+			AbstractModifier.add(new ComplexNEPFormula<>("top*2"), 100),
+			getGlobalScopeInst());
+		assertEquals(1, store.get(bottom));
+		count[0] = 0;
+		manager.addModifier(top, AbstractModifier.setNumber(3, 5),
+			getGlobalScopeInst());
+		assertEquals(10, store.get(bottom));
+		//Once, not once per path
+		assertEquals(1, count[0]);
+	}
+
+	@Test
+	public void testEarlyCutoff()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> top = getNumberVariable("Top");
+		VariableID<Number> mid = getNumberVariable("Mid");
+		VariableID<Number> bottom = getNumberVariable("Bottom");
+		final int[] count = new int[1];
+		final ComplexNEPFormula<Number> formula =
+				new ComplexNEPFormula<>("mid+1");
+		manager.addModifier(mid,
+			AbstractModifier.add(new ComplexNEPFormula<>("top*0"), 100),
+			getGlobalScopeInst());
+		manager.addModifier(bottom, new AbstractModifier<Number>(0, Number.class, 100)
+		{
+			@Override
+			public Number process(EvaluationManager evalManager)
+			{
+				count[0]++;
+				return formula.resolve(evalManager);
+			}
+
+			@Override
+			public void getDependencies(DependencyManager fdm)
+			{
+				formula.getDependencies(fdm);
+			}
+
+			@Override
+			public String getInstructions()
+			{
+				return formula.toString();
+			}
+		}, getGlobalScopeInst());
+		assertEquals(1, store.get(bottom));
+		assertEquals(1, count[0]);
+		manager.addModifier(top, AbstractModifier.setNumber(3, 5),
+			getGlobalScopeInst());
+		assertEquals(0, store.get(mid));
+		assertEquals(1, count[0]);
+	}
+
+	@Test
+	public void testDeepChain()
+	{
+		int depth = 5000;
+		VariableID<Number> first = getNumberVariable("V0");
+		manager.startBatch();
+		for (int i = 1; i < depth; i++)
+		{
+			manager.addModifier(getNumberVariable("V" + i),
+				AbstractModifier.add(new ComplexNEPFormula<>("V" + (i - 1) + "+1"),
+					100),
+				getGlobalScopeInst());
+		}
+		manager.commitBatch();
+		VariableID<Number> last = getNumberVariable("V" + (depth - 1));
+		assertEquals(depth - 1, getVariableStore().get(last));
+		manager.addModifier(first, AbstractModifier.setNumber(10, 5),
+			getGlobalScopeInst());
+		assertEquals(depth + 9, getVariableStore().get(last));
+	}
+
+	@Test
+	public void testCycleRolledBack()
+	{
+		WriteableVariableStore store = getVariableStore();
+		VariableID<Number> x = getNumberVariable("X");
+		VariableID<Number> y = getNumberVariable("Y");
+		manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100),
+			getGlobalScopeInst());
+		Modifier<Number> cycleMod =
+				AbstractModifier.add(new ComplexNEPFormula<>("x*0"), 100);
+		try
+		{
+			manager.addModifier(y, cycleMod, getGlobalScopeInst());
+			fail("Expected cycle to be rejected");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		manager.addModifier(y, AbstractModifier.setNumber(4, 5),
+			getGlobalScopeInst());
+		assertEquals(5, store.get(x));
+		assertEquals(1, manager.diagnose(y).size() - 1);
+	}
+
+	@Test
+	public void testFixpoint()
+	{
+		WriteableVariableStore store = getVariableStore();
+		manager.enableFixpoint(10);
+		VariableID<Number> x = getNumberVariable("X");
+		VariableID<Number> y = getNumberVariable("Y");
+		manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("min(y+1,5)"), 100),
+			getGlobalScopeInst());
+		manager.addModifier(y,
+			AbstractModifier.add(new ComplexNEPFormula<>("x"), 100),
+			getGlobalScopeInst());
+		assertEquals(5, store.get(x));
+		assertEquals(5, store.get(y));
+	}
+
+	@Test
+	public void testFixpointDiverges()
+	{
+		manager.enableFixpoint(5);
+		VariableID<Number> x = getNumberVariable("X");
+		VariableID<Number> y = getNumberVariable("Y");
+		manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100),
+			getGlobalScopeInst());
+		try
+		{
+			manager.addModifier(y,
+				AbstractModifier.add(new ComplexNEPFormula<>("x"), 100),
+				getGlobalScopeInst());
+			fail("Expected cycle to fail to converge");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		assertEquals(1, getVariableStore().get(x));
+	}
+
+	@Test
+	public void testFixpointDivergesInBatch()
+	{
+		WriteableVariableStore store = getVariableStore();
+		manager.enableFixpoint(5);
+		VariableID<Number> x = getNumberVariable("X");
+		VariableID<Number> y = getNumberVariable("Y");
+		VariableID<Number> z = getNumberVariable("Z");
+		manager.addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100),
+			getGlobalScopeInst());
+		manager.startBatch();
+		//Z is created in the batch, and solved before the cycle
+		manager.addModifier(z, AbstractModifier.setNumber(3, 5),
+			getGlobalScopeInst());
+		manager.addModifier(y,
+			AbstractModifier.add(new ComplexNEPFormula<>("x+z"), 100),
+			getGlobalScopeInst());
+		try
+		{
+			manager.commitBatch();
+			fail("Expected cycle to fail to converge");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		assertEquals(1, store.get(x));
+		assertEquals(0, store.get(y));
+		assertFalse(store.containsKey(z));
+		assertNull(store.get(z));
+	}
+
+	@Test
+	public void testIllegalFixpoint()
+	{
+		try
+		{
+			manager.enableFixpoint(0);
+			fail("Iteration limit must be positive");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+	}
+
+	private VariableID<Number> getNumberVariable(String name)
+	{
+		getVariableLibrary().assertLegalVariableID(name, getGlobalScope(),
+			numberManager);
+		return (VariableID<Number>) getVariableLibrary()
+			.getVariableID(getGlobalScopeInst(), name);
+	}
+}
@@ -20,6 +20,7 @@ package pcgen.base.solver.testsupport;
 import java.lang.reflect.Array;
 
 import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.DependencyTemplate;
 import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.inst.ComplexNEPFormula;
 import pcgen.base.lang.NumberUtilities;
@@ -238,7 +239,12 @@ public abstract class AbstractModifier<T> implements Modifier<T>
 			{
 				value.getDependencies(fdm);
 			}
-			
+
+			@Override
+			public DependencyTemplate getDependencyTemplate(DependencyManager fdm)
+			{
+				return value.getDependencyTemplate(fdm);
+			}
 
 			@Override
 			public String getInstructions()
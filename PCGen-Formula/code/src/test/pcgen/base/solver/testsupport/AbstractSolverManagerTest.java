@@ -17,16 +17,24 @@
  */
 package pcgen.base.solver.testsupport;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import pcgen.base.formula.base.DependencyManager;
+import pcgen.base.formula.base.EvaluationManager;
 import pcgen.base.formula.base.LegalScope;
 import pcgen.base.formula.base.ScopeInstance;
+import pcgen.base.formula.base.VariableBinding;
 import pcgen.base.formula.base.VariableID;
 import pcgen.base.formula.base.VariableLibrary;
 import pcgen.base.formula.base.WriteableVariableStore;
 import pcgen.base.formula.inst.ComplexNEPFormula;
 import pcgen.base.formula.inst.SimpleLegalScope;
 import pcgen.base.solver.Modifier;
+import pcgen.base.solver.ModifierHandle;
 import pcgen.base.solver.SolverFactory;
 import pcgen.base.solver.SolverManager;
 import pcgen.base.testsupport.AbstractFormulaTestCase;
@@ -282,6 +290,52 @@ public abstract class AbstractSolverManagerTest extends AbstractFormulaTestCase
 
 	}
 
+	@Test
+	public void testSharedModifier()
+	{
+		SimpleLegalScope localScope = new SimpleLegalScope(globalScope, "STAT");
+		getScopeLibrary().registerScope(localScope);
+		varLibrary.assertLegalVariableID("Base", localScope, numberManager);
+		varLibrary.assertLegalVariableID("Total", localScope, numberManager);
+		varLibrary.assertLegalVariableID("Bonus", globalScope, numberManager);
+		ScopeInstance strInst =
+				getInstanceFactory().get("STAT", new MockStat("Strength"));
+		ScopeInstance dexInst =
+				getInstanceFactory().get("STAT", new MockStat("Dexterity"));
+		VariableID<Number> strBase =
+				(VariableID<Number>) varLibrary.getVariableID(strInst, "Base");
+		VariableID<Number> strTotal =
+				(VariableID<Number>) varLibrary.getVariableID(strInst, "Total");
+		VariableID<Number> dexBase =
+				(VariableID<Number>) varLibrary.getVariableID(dexInst, "Base");
+		VariableID<Number> dexTotal =
+				(VariableID<Number>) varLibrary.getVariableID(dexInst, "Total");
+		VariableID<Number> bonus =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Bonus");
+
+		Modifier<Number> totalMod =
+				AbstractModifier.add(new ComplexNEPFormula<>("base*2+bonus+base"), 100);
+		getManager().addModifier(strTotal, totalMod, strInst);
+		getManager().addModifier(dexTotal, totalMod, dexInst);
+		getManager().addModifier(strBase, AbstractModifier.setNumber(3, 5), strInst);
+		getManager().addModifier(dexBase, AbstractModifier.setNumber(5, 5), dexInst);
+		assertEquals(9, store.get(strTotal));
+		assertEquals(15, store.get(dexTotal));
+		AbstractModifier<Number> one = AbstractModifier.setNumber(1, 5);
+		getManager().addModifier(bonus, one, globalScopeInst);
+		assertEquals(10, store.get(strTotal));
+		assertEquals(16, store.get(dexTotal));
+
+		getManager().removeModifier(strTotal, totalMod, strInst);
+		assertEquals(0, store.get(strTotal));
+		assertEquals(16, store.get(dexTotal));
+		getManager().addModifier(strBase, AbstractModifier.setNumber(4, 6), strInst);
+		getManager().removeModifier(bonus, one, globalScopeInst);
+		assertEquals(0, store.get(strTotal));
+		assertEquals(15, store.get(dexTotal));
+	}
+
 	@Test
 	public void testIllegalRemoveModifier()
 	{
@@ -399,6 +453,489 @@ public abstract class AbstractSolverManagerTest extends AbstractFormulaTestCase
 
 	}
 
+	@Test
+	public void testBoundVariables()
+	{
+		varLibrary.assertLegalVariableID("STR", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("HP", globalScope, numberManager);
+		VariableID<Number> str =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"STR");
+		VariableID<Number> hp =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"HP");
+		final List<Object> seen = new ArrayList<>();
+		final ComplexNEPFormula<Number> formula =
+				new ComplexNEPFormula<>("str*2");
+		AbstractModifier<Number> strMod =
+				new AbstractModifier<Number>(0, Number.class, 100)
+				{
+					@Override
+					public Number process(EvaluationManager manager)
+					{
+						VariableBinding binding =
+								manager.get(EvaluationManager.BINDING);
+						seen.add(binding.getValue(
+							manager.get(EvaluationManager.INSTANCE),
+							getFormulaManager().getResolver(), "str"));
+						return formula.resolve(manager);
+					}
+
+					@Override
+					public void getDependencies(DependencyManager fdm)
+					{
+						formula.getDependencies(fdm);
+					}
+
+					@Override
+					public String getInstructions()
+					{
+						return formula.toString();
+					}
+				};
+		getManager().addModifier(hp, strMod, globalScopeInst);
+		assertEquals(0, store.get(hp));
+		getManager().addModifier(str, AbstractModifier.setNumber(8, 5),
+			globalScopeInst);
+		assertEquals(16, store.get(hp));
+		getManager().addModifier(str, AbstractModifier.setNumber(9, 6),
+			globalScopeInst);
+		assertEquals(18, store.get(hp));
+		assertEquals(Arrays.asList(0, 8, 9), seen);
+	}
+
+	@Test
+	public void testBatch()
+	{
+		varLibrary.assertLegalVariableID("a", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("b", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("c", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("Total", globalScope, numberManager);
+		VariableID<Number> a =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "a");
+		VariableID<Number> b =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "b");
+		VariableID<Number> c =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "c");
+		VariableID<Number> total =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Total");
+		final int[] count = new int[1];
+		final ComplexNEPFormula<Number> formula =
+				new ComplexNEPFormula<>("a+b+c");
+		AbstractModifier<Number> totalMod =
+				new AbstractModifier<Number>(0, Number.class, 100)
+				{
+					@Override
+					public Number process(EvaluationManager manager)
+					{
+						count[0]++;
+						return formula.resolve(manager);
+					}
+
+					@Override
+					public void getDependencies(DependencyManager fdm)
+					{
+						formula.getDependencies(fdm);
+					}
+
+					@Override
+					public String getInstructions()
+					{
+						return formula.toString();
+					}
+				};
+		AbstractModifier<Number> one = AbstractModifier.setNumber(1, 5);
+		getManager().startBatch();
+		getManager().addModifier(total, totalMod, globalScopeInst);
+		getManager().addModifier(a, one, globalScopeInst);
+		getManager().addModifier(b, AbstractModifier.setNumber(2, 5),
+			globalScopeInst);
+		getManager().addModifier(c, AbstractModifier.setNumber(3, 5),
+			globalScopeInst);
+		assertEquals(null, store.get(total));
+		assertEquals(0, count[0]);
+		getManager().commitBatch();
+		assertEquals(6, store.get(total));
+		assertEquals(1, count[0]);
+
+		getManager().startBatch();
+		getManager().removeModifier(a, one, globalScopeInst);
+		getManager().addModifier(a, AbstractModifier.setNumber(5, 5),
+			globalScopeInst);
+		assertEquals(6, store.get(total));
+		getManager().commitBatch();
+		assertEquals(10, store.get(total));
+		assertEquals(2, count[0]);
+	}
+
+	@Test
+	public void testBatchRollback()
+	{
+		ComplexNEPFormula<Number> formula = new ComplexNEPFormula<>("a+b");
+		varLibrary.assertLegalVariableID("a", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("b", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("c", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("Total", globalScope, numberManager);
+		VariableID<Number> a =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "a");
+		VariableID<Number> b =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "b");
+		VariableID<Number> c =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "c");
+		VariableID<Number> total =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Total");
+		Modifier<Number> totalMod = AbstractModifier.add(formula, 100);
+		AbstractModifier<Number> two = AbstractModifier.setNumber(2, 5);
+		getManager().addModifier(total, totalMod, globalScopeInst);
+		getManager().addModifier(a, AbstractModifier.setNumber(1, 5),
+			globalScopeInst);
+		getManager().addModifier(b, two, globalScopeInst);
+		assertEquals(3, store.get(total));
+
+		getManager().startBatch();
+		getManager().removeModifier(b, two, globalScopeInst);
+		getManager().removeModifier(total, totalMod, globalScopeInst);
+		getManager().addModifier(total,
+			AbstractModifier.add(new ComplexNEPFormula<>("c*10"), 100),
+			globalScopeInst);
+		getManager().addModifier(a, AbstractModifier.setNumber(7, 6),
+			globalScopeInst);
+		getManager().rollbackBatch();
+		assertEquals(3, store.get(total));
+		assertEquals(null, store.get(c));
+
+		//Ensure the dependencies were restored
+		getManager().addModifier(b, AbstractModifier.setNumber(4, 6),
+			globalScopeInst);
+		assertEquals(5, store.get(total));
+		getManager().addModifier(c, AbstractModifier.setNumber(4, 6),
+			globalScopeInst);
+		assertEquals(5, store.get(total));
+	}
+
+	@Test
+	public void testBatchCycle()
+	{
+		varLibrary.assertLegalVariableID("x", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("y", globalScope, numberManager);
+		VariableID<Number> x =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "x");
+		VariableID<Number> y =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "y");
+		getManager().addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100),
+			globalScopeInst);
+		assertEquals(1, store.get(x));
+
+		getManager().startBatch();
+		getManager().addModifier(y, AbstractModifier.setNumber(2, 5),
+			globalScopeInst);
+		getManager().addModifier(y,
+			AbstractModifier.add(new ComplexNEPFormula<>("x*2"), 100),
+			globalScopeInst);
+		try
+		{
+			getManager().commitBatch();
+			fail("Expected cycle to be rejected");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		assertEquals(1, store.get(x));
+		assertEquals(0, store.get(y));
+
+		//Batch is complete, and the cycle was rolled back
+		getManager().addModifier(y, AbstractModifier.setNumber(4, 5),
+			globalScopeInst);
+		assertEquals(5, store.get(x));
+		assertEquals(4, store.get(y));
+	}
+
+	@Test
+	public void testBatchState()
+	{
+		try
+		{
+			getManager().commitBatch();
+			fail("Expected commit without a batch to fail");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		try
+		{
+			getManager().rollbackBatch();
+			fail("Expected rollback without a batch to fail");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		getManager().startBatch();
+		try
+		{
+			getManager().startBatch();
+			fail("Expected nested batch to fail");
+		}
+		catch (IllegalStateException e)
+		{
+			//ok
+		}
+		getManager().commitBatch();
+	}
+
+	@Test
+	public void testDefaultOnly()
+	{
+		varLibrary.assertLegalVariableID("Limbs", globalScope, numberManager);
+		VariableID<Number> limbs =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Limbs");
+		getManager().createChannel(limbs);
+		assertEquals(0, store.get(limbs));
+		assertEquals(1, getManager().diagnose(limbs).size());
+		AbstractModifier<Number> four = AbstractModifier.setNumber(4, 5);
+		getManager().addModifier(limbs, four, globalScopeInst);
+		assertEquals(4, store.get(limbs));
+		assertEquals(2, getManager().diagnose(limbs).size());
+		getManager().removeModifier(limbs, four, globalScopeInst);
+		assertEquals(0, store.get(limbs));
+		assertEquals(1, getManager().diagnose(limbs).size());
+		//Harmless
+		getManager().removeModifier(limbs, four, globalScopeInst);
+		assertEquals(0, store.get(limbs));
+	}
+
+	@Test
+	public void testModifierHandle()
+	{
+		varLibrary.assertLegalVariableID("a", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("Total", globalScope, numberManager);
+		VariableID<Number> a =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "a");
+		VariableID<Number> total =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Total");
+		Modifier<Number> totalMod =
+				AbstractModifier.add(new ComplexNEPFormula<>("a"), 100);
+		ModifierHandle<Number> first =
+				getManager().addModifier(total, totalMod, globalScopeInst);
+		assertEquals(total, first.getVariableID());
+		assertEquals(totalMod, first.getModifier());
+		assertEquals(globalScopeInst, first.getSource());
+		assertFalse(first.isRemoved());
+		//An equal Modifier and source gets a distinct handle
+		ModifierHandle<Number> second =
+				getManager().addModifier(total, totalMod, globalScopeInst);
+		getManager().addModifier(a, AbstractModifier.setNumber(3, 5),
+			globalScopeInst);
+		assertEquals(6, store.get(total));
+
+		getManager().removeModifier(first);
+		assertTrue(first.isRemoved());
+		assertFalse(second.isRemoved());
+		assertEquals(3, store.get(total));
+		//Harmless
+		getManager().removeModifier(first);
+		assertEquals(3, store.get(total));
+
+		getManager().removeModifier(second);
+		assertEquals(0, store.get(total));
+		//Ensure the dependencies were removed
+		getManager().addModifier(a, AbstractModifier.setNumber(4, 6),
+			globalScopeInst);
+		assertEquals(0, store.get(total));
+		assertEquals(1, getManager().diagnose(total).size());
+		try
+		{
+			getManager().removeModifier(null);
+			fail("null handle must be rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+	}
+
+	@Test
+	public void testModifierHandleRollback()
+	{
+		varLibrary.assertLegalVariableID("a", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("Total", globalScope, numberManager);
+		VariableID<Number> a =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "a");
+		VariableID<Number> total =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Total");
+		Modifier<Number> totalMod =
+				AbstractModifier.add(new ComplexNEPFormula<>("a"), 100);
+		ModifierHandle<Number> handle =
+				getManager().addModifier(total, totalMod, globalScopeInst);
+		getManager().addModifier(a, AbstractModifier.setNumber(3, 5),
+			globalScopeInst);
+		assertEquals(3, store.get(total));
+
+		getManager().startBatch();
+		getManager().removeModifier(handle);
+		ModifierHandle<Number> added = getManager().addModifier(total,
+			AbstractModifier.setNumber(9, 200), globalScopeInst);
+		getManager().rollbackBatch();
+		assertFalse(handle.isRemoved());
+		assertTrue(added.isRemoved());
+		assertEquals(3, store.get(total));
+
+		//The handle remains usable after the rollback
+		getManager().removeModifier(handle);
+		assertEquals(0, store.get(total));
+	}
+
+	@Test
+	public void testRemoveFromSource()
+	{
+		SimpleLegalScope localScope = new SimpleLegalScope(globalScope, "STAT");
+		getScopeLibrary().registerScope(localScope);
+		varLibrary.assertLegalVariableID("a", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("b", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("c", globalScope, numberManager);
+		varLibrary.assertLegalVariableID("Total", globalScope, numberManager);
+		ScopeInstance strInst =
+				getInstanceFactory().get("STAT", new MockStat("Strength"));
+		ScopeInstance dexInst =
+				getInstanceFactory().get("STAT", new MockStat("Dexterity"));
+		VariableID<Number> a =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "a");
+		VariableID<Number> b =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "b");
+		VariableID<Number> c =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst, "c");
+		VariableID<Number> total =
+				(VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+					"Total");
+		getManager().addModifier(total,
+			AbstractModifier.add(new ComplexNEPFormula<>("a+b+c"), 100),
+			globalScopeInst);
+		getManager().addModifier(a, AbstractModifier.setNumber(3, 5), strInst);
+		getManager().addModifier(b, AbstractModifier.setNumber(4, 5), strInst);
+		getManager().addModifier(c,
+			AbstractModifier.add(new ComplexNEPFormula<>("a*2"), 100), strInst);
+		getManager().addModifier(b, AbstractModifier.add(1, 200), dexInst);
+		assertEquals(6, store.get(c));
+		assertEquals(14, store.get(total));
+
+		getManager().removeFromSource(strInst);
+		assertEquals(0, store.get(a));
+		assertEquals(1, store.get(b));
+		assertEquals(0, store.get(c));
+		assertEquals(1, store.get(total));
+		//Ensure the dependencies were removed
+		getManager().addModifier(a, AbstractModifier.setNumber(5, 5),
+			globalScopeInst);
+		assertEquals(0, store.get(c));
+		assertEquals(6, store.get(total));
+		//Harmless
+		getManager().removeFromSource(strInst);
+		assertEquals(6, store.get(total));
+
+		getManager().startBatch();
+		getManager().removeFromSource(dexInst);
+		getManager().rollbackBatch();
+		assertEquals(1, store.get(b));
+		assertEquals(6, store.get(total));
+		getManager().removeFromSource(dexInst);
+		assertEquals(0, store.get(b));
+		assertEquals(5, store.get(total));
+		try
+		{
+			getManager().removeFromSource(null);
+			fail("null source must be rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//ok
+		}
+	}
+
+	@Test
+	public void testCyclePath()
+	{
+		VariableID<Number> x = getNumberVariable("x");
+		VariableID<Number> y = getNumberVariable("y");
+		VariableID<Number> z = getNumberVariable("z");
+		getManager().addModifier(x,
+			AbstractModifier.add(new ComplexNEPFormula<>("y+1"), 100),
+			globalScopeInst);
+		getManager().addModifier(y,
+			AbstractModifier.add(new ComplexNEPFormula<>("z*2"), 100),
+			globalScopeInst);
+		getManager().addModifier(z, AbstractModifier.setNumber(3, 5),
+			globalScopeInst);
+		assertEquals(7, store.get(x));
+		try
+		{
+			getManager().addModifier(z,
+				AbstractModifier.add(new ComplexNEPFormula<>("x"), 100),
+				globalScopeInst);
+			fail("Expected cycle to be rejected");
+		}
+		catch (IllegalStateException e)
+		{
+			assertTrue(e.getMessage(),
+				e.getMessage().endsWith(Arrays.asList(z, y, x, z).toString()));
+		}
+		//Nothing was changed
+		assertEquals(3, store.get(z));
+		assertEquals(6, store.get(y));
+		assertEquals(7, store.get(x));
+		assertEquals(2, getManager().diagnose(z).size());
+		getManager().addModifier(z, AbstractModifier.setNumber(4, 6),
+			globalScopeInst);
+		assertEquals(9, store.get(x));
+	}
+
+	@Test
+	public void testCycleAfterReorder()
+	{
+		VariableID<Number> w1 = getNumberVariable("w1");
+		VariableID<Number> w2 = getNumberVariable("w2");
+		VariableID<Number> w3 = getNumberVariable("w3");
+		VariableID<Number> w4 = getNumberVariable("w4");
+		getManager().addModifier(w1,
+			AbstractModifier.add(new ComplexNEPFormula<>("w2+1"), 100),
+			globalScopeInst);
+		getManager().addModifier(w3,
+			AbstractModifier.add(new ComplexNEPFormula<>("w4+1"), 100),
+			globalScopeInst);
+		//Joins the two chains: w2 -> w1 -> w4 -> w3
+		getManager().addModifier(w4,
+			AbstractModifier.add(new ComplexNEPFormula<>("w1+1"), 100),
+			globalScopeInst);
+		assertEquals(3, store.get(w3));
+		try
+		{
+			getManager().addModifier(w2,
+				AbstractModifier.add(new ComplexNEPFormula<>("w3"), 100),
+				globalScopeInst);
+			fail("Expected cycle to be rejected");
+		}
+		catch (IllegalStateException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage()
+				.endsWith(Arrays.asList(w2, w1, w4, w3, w2).toString()));
+		}
+		assertEquals(3, store.get(w3));
+	}
+
+	private VariableID<Number> getNumberVariable(String name)
+	{
+		varLibrary.assertLegalVariableID(name, globalScope, numberManager);
+		return (VariableID<Number>) varLibrary.getVariableID(globalScopeInst,
+			name);
+	}
+
 	public SolverFactory getSolverFactory()
 	{
 		return solverFactory;
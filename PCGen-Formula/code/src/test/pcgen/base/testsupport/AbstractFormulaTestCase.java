@@ -66,7 +66,7 @@ public abstract class AbstractFormulaTestCase extends TestCase
 		setup.loadBuiltIns();
 		setup.getLegalScopeLibrary()
 			.registerScope(new SimpleLegalScope(null, "Global"));
-		localSetup = new IndividualSetup(setup, "Global", new SimpleVariableStore());
+		localSetup = new IndividualSetup(setup, "Global", createVariableStore());
 		setup.getSolverFactory().addSolverFormat(Number.class, new Modifier(){
 
 			@Override
@@ -271,6 +271,11 @@ public abstract class AbstractFormulaTestCase extends TestCase
 		return localSetup.getFormulaManager().getFactory();
 	}
 
+	protected WriteableVariableStore createVariableStore()
+	{
+		return new SimpleVariableStore();
+	}
+
 	protected WriteableVariableStore getVariableStore()
 	{
 		return (WriteableVariableStore) localSetup.getFormulaManager()
@@ -22,6 +22,9 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 
 import junit.framework.TestCase;
+import pcgen.base.formula.base.NumericOperatorAction;
+import pcgen.base.formula.base.NumericUnaryAction;
+import pcgen.base.formula.base.NumericValue;
 import pcgen.base.formula.parse.FormulaParser;
 import pcgen.base.formula.parse.ParseException;
 import pcgen.base.formula.parse.SimpleNode;
@@ -29,10 +32,83 @@ import pcgen.base.formula.parse.SimpleNode;
 public final class TestUtilities
 {
 
+	/**
+	 * Values used to check that the primitive evaluation of a numeric action
+	 * is identical to evaluation on objects.
+	 */
+	private static final Number[] NUMERIC_VALUES = {0, 1, -1, 2, 3, -6, 7,
+		Integer.MAX_VALUE, Integer.MIN_VALUE, 0.0, -0.0, 0.5, 2.0, -3.25,
+		Double.NaN, Double.POSITIVE_INFINITY};
+
 	private TestUtilities()
 	{
 	}
 
+	public static void assertNumericIdentical(NumericOperatorAction action)
+	{
+		for (Number left : NUMERIC_VALUES)
+		{
+			for (Number right : NUMERIC_VALUES)
+			{
+				String message = left + " " + action.getOperator().getSymbol()
+					+ " " + right;
+				Object expected;
+				try
+				{
+					expected = action.evaluate(left, right);
+				}
+				catch (ArithmeticException e)
+				{
+					expected = e.getClass();
+				}
+				NumericValue result = new NumericValue();
+				Object actual;
+				try
+				{
+					if ((left instanceof Integer) && (right instanceof Integer))
+					{
+						action.evaluate(left.intValue(), right.intValue(),
+							result);
+					}
+					else
+					{
+						action.evaluate(left.doubleValue(), right.doubleValue(),
+							result);
+					}
+					actual = result.getObject();
+				}
+				catch (ArithmeticException e)
+				{
+					actual = e.getClass();
+				}
+				TestCase.assertEquals(message, expected, actual);
+				TestCase.assertEquals(message, expected.getClass(),
+					actual.getClass());
+			}
+		}
+	}
+
+	public static void assertNumericIdentical(NumericUnaryAction action)
+	{
+		for (Number value : NUMERIC_VALUES)
+		{
+			Object expected = action.evaluate(value);
+			NumericValue result = new NumericValue();
+			if (value instanceof Integer)
+			{
+				action.evaluate(value.intValue(), result);
+			}
+			else
+			{
+				action.evaluate(value.doubleValue(), result);
+			}
+			Object actual = result.getObject();
+			TestCase.assertEquals(String.valueOf(value), expected, actual);
+			TestCase.assertEquals(String.valueOf(value), expected.getClass(),
+				actual.getClass());
+		}
+	}
+
 	public static SimpleNode doParse(String formula)
 	{
 		try